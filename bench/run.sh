@@ -0,0 +1,36 @@
+#!/bin/sh
+# Compile l'application et les mesures JMH, puis les lance.
+# Les arguments sont passés à JMH : ./bench/run.sh CryptoBenchmark -p payloadSize=1024
+# Résultats lisibles par machine dans bench/results.json (ou BENCH_RESULTS).
+set -e
+
+BENCH_DIR=$(cd "$(dirname "$0")" && pwd)
+ROOT=$(dirname "$BENCH_DIR")
+LIB="$BENCH_DIR/lib"
+BUILD="$BENCH_DIR/build"
+RESULTS=${BENCH_RESULTS:-"$BENCH_DIR/results.json"}
+MAVEN=https://repo1.maven.org/maven2
+
+JMH_VERSION=1.37
+DEPENDENCIES="
+org/openjdk/jmh/jmh-core/$JMH_VERSION/jmh-core-$JMH_VERSION.jar
+org/openjdk/jmh/jmh-generator-annprocess/$JMH_VERSION/jmh-generator-annprocess-$JMH_VERSION.jar
+net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar
+org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar
+org/xerial/sqlite-jdbc/3.45.1.0/sqlite-jdbc-3.45.1.0.jar
+org/slf4j/slf4j-api/1.7.36/slf4j-api-1.7.36.jar
+"
+
+mkdir -p "$LIB"
+for dependency in $DEPENDENCIES; do
+    jar="$LIB/$(basename "$dependency")"
+    [ -f "$jar" ] || curl -sfL -o "$jar" "$MAVEN/$dependency"
+done
+
+rm -rf "$BUILD"
+mkdir -p "$BUILD"
+javac -encoding UTF-8 -cp "$LIB/*" -d "$BUILD" \
+    $(find "$ROOT/src" -name "*.java" ! -name "*Test.java") \
+    $(find "$BENCH_DIR/src" -name "*.java")
+
+java -cp "$BUILD:$LIB/*" org.openjdk.jmh.Main -rf json -rff "$RESULTS" "$@"
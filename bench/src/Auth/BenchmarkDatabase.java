@@ -0,0 +1,62 @@
+package Auth;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Base SQLite jetable dans un répertoire temporaire, pour les mesures : même fichier, même mode WAL
+ * et même pool que l'application, mais supprimée à la fin de la mesure.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+final class BenchmarkDatabase implements AutoCloseable {
+
+    /** Format de capture de l'application */
+    static final AudioFormat CAPTURE = AudioRecorder.CAPTURE_FORMAT;
+
+    private final Path dir;
+    private final Database db;
+
+    BenchmarkDatabase() throws IOException {
+        dir = Files.createTempDirectory("moustass-bench");
+        db = new Database("jdbc:sqlite:" + dir.resolve("users.db"), Database.DEFAULT_POOL_SIZE);
+    }
+
+    Database get() {
+        return db;
+    }
+
+    @Override
+    public void close() throws IOException {
+        db.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * Génère un signal proche d'une voix : une fondamentale modulée et un bruit de fond, pour que
+     * les codecs et le filtre de silence travaillent comme sur une vraie capture.
+     *
+     * @param frames Nombre de trames au format de capture
+     * @return Les données PCM
+     */
+    static byte[] voice(int frames) {
+        Random random = new Random(42);
+        float rate = CAPTURE.getSampleRate();
+        byte[] pcm = new byte[frames * CAPTURE.getFrameSize()];
+        for (int i = 0; i < frames; i++) {
+            double envelope = 0.5 + 0.5 * Math.sin(2 * Math.PI * 3 * i / rate);
+            double sample = 50 * envelope * Math.sin(2 * Math.PI * 180 * i / rate) + random.nextGaussian() * 3;
+            pcm[i] = (byte) Math.max(-128, Math.min(127, Math.round(sample)));
+        }
+        return pcm;
+    }
+}
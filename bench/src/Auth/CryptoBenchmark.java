@@ -0,0 +1,66 @@
+package Auth;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Chiffrement AES et hachage SHA-256 d'un bloc en mémoire, selon sa taille : d'un petit message
+ * jusqu'à plusieurs minutes d'audio.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CryptoBenchmark {
+
+    /** Taille des données en octets : 1 Kio, 64 Kio, 1 Mio, 16 Mio */
+    @Param({"1024", "65536", "1048576", "16777216"})
+    public int payloadSize;
+
+    private SecretKey key;
+    private byte[] data;
+    private byte[] encrypted;
+
+    @Setup
+    public void setUp() throws AES.AESException {
+        key = AES.generateSecretKey();
+        data = new byte[payloadSize];
+        new Random(42).nextBytes(data);
+        encrypted = AES.encrypt(data, key);
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws AES.AESException {
+        return AES.encrypt(data, key);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws AES.AESException {
+        return AES.decrypt(encrypted, key);
+    }
+
+    @Benchmark
+    public String generateSHA256() throws NoSuchAlgorithmException {
+        return SHA.generateSHA256(data);
+    }
+}
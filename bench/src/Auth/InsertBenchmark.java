@@ -0,0 +1,114 @@
+package Auth;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Insertion de lignes dans {@code recordings}, avec la requête de {@link SaveService} : une
+ * transaction par ligne, ou toutes les lignes dans une seule transaction par lot JDBC.
+ * Chaque appel insère {@code rows} lignes ; les deux mesures sont donc directement comparables.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertBenchmark {
+
+    private static final String INSERT =
+            "INSERT INTO recordings (name, timestamp, duration, audio, encryption_key, audio_hash, user_id, codec) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /** Nombre de lignes insérées par appel */
+    @Param({"1", "32", "256"})
+    public int rows;
+
+    private BenchmarkDatabase database;
+    private String wrappedKey;
+    private byte[] digest;
+
+    @Setup
+    public void setUp() throws IOException, AES.AESException {
+        database = new BenchmarkDatabase();
+        wrappedKey = database.get().getKeys().wrap(AES.generateSecretKey());
+        digest = SHA.sha256(BenchmarkDatabase.voice(4410));
+    }
+
+    /** Repart d'une table vide à chaque itération, pour ne pas mesurer la croissance de l'index */
+    @Setup(Level.Iteration)
+    public void clear() throws SQLException {
+        try (Connection conn = database.get().getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM recordings");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public void insertEachCommitted() throws SQLException {
+        try (Connection conn = database.get().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(INSERT)) {
+            for (int i = 0; i < rows; i++) {
+                bind(pstmt, i);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    @Benchmark
+    public int[] insertBatch() throws SQLException {
+        try (Connection conn = database.get().getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(INSERT)) {
+                for (int i = 0; i < rows; i++) {
+                    bind(pstmt, i);
+                    pstmt.addBatch();
+                }
+                int[] counts = pstmt.executeBatch();
+                conn.commit();
+                return counts;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private void bind(PreparedStatement pstmt, int i) throws SQLException {
+        pstmt.setString(1, "Enregistrement " + i);
+        pstmt.setString(2, "2024-01-01 10:00:00");
+        pstmt.setInt(3, 60);
+        pstmt.setBytes(4, new byte[0]);
+        pstmt.setString(5, wrappedKey);
+        SHA.bindDigest(pstmt, 6, digest);
+        pstmt.setInt(7, 1);
+        pstmt.setString(8, AudioCodecs.LPC);
+    }
+}
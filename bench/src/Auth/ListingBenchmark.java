@@ -0,0 +1,126 @@
+package Auth;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Requête de liste des enregistrements ({@link RecordingInfo#list}) : première page, page au
+ * milieu de la liste par sa clé, et comptage, selon le nombre d'enregistrements de l'utilisateur.
+ * D'autres utilisateurs possèdent autant d'enregistrements, pour que l'index serve vraiment.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListingBenchmark {
+
+    private static final int PAGE_SIZE = RecordingsTableModel.PAGE_SIZE;
+    private static final int USERS = 4;
+
+    /** Nombre d'enregistrements de l'utilisateur listé */
+    @Param({"1000", "100000"})
+    public int recordings;
+
+    private BenchmarkDatabase database;
+    private RecordingInfo middle;
+
+    @Setup
+    public void setUp() throws IOException, SQLException, AES.AESException {
+        database = new BenchmarkDatabase();
+        String wrappedKey = database.get().getKeys().wrap(AES.generateSecretKey());
+        // Aperçu complet : un minimum et un maximum par tranche
+        byte[] overview = new byte[PeakIndex.OVERVIEW_PEAKS * 2];
+        try (Connection conn = database.get().getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement recording = conn.prepareStatement(
+                     "INSERT INTO recordings (id, name, timestamp, duration, audio, encryption_key, audio_hash, user_id, codec) " +
+                     "VALUES (?, ?, ?, 60, X'', ?, ?, ?, 'lpc')");
+                 PreparedStatement peaks = conn.prepareStatement(
+                     "INSERT INTO recording_peaks (recording_id, level, frames_per_peak, peaks) VALUES (?, 0, 4410, ?)")) {
+                int id = 0;
+                for (int i = 0; i < recordings; i++) {
+                    for (int user = 1; user <= USERS; user++) {
+                        id++;
+                        recording.setInt(1, id);
+                        recording.setString(2, "Enregistrement " + id);
+                        // Plusieurs enregistrements par seconde : l'identifiant départage les égalités
+                        recording.setString(3, String.format("2024-01-01 %02d:%02d:%02d",
+                                                             i / 36000 % 24, i / 600 % 60, i / 10 % 60));
+                        recording.setString(4, wrappedKey);
+                        SHA.bindDigest(recording, 5, SHA.sha256(Integer.toString(id).getBytes()));
+                        recording.setInt(6, user);
+                        recording.addBatch();
+                        peaks.setInt(1, id);
+                        peaks.setBytes(2, overview);
+                        peaks.addBatch();
+                    }
+                    if (i % 1000 == 999) {
+                        recording.executeBatch();
+                        peaks.executeBatch();
+                    }
+                }
+                recording.executeBatch();
+                peaks.executeBatch();
+            }
+            conn.commit();
+            conn.setAutoCommit(true);
+
+            // Clé de la page précédant le milieu de la liste
+            RecordingInfo last = null;
+            for (int read = 0; read < recordings / 2; read += PAGE_SIZE) {
+                List<RecordingInfo> page = RecordingInfo.list(conn, 1, last != null ? last.getTimestamp() : null,
+                                                              last != null ? last.getId() : 0, PAGE_SIZE);
+                last = page.get(page.size() - 1);
+            }
+            middle = last;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public List<RecordingInfo> firstPage() throws SQLException {
+        try (Connection conn = database.get().getConnection()) {
+            return RecordingInfo.list(conn, 1, null, 0, PAGE_SIZE);
+        }
+    }
+
+    @Benchmark
+    public List<RecordingInfo> middlePage() throws SQLException {
+        try (Connection conn = database.get().getConnection()) {
+            return RecordingInfo.list(conn, 1, middle.getTimestamp(), middle.getId(), PAGE_SIZE);
+        }
+    }
+
+    @Benchmark
+    public int count() throws SQLException {
+        try (Connection conn = database.get().getConnection()) {
+            return RecordingInfo.count(conn, 1);
+        }
+    }
+}
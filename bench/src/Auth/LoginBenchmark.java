@@ -0,0 +1,80 @@
+package Auth;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hachage du mot de passe, seul puis avec la vérification faite à la connexion
+ * ({@link Connexion} : lecture de l'utilisateur par email et comparaison des hashs).
+ *
+ * @author Auth
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoginBenchmark {
+
+    private static final String EMAIL = "bench@moustass.fr";
+    private static final String PASSWORD = "Mot de passe de test 42!";
+
+    private BenchmarkDatabase database;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        database = new BenchmarkDatabase();
+        try (Connection conn = database.get().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("INSERT INTO users (email, password) VALUES (?, ?)")) {
+            pstmt.setString(1, EMAIL);
+            SHA.bindDigest(pstmt, 2, hashPassword(PASSWORD));
+            pstmt.executeUpdate();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public byte[] passwordHash() {
+        return hashPassword(PASSWORD);
+    }
+
+    @Benchmark
+    public boolean login() throws SQLException {
+        byte[] hashedPassword = hashPassword(PASSWORD);
+        try (Connection conn = database.get().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT * FROM users WHERE email = ?")) {
+            pstmt.setString(1, EMAIL);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() && SHA.matches(SHA.readDigest(rs, "password"), hashedPassword);
+            }
+        }
+    }
+
+    /** Même hachage que les écrans de connexion et d'inscription */
+    private static byte[] hashPassword(String password) {
+        return SHA.sha256(password.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,113 @@
+package Auth;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Chemin complet d'un enregistrement par {@link RecordingEngine}, sans carte son : capture d'un
+ * flux PCM, encodage, chiffrement et sauvegarde en base ; puis lecture, déchiffrement, décodage et
+ * vérification du hash. Chaque mesure est un appel unique, la durée d'un enregistrement de
+ * 30 minutes rendant inutile la répétition dans une même itération.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 8)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class RecordingBenchmark {
+
+    private static final int USER_ID = 1;
+    private static final long SAVE_TIMEOUT = 600;
+
+    /** Durée de l'enregistrement en secondes : 1 s, 1 min, 30 min */
+    @Param({"1", "60", "1800"})
+    public int seconds;
+
+    private BenchmarkDatabase database;
+    private RecordingEngine engine;
+    private final BlockingQueue<SaveService.Job> finished = new LinkedBlockingQueue<>();
+    private byte[] pcm;
+    /** Enregistrement lu par {@link #load()} */
+    private int stored;
+    /** Enregistrement créé par la dernière mesure de {@link #save()}, supprimé après elle */
+    private int saved;
+
+    @Setup
+    public void setUp() throws Exception {
+        database = new BenchmarkDatabase();
+        engine = new RecordingEngine(database.get(), BenchmarkDatabase.CAPTURE, null, new SaveService.Listener() {
+            @Override
+            public void progress(SaveService.Job job, long done, long total) {
+            }
+
+            @Override
+            public void finished(SaveService.Job job) {
+                finished.add(job);
+            }
+        });
+        pcm = BenchmarkDatabase.voice(seconds * (int) BenchmarkDatabase.CAPTURE.getSampleRate());
+        stored = save();
+        saved = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteSaved() throws SQLException {
+        if (saved != 0) {
+            engine.delete(saved);
+            saved = 0;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException, IOException {
+        engine.close(SAVE_TIMEOUT);
+        database.close();
+    }
+
+    @Benchmark
+    public int save() throws Exception {
+        RecordingEngine.Capture capture = engine.record(USER_ID, new ByteArrayInputStream(pcm), null);
+        capture.awaitEnd();
+        if (capture.getError() != null) throw capture.getError();
+        SaveService.Job job = capture.save("Mesure", "2024-01-01 10:00:00");
+        if (finished.poll(SAVE_TIMEOUT, TimeUnit.SECONDS) != job || job.getState() != SaveService.State.SAVED) {
+            throw new IllegalStateException("Save " + job.getState(), job.getError());
+        }
+        saved = job.getRecordingId();
+        return saved;
+    }
+
+    @Benchmark
+    public RecordingEngine.Outcome load() throws Exception {
+        RecordingEngine.Outcome outcome = engine.play(stored, RecordingEngine.toStream(OutputStream.nullOutputStream()),
+                                                      (result, error) -> { })
+                .awaitEnd();
+        if (outcome != RecordingEngine.Outcome.VERIFIED) {
+            throw new IllegalStateException("Playback " + outcome);
+        }
+        return outcome;
+    }
+}
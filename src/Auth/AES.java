@@ -2,9 +2,15 @@ package Auth;
 
 
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.util.Base64;
 
 public class AES {
@@ -12,6 +18,14 @@ public class AES {
     private static final String ALGORITHM = "AES";
     private static final int KEY_SIZE = 256;
 
+    // Plaintext bytes per authenticated chunk for new recordings
+    public static final int CHUNK_SIZE = ChunkedAES.DEFAULT_CHUNK_SIZE;
+
+    // Thread-confined cipher engines: the provider lookup is done once per thread,
+    // and every use re-initialises the engine, so callers never share state
+    private static final ThreadLocal<Cipher> GCM_CIPHER = engine(ChunkedAES.TRANSFORMATION);
+    private static final ThreadLocal<Cipher> LEGACY_CIPHER = engine(ALGORITHM);
+
     // Custom exception for AES operations
     public static class AESException extends Exception {
         public AESException(String message, Throwable cause) {
@@ -30,28 +44,98 @@ public class AES {
         }
     }
 
-    // Encrypt data using AES
+    // Encrypt data using the chunked AES-GCM format
     public static byte[] encrypt(byte[] data, SecretKey key) throws AESException {
         try {
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            cipher.init(Cipher.ENCRYPT_MODE, key);
-            return cipher.doFinal(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(
+                    (int) ChunkedAES.encryptedLength(data.length, CHUNK_SIZE));
+            try (OutputStream encrypting = encryptStream(out, key)) {
+                encrypting.write(data);
+            }
+            return out.toByteArray();
         } catch (Exception e) {
             throw new AESException("Encryption failed", e);
         }
     }
 
-    // Decrypt data using AES
+    // Decrypt data, accepting both the chunked format and legacy ECB blobs
     public static byte[] decrypt(byte[] encryptedData, SecretKey key) throws AESException {
+        try {
+            if (!ChunkedAES.isChunked(encryptedData)) {
+                return decryptLegacy(encryptedData, key);
+            }
+            ChunkedAES.ChunkReader reader = openChunkReader(ChunkedAES.wrap(encryptedData), key);
+            byte[] data = new byte[(int) reader.plainLength()];
+            byte[] chunk = new byte[reader.chunkSize()];
+            int pos = 0;
+            for (int i = 0; i < reader.chunkCount(); i++) {
+                int n = reader.readChunk(i, chunk);
+                System.arraycopy(chunk, 0, data, pos, n);
+                pos += n;
+            }
+            return data;
+        } catch (Exception e) {
+            throw new AESException("Decryption failed", e);
+        }
+    }
+
+    private static ThreadLocal<Cipher> engine(String transformation) {
+        return ThreadLocal.withInitial(() -> {
+            try {
+                return Cipher.getInstance(transformation);
+            } catch (Exception e) {
+                throw new IllegalStateException(transformation + " unavailable", e);
+            }
+        });
+    }
+
+    // This thread's AES-GCM engine; must be initialised and finished within a single call
+    static Cipher gcmCipher() {
+        return GCM_CIPHER.get();
+    }
+
+    // Decrypt a blob written before the chunked format (AES/ECB/PKCS5Padding)
+    private static byte[] decryptLegacy(byte[] encryptedData, SecretKey key) throws Exception {
+        Cipher cipher = LEGACY_CIPHER.get();
+        cipher.init(Cipher.DECRYPT_MODE, key);
+        return cipher.doFinal(encryptedData);
+    }
+
+    // Wrap a stream so that everything written to it is encrypted chunk by chunk; close() writes the last chunk
+    public static OutputStream encryptStream(OutputStream out, SecretKey key) throws IOException {
+        return new ChunkedAES.EncryptingOutputStream(out, key, CHUNK_SIZE);
+    }
+
+    // Wrap a stream of encrypted data (chunked or legacy) so that reading it yields the plaintext
+    public static InputStream decryptStream(InputStream in, SecretKey key) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(in, ChunkedAES.HEADER_SIZE);
+        byte[] header = new byte[ChunkedAES.HEADER_SIZE];
+        int read = 0;
+        while (read < header.length) {
+            int n = pushback.read(header, read, header.length - read);
+            if (n < 0) break;
+            read += n;
+        }
+        if (read == header.length && ChunkedAES.isHeader(header)) {
+            return new ChunkedAES.DecryptingInputStream(pushback, header, key);
+        }
+        pushback.unread(header, 0, read);
+        // The stream keeps its cipher between reads, so it cannot borrow this thread's engine
         try {
             Cipher cipher = Cipher.getInstance(ALGORITHM);
             cipher.init(Cipher.DECRYPT_MODE, key);
-            return cipher.doFinal(encryptedData);
+            return new CipherInputStream(pushback, cipher);
         } catch (Exception e) {
-            throw new AESException("Decryption failed", e);
+            throw new IOException("Legacy cipher unavailable", e);
         }
     }
 
+    // Open random access to the chunks of an encrypted recording
+    static ChunkedAES.ChunkReader openChunkReader(ChunkedAES.RandomAccessSource source, SecretKey key)
+            throws IOException {
+        return new ChunkedAES.ChunkReader(source, key);
+    }
+
     // Convert SecretKey to a Base64 string (to store or transfer the key)
     public static String encodeKeyToBase64(SecretKey key) {
         return Base64.getEncoder().encodeToString(key.getEncoded());
@@ -0,0 +1,167 @@
+package Auth;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+import org.junit.Test;
+
+public class AESTest {
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testRoundTripAcrossChunkBoundaries() throws Exception {
+        SecretKey key = AES.generateSecretKey();
+        int[] sizes = {0, 1, AES.CHUNK_SIZE - 1, AES.CHUNK_SIZE, AES.CHUNK_SIZE + 1, 3 * AES.CHUNK_SIZE + 17};
+        for (int size : sizes) {
+            byte[] data = randomBytes(size);
+            byte[] encrypted = AES.encrypt(data, key);
+            assertEquals(ChunkedAES.encryptedLength(size, AES.CHUNK_SIZE), encrypted.length);
+            assertArrayEquals("taille " + size, data, AES.decrypt(encrypted, key));
+            assertArrayEquals("flux, taille " + size, data,
+                    readAll(AES.decryptStream(new ByteArrayInputStream(encrypted), key)));
+        }
+    }
+
+    @Test
+    public void testStreamingEncryptMatchesByteArrayFormat() throws Exception {
+        SecretKey key = AES.generateSecretKey();
+        byte[] data = randomBytes(2 * AES.CHUNK_SIZE + 100);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream encrypting = AES.encryptStream(out, key)) {
+            for (int i = 0; i < data.length; i += 1000) {
+                encrypting.write(data, i, Math.min(1000, data.length - i));
+            }
+        }
+        assertArrayEquals(data, AES.decrypt(out.toByteArray(), key));
+    }
+
+    @Test
+    public void testLegacyEcbBlobsStayReadable() throws Exception {
+        SecretKey key = AES.generateSecretKey();
+        byte[] data = "Ancien message vocal".getBytes();
+        Cipher cipher = Cipher.getInstance("AES");
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        byte[] legacy = cipher.doFinal(data);
+
+        assertArrayEquals(data, AES.decrypt(legacy, key));
+        assertArrayEquals(data, readAll(AES.decryptStream(new ByteArrayInputStream(legacy), key)));
+    }
+
+    @Test
+    public void testSingleChunkCanBeDecryptedAlone() throws Exception {
+        SecretKey key = AES.generateSecretKey();
+        byte[] data = randomBytes(5 * AES.CHUNK_SIZE + 3);
+        ChunkedAES.ChunkReader reader = AES.openChunkReader(ChunkedAES.wrap(AES.encrypt(data, key)), key);
+
+        assertEquals(6, reader.chunkCount());
+        assertEquals(data.length, reader.plainLength());
+        byte[] chunk = new byte[reader.chunkSize()];
+        int n = reader.readChunk(3, chunk);
+        assertArrayEquals(Arrays.copyOfRange(data, 3 * AES.CHUNK_SIZE, 4 * AES.CHUNK_SIZE), Arrays.copyOf(chunk, n));
+        n = reader.readChunk(5, chunk);
+        assertEquals(3, n);
+    }
+
+    @Test
+    public void testConcurrentCallsDoNotShareEngineState() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (int t = 0; t < 16; t++) {
+                final int size = 1000 * t + AES.CHUNK_SIZE / 2;
+                tasks.add(() -> {
+                    SecretKey key = AES.generateSecretKey();
+                    byte[] data = randomBytes(size);
+                    byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+                    for (int i = 0; i < 20; i++) {
+                        if (!Arrays.equals(data, AES.decrypt(AES.encrypt(data, key), key))) return false;
+                        if (!Arrays.equals(hash, SHA.sha256(data))) return false;
+                    }
+                    return true;
+                });
+            }
+            for (Future<Boolean> result : pool.invokeAll(tasks)) {
+                assertTrue(result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = AES.AESException.class)
+    public void testTamperedChunkIsRejected() throws Exception {
+        SecretKey key = AES.generateSecretKey();
+        byte[] encrypted = AES.encrypt(randomBytes(2 * AES.CHUNK_SIZE), key);
+        encrypted[ChunkedAES.HEADER_SIZE + AES.CHUNK_SIZE + 40] ^= 1;
+        AES.decrypt(encrypted, key);
+    }
+
+    @Test(expected = AES.AESException.class)
+    public void testTruncationIsRejected() throws Exception {
+        SecretKey key = AES.generateSecretKey();
+        byte[] encrypted = AES.encrypt(randomBytes(3 * AES.CHUNK_SIZE), key);
+        AES.decrypt(Arrays.copyOf(encrypted, ChunkedAES.HEADER_SIZE + 2 * (AES.CHUNK_SIZE + ChunkedAES.TAG_SIZE)), key);
+    }
+
+    @Test
+    public void testForgedChunkSizeIsRejectedBeforeAllocation() throws Exception {
+        SecretKey key = AES.generateSecretKey();
+        byte[] encrypted = AES.encrypt(randomBytes(1000), key);
+        // En-tête non authentifié avant le premier bloc : taille de bloc de 1 Gio
+        ByteBuffer.wrap(encrypted).putInt(5, 1 << 30);
+
+        try {
+            AES.decrypt(encrypted, key);
+            fail("Une taille de bloc forgée devrait être refusée");
+        } catch (AES.AESException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause().getMessage().startsWith("Invalid chunk size"));
+        }
+        try {
+            AES.decryptStream(new ByteArrayInputStream(encrypted), key).close();
+            fail("Une taille de bloc forgée devrait être refusée");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid chunk size"));
+        }
+
+        ByteBuffer.wrap(encrypted).putInt(5, ChunkedAES.MAX_CHUNK_SIZE + 1);
+        try {
+            AES.openChunkReader(ChunkedAES.wrap(encrypted), key);
+            fail("Une taille de bloc au-delà du maximum devrait être refusée");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid chunk size"));
+        }
+    }
+}
@@ -12,10 +12,7 @@ import javax.swing.JButton;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -44,8 +41,6 @@ public class Admin {
     private JRadioButton rdbtnAdmin;
     private ButtonGroup roleButtonGroup;
 
-    private static final String DB_URL = "jdbc:sqlite:users.db";
-
     public static void main(String[] args) {
         EventQueue.invokeLater(new Runnable() {
             public void run() {
@@ -61,14 +56,13 @@ public class Admin {
 
     public Admin() {
         initialize();
-        createTable();
         populateTable();
     }
 
     public static Connection connect() {
         Connection conn = null;
         try {
-            conn = DriverManager.getConnection(DB_URL);
+            conn = Database.get().getConnection();
             System.out.println("Connexion a SQLite etablie.");
         } catch (SQLException e) {
             System.out.println(e.getMessage());
@@ -76,20 +70,6 @@ public class Admin {
         return conn;
     }
 
-    private static void createTable() {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             Statement stmt = conn.createStatement()) {
-            String sql = "CREATE TABLE IF NOT EXISTS users (" +
-                         "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                         "email TEXT NOT NULL UNIQUE, " +
-                         "password TEXT NOT NULL, " +
-                         "is_admin BOOLEAN NOT NULL DEFAULT 0)";
-            stmt.execute(sql);
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-    }
-
     static boolean isValidPassword(String password) {
         String regex = "^(?=.*[a-z])(?=.*[A-Z])(?=.*\\d)(?=.*[!@#$%^&*()\\-_=+<>?]).{12,}$";
         Pattern pattern = Pattern.compile(regex);
@@ -198,7 +178,7 @@ public class Admin {
                 }
 
                 // Check if email already exists
-                try (Connection conn = DriverManager.getConnection(DB_URL);
+                try (Connection conn = Database.get().getConnection();
                      PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) FROM users WHERE email = ?")) {
 
                     pstmt.setString(1, email);
@@ -209,13 +189,13 @@ public class Admin {
                         }
 
                         // Hash the password
-                        String hashedPassword = hashPassword(password);
+                        byte[] hashedPassword = hashPassword(password);
 
                         // Insert new user with role
                         try (PreparedStatement insertStmt = conn.prepareStatement(
                                 "INSERT INTO users (email, password, is_admin) VALUES (?, ?, ?)")) {
                             insertStmt.setString(1, email);
-                            insertStmt.setString(2, hashedPassword);
+                            SHA.bindDigest(insertStmt, 2, hashedPassword);
                             insertStmt.setBoolean(3, isAdmin);
 
                             int rowsAffected = insertStmt.executeUpdate();
@@ -268,15 +248,15 @@ public class Admin {
                     return;
                 }
 
-                String hashedPassword = hashPassword(newPassword);
+                byte[] hashedPassword = hashPassword(newPassword);
 
                 // Update user details including role
-                try (Connection conn = DriverManager.getConnection(DB_URL);
+                try (Connection conn = Database.get().getConnection();
                      PreparedStatement pstmt = conn.prepareStatement(
                              "UPDATE users SET email = ?, password = ?, is_admin = ? WHERE id = ?")) {
 
                     pstmt.setString(1, newEmail);
-                    pstmt.setString(2, hashedPassword);
+                    SHA.bindDigest(pstmt, 2, hashedPassword);
                     pstmt.setBoolean(3, isAdmin);
                     pstmt.setInt(4, selectedUserId);
 
@@ -316,7 +296,7 @@ public class Admin {
                         JOptionPane.YES_NO_OPTION);
 
                 if (confirm == JOptionPane.YES_OPTION) {
-                    try (Connection conn = DriverManager.getConnection(DB_URL);
+                    try (Connection conn = Database.get().getConnection();
                          PreparedStatement pstmt = conn.prepareStatement("DELETE FROM users WHERE id = ?")) {
 
                         pstmt.setInt(1, selectedUserId);
@@ -390,16 +370,18 @@ public class Admin {
         model.addColumn("Password");
         model.addColumn("Is Admin");
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = Database.get().getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery("SELECT * FROM users")) {
 
             while (rs.next()) {
+                // The hash may be stored as hex text or as a binary digest
+                byte[] digest = SHA.readDigest(rs, "password");
                 // Add rows to the table
                 model.addRow(new Object[]{
                     rs.getInt("id"),
                     rs.getString("email"),
-                    rs.getString("password"),
+                    digest != null ? SHA.toHex(digest) : rs.getString("password"),
                     rs.getBoolean("is_admin")
                 });
             }
@@ -413,21 +395,11 @@ public class Admin {
     /**
      * Hache un mot de passe avec SHA-256.
      * @param password Le mot de passe à hacher.
-     * @return Le mot de passe haché en hexadécimal.
+     * @return Le hash SHA-256 du mot de passe.
      */
     
-    private String hashPassword(String password) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] hashedBytes = md.digest(password.getBytes());
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hashedBytes) {
-                sb.append(String.format("%02x", b));
-            }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Erreur de hachage du mot de passe", e);
-        }
+    private byte[] hashPassword(String password) {
+        return SHA.sha256(password.getBytes());
     }
     
     public void afficher() {
@@ -0,0 +1,51 @@
+package Auth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Codec audio appliqué entre la capture et le chiffrement.
+ * Les données chiffrées ne se compressent plus : c'est la seule étape où le silence et
+ * la redondance des échantillons peuvent être éliminés. Le nom du codec est enregistré
+ * avec chaque enregistrement pour que la lecture le décode. D'autres codecs peuvent être
+ * fournis par {@link java.util.ServiceLoader} (voir {@link AudioCodecs}).
+ *
+ * @author Auth
+ * @version 1.0
+ */
+public interface AudioCodec {
+
+    /**
+     * @return Identifiant du codec, stocké dans {@code recordings.codec}
+     */
+    String getName();
+
+    /**
+     * @return true si le décodage restitue exactement les échantillons capturés
+     */
+    boolean isLossless();
+
+    /**
+     * Ouvre un flux qui encode l'audio PCM écrit et transmet le résultat à {@code out}.
+     * Fermer le flux encode les derniers échantillons et ferme {@code out}.
+     *
+     * @param out Destination des données encodées
+     * @param format Format PCM des données écrites
+     * @return Le flux d'encodage
+     * @throws IOException En cas d'erreur d'écriture
+     */
+    OutputStream encode(OutputStream out, AudioFormat format) throws IOException;
+
+    /**
+     * Ouvre un flux restituant l'audio PCM à partir des données encodées de {@code in}.
+     *
+     * @param in Données encodées
+     * @param format Format PCM à restituer, celui de l'encodage
+     * @return Le flux PCM
+     * @throws IOException En cas d'erreur de lecture
+     */
+    InputStream decode(InputStream in, AudioFormat format) throws IOException;
+}
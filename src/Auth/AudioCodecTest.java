@@ -0,0 +1,164 @@
+package Auth;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.Test;
+
+public class AudioCodecTest {
+
+    /** Format de capture de l'application */
+    private static final AudioFormat CAPTURE = new AudioFormat(44100, 8, 1, true, true);
+    private static final AudioFormat STEREO_16 = new AudioFormat(44100, 16, 2, true, false);
+    private static final AudioFormat UNSIGNED_8 = new AudioFormat(AudioFormat.Encoding.PCM_UNSIGNED, 8000, 8, 1, 1, 8000, false);
+
+    @Test
+    public void testLosslessCodecsRestoreEveryByte() throws Exception {
+        for (AudioFormat format : new AudioFormat[] {CAPTURE, STEREO_16, UNSIGNED_8}) {
+            // Voix simulée, bruit blanc, silence et une trame incomplète en fin de flux
+            byte[] pcm = concat(tone(format, 30000), noise(format, 5000), new byte[format.getFrameSize() * 20000], new byte[] {7});
+            for (String name : new String[] {AudioCodecs.PCM, AudioCodecs.LPC}) {
+                AudioCodec codec = AudioCodecs.forName(name);
+                assertTrue(codec.isLossless());
+                assertArrayEquals(name + " " + format, pcm, decode(codec, format, encode(codec, format, pcm)));
+            }
+        }
+    }
+
+    @Test
+    public void testLossyCodecsStayCloseToTheSignal() throws Exception {
+        for (AudioFormat format : new AudioFormat[] {CAPTURE, STEREO_16}) {
+            byte[] pcm = tone(format, 20000);
+            for (String name : new String[] {AudioCodecs.ULAW, AudioCodecs.ADPCM}) {
+                AudioCodec codec = AudioCodecs.forName(name);
+                byte[] decoded = decode(codec, format, encode(codec, format, pcm));
+                assertEquals(pcm.length, decoded.length);
+                assertTrue(name + " " + format, snr(format, pcm, decoded) > 15);
+            }
+        }
+    }
+
+    @Test
+    public void testCompression() throws Exception {
+        byte[] silence = new byte[44100 * 10];
+        byte[] voice = tone(CAPTURE, 44100 * 10);
+        assertTrue(encode(AudioCodecs.forName(AudioCodecs.LPC), CAPTURE, silence).length < silence.length / 100);
+        assertTrue(encode(AudioCodecs.forName(AudioCodecs.LPC), CAPTURE, voice).length < voice.length * 3 / 4);
+        assertTrue(encode(AudioCodecs.forName(AudioCodecs.ADPCM), CAPTURE, voice).length < voice.length * 51 / 100);
+    }
+
+    @Test
+    public void testEncodingKeepsUpWithRealTime() throws Exception {
+        byte[] minute = concat(tone(CAPTURE, 44100 * 30), noise(CAPTURE, 44100 * 30));
+        for (AudioCodec codec : AudioCodecs.all()) {
+            encode(codec, CAPTURE, minute);
+            long start = System.nanoTime();
+            byte[] encoded = encode(codec, CAPTURE, minute);
+            decode(codec, CAPTURE, encoded);
+            // Une minute d'audio doit s'encoder et se décoder en bien moins d'une minute
+            assertTrue(codec.getName(), System.nanoTime() - start < 6_000_000_000L);
+        }
+    }
+
+    @Test
+    public void testPipelineHashesEncodedDataAndDecodesOnRead() throws Exception {
+        byte[] pcm = tone(CAPTURE, 100000);
+        AudioCodec codec = AudioCodecs.forName(AudioCodecs.LPC);
+        RecordingPipeline pipeline = new RecordingPipeline(4410, CAPTURE, codec, VadSettings.DISABLED);
+        for (int off = 0; off < pcm.length; off += 4410) {
+            byte[] buffer = pipeline.nextBuffer();
+            int n = Math.min(buffer.length, pcm.length - off);
+            System.arraycopy(pcm, off, buffer, 0, n);
+            pipeline.submit(buffer, n);
+        }
+        try (RecordingPipeline.Result result = pipeline.finish()) {
+            assertEquals(pcm.length, result.getLength());
+            assertSame(codec, result.getCodec());
+            assertArrayEquals(SHA.sha256(encode(codec, CAPTURE, pcm)), result.getDigest());
+            assertArrayEquals(pcm, readAll(result.openDecrypted()));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCodecIsRejected() {
+        AudioCodecs.forName("mp3");
+    }
+
+    private static byte[] encode(AudioCodec codec, AudioFormat format, byte[] pcm) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream encoder = codec.encode(out, format)) {
+            // Écritures de tailles irrégulières, comme celles de la capture
+            for (int off = 0, n = 1; off < pcm.length; off += n, n = n * 3 % 5001 + 1) {
+                encoder.write(pcm, off, Math.min(n, pcm.length - off));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] decode(AudioCodec codec, AudioFormat format, byte[] encoded) throws Exception {
+        return readAll(codec.decode(new ByteArrayInputStream(encoded), format));
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[7919];
+            int n;
+            while ((n = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /** Somme de sinusoïdes modulées, à 40 % de la pleine échelle */
+    private static byte[] tone(AudioFormat format, int frames) {
+        BlockCodec.Samples samples = new BlockCodec.Samples(format);
+        int max = (1 << (samples.bits - 1)) - 1;
+        byte[] pcm = new byte[frames * samples.frameSize];
+        for (int i = 0; i < frames; i++) {
+            double t = i / (double) format.getSampleRate();
+            double v = 0.25 * Math.sin(2 * Math.PI * 220 * t) + 0.1 * Math.sin(2 * Math.PI * 660 * t + 1)
+                       + 0.05 * Math.sin(2 * Math.PI * 1500 * t);
+            v *= 0.6 + 0.4 * Math.sin(2 * Math.PI * 3 * t);
+            for (int ch = 0; ch < samples.channels; ch++) {
+                samples.put(pcm, i * samples.frameSize + ch * samples.bits / 8, (int) Math.round(v * max));
+            }
+        }
+        return pcm;
+    }
+
+    private static byte[] noise(AudioFormat format, int frames) {
+        byte[] pcm = new byte[frames * format.getFrameSize()];
+        new Random(5).nextBytes(pcm);
+        return pcm;
+    }
+
+    private static double snr(AudioFormat format, byte[] expected, byte[] actual) {
+        BlockCodec.Samples samples = new BlockCodec.Samples(format);
+        double signal = 0;
+        double noise = 0;
+        for (int off = 0; off < expected.length; off += samples.bits / 8) {
+            int a = samples.get(expected, off);
+            int b = samples.get(actual, off);
+            signal += (double) a * a;
+            noise += (double) (a - b) * (a - b);
+        }
+        return 10 * Math.log10(signal / Math.max(noise, 1));
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
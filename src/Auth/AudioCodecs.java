@@ -0,0 +1,73 @@
+package Auth;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Registre des codecs audio : les codecs intégrés, puis ceux déclarés comme services
+ * {@code META-INF/services/Auth.AudioCodec}.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+public final class AudioCodecs {
+
+    /** Audio PCM brut, tel que capturé (enregistrements antérieurs aux codecs) */
+    public static final String PCM = "pcm";
+    /** G.711 μ-law, 8 bits par échantillon */
+    public static final String ULAW = "ulaw";
+    /** IMA-ADPCM, 4 bits par échantillon */
+    public static final String ADPCM = "adpcm";
+    /** Prédiction linéaire et codage de Rice, sans perte */
+    public static final String LPC = "lpc";
+
+    /** Codec des nouveaux enregistrements, modifiable avec {@code moustass.codec} */
+    static final String DEFAULT = System.getProperty("moustass.codec", LPC);
+
+    private static final Map<String, AudioCodec> CODECS = new LinkedHashMap<>();
+
+    static {
+        register(new PcmCodec());
+        register(new MuLawCodec());
+        register(new ImaAdpcmCodec());
+        register(new LpcRiceCodec());
+        for (AudioCodec codec : ServiceLoader.load(AudioCodec.class)) {
+            register(codec);
+        }
+    }
+
+    private AudioCodecs() {
+    }
+
+    private static void register(AudioCodec codec) {
+        CODECS.putIfAbsent(codec.getName(), codec);
+    }
+
+    /**
+     * @param name Identifiant du codec
+     * @return Le codec
+     * @throws IllegalArgumentException Si aucun codec ne porte ce nom
+     */
+    public static AudioCodec forName(String name) {
+        AudioCodec codec = CODECS.get(name);
+        if (codec == null) throw new IllegalArgumentException("Unknown audio codec: " + name);
+        return codec;
+    }
+
+    /**
+     * @return Le codec des nouveaux enregistrements
+     */
+    public static AudioCodec getDefault() {
+        return forName(DEFAULT);
+    }
+
+    /**
+     * @return Tous les codecs disponibles
+     */
+    public static Collection<AudioCodec> all() {
+        return Collections.unmodifiableCollection(CODECS.values());
+    }
+}
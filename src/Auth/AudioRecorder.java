@@ -3,33 +3,35 @@ package Auth;
 import java.awt.EventQueue;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import javax.swing.table.DefaultTableModel;
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.*;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
-import javax.crypto.SecretKey;
 import javax.sound.sampled.*;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.BorderLayout;
+import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.GridLayout;
 import java.util.ArrayList;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.List;
 
 /**
  * Application d'enregistrement audio avec chiffrement AES et vérification d'intégrité.
  * Cette application permet d'enregistrer, de sauvegarder, de lire et de gérer des enregistrements
  * audio. Les enregistrements sont chiffrés avant stockage en base de données et leur intégrité
- * est vérifiée lors du chargement.
+ * est vérifiée lors du chargement. Ces opérations sont celles de {@link RecordingEngine} :
+ * la fenêtre n'en gère que l'affichage et les dialogues.
  * 
  * @author Auth
  * @version 1.0
@@ -37,12 +39,20 @@ import java.util.List;
 public class AudioRecorder extends JFrame {
 
     private static final long serialVersionUID = 1L;
+    /** Format de capture : 44,1 kHz, 8 bits signés, mono, gros-boutiste */
+    static final AudioFormat CAPTURE_FORMAT = new AudioFormat(44100, 8, 1, true, true);
+    /** Attente maximale, en secondes, des sauvegardes en cours à la fermeture */
+    private static final long SAVE_SHUTDOWN_TIMEOUT = 120;
+    /** Dossier des copies WAV des enregistrements */
+    private static final String AUTOSAVE_DIR = "recordings";
     /** Panneau principal de l'interface */
     private JPanel contentPane;
     /** Tableau affichant la liste des enregistrements */
     private JTable table;
-    /** Modèle de données pour le tableau */
-    private DefaultTableModel tableModel;
+    /** Modèle de données paginé pour le tableau */
+    private RecordingsTableModel tableModel;
+    /** Forme d'onde de l'enregistrement sélectionné */
+    private WaveformView waveformView;
     /** Bouton pour démarrer l'enregistrement */
     private JButton btnRecord;
     /** Bouton pour arrêter l'enregistrement ou la lecture */
@@ -51,6 +61,20 @@ public class AudioRecorder extends JFrame {
     private JButton btnPlay;
     /** Bouton pour supprimer l'enregistrement sélectionné */
     private JButton btnDelete;
+    /** Position de lecture, déplaçable pendant la lecture */
+    private JSlider seekSlider;
+    /** Position et durée de la lecture en cours */
+    private JLabel positionLabel;
+    /** Vrai pendant une mise à jour du curseur par le thread de lecture */
+    private boolean updatingSlider;
+    /** Capture, sauvegarde, lecture et suppression des enregistrements, hors de l'EDT */
+    private RecordingEngine engine;
+    /** Sauvegardes soumises et pas encore terminées, de la plus ancienne à la plus récente (EDT) */
+    private final List<SaveService.Job> pendingSaves = new ArrayList<>();
+    /** Progression de la sauvegarde la plus ancienne */
+    private JProgressBar saveProgress;
+    /** Bouton d'annulation de la sauvegarde la plus ancienne */
+    private JButton btnCancelSave;
     /** Étiquette affichant l'état actuel de l'application */
     private JLabel statusLabel;
     /** Identifiant de l'utilisateur connecté */
@@ -58,22 +82,22 @@ public class AudioRecorder extends JFrame {
     /** Étiquette affichant le nom de l'utilisateur connecté */
     private JLabel userLabel;
     
-    /** Connexion à la base de données SQLite */
-    private Connection conn;
+    /** Connexions à la base de données SQLite, empruntées le temps d'une opération */
+    private final Database db = Database.get();
     /** Indique si un enregistrement est en cours */
     private boolean isRecording = false;
     /** Indique si une lecture est en cours */
     private boolean isPlaying = false;
-    /** Ligne audio pour l'enregistrement */
-    private TargetDataLine audioLine;
+    /** Vrai dès que la fermeture de la fenêtre a commencé (EDT) */
+    private boolean closing = false;
+    /** Vrai une fois la fenêtre libérée (EDT) */
+    private boolean closed = false;
     /** Format audio utilisé pour l'enregistrement et la lecture */
     private AudioFormat audioFormat;
-    /** Flux de sortie pour stocker les données audio enregistrées */
-    private ByteArrayOutputStream outputStream;
-    /** Thread utilisé pour l'enregistrement audio */
-    private Thread recordingThread;
-    /** Thread utilisé pour la lecture audio */
-    private Thread playingThread;
+    /** Capture en cours */
+    private RecordingEngine.Capture capture;
+    /** Lecture en cours */
+    private RecordingEngine.Playback playback;
     /** Index de la ligne sélectionnée dans le tableau */
     private int selectedRow = -1;
     /** Mixeur audio sélectionné pour l'enregistrement */
@@ -114,24 +138,22 @@ public class AudioRecorder extends JFrame {
      * @param userId Identifiant de l'utilisateur connecté
      */
     public AudioRecorder(int userId) {
-    	this.audioFormat = new AudioFormat(44100, 8, 1, true, true);
+    	this.audioFormat = CAPTURE_FORMAT;
         this.userId = userId;
         initializeDatabase();
+        startEngine();
         initializeUI();
         loadUserInfo();
         loadAudioRecordings();
+        startMaintenance();
     }
     
     /**
-     * Initialise la connexion à la base de données SQLite.
+     * Ouvre la base de données SQLite et met son schéma à jour si nécessaire.
      */
     private void initializeDatabase() {
         try {
-            // Chargement du pilote JDBC SQLite
-            Class.forName("org.sqlite.JDBC");
-            
-            // Création d'une connexion à la base de données
-            conn = DriverManager.getConnection("jdbc:sqlite:users.db");
+            db.open();
 
             System.out.println("Base de données initialisée avec succès");
         } catch (Exception e) {
@@ -141,11 +163,20 @@ public class AudioRecorder extends JFrame {
         }
     }
     
+    /**
+     * Démarre l'entretien en arrière-plan : vérification d'intégrité, limitée en débit pour ne pas
+     * gêner l'enregistrement, et enveloppement des clés anciennes. Le tableau est rafraîchi à la
+     * fin de chaque passage de vérification.
+     */
+    private void startMaintenance() {
+        engine.startMaintenance(() -> SwingUtilities.invokeLater(this::loadAudioRecordings));
+    }
+
     /**
      * Charge les informations de l'utilisateur connecté.
      */
     private void loadUserInfo() {
-        try {
+        try (Connection conn = db.getConnection()) {
             PreparedStatement pstmt = conn.prepareStatement("SELECT email FROM users WHERE id = ?");
             pstmt.setInt(1, userId);
             ResultSet rs = pstmt.executeQuery();
@@ -168,7 +199,14 @@ public class AudioRecorder extends JFrame {
      */
     private void initializeUI() {
         setTitle("Enregistreur Audio");
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // Les sauvegardes en attente sont terminées avant de quitter
+        setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                close(() -> System.exit(0));
+            }
+        });
         setBounds(100, 100, 650, 500);
         
         contentPane = new JPanel();
@@ -193,9 +231,10 @@ public class AudioRecorder extends JFrame {
         JButton logoutButton = new JButton("Déconnexion");
         logoutButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                dispose();
-                Connexion connexion = new Connexion();
-                connexion.afficher();
+                close(() -> {
+                    Connexion connexion = new Connexion();
+                    connexion.afficher();
+                });
             }
         });
         headerPanel.add(logoutButton, BorderLayout.EAST);
@@ -205,20 +244,8 @@ public class AudioRecorder extends JFrame {
         // Panneau du tableau
         JPanel tablePanel = new JPanel(new BorderLayout());
         
-        // Création du modèle de tableau avec colonnes
-        tableModel = new DefaultTableModel() {
-            private static final long serialVersionUID = 1L;
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
-        
-        tableModel.addColumn("ID");
-        tableModel.addColumn("Nom");
-        tableModel.addColumn("Horodatage");
-        tableModel.addColumn("Durée (sec)");
-        
+        // Création du modèle de tableau paginé
+        tableModel = new RecordingsTableModel(db, userId);
         
         // Création du tableau
         table = new JTable(tableModel);
@@ -226,6 +253,9 @@ public class AudioRecorder extends JFrame {
         table.getColumnModel().getColumn(1).setPreferredWidth(150);
         table.getColumnModel().getColumn(2).setPreferredWidth(120);
         table.getColumnModel().getColumn(3).setPreferredWidth(100);
+        table.getColumnModel().getColumn(4).setPreferredWidth(80);
+        table.getColumnModel().getColumn(RecordingsTableModel.WAVEFORM_COLUMN).setPreferredWidth(120);
+        table.getColumnModel().getColumn(RecordingsTableModel.WAVEFORM_COLUMN).setCellRenderer(new WaveformView());
         
         table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         table.addMouseListener(new MouseAdapter() {
@@ -234,11 +264,17 @@ public class AudioRecorder extends JFrame {
                 selectedRow = table.getSelectedRow();
                 btnPlay.setEnabled(selectedRow != -1);
                 btnDelete.setEnabled(selectedRow != -1);
+                showWaveform(selectedRow != -1 ? tableModel.getRecordingId(selectedRow) : -1);
             }
         });
         
         JScrollPane scrollPane = new JScrollPane(table);
         tablePanel.add(scrollPane, BorderLayout.CENTER);
+        
+        // Aperçu de la forme d'onde de l'enregistrement sélectionné
+        waveformView = new WaveformView();
+        waveformView.setPreferredSize(new Dimension(0, 60));
+        tablePanel.add(waveformView, BorderLayout.SOUTH);
         contentPane.add(tablePanel, BorderLayout.CENTER);
         
         // Panneau de contrôle
@@ -294,117 +330,166 @@ public class AudioRecorder extends JFrame {
             }
         });
         
+        JButton btnSilence = new JButton("Silences...");
+        btnSilence.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                editVadSettings();
+            }
+        });
+        
         buttonPanel.add(btnRecord);
         buttonPanel.add(btnStop);
         buttonPanel.add(btnPlay);
         buttonPanel.add(btnDelete);
+        buttonPanel.add(btnSilence);
         
         controlPanel.add(buttonPanel, BorderLayout.CENTER);
         
+        // Curseur de position : déplacé pendant la lecture, il fait sauter à la position choisie
+        JPanel seekPanel = new JPanel(new BorderLayout(10, 0));
+        seekSlider = new JSlider(0, 0, 0);
+        seekSlider.setEnabled(false);
+        seekSlider.addChangeListener(e -> {
+            if (!updatingSlider && isPlaying && playback != null) {
+                playback.seek((long) seekSlider.getValue() * (long) audioFormat.getSampleRate() / 1000);
+                positionLabel.setText(formatPosition(seekSlider.getValue(), seekSlider.getMaximum()));
+            }
+        });
+        positionLabel = new JLabel(formatPosition(0, 0));
+        seekPanel.add(seekSlider, BorderLayout.CENTER);
+        seekPanel.add(positionLabel, BorderLayout.EAST);
+        seekPanel.setBorder(new EmptyBorder(0, 0, 10, 0));
+        controlPanel.add(seekPanel, BorderLayout.NORTH);
+        
         // Étiquette d'état
         statusLabel = new JLabel("Prêt");
         statusLabel.setHorizontalAlignment(SwingConstants.CENTER);
         statusLabel.setBorder(new EmptyBorder(10, 0, 0, 0));
         
-        controlPanel.add(statusLabel, BorderLayout.SOUTH);
+        // Progression des sauvegardes en arrière-plan
+        saveProgress = new JProgressBar(0, 100);
+        saveProgress.setStringPainted(true);
+        btnCancelSave = new JButton("Annuler");
+        btnCancelSave.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                cancelSave();
+            }
+        });
+        JPanel savePanel = new JPanel(new BorderLayout(10, 0));
+        savePanel.add(saveProgress, BorderLayout.CENTER);
+        savePanel.add(btnCancelSave, BorderLayout.EAST);
+        
+        JPanel statusPanel = new JPanel(new BorderLayout());
+        statusPanel.add(statusLabel, BorderLayout.NORTH);
+        statusPanel.add(savePanel, BorderLayout.SOUTH);
+        controlPanel.add(statusPanel, BorderLayout.SOUTH);
+        updateSaveProgress();
         contentPane.add(controlPanel, BorderLayout.SOUTH);
     }
     
     /**
-     * Charge tous les enregistrements audio depuis la base de données et les affiche dans le tableau.
-     * Pour chaque enregistrement, déchiffre les données audio et vérifie leur intégrité.
+     * Affiche la forme d'onde d'un enregistrement à partir de son index de crêtes, lu hors de l'EDT.
+     * 
+     * @param recordingId Identifiant de l'enregistrement, -1 pour effacer l'aperçu
      */
-    private void loadAudioRecordings() {
-        try {
-            // Effacement du tableau
-            tableModel.setRowCount(0);
-            
-            
-            
-
-            // Interrogation de la base de données pour tous les enregistrements
-            PreparedStatement pstmt = conn.prepareStatement(
-                    "SELECT id, name, timestamp, duration, audio, encryption_key, audio_hash " +
-                    "FROM recordings WHERE user_id = ? ORDER BY timestamp DESC");
-            String sql = "SELECT id, name, timestamp, duration, audio, encryption_key, audio_hash FROM recordings WHERE user_id = ? ORDER BY timestamp DESC";
-            pstmt.setInt(1, userId); // Use the userId from the current instance
-            ResultSet rs = pstmt.executeQuery();
-            
-
-            // Ajout de chaque enregistrement au tableau
-            while (rs.next()) {
-                Object[] row = new Object[4];
-                row[0] = rs.getInt("id");
-                row[1] = rs.getString("name");
-                row[2] = rs.getString("timestamp");
-                row[3] = rs.getInt("duration");
-
-                // Récupération des données audio chiffrées, de la clé de chiffrement et du hash stocké
-                byte[] encryptedAudioData = rs.getBytes("audio");
-                String keyBase64 = rs.getString("encryption_key");
-                String storedHash = rs.getString("audio_hash");
-
-                // Décodage de la clé de chiffrement et déchiffrement des données audio
-                SecretKey secretKey = AES.decodeKeyFromBase64(keyBase64);
-                byte[] decryptedAudioData = AES.decrypt(encryptedAudioData, secretKey);
-
-                // Recalcul du hash SHA-256 des données audio déchiffrées
-                String computedHash = computeSHA256Hash(decryptedAudioData);
+    private void showWaveform(final int recordingId) {
+        waveformView.setIndex(null);
+        if (recordingId == -1) return;
+        new SwingWorker<PeakIndex, Void>() {
+            @Override
+            protected PeakIndex doInBackground() throws SQLException {
+                return engine.loadPeaks(recordingId);
+            }
 
-                // Vérification si le hash calculé correspond au hash stocké
-                if (computedHash.equals(storedHash)) {
-                    System.out.println("Intégrité audio vérifiée");
-                } else {
-                    System.out.println("Échec de la vérification d'intégrité audio");
+            @Override
+            protected void done() {
+                // Ignoré si la sélection a changé entre-temps
+                if (selectedRow == -1 || tableModel.getRecordingId(selectedRow) != recordingId) return;
+                try {
+                    waveformView.setIndex(get());
+                } catch (Exception e) {
+                    e.printStackTrace();
                 }
-
-                // Taille des données audio déchiffrées (pour information)
-                System.out.println("Taille des données audio déchiffrées: " + decryptedAudioData.length);
-
-                tableModel.addRow(row);
             }
-
-            rs.close();
-            pstmt.close();
-        } catch (Exception e) {
+        }.execute();
+    }
+    
+    /**
+     * Charge les réglages de retrait des silences de l'utilisateur.
+     * 
+     * @return Ses réglages, ou les réglages par défaut si la base est inaccessible
+     */
+    private VadSettings loadVadSettings() {
+        try {
+            return engine.loadVadSettings(userId);
+        } catch (SQLException e) {
             e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Échec du chargement des enregistrements: " + e.getMessage(),
+            return VadSettings.DEFAULTS;
+        }
+    }
+    
+    /**
+     * Affiche et enregistre les réglages de retrait des silences de l'utilisateur.
+     * Ils s'appliquent à partir de l'enregistrement suivant.
+     */
+    private void editVadSettings() {
+        VadSettings current = loadVadSettings();
+        JCheckBox enabled = new JCheckBox("Retirer les silences de début et de fin", current.isEnabled());
+        JSpinner threshold = new JSpinner(new SpinnerNumberModel(current.getThresholdDb(), -70.0, -10.0, 1.0));
+        JSpinner maxPause = new JSpinner(new SpinnerNumberModel(current.getMaxPauseMs() / 1000.0, 0.0, 60.0, 0.5));
+        
+        JPanel panel = new JPanel(new GridLayout(3, 2, 10, 5));
+        panel.add(enabled);
+        panel.add(new JLabel(""));
+        panel.add(new JLabel("Seuil de parole (dB)"));
+        panel.add(threshold);
+        panel.add(new JLabel("Pause maximale en s (0 : conservées)"));
+        panel.add(maxPause);
+        
+        int choice = JOptionPane.showConfirmDialog(this, panel, "Silences", JOptionPane.OK_CANCEL_OPTION);
+        if (choice != JOptionPane.OK_OPTION) return;
+        
+        VadSettings settings = new VadSettings(enabled.isSelected(),
+                ((Number) threshold.getValue()).doubleValue(),
+                (int) Math.round(((Number) maxPause.getValue()).doubleValue() * 1000));
+        try {
+            engine.saveVadSettings(userId, settings);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Échec de l'enregistrement des réglages: " + e.getMessage(),
                                           "Erreur de base de données", JOptionPane.ERROR_MESSAGE);
         }
     }
     
+    /**
+     * Recharge la liste des enregistrements de l'utilisateur.
+     * Le modèle ne lit que les métadonnées, page par page et hors de l'EDT :
+     * le déchiffrement et la vérification d'intégrité sont reportés à la lecture.
+     */
+    private void loadAudioRecordings() {
+        selectedRow = -1;
+        tableModel.reload();
+    }
+    
     /**
      * Démarre l'enregistrement audio.
-     * Configure le format audio, ouvre la ligne audio et commence à capturer les données
+     * Ouvre le micro et confie la capture à l'engine, qui chiffre, hache et indexe le son
      * dans un thread séparé.
      */
     private void startRecording() {
+        // La file des sauvegardes est bornée : attendre qu'une sauvegarde se termine
+        if (engine.isSaveQueueFull()) {
+            statusLabel.setText("Sauvegardes en attente, veuillez patienter...");
+            return;
+        }
         try {
-            // Configuration du format audio - optimisé pour la compatibilité macOS
-            // Utilisation de stéréo (2 canaux) et big-endian (true) pour une meilleure compatibilité Mac
-            audioFormat = new AudioFormat(44100, 8, 1, true, true);
-            DataLine.Info info = new DataLine.Info(TargetDataLine.class, audioFormat);
-            
-            // Vérification si le système prend en charge le format audio
-            if (!AudioSystem.isLineSupported(info)) {
-                JOptionPane.showMessageDialog(this, "Format audio non pris en charge par ce système", 
-                                            "Erreur d'enregistrement", JOptionPane.ERROR_MESSAGE);
-                return;
-            }
-            
-            // Obtention de la ligne audio - utilisation du mixeur sélectionné si disponible
-            if (selectedMixer != null) {
-                Mixer mixer = AudioSystem.getMixer(selectedMixer);
-                audioLine = (TargetDataLine) mixer.getLine(info);
-            } else {
-                audioLine = (TargetDataLine) AudioSystem.getLine(info);
-            }
-            
-            audioLine.open(audioFormat);
-            audioLine.start();
-            
-            // Création d'un flux pour stocker les données capturées
-            outputStream = new ByteArrayOutputStream();
+            audioFormat = CAPTURE_FORMAT;
+            capture = engine.record(userId, RecordingEngine.openMicrophone(selectedMixer, audioFormat), e ->
+                SwingUtilities.invokeLater(() -> {
+                    JOptionPane.showMessageDialog(AudioRecorder.this, 
+                                                 "Erreur pendant l'enregistrement: " + e.getMessage(), 
+                                                 "Erreur d'enregistrement", JOptionPane.ERROR_MESSAGE);
+                }));
             isRecording = true;
             
             // Mise à jour de l'interface utilisateur
@@ -413,34 +498,10 @@ public class AudioRecorder extends JFrame {
             btnStop.setEnabled(true);
             btnPlay.setEnabled(false);
             btnDelete.setEnabled(false);
-            
-            // Démarrage du thread d'enregistrement
-            recordingThread = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        int bufferSize = (int) audioFormat.getSampleRate() * audioFormat.getFrameSize();
-                        byte[] buffer = new byte[bufferSize];
-                        int bytesRead;
-                        
-                        while (isRecording) {
-                            bytesRead = audioLine.read(buffer, 0, buffer.length);
-                            if (bytesRead > 0) {
-                                outputStream.write(buffer, 0, bytesRead);
-                            }
-                        }
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        SwingUtilities.invokeLater(() -> {
-                            JOptionPane.showMessageDialog(AudioRecorder.this, 
-                                                         "Erreur pendant l'enregistrement: " + e.getMessage(), 
-                                                         "Erreur d'enregistrement", JOptionPane.ERROR_MESSAGE);
-                        });
-                    }
-                }
-            });
-            
-            recordingThread.start();
+        } catch (AES.AESException | IOException | SQLException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Impossible de préparer le chiffrement: " + e.getMessage(),
+                "Erreur d'enregistrement", JOptionPane.ERROR_MESSAGE);
         } catch (LineUnavailableException e) {
             e.printStackTrace();
             JOptionPane.showMessageDialog(this, 
@@ -452,50 +513,50 @@ public class AudioRecorder extends JFrame {
     
     /**
      * Arrête l'enregistrement audio en cours.
-     * Ferme la ligne audio, attend la fin du thread d'enregistrement,
-     * demande un nom pour l'enregistrement et le sauvegarde dans la base de données.
+     * Ferme le micro, attend la fin de la capture, demande un nom pour l'enregistrement et
+     * confie sa sauvegarde à l'engine : l'interface reste disponible et un nouvel
+     * enregistrement peut commencer aussitôt.
      */
     private void stopRecording() {
-        if (isRecording && audioLine != null) {
+        if (isRecording && capture != null) {
             // Arrêt de l'enregistrement
             isRecording = false;
-            audioLine.stop();
-            audioLine.close();
-            
+            RecordingEngine.Capture recorded = capture;
+            capture = null;
+            boolean submitted = false;
             try {
-                // Attente de la fin du thread d'enregistrement
-                recordingThread.join();
+                // Attente de la fin de la capture (le micro fermé, la lecture s'arrête aussitôt)
+                recorded.stop();
                 
-                // Récupération des données audio enregistrées
-                byte[] audioData = outputStream.toByteArray();
+                // Génération d'un nom pour l'enregistrement
+                String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+                String name = "Enregistrement " + timestamp;
                 
-                // Si nous avons des données enregistrées, les sauvegarder
-                if (audioData.length > 0) {
-                    // Calcul de la durée
-                    float durationInSeconds = audioData.length / (audioFormat.getSampleRate() * audioFormat.getFrameSize());
-                    
-                    // Génération d'un nom pour l'enregistrement
-                    String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-                    String name = "Enregistrement " + timestamp;
-                    
-                    // Demande à l'utilisateur de confirmer ou de modifier le nom
-                    name = JOptionPane.showInputDialog(this, "Entrez un nom pour cet enregistrement:", name);
-                    
-                    if (name != null && !name.trim().isEmpty()) {
-                        // Sauvegarde de l'enregistrement dans la base de données
-                        saveRecordingToDatabase(name, timestamp, (int) durationInSeconds, audioData);
-                        
-                        // Rechargement de la liste des enregistrements
-                        loadAudioRecordings();
-                    }
+                // Demande à l'utilisateur de confirmer ou de modifier le nom
+                name = JOptionPane.showInputDialog(this, "Entrez un nom pour cet enregistrement:", name);
+                
+                if (name != null && !name.trim().isEmpty()) {
+                    // Sauvegarde en arrière-plan : fin du chiffrement, copie dans la base et export WAV
+                    submitted = true;
+                    SaveService.Job job = recorded.save(name, timestamp);
+                    pendingSaves.add(job);
+                    updateSaveProgress();
                 }
             } catch (InterruptedException e) {
-                e.printStackTrace();
+                Thread.currentThread().interrupt();
+            } catch (RejectedExecutionException e) {
+                JOptionPane.showMessageDialog(this, "Trop de sauvegardes en attente, l'enregistrement n'a pas été sauvegardé.",
+                                              "Erreur d'enregistrement", JOptionPane.ERROR_MESSAGE);
+            } finally {
+                // Sans sauvegarde, effacement des données conservées et du segment temporaire
+                if (!submitted) {
+                    recorded.discard();
+                }
             }
             
             // Mise à jour de l'interface utilisateur
-            statusLabel.setText("Prêt");
-            btnRecord.setEnabled(true);
+            statusLabel.setText(pendingSaves.isEmpty() ? "Prêt" : "Sauvegarde en cours...");
+            btnRecord.setEnabled(!engine.isSaveQueueFull());
             btnStop.setEnabled(false);
             btnPlay.setEnabled(selectedRow != -1);
             btnDelete.setEnabled(selectedRow != -1);
@@ -503,165 +564,208 @@ public class AudioRecorder extends JFrame {
     }
     
     /**
-     * Sauvegarde un enregistrement audio dans la base de données.
-     * Les données audio sont chiffrées avec AES et un hash SHA-256 est calculé pour garantir l'intégrité.
-     * 
-     * @param name Nom de l'enregistrement
-     * @param timestamp Horodatage de l'enregistrement
-     * @param duration Durée de l'enregistrement en secondes
-     * @param audioData Données audio à sauvegarder
+     * Crée l'engine et son suivi des sauvegardes, qui s'exécute sur le thread de sauvegarde :
+     * l'interface est mise à jour sur l'EDT.
      */
-    private void saveRecordingToDatabase(String name, String timestamp, int duration, byte[] audioData) {
-        try {
-            // Génération d'une clé secrète AES
-            SecretKey secretKey = AES.generateSecretKey();
-
-            // Chiffrement des données audio
-            byte[] encryptedAudioData = AES.encrypt(audioData, secretKey);
-
-            // Calcul du hash SHA-256 des données audio
-            String audioHash = computeSHA256Hash(audioData);
-
-            // Sauvegarde des données audio chiffrées, de la clé de chiffrement et du hash dans la base de données
-            String sql = "INSERT INTO recordings (name, timestamp, duration, audio, encryption_key, audio_hash, user_id) VALUES (?, ?, ?, ?, ?, ?, ?)";
-            PreparedStatement pstmt = conn.prepareStatement(sql);
-            pstmt.setString(1, name);
-            pstmt.setString(2, timestamp);
-            pstmt.setInt(3, duration);
-            pstmt.setBytes(4, encryptedAudioData);
-            pstmt.setString(5, AES.encodeKeyToBase64(secretKey)); // Stockage de la clé de chiffrement en tant que chaîne Base64
-            pstmt.setString(6, audioHash); // Stockage du hash
-          pstmt.setInt(7, userId);  // Ensure you pass the correct logged-in user's ID
-            pstmt.executeUpdate();
-            pstmt.close();
-            
-            statusLabel.setText("Enregistrement sauvegardé avec succès");
-
-            // Auto-sauvegarde de l'enregistrement dans un fichier WAV
-            autoSaveRecordingToFile(name, timestamp, audioData);
+    private void startEngine() {
+        engine = new RecordingEngine(db, audioFormat, Paths.get(AUTOSAVE_DIR), new SaveService.Listener() {
+            @Override
+            public void progress(SaveService.Job job, long done, long total) {
+                SwingUtilities.invokeLater(() -> {
+                    if (!pendingSaves.isEmpty() && pendingSaves.get(0) == job) {
+                        saveProgress.setValue(total == 0 ? 100 : (int) (done * 100 / total));
+                    }
+                });
+            }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Échec de la sauvegarde de l'enregistrement: " + e.getMessage(), 
-                                          "Erreur de base de données", JOptionPane.ERROR_MESSAGE);
+            @Override
+            public void finished(SaveService.Job job) {
+                SwingUtilities.invokeLater(() -> saveFinished(job));
+            }
+        });
+    }
+    
+    /**
+     * Fin d'une sauvegarde, sur l'EDT : ajout de la ligne au tableau ou message d'erreur.
+     * 
+     * @param job La sauvegarde terminée
+     */
+    private void saveFinished(SaveService.Job job) {
+        pendingSaves.remove(job);
+        switch (job.getState()) {
+            case SAVED:
+                tableModel.recordingAdded(job.getRecordingId(), job.getName(), job.getTimestamp(),
+                                          job.getDuration(), job.getSize(), job.getOverview());
+                // La ligne sélectionnée a été décalée par l'ajout en tête
+                selectedRow = table.getSelectedRow();
+                statusLabel.setText("Enregistrement sauvegardé avec succès");
+                break;
+            case EMPTY:
+                statusLabel.setText("Enregistrement vide : rien à sauvegarder");
+                break;
+            case CANCELLED:
+                statusLabel.setText("Sauvegarde annulée");
+                break;
+            default:
+                statusLabel.setText("Échec de la sauvegarde");
+                JOptionPane.showMessageDialog(this, "Échec de la sauvegarde de l'enregistrement: " + job.getError().getMessage(),
+                                              "Erreur de base de données", JOptionPane.ERROR_MESSAGE);
+                break;
+        }
+        if (!isRecording && !isPlaying) {
+            btnRecord.setEnabled(true);
+        }
+        updateSaveProgress();
+    }
+    
+    /**
+     * Affiche la progression de la sauvegarde la plus ancienne en cours, ou masque la barre.
+     */
+    private void updateSaveProgress() {
+        boolean saving = !pendingSaves.isEmpty();
+        saveProgress.setVisible(saving);
+        btnCancelSave.setVisible(saving);
+        if (saving) {
+            saveProgress.setValue(0);
+            saveProgress.setString("Sauvegarde de « " + pendingSaves.get(0).getName() + " »"
+                                   + (pendingSaves.size() > 1 ? " (+" + (pendingSaves.size() - 1) + ")" : ""));
+        }
+    }
+    
+    /**
+     * Annule la sauvegarde la plus ancienne en cours, après confirmation.
+     */
+    private void cancelSave() {
+        if (pendingSaves.isEmpty()) return;
+        SaveService.Job job = pendingSaves.get(0);
+        int confirm = JOptionPane.showConfirmDialog(this,
+                "Annuler la sauvegarde de « " + job.getName() + " » ? L'enregistrement sera perdu.",
+                "Annuler la sauvegarde", JOptionPane.YES_NO_OPTION);
+        if (confirm == JOptionPane.YES_OPTION) {
+            job.cancel();
         }
     }
     
     /**
      * Lit l'enregistrement audio sélectionné dans le tableau.
-     * Récupère les données audio chiffrées, les déchiffre et les lit dans un thread séparé.
-     * 
-     * @throws Exception En cas d'erreur lors de la lecture
+     * L'engine déchiffre les données bloc par bloc pendant la lecture : le son démarre dès le
+     * premier bloc et la mémoire utilisée ne dépend pas de la durée. Le hash SHA-256 est
+     * calculé au fil de la lecture et vérifié à la fin.
      */
-    private void playRecording() throws Exception {
+    private void playRecording() {
         if (selectedRow == -1) return;
         
         // Récupération de l'ID de l'enregistrement depuis le tableau
-        int recordingId = (int) tableModel.getValueAt(selectedRow, 0);
+        int recordingId = tableModel.getRecordingId(selectedRow);
+        if (recordingId == -1) return;
         
         try {
-            // Récupération des données audio et de la clé de chiffrement depuis la base de données
-            String sql = "SELECT audio, encryption_key FROM recordings WHERE id = ?";
-            PreparedStatement pstmt = conn.prepareStatement(sql);
-            pstmt.setInt(1, recordingId);
-            ResultSet rs = pstmt.executeQuery();
-            
-            if (rs.next()) {
-                // Récupération des données audio chiffrées et de la clé de chiffrement
-                byte[] encryptedAudioData = rs.getBytes("audio");
-                String keyBase64 = rs.getString("encryption_key");
-                
-                // Déchiffrement des données audio
-                SecretKey secretKey = AES.decodeKeyFromBase64(keyBase64);
-                final byte[] audioData = AES.decrypt(encryptedAudioData, secretKey);
-                
-                // Mise à jour de l'interface utilisateur
-                isPlaying = true;
-                statusLabel.setText("Lecture en cours...");
-                btnRecord.setEnabled(false);
-                btnStop.setEnabled(true);
-                btnPlay.setEnabled(false);
-                btnDelete.setEnabled(false);
-                
-                // Démarrage du thread de lecture
-                playingThread = new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            // Utilisation du même format audio que lors de l'enregistrement pour la cohérence
-                            AudioFormat format = audioFormat;
-                            
-                            // Création d'un flux d'entrée audio à partir des données audio déchiffrées
-                            AudioInputStream audioStream = new AudioInputStream(
-                                new ByteArrayInputStream(audioData),
-                                format,
-                                audioData.length / format.getFrameSize()
-                            );
-                            
-                            // Pour la compatibilité macOS, utilisation directe de DataLine plutôt que Clip
-                            DataLine.Info dataLineInfo = new DataLine.Info(
-                                SourceDataLine.class, format);
-                            
-                            final SourceDataLine dataLine = (SourceDataLine) AudioSystem.getLine(dataLineInfo);
-                            dataLine.open(format);
-                            dataLine.start();
-                            
-                            int bufferSize = (int) format.getSampleRate() * format.getFrameSize();
-                            byte[] buffer = new byte[bufferSize];
-                            int bytesRead = 0;
-                            
-                            // Lecture de l'audio
-                            while ((bytesRead = audioStream.read(buffer, 0, buffer.length)) != -1 && isPlaying) {
-                                dataLine.write(buffer, 0, bytesRead);
-                            }
-                            
-                            // Nettoyage
-                            dataLine.drain();
-                            dataLine.stop();
-                            dataLine.close();
-                            audioStream.close();
-                            
-                            SwingUtilities.invokeLater(() -> {
-                                isPlaying = false;
-                                statusLabel.setText("Prêt");
-                                btnRecord.setEnabled(true);
-                                btnStop.setEnabled(false);
-                                btnPlay.setEnabled(selectedRow != -1);
-                                btnDelete.setEnabled(selectedRow != -1);
-                            });
-                            
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                            SwingUtilities.invokeLater(() -> {
-                                isPlaying = false;
-                                statusLabel.setText("Erreur de lecture");
-                                btnRecord.setEnabled(true);
-                                btnStop.setEnabled(false);
-                                btnPlay.setEnabled(selectedRow != -1);
-                                btnDelete.setEnabled(selectedRow != -1);
-                                
-                                JOptionPane.showMessageDialog(AudioRecorder.this, 
-                                    "Erreur pendant la lecture: " + e.getMessage() + 
-                                    "\nEssayez de redémarrer l'application ou de sélectionner un autre périphérique audio.", 
-                                    "Erreur de lecture", JOptionPane.ERROR_MESSAGE);
-                            });
-                        }
-                    }
-                });
-                
-                playingThread.start();
-            }
-            
-            rs.close();
-            pstmt.close();
-            
-        } catch (SQLException e) {
+            playback = engine.play(recordingId, RecordingEngine.openSpeaker(audioFormat),
+                                   new RecordingEngine.PlaybackListener() {
+                @Override
+                public void started(long totalFrames) {
+                    updateSeekSlider(0, totalFrames, true);
+                }
+
+                @Override
+                public void position(long frame, long totalFrames) {
+                    updateSeekSlider(frame, totalFrames, false);
+                }
+
+                @Override
+                public void finished(RecordingEngine.Outcome outcome, Exception error) {
+                    SwingUtilities.invokeLater(() -> playbackFinished(outcome, error));
+                }
+            });
+        } catch (SQLException | IllegalArgumentException e) {
             e.printStackTrace();
             JOptionPane.showMessageDialog(this, "Échec de la récupération de l'enregistrement: " + e.getMessage(), 
                                          "Erreur de base de données", JOptionPane.ERROR_MESSAGE);
+            return;
+        } catch (LineUnavailableException e) {
+            playbackFinished(RecordingEngine.Outcome.FAILED, e);
+            return;
+        }
+        
+        // Mise à jour de l'interface utilisateur
+        isPlaying = true;
+        statusLabel.setText("Lecture en cours...");
+        btnRecord.setEnabled(false);
+        btnStop.setEnabled(true);
+        btnPlay.setEnabled(false);
+        btnDelete.setEnabled(false);
+    }
+    
+    /**
+     * Fin d'une lecture, sur l'EDT : état des boutons et message en cas d'échec.
+     * 
+     * @param outcome Issue de la lecture
+     * @param error Erreur d'une lecture échouée
+     */
+    private void playbackFinished(RecordingEngine.Outcome outcome, Exception error) {
+        isPlaying = false;
+        playback = null;
+        seekSlider.setEnabled(false);
+        btnRecord.setEnabled(true);
+        btnStop.setEnabled(false);
+        btnPlay.setEnabled(selectedRow != -1);
+        btnDelete.setEnabled(selectedRow != -1);
+        switch (outcome) {
+            case CORRUPT:
+                statusLabel.setText("Échec de la vérification d'intégrité");
+                JOptionPane.showMessageDialog(this,
+                    "L'intégrité de cet enregistrement n'a pas pu être vérifiée.",
+                    "Erreur d'intégrité", JOptionPane.ERROR_MESSAGE);
+                break;
+            case FAILED:
+                statusLabel.setText("Erreur de lecture");
+                JOptionPane.showMessageDialog(this, 
+                    "Erreur pendant la lecture: " + error.getMessage() + 
+                    "\nEssayez de redémarrer l'application ou de sélectionner un autre périphérique audio.", 
+                    "Erreur de lecture", JOptionPane.ERROR_MESSAGE);
+                break;
+            default:
+                statusLabel.setText("Prêt");
+                break;
         }
     }
     
+    /**
+     * Reporte la position de lecture sur le curseur, au plus une fois par dixième de seconde
+     * de lecture, sans déclencher de recherche.
+     * 
+     * @param frame Trame en cours de lecture
+     * @param totalFrames Nombre total de trames
+     * @param enable Active le curseur (début de lecture)
+     */
+    private void updateSeekSlider(long frame, long totalFrames, boolean enable) {
+        final int sampleRate = (int) audioFormat.getSampleRate();
+        final int value = (int) (frame * 1000 / sampleRate);
+        final int maximum = (int) (Math.max(totalFrames, frame) * 1000 / sampleRate);
+        SwingUtilities.invokeLater(() -> {
+            // Le curseur tenu par l'utilisateur n'est pas déplacé sous sa souris
+            if (!enable && seekSlider.getValueIsAdjusting()) return;
+            updatingSlider = true;
+            seekSlider.setMaximum(maximum);
+            seekSlider.setValue(value);
+            if (enable) {
+                seekSlider.setEnabled(true);
+            }
+            updatingSlider = false;
+            positionLabel.setText(formatPosition(value, maximum));
+        });
+    }
+    
+    /**
+     * @param position Position en millisecondes
+     * @param duration Durée en millisecondes
+     * @return La position et la durée au format m:ss / m:ss
+     */
+    private static String formatPosition(int position, int duration) {
+        return String.format("%d:%02d / %d:%02d", position / 60000, position / 1000 % 60,
+                             duration / 60000, duration / 1000 % 60);
+    }
+    
     /**
      * Arrête la lecture audio en cours.
      * Met à jour l'interface utilisateur pour refléter l'arrêt de la lecture.
@@ -669,9 +773,13 @@ public class AudioRecorder extends JFrame {
     private void stopPlaying() {
         if (isPlaying) {
             isPlaying = false;
+            if (playback != null) {
+                playback.stop();
+            }
             
             // Mise à jour de l'interface utilisateur (au cas où l'écouteur de ligne ne se déclenche pas)
             SwingUtilities.invokeLater(() -> {
+                seekSlider.setEnabled(false);
                 statusLabel.setText("Prêt");
                 btnRecord.setEnabled(true);
                 btnStop.setEnabled(false);
@@ -689,8 +797,9 @@ public class AudioRecorder extends JFrame {
         if (selectedRow == -1) return;
         
         // Récupération de l'ID et du nom de l'enregistrement depuis le tableau
-        int recordingId = (int) tableModel.getValueAt(selectedRow, 0);
-        String recordingName = (String) tableModel.getValueAt(selectedRow, 1);
+        int recordingId = tableModel.getRecordingId(selectedRow);
+        if (recordingId == -1) return;
+        String recordingName = tableModel.getRecordingName(selectedRow);
         
         // Demande de confirmation
         int confirm = JOptionPane.showConfirmDialog(this, 
@@ -699,20 +808,16 @@ public class AudioRecorder extends JFrame {
         
         if (confirm == JOptionPane.YES_OPTION) {
             try {
-                // Suppression de l'enregistrement de la base de données
-                String sql = "DELETE FROM recordings WHERE id = ?";
-                PreparedStatement pstmt = conn.prepareStatement(sql);
-                pstmt.setInt(1, recordingId);
-                pstmt.executeUpdate();
-                pstmt.close();
+                // Les données audio partagées avec d'autres enregistrements ne sont que déréférencées
+                engine.delete(recordingId);
                 
-                // Suppression de la ligne du tableau
-                tableModel.removeRow(selectedRow);
+                // Rechargement de la liste paginée
+                loadAudioRecordings();
                 
                 // Mise à jour de l'interface utilisateur
-                selectedRow = -1;
                 btnPlay.setEnabled(false);
                 btnDelete.setEnabled(false);
+                waveformView.setIndex(null);
                 statusLabel.setText("Enregistrement supprimé");
                 
             } catch (SQLException e) {
@@ -723,76 +828,23 @@ public class AudioRecorder extends JFrame {
         }
     }
     /**
-     * Permet l'auto-sauvegarde des enregistrements dans un dossier.
-     * À appeler après la sauvegarde en base de données.
-     *
-     * @param name Nom de l'enregistrement
-     * @param timestamp Horodatage
-     * @param audioData Données audio
+     * Libère les ressources lors de la fermeture de l'application, sans bloquer l'EDT.
      */
-    private void autoSaveRecordingToFile(String name, String timestamp, byte[] audioData) {
-        try {
-            // Création du dossier d'enregistrements s'il n'existe pas
-            File recordingsDir = new File("recordings");
-            if (!recordingsDir.exists()) {
-                recordingsDir.mkdir();
-            }
-
-            // Création d'un nom de fichier valide
-            String fileName = name.replaceAll("[^a-zA-Z0-9.-]", "_") + ".wav";
-            File outputFile = new File(recordingsDir, fileName);
-
-            // Configuration du format audio
-            AudioFormat format = new AudioFormat(44100, 16, 1, true, false);
-
-            // Création d'un flux d'entrée audio à partir des données
-            AudioInputStream audioStream = new AudioInputStream(
-                new ByteArrayInputStream(audioData),
-                format,
-                audioData.length / format.getFrameSize()
-            );
-
-            // Écriture des données audio dans un fichier WAV
-            AudioSystem.write(audioStream, AudioFileFormat.Type.WAVE, outputFile);
-
-            System.out.println("Enregistrement auto-sauvegardé: " + outputFile.getAbsolutePath());
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.err.println("Échec de l'auto-sauvegarde de l'enregistrement: " + e.getMessage());
-        }
-    }
-
-    /**
-     * Calcule le hash SHA-256 des données fournies.
-     * 
-     * @param data Les données dont on veut calculer le hash
-     * @return Une chaîne hexadécimale représentant le hash SHA-256, ou null en cas d'erreur
-     */
-    private String computeSHA256Hash(byte[] data) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hashBytes = digest.digest(data);
-
-            // Conversion des bytes du hash en chaîne hexadécimale
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hashBytes) {
-                hexString.append(String.format("%02x", b));
-            }
-
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-            return null;
-        }
+    @Override
+    public void dispose() {
+        close(null);
     }
 
     /**
-     * Libère les ressources lors de la fermeture de l'application.
+     * Ferme la fenêtre : arrête l'enregistrement et la lecture, puis attend les sauvegardes en
+     * attente dans un autre thread. Une fenêtre de progression permet de les abandonner ; la
+     * fenêtre principale est libérée sur l'EDT une fois l'engine arrêté ou l'abandon confirmé.
+     *
+     * @param then Action exécutée sur l'EDT après la libération de la fenêtre, ou null
      */
-    @Override
-    public void dispose() {
-        // Nettoyage des ressources lorsque l'application est fermée
+    private void close(Runnable then) {
+        if (closing) return;
+        closing = true;
         try {
             if (isRecording) {
                 stopRecording();
@@ -802,14 +854,71 @@ public class AudioRecorder extends JFrame {
                 stopPlaying();
             }
 
-            if (conn != null) {
-                conn.close();
+            if (tableModel != null) {
+                tableModel.close();
             }
-        } catch (SQLException e) {
+        } catch (Exception e) {
             e.printStackTrace();
         }
+        if (engine == null) {
+            finishClose(then);
+            return;
+        }
 
+        JDialog progress = new JDialog(this, "Fermeture", false);
+        progress.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+        JPanel panel = new JPanel(new BorderLayout(10, 10));
+        panel.setBorder(new EmptyBorder(10, 10, 10, 10));
+        panel.add(new JLabel("Fin des sauvegardes en cours..."), BorderLayout.NORTH);
+        JProgressBar bar = new JProgressBar();
+        bar.setIndeterminate(true);
+        panel.add(bar, BorderLayout.CENTER);
+        JButton abandon = new JButton("Fermer sans attendre");
+        abandon.addActionListener(e -> {
+            int confirm = JOptionPane.showConfirmDialog(progress,
+                    "Les sauvegardes en cours seront perdues. Fermer quand même ?",
+                    "Fermeture", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+            if (confirm == JOptionPane.YES_OPTION) {
+                progress.dispose();
+                finishClose(then);
+            }
+        });
+        panel.add(abandon, BorderLayout.SOUTH);
+        progress.setContentPane(panel);
+        progress.pack();
+        progress.setLocationRelativeTo(this);
+        if (!pendingSaves.isEmpty()) {
+            statusLabel.setText("Fermeture : sauvegarde en cours...");
+            progress.setVisible(true);
+        }
+        setEnabled(false);
+
+        // Les sauvegardes en attente sont menées à terme avant la fermeture
+        Thread shutdown = new Thread(() -> {
+            try {
+                if (!engine.close(SAVE_SHUTDOWN_TIMEOUT)) {
+                    System.err.println("Des sauvegardes n'ont pas pu être terminées avant la fermeture");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            SwingUtilities.invokeLater(() -> {
+                progress.dispose();
+                finishClose(then);
+            });
+        }, "recorder-shutdown");
+        shutdown.start();
+    }
+
+    /**
+     * Libère la fenêtre une seule fois, à la fin des sauvegardes ou à leur abandon.
+     */
+    private void finishClose(Runnable then) {
+        if (closed) return;
+        closed = true;
         super.dispose();
-    
+        if (then != null) {
+            then.run();
+        }
+    }
 }
-}
\ No newline at end of file
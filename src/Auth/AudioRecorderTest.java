@@ -2,39 +2,57 @@ package Auth;
 
 import org.junit.Test;
 import static org.junit.Assert.*;
-import java.io.ByteArrayOutputStream;
+
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+
+import javax.crypto.SecretKey;
 
 public class AudioRecorderTest {
-    
+
     @Test
-    public void testDatabaseInitialization() {
-        AudioRecorder recorder = new AudioRecorder();
-        assertTrue("La base de données devrait être initialisée", new File("mac1.db").exists());
+    public void testDatabaseInitialization() throws Exception {
+        Path dir = Files.createTempDirectory("recorder");
+        File file = dir.resolve("users.db").toFile();
+        Database db = new Database("jdbc:sqlite:" + file, 1);
+        try (Connection conn = db.getConnection();
+             ResultSet rs = conn.getMetaData().getTables(null, null, "recordings", null)) {
+            assertTrue("La base de données devrait être initialisée", file.exists());
+            assertTrue("La table des enregistrements devrait exister", rs.next());
+        } finally {
+            db.close();
+            for (File f : dir.toFile().listFiles()) {
+                f.delete();
+            }
+            dir.toFile().delete();
+        }
     }
-    
+
     @Test
     public void testEncryption() {
         try {
             byte[] testData = "Test message".getBytes();
-            AES aes = new AES();
-            byte[] encrypted = aes.encrypt(testData);
-            byte[] decrypted = aes.decrypt(encrypted);
+            SecretKey key = AES.generateSecretKey();
+            byte[] encrypted = AES.encrypt(testData, key);
+            byte[] decrypted = AES.decrypt(encrypted, key);
             assertArrayEquals("Les données déchiffrées devraient correspondre aux données originales", testData, decrypted);
         } catch (Exception e) {
             fail("Le test de chiffrement a échoué: " + e.getMessage());
         }
     }
-    
+
     @Test
     public void testSHAIntegrity() {
         try {
-            String testMessage = "Test message";
-            String hash1 = SHA.calculateSHA(testMessage);
-            String hash2 = SHA.calculateSHA(testMessage);
+            byte[] testMessage = "Test message".getBytes();
+            String hash1 = SHA.generateSHA256(testMessage);
+            String hash2 = SHA.generateSHA256(testMessage);
             assertEquals("Les hashs devraient être identiques pour le même message", hash1, hash2);
         } catch (Exception e) {
             fail("Le test d'intégrité SHA a échoué: " + e.getMessage());
         }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,60 @@
+package Auth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Emplacement des données audio chiffrées des enregistrements.
+ * La ligne de {@code recordings} est créée par l'appelant, qui gère aussi la transaction :
+ * le stockage ne fait qu'écrire, relire ou oublier les octets chiffrés d'un enregistrement.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+interface AudioStore {
+
+    /**
+     * Ouvre un flux écrivant les données chiffrées d'un enregistrement.
+     *
+     * @param conn Connexion utilisée pour les métadonnées
+     * @param recordingId Identifiant de l'enregistrement
+     * @return Le flux, à fermer pour terminer l'écriture
+     * @throws SQLException En cas d'erreur d'accès à la base
+     * @throws IOException En cas d'erreur d'écriture
+     */
+    OutputStream openWriter(Connection conn, int recordingId) throws SQLException, IOException;
+
+    /**
+     * Ouvre un flux lisant séquentiellement les données chiffrées d'un enregistrement.
+     *
+     * @param conn Connexion à la base de données
+     * @param recordingId Identifiant de l'enregistrement
+     * @return Le flux des données chiffrées
+     * @throws SQLException En cas d'erreur d'accès à la base
+     * @throws IOException En cas d'erreur de lecture
+     */
+    InputStream openStream(Connection conn, int recordingId) throws SQLException, IOException;
+
+    /**
+     * Retourne une source à accès aléatoire sur les données chiffrées d'un enregistrement.
+     *
+     * @param conn Connexion à la base de données
+     * @param recordingId Identifiant de l'enregistrement
+     * @return La source
+     * @throws SQLException En cas d'erreur d'accès à la base
+     * @throws IOException En cas d'erreur de lecture
+     */
+    ChunkedAES.RandomAccessSource openSource(Connection conn, int recordingId) throws SQLException, IOException;
+
+    /**
+     * Oublie les données d'un enregistrement supprimé.
+     *
+     * @param conn Connexion à la base de données
+     * @param recordingId Identifiant de l'enregistrement
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    void delete(Connection conn, int recordingId) throws SQLException;
+}
@@ -0,0 +1,202 @@
+package Auth;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Console;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maintenance du stockage audio en ligne de commande.
+ * <pre>
+ * java Auth.AudioStoreTool migrate [--vacuum]  déplace l'audio encore stocké dans la base vers les segments
+ * java Auth.AudioStoreTool compact [ratio]     compacte les segments dont la part d'espace mort atteint ratio (0.5 par défaut)
+ * java Auth.AudioStoreTool peaks               calcule l'index de crêtes des enregistrements antérieurs qui n'en ont pas
+ * java Auth.AudioStoreTool rotate-keys [threads] [Mo/s]
+ *                                              rechiffre les contenus des segments avec de nouvelles clés
+ * java Auth.AudioStoreTool wrap-keys           enveloppe avec la clé maîtresse courante les clés en clair ou enveloppées par une ancienne
+ * java Auth.AudioStoreTool new-master-key      crée une nouvelle clé maîtresse et y réenveloppe toutes les clés
+ * java Auth.AudioStoreTool export archive [email]
+ *                                              écrit les enregistrements d'un utilisateur (de tous par défaut) dans une archive
+ * java Auth.AudioStoreTool import archive email
+ *                                              ajoute les enregistrements d'une archive à ceux d'un utilisateur
+ * </pre>
+ * La base utilisée est {@link Database#DEFAULT_URL}. Les commandes travaillent un
+ * enregistrement par transaction et peuvent être relancées après une interruption.
+ * {@code compact} peut tourner pendant que l'application lit : les fichiers des segments
+ * qu'elle retire ne sont supprimés que par une compaction suivante, une minute au moins
+ * après leur retrait et quand aucune lecture de l'application n'est en cours.
+ * La phrase secrète des archives est lue dans {@code moustass.archive.password}, sinon dans
+ * la variable d'environnement {@code MOUSTASS_ARCHIVE_PASSWORD}, sinon demandée à la console.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+public class AudioStoreTool {
+
+    private static final double DEFAULT_COMPACT_RATIO = 0.5;
+    /** Débit de lecture par défaut du changement de clés, en Mo/s */
+    private static final double DEFAULT_ROTATION_RATE = 50;
+
+    /**
+     * @param args Commande et options
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+        Database db = Database.get();
+        RecordingAudio audio = db.getAudioStore();
+        try (Connection conn = db.getConnection()) {
+            switch (args[0]) {
+                case "migrate":
+                    int moved = audio.segments().migrateFrom(conn, audio.rows());
+                    System.out.println(moved + " recording(s) moved to " + audio.segments().getDirectory());
+                    if (args.length > 1 && args[1].equals("--vacuum")) {
+                        // Rend au système la place libérée dans le fichier de la base
+                        try (Statement stmt = conn.createStatement()) {
+                            stmt.executeUpdate("VACUUM");
+                        }
+                    }
+                    break;
+                case "compact":
+                    double ratio = args.length > 1 ? Double.parseDouble(args[1]) : DEFAULT_COMPACT_RATIO;
+                    long freed = audio.segments().compact(conn, ratio);
+                    System.out.println(freed + " byte(s) reclaimed");
+                    break;
+                case "peaks":
+                    int built = PeakIndex.buildMissing(conn, audio, db.getKeys(), AudioRecorder.CAPTURE_FORMAT);
+                    System.out.println(built + " peak index(es) built");
+                    break;
+                case "new-master-key":
+                    System.out.println("New master key: " + db.getKeys().newMasterKey());
+                    // Les clés existantes sont réenveloppées aussitôt
+                    wrapKeys(db, conn);
+                    break;
+                case "wrap-keys":
+                    wrapKeys(db, conn);
+                    break;
+                case "export":
+                    if (args.length < 2) {
+                        usage();
+                        break;
+                    }
+                    List<Integer> ids = recordingsOf(conn, args.length > 2 ? userId(conn, args[2]) : null);
+                    Path target = Paths.get(args[1]);
+                    Path partial = target.resolveSibling(target.getFileName() + ".part");
+                    RecordingArchive.Summary exported;
+                    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partial))) {
+                        exported = new RecordingArchive(db, Runtime.getRuntime().availableProcessors())
+                                .export(out, ids, archivePassword());
+                    } catch (IOException | SQLException | AES.AESException | InterruptedException | RuntimeException e) {
+                        Files.deleteIfExists(partial);
+                        throw e;
+                    }
+                    // L'archive n'apparaît sous son nom qu'une fois complète
+                    Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+                    System.out.println(exported.getCount() + " recording(s) exported to " + target +
+                                       ", " + exported.getFailed() + " unreadable");
+                    break;
+                case "import":
+                    if (args.length < 3) {
+                        usage();
+                        break;
+                    }
+                    int owner = userId(conn, args[2]);
+                    try (InputStream in = new BufferedInputStream(Files.newInputStream(Paths.get(args[1])))) {
+                        RecordingArchive.Summary imported = new RecordingArchive(db, Runtime.getRuntime().availableProcessors())
+                                .importFrom(in, owner, archivePassword());
+                        System.out.println(imported.getCount() + " recording(s) imported, " +
+                                           imported.getFailed() + " rejected");
+                    }
+                    break;
+                case "rotate-keys":
+                    int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+                    double rate = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_ROTATION_RATE;
+                    KeyRotationJob job = new KeyRotationJob(db, threads, rate, null);
+                    try {
+                        KeyRotationJob.Checkpoint done = job.rotate();
+                        System.out.println(done.getRotated() + " content(s) re-keyed, " + done.getFailed() + " unreadable");
+                    } finally {
+                        job.stop();
+                    }
+                    break;
+                default:
+                    usage();
+                    break;
+            }
+        } catch (InterruptedException e) {
+            System.err.println("Interrupted; run the command again to resume");
+            Thread.currentThread().interrupt();
+        } catch (SQLException | IOException | AES.AESException | NumberFormatException e) {
+            System.err.println("Audio store maintenance failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Réenveloppe toutes les clés d'enregistrement avec la clé maîtresse courante.
+     */
+    private static void wrapKeys(Database db, Connection conn) throws SQLException, AES.AESException {
+        int rewrapped = db.getKeys().rewrapAll(conn);
+        System.out.println(rewrapped + " key(s) wrapped with " + db.getKeys().getCurrentAlias());
+    }
+
+    /**
+     * @param userId Utilisateur, ou null pour tous
+     * @return Les enregistrements dans l'ordre de leur création
+     */
+    private static List<Integer> recordingsOf(Connection conn, Integer userId) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT id FROM recordings WHERE ? IS NULL OR user_id = ? ORDER BY id")) {
+            pstmt.setObject(1, userId);
+            pstmt.setObject(2, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static int userId(Connection conn, String email) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM users WHERE email = ?")) {
+            pstmt.setString(1, email);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) throw new SQLException("Unknown user: " + email);
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private static char[] archivePassword() throws IOException {
+        String password = System.getProperty("moustass.archive.password", System.getenv("MOUSTASS_ARCHIVE_PASSWORD"));
+        if (password != null) return password.toCharArray();
+        Console console = System.console();
+        if (console == null) throw new IOException("No archive passphrase: set MOUSTASS_ARCHIVE_PASSWORD");
+        return console.readPassword("Archive passphrase: ");
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java Auth.AudioStoreTool migrate [--vacuum] | compact [ratio] | peaks | rotate-keys [threads] [MB/s] " +
+                           "| wrap-keys | new-master-key | export <archive> [email] | import <archive> <email>");
+    }
+}
@@ -0,0 +1,280 @@
+package Auth;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Base des codecs travaillant par blocs d'échantillons.
+ * Chaque bloc est précédé de son nombre de trames et de la taille de ses données encodées,
+ * et se décode sans l'état des blocs précédents. Un bloc de zéro trame contient tels quels
+ * les octets d'une trame incomplète en fin de flux : le flux PCM est restitué à l'octet près.
+ * <p>
+ * Les échantillons sont passés aux sous-classes sous forme d'entiers signés entrelacés par
+ * canal, sur 8 ou 16 bits selon le format.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+abstract class BlockCodec implements AudioCodec {
+
+    /** Nombre de trames par bloc */
+    static final int BLOCK_FRAMES = 4096;
+
+    /**
+     * Encode un bloc.
+     *
+     * @param samples Échantillons signés, entrelacés par canal
+     * @param frames Nombre de trames du bloc
+     * @param channels Nombre de canaux
+     * @param bits Taille des échantillons (8 ou 16)
+     * @param out Destination des données du bloc
+     * @throws IOException En cas d'erreur d'écriture
+     */
+    abstract void encodeBlock(int[] samples, int frames, int channels, int bits, DataOutputStream out)
+            throws IOException;
+
+    /**
+     * Décode un bloc.
+     *
+     * @param in Données du bloc
+     * @param samples Destination des échantillons signés, entrelacés par canal
+     * @param frames Nombre de trames du bloc
+     * @param channels Nombre de canaux
+     * @param bits Taille des échantillons (8 ou 16)
+     * @throws IOException Si les données sont tronquées ou invalides
+     */
+    abstract void decodeBlock(DataInputStream in, int[] samples, int frames, int channels, int bits)
+            throws IOException;
+
+    @Override
+    public OutputStream encode(OutputStream out, AudioFormat format) {
+        return new BlockEncoder(out, new Samples(format));
+    }
+
+    @Override
+    public InputStream decode(InputStream in, AudioFormat format) {
+        return new BlockDecoder(in, new Samples(format));
+    }
+
+    /**
+     * Lecture et écriture des échantillons d'un format PCM.
+     */
+    static final class Samples {
+        final int channels;
+        final int bits;
+        final int frameSize;
+        private final int bytes;
+        private final boolean signed;
+        private final boolean bigEndian;
+        private final int shift;
+        private final int half;
+
+        Samples(AudioFormat format) {
+            AudioFormat.Encoding encoding = format.getEncoding();
+            bits = format.getSampleSizeInBits();
+            if (!(AudioFormat.Encoding.PCM_SIGNED.equals(encoding) || AudioFormat.Encoding.PCM_UNSIGNED.equals(encoding))
+                    || (bits != 8 && bits != 16) || format.getChannels() < 1) {
+                throw new IllegalArgumentException("Unsupported audio format: " + format);
+            }
+            channels = format.getChannels();
+            bytes = bits / 8;
+            frameSize = bytes * channels;
+            signed = AudioFormat.Encoding.PCM_SIGNED.equals(encoding);
+            bigEndian = format.isBigEndian();
+            shift = 32 - bits;
+            half = 1 << (bits - 1);
+        }
+
+        int get(byte[] b, int off) {
+            int raw;
+            if (bytes == 1) {
+                raw = b[off] & 0xff;
+            } else if (bigEndian) {
+                raw = (b[off] & 0xff) << 8 | (b[off + 1] & 0xff);
+            } else {
+                raw = (b[off + 1] & 0xff) << 8 | (b[off] & 0xff);
+            }
+            return signed ? (raw << shift) >> shift : raw - half;
+        }
+
+        void put(byte[] b, int off, int sample) {
+            int raw = signed ? sample : sample + half;
+            if (bytes == 1) {
+                b[off] = (byte) raw;
+            } else if (bigEndian) {
+                b[off] = (byte) (raw >> 8);
+                b[off + 1] = (byte) raw;
+            } else {
+                b[off] = (byte) raw;
+                b[off + 1] = (byte) (raw >> 8);
+            }
+        }
+    }
+
+    /**
+     * Accumule l'audio PCM écrit et encode chaque bloc complet.
+     */
+    private final class BlockEncoder extends OutputStream {
+        private final DataOutputStream out;
+        private final Samples format;
+        private final byte[] pcm;
+        private final int[] samples;
+        private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        private final DataOutputStream payloadOut = new DataOutputStream(payload);
+        private int filled;
+        private boolean closed;
+
+        BlockEncoder(OutputStream out, Samples format) {
+            this.out = new DataOutputStream(out);
+            this.format = format;
+            this.pcm = new byte[BLOCK_FRAMES * format.frameSize];
+            this.samples = new int[BLOCK_FRAMES * format.channels];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) throw new IOException("Stream closed");
+            while (len > 0) {
+                int n = Math.min(len, pcm.length - filled);
+                System.arraycopy(b, off, pcm, filled, n);
+                filled += n;
+                off += n;
+                len -= n;
+                if (filled == pcm.length) {
+                    flushBlock();
+                }
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            int frames = filled / format.frameSize;
+            int tail = filled - frames * format.frameSize;
+            if (frames > 0) {
+                for (int i = 0, off = 0; i < frames * format.channels; i++, off += format.bits / 8) {
+                    samples[i] = format.get(pcm, off);
+                }
+                payload.reset();
+                encodeBlock(samples, frames, format.channels, format.bits, payloadOut);
+                out.writeInt(frames);
+                out.writeInt(payload.size());
+                payload.writeTo(out);
+            }
+            if (tail > 0) {
+                out.writeInt(0);
+                out.writeInt(tail);
+                out.write(pcm, frames * format.frameSize, tail);
+            }
+            filled = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                flushBlock();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Décode les blocs au fil de la lecture.
+     */
+    private final class BlockDecoder extends InputStream {
+        private final DataInputStream in;
+        private final Samples format;
+        private final byte[] pcm;
+        private final int[] samples;
+        private final int maxPayload;
+        private byte[] payload = new byte[0];
+        private int pos;
+        private int limit;
+
+        BlockDecoder(InputStream in, Samples format) {
+            this.in = new DataInputStream(in);
+            this.format = format;
+            this.pcm = new byte[BLOCK_FRAMES * format.frameSize];
+            this.samples = new int[BLOCK_FRAMES * format.channels];
+            // Borne large : aucun codec n'écrit plus de 8 octets par échantillon
+            this.maxPayload = samples.length * 8 + 1024;
+        }
+
+        private boolean nextBlock() throws IOException {
+            int first = in.read();
+            if (first < 0) return false;
+            int frames = first << 24 | in.readUnsignedByte() << 16 | in.readUnsignedShort();
+            int length = in.readInt();
+            if (frames < 0 || frames > BLOCK_FRAMES || length < 0 || length > maxPayload
+                    || (frames == 0 && length >= format.frameSize)) {
+                throw new IOException("Corrupted audio block");
+            }
+            if (payload.length < length) {
+                payload = new byte[length];
+            }
+            in.readFully(payload, 0, length);
+            if (frames == 0) {
+                System.arraycopy(payload, 0, pcm, 0, length);
+                limit = length;
+            } else {
+                decodeBlock(new DataInputStream(new ByteArrayInputStream(payload, 0, length)),
+                        samples, frames, format.channels, format.bits);
+                for (int i = 0, off = 0; i < frames * format.channels; i++, off += format.bits / 8) {
+                    format.put(pcm, off, samples[i]);
+                }
+                limit = frames * format.frameSize;
+            }
+            pos = 0;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (pos == limit) {
+                if (!nextBlock()) return -1;
+            }
+            int n = Math.min(len, limit - pos);
+            System.arraycopy(pcm, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return limit - pos;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Borne un échantillon décodé à l'intervalle de sa taille.
+     */
+    static int clamp(int sample, int bits) {
+        int max = (1 << (bits - 1)) - 1;
+        return sample > max ? max : Math.max(sample, -max - 1);
+    }
+}
@@ -0,0 +1,198 @@
+package Auth;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Tampon de capture audio à mémoire bornée.
+ * Les données capturées sont écrites dans un ensemble fixe de tampons réutilisables ;
+ * lorsque le seuil mémoire est atteint, les tampons pleins sont déversés dans un
+ * segment temporaire chiffré avec une clé éphémère, puis recyclés. Le tas utilisé
+ * pendant l'enregistrement ne dépend donc pas de sa durée. Lorsque les données
+ * écrites sont déjà chiffrées, le segment peut être écrit tel quel.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+public class CaptureBuffer implements AutoCloseable {
+
+    /** Taille d'un tampon du pool */
+    static final int BUFFER_SIZE = 64 * 1024;
+    /** Seuil mémoire par défaut, modifiable avec la propriété {@code moustass.capture.memoryKB} */
+    static final int DEFAULT_MEMORY_LIMIT = Integer.getInteger("moustass.capture.memoryKB", 4 * 1024) * 1024;
+
+    /** Tampons libres */
+    private final ArrayDeque<byte[]> pool = new ArrayDeque<>();
+    /** Tampons pleins en mémoire, du plus ancien au plus récent */
+    private final ArrayDeque<byte[]> filled = new ArrayDeque<>();
+    /** Nombre maximal de tampons pleins gardés en mémoire */
+    private final int maxBuffers;
+    /** Chiffrer le segment temporaire (inutile si les données le sont déjà) */
+    private final boolean encryptSpill;
+    /** Tampon en cours de remplissage */
+    private byte[] current;
+    private int currentPos;
+    private long length;
+
+    /** Clé éphémère protégeant le segment temporaire */
+    private SecretKey spillKey;
+    private Path spillFile;
+    private OutputStream spillOut;
+    /** Vrai une fois la capture terminée par {@link #openStream()} */
+    private boolean sealed;
+    private boolean closed;
+
+    /**
+     * Crée un tampon avec le seuil mémoire par défaut.
+     */
+    public CaptureBuffer() {
+        this(DEFAULT_MEMORY_LIMIT);
+    }
+
+    /**
+     * @param memoryLimit Nombre maximal d'octets gardés en mémoire avant déversement sur disque
+     */
+    public CaptureBuffer(int memoryLimit) {
+        this(memoryLimit, true);
+    }
+
+    /**
+     * @param memoryLimit Nombre maximal d'octets gardés en mémoire avant déversement sur disque
+     * @param encryptSpill false si les données écrites sont déjà chiffrées
+     */
+    public CaptureBuffer(int memoryLimit, boolean encryptSpill) {
+        this.encryptSpill = encryptSpill;
+        this.maxBuffers = Math.max(1, memoryLimit / BUFFER_SIZE);
+        this.current = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Ajoute des données capturées.
+     *
+     * @param b Données
+     * @param off Position de départ
+     * @param len Nombre d'octets
+     * @throws IOException En cas d'erreur d'écriture du segment temporaire
+     */
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (closed || sealed) throw new IOException("Capture buffer closed");
+        while (len > 0) {
+            int n = Math.min(len, BUFFER_SIZE - currentPos);
+            System.arraycopy(b, off, current, currentPos, n);
+            currentPos += n;
+            off += n;
+            len -= n;
+            length += n;
+            if (currentPos == BUFFER_SIZE) {
+                filled.addLast(current);
+                if (filled.size() >= maxBuffers) {
+                    spill();
+                }
+                current = pool.isEmpty() ? new byte[BUFFER_SIZE] : pool.poll();
+                currentPos = 0;
+            }
+        }
+    }
+
+    /**
+     * Déverse les tampons pleins dans le segment temporaire et les remet dans le pool.
+     */
+    private void spill() throws IOException {
+        if (spillOut == null) {
+            spillFile = Files.createTempFile("moustass-capture", ".seg");
+            spillFile.toFile().deleteOnExit();
+            spillOut = new BufferedOutputStream(Files.newOutputStream(spillFile));
+            if (encryptSpill) {
+                try {
+                    spillKey = AES.generateSecretKey();
+                } catch (AES.AESException e) {
+                    throw new IOException("Unable to create spill key", e);
+                }
+                spillOut = AES.encryptStream(spillOut, spillKey);
+            }
+        }
+        while (!filled.isEmpty()) {
+            byte[] buffer = filled.poll();
+            spillOut.write(buffer, 0, BUFFER_SIZE);
+            pool.push(buffer);
+        }
+    }
+
+    /**
+     * @return Le nombre total d'octets capturés
+     */
+    public synchronized long length() {
+        return length;
+    }
+
+    /**
+     * @return true si une partie des données a été déversée sur disque
+     */
+    public synchronized boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /**
+     * Termine la capture et ouvre un flux sur l'ensemble des données, dans l'ordre :
+     * d'abord le segment temporaire déchiffré au fil de l'eau, puis les tampons en mémoire.
+     * Aucune nouvelle donnée ne peut être ajoutée ensuite ; plusieurs flux peuvent être ouverts.
+     *
+     * @return Le flux des données capturées
+     * @throws IOException En cas d'erreur de lecture du segment temporaire
+     */
+    public synchronized InputStream openStream() throws IOException {
+        sealed = true;
+        if (spillOut != null) {
+            spillOut.close();
+            spillOut = null;
+        }
+        List<InputStream> parts = new ArrayList<>();
+        if (spillFile != null) {
+            InputStream spilled = Files.newInputStream(spillFile);
+            parts.add(spillKey != null ? AES.decryptStream(spilled, spillKey) : spilled);
+        }
+        for (byte[] buffer : filled) {
+            parts.add(new ByteArrayInputStream(buffer, 0, BUFFER_SIZE));
+        }
+        parts.add(new ByteArrayInputStream(current, 0, currentPos));
+        return new SequenceInputStream(Collections.enumeration(parts));
+    }
+
+    /**
+     * Efface les données en mémoire et supprime le segment temporaire.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            if (spillOut != null) {
+                spillOut.close();
+            }
+            if (spillFile != null) {
+                Files.deleteIfExists(spillFile);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (byte[] buffer : filled) {
+            Arrays.fill(buffer, (byte) 0);
+        }
+        Arrays.fill(current, (byte) 0);
+        filled.clear();
+        pool.clear();
+    }
+}
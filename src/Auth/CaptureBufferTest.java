@@ -0,0 +1,62 @@
+package Auth;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CaptureBufferTest {
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] capture(CaptureBuffer capture, int size) throws IOException {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        for (int i = 0; i < size; i += 44100) {
+            capture.write(data, i, Math.min(44100, size - i));
+        }
+        return data;
+    }
+
+    @Test
+    public void testSmallRecordingStaysInMemory() throws IOException {
+        try (CaptureBuffer capture = new CaptureBuffer(256 * 1024)) {
+            byte[] data = capture(capture, 100_000);
+            assertFalse(capture.isSpilled());
+            assertEquals(data.length, capture.length());
+            assertArrayEquals(data, readAll(capture.openStream()));
+        }
+    }
+
+    @Test
+    public void testLongRecordingSpillsAndKeepsOrder() throws IOException {
+        try (CaptureBuffer capture = new CaptureBuffer(128 * 1024)) {
+            byte[] data = capture(capture, 1_000_001);
+            assertTrue(capture.isSpilled());
+            assertArrayEquals(data, readAll(capture.openStream()));
+            // Un second passage (sauvegarde WAV) relit les mêmes données
+            assertArrayEquals(data, readAll(capture.openStream()));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNoWriteAfterCaptureIsSealed() throws IOException {
+        try (CaptureBuffer capture = new CaptureBuffer()) {
+            capture(capture, 10);
+            capture.openStream().close();
+            capture.write(new byte[1], 0, 1);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package Auth;
+
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Format de chiffrement par blocs authentifiés (AES-GCM) utilisé pour les enregistrements.
+ *
+ * <pre>
+ * en-tête (16 octets) : "MMAC" | version (1) | taille de bloc (4) | préfixe de nonce (7)
+ * blocs               : chiffré (taille de bloc) + tag GCM (16), le dernier bloc pouvant être plus court
+ * </pre>
+ *
+ * Le nonce de chaque bloc est formé du préfixe, de l'index du bloc et d'un indicateur
+ * de dernier bloc, et l'en-tête sert de données authentifiées : un bloc déplacé,
+ * supprimé ou tronqué est rejeté. Chaque bloc se déchiffre indépendamment, ce qui
+ * permet de lire ou de chercher dans un enregistrement sans le charger entièrement.
+ * Chaque bloc est traité par le moteur AES-GCM du thread courant ({@link AES#gcmCipher()}),
+ * initialisé et finalisé dans le même appel : un flux peut changer de thread entre deux blocs.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+final class ChunkedAES {
+
+    static final byte[] MAGIC = {'M', 'M', 'A', 'C'};
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int TAG_SIZE = 16;
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    /**
+     * Taille de bloc maximale acceptée : l'en-tête n'est authentifié qu'avec le premier bloc,
+     * après l'allocation des tampons à sa taille
+     */
+    static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int NONCE_PREFIX_SIZE = 7;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private ChunkedAES() {
+    }
+
+    /**
+     * Source d'octets à accès aléatoire (tableau, BLOB, fichier...) lue bloc par bloc.
+     */
+    interface RandomAccessSource {
+        /** @return La taille totale en octets */
+        long length() throws IOException;
+
+        /** Lit exactement {@code len} octets à partir de la position {@code pos}. */
+        void readFully(long pos, byte[] b, int off, int len) throws IOException;
+    }
+
+    /**
+     * Indique si des données commencent par un en-tête de ce format.
+     */
+    static boolean isChunked(byte[] data) {
+        return data.length >= HEADER_SIZE + TAG_SIZE && hasMagic(data);
+    }
+
+    /**
+     * Indique si un en-tête de {@link #HEADER_SIZE} octets appartient à ce format.
+     */
+    static boolean isHeader(byte[] header) {
+        return hasMagic(header);
+    }
+
+    private static boolean hasMagic(byte[] header) {
+        return header[0] == MAGIC[0] && header[1] == MAGIC[1] && header[2] == MAGIC[2]
+                && header[3] == MAGIC[3] && header[4] == VERSION;
+    }
+
+    /**
+     * Construit un en-tête avec un préfixe de nonce aléatoire.
+     */
+    private static byte[] newHeader(int chunkSize) {
+        byte[] prefix = new byte[NONCE_PREFIX_SIZE];
+        RANDOM.nextBytes(prefix);
+        return ByteBuffer.allocate(HEADER_SIZE).put(MAGIC).put(VERSION).putInt(chunkSize).put(prefix).array();
+    }
+
+    private static int chunkSizeOf(byte[] header) throws IOException {
+        int chunkSize = ByteBuffer.wrap(header, 5, 4).getInt();
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IOException("Invalid chunk size: " + chunkSize);
+        }
+        return chunkSize;
+    }
+
+    private static GCMParameterSpec nonce(byte[] header, int index, boolean last) {
+        byte[] iv = new byte[12];
+        System.arraycopy(header, HEADER_SIZE - NONCE_PREFIX_SIZE, iv, 0, NONCE_PREFIX_SIZE);
+        iv[7] = (byte) (index >>> 24);
+        iv[8] = (byte) (index >>> 16);
+        iv[9] = (byte) (index >>> 8);
+        iv[10] = (byte) index;
+        iv[11] = (byte) (last ? 1 : 0);
+        return new GCMParameterSpec(TAG_SIZE * 8, iv);
+    }
+
+    /**
+     * Taille chiffrée totale pour une taille en clair donnée.
+     */
+    static long encryptedLength(long plainLength, int chunkSize) {
+        long chunks = Math.max(1, (plainLength + chunkSize - 1) / chunkSize);
+        return HEADER_SIZE + plainLength + chunks * TAG_SIZE;
+    }
+
+    /**
+     * Flux chiffrant les données écrites bloc par bloc. Le dernier bloc n'est
+     * émis qu'à la fermeture, qui est donc obligatoire.
+     */
+    static final class EncryptingOutputStream extends FilterOutputStream {
+        private final SecretKey key;
+        private final byte[] header;
+        private final byte[] buffer;
+        private final byte[] encrypted;
+        private int buffered;
+        private int index;
+        private boolean closed;
+
+        EncryptingOutputStream(OutputStream out, SecretKey key, int chunkSize) throws IOException {
+            super(out);
+            if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+                throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+            }
+            this.key = key;
+            this.header = newHeader(chunkSize);
+            this.buffer = new byte[chunkSize];
+            this.encrypted = new byte[chunkSize + TAG_SIZE];
+            out.write(header);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) throw new IOException("Stream closed");
+            while (len > 0) {
+                // Un bloc plein n'est chiffré que lorsqu'on sait qu'il n'est pas le dernier
+                if (buffered == buffer.length) {
+                    flushChunk(false);
+                }
+                int n = Math.min(len, buffer.length - buffered);
+                System.arraycopy(b, off, buffer, buffered, n);
+                buffered += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void flushChunk(boolean last) throws IOException {
+            try {
+                Cipher cipher = AES.gcmCipher();
+                cipher.init(Cipher.ENCRYPT_MODE, key, nonce(header, index++, last));
+                cipher.updateAAD(header);
+                int n = cipher.doFinal(buffer, 0, buffered, encrypted, 0);
+                out.write(encrypted, 0, n);
+                buffered = 0;
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Chunk encryption failed", e);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                flushChunk(true);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Flux déchiffrant séquentiellement un contenu dont l'en-tête a déjà été lu.
+     */
+    static final class DecryptingInputStream extends InputStream {
+        private final InputStream in;
+        private final SecretKey key;
+        private final byte[] header;
+        private final byte[] frame;
+        private final byte[] plain;
+        /** Octets lus d'avance dans {@link #frame} */
+        private int frameLen;
+        private int plainPos;
+        private int plainLen;
+        private int index;
+        private boolean done;
+
+        DecryptingInputStream(InputStream in, byte[] header, SecretKey key) throws IOException {
+            this.in = in;
+            this.header = header;
+            this.key = key;
+            int chunkSize = chunkSizeOf(header);
+            // Un octet de plus pour savoir, sans lire plus loin, si le bloc courant est le dernier
+            this.frame = new byte[chunkSize + TAG_SIZE + 1];
+            this.plain = new byte[chunkSize];
+            this.frameLen = readUpTo(frame, 0, frame.length);
+        }
+
+        private int readUpTo(byte[] b, int off, int len) throws IOException {
+            int total = 0;
+            while (total < len) {
+                int n = in.read(b, off + total, len - total);
+                if (n < 0) break;
+                total += n;
+            }
+            return total;
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (done) return false;
+            int full = frame.length - 1;
+            boolean last = frameLen <= full;
+            int size = last ? frameLen : full;
+            if (size < TAG_SIZE) {
+                throw new EOFException("Truncated encrypted chunk");
+            }
+            try {
+                Cipher cipher = AES.gcmCipher();
+                cipher.init(Cipher.DECRYPT_MODE, key, nonce(header, index++, last));
+                cipher.updateAAD(header);
+                plainLen = cipher.doFinal(frame, 0, size, plain, 0);
+                plainPos = 0;
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Chunk authentication failed", e);
+            }
+            if (last) {
+                done = true;
+            } else {
+                frame[0] = frame[full];
+                frameLen = 1 + readUpTo(frame, 1, full);
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (plainPos == plainLen) {
+                if (!nextChunk()) return -1;
+            }
+            int n = Math.min(len, plainLen - plainPos);
+            System.arraycopy(plain, plainPos, b, off, n);
+            plainPos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            Arrays.fill(plain, (byte) 0);
+            in.close();
+        }
+    }
+
+    /**
+     * Lecteur à accès aléatoire : déchiffre un bloc quelconque sans lire les autres.
+     */
+    static final class ChunkReader {
+        private final RandomAccessSource source;
+        private final SecretKey key;
+        private final byte[] header = new byte[HEADER_SIZE];
+        private final int chunkSize;
+        private final int chunkCount;
+        private final long length;
+        private final byte[] frame;
+
+        ChunkReader(RandomAccessSource source, SecretKey key) throws IOException {
+            this.source = source;
+            this.key = key;
+            this.length = source.length();
+            if (length < HEADER_SIZE + TAG_SIZE) {
+                throw new EOFException("Truncated encrypted data");
+            }
+            source.readFully(0, header, 0, HEADER_SIZE);
+            if (!hasMagic(header)) {
+                throw new IOException("Not a chunked AES container");
+            }
+            this.chunkSize = chunkSizeOf(header);
+            long body = length - HEADER_SIZE;
+            long frameSize = chunkSize + TAG_SIZE;
+            this.chunkCount = (int) Math.max(1, (body + frameSize - 1) / frameSize);
+            this.frame = new byte[chunkSize + TAG_SIZE];
+        }
+
+        /** @return La taille en clair d'un bloc complet */
+        int chunkSize() {
+            return chunkSize;
+        }
+
+        /** @return Le nombre de blocs */
+        int chunkCount() {
+            return chunkCount;
+        }
+
+        /** @return La taille totale des données en clair */
+        long plainLength() {
+            return length - HEADER_SIZE - (long) chunkCount * TAG_SIZE;
+        }
+
+        /**
+         * Déchiffre le bloc {@code index} dans {@code dst}.
+         *
+         * @return Le nombre d'octets en clair écrits
+         */
+        int readChunk(int index, byte[] dst) throws IOException {
+            if (index < 0 || index >= chunkCount) {
+                throw new IndexOutOfBoundsException("Chunk " + index + " of " + chunkCount);
+            }
+            long pos = HEADER_SIZE + (long) index * (chunkSize + TAG_SIZE);
+            int size = (int) Math.min(chunkSize + TAG_SIZE, length - pos);
+            source.readFully(pos, frame, 0, size);
+            try {
+                Cipher cipher = AES.gcmCipher();
+                cipher.init(Cipher.DECRYPT_MODE, key, nonce(header, index, index == chunkCount - 1));
+                cipher.updateAAD(header);
+                return cipher.doFinal(frame, 0, size, dst, 0);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Chunk authentication failed", e);
+            }
+        }
+    }
+
+    /**
+     * Source à accès aléatoire sur un tableau en mémoire.
+     */
+    static RandomAccessSource wrap(byte[] data) {
+        return new RandomAccessSource() {
+            @Override
+            public long length() {
+                return data.length;
+            }
+
+            @Override
+            public void readFully(long pos, byte[] b, int off, int len) throws IOException {
+                if (pos + len > data.length) throw new EOFException();
+                System.arraycopy(data, (int) pos, b, off, len);
+            }
+        };
+    }
+}
@@ -5,14 +5,10 @@ import javax.swing.*;
 import java.awt.event.ActionListener;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.awt.event.ActionEvent;
@@ -56,32 +52,18 @@ public class Connexion extends JFrame {
      * Hache un mot de passe en SHA-256.
      *
      * @param password Le mot de passe à hacher.
-     * @return Le mot de passe haché sous forme de chaîne hexadécimale.
+     * @return Le hash SHA-256 du mot de passe.
      */
-    private static String hashPassword(String password) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(password.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Error hashing password", e);
-        }
+    private static byte[] hashPassword(String password) {
+        return SHA.sha256(password.getBytes(StandardCharsets.UTF_8));
     }
     
     public static void main(String[] args) {
         EventQueue.invokeLater(new Runnable() {
             public void run() {
                 try {
-                    // Ensure database tables exist
-                    initializeDatabase();
+                    // Create or migrate the database schema
+                    Database.get().open();
                     
                     Connexion window = new Connexion();
                     window.frame.setVisible(true);
@@ -99,59 +81,15 @@ public class Connexion extends JFrame {
         initialize();
     }
     
-    /**
-     * Initialize the database if it doesn't exist
-     */
-    private static void initializeDatabase() {
-        Connection conn = null;
-        try {
-            conn = connect();
-            
-            // Create users table if it doesn't exist
-            Statement stmt = conn.createStatement();
-            String sql = "CREATE TABLE IF NOT EXISTS users (" +
-                         "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                         "email TEXT NOT NULL UNIQUE, " +
-                         "password TEXT NOT NULL, " +
-                         "is_admin BOOLEAN NOT NULL DEFAULT 0)";
-            stmt.executeUpdate(sql);
-            
-            // Create recordings table if it doesn't exist
-            sql = "CREATE TABLE IF NOT EXISTS recordings (" +
-                  "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                  "name TEXT NOT NULL, " +
-                  "timestamp TEXT NOT NULL, " +
-                  "duration INTEGER, " +
-                  "audio BLOB NOT NULL, " +
-                  "encryption_key TEXT NOT NULL, " +
-                  "audio_hash TEXT NOT NULL, " +
-                  "user_id INTEGER NOT NULL, " +
-                  "FOREIGN KEY (user_id) REFERENCES users(id))";
-            stmt.executeUpdate(sql);
-            
-            stmt.close();
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
-        } finally {
-            try {
-                if (conn != null) conn.close();
-            } catch (SQLException e) {
-                System.out.println(e.getMessage());
-            }
-        }
-    }
-
     /**
      * Établit une connexion à la base de données SQLite.
      * 
      * @return Connection Connexion à la base de données.
      */
-    private static final String DB_URL = "jdbc:sqlite:users.db";
-
     public static Connection connect() {
         Connection conn = null;
         try {
-            conn = DriverManager.getConnection(DB_URL);
+            conn = Database.get().getConnection();
             System.out.println("Connexion a SQLite etablie.");
         } catch (SQLException e) {
             System.out.println(e.getMessage());
@@ -213,17 +151,17 @@ public class Connexion extends JFrame {
                     return;
                 }
                 
-                String hashedPassword = hashPassword(password);
+                byte[] hashedPassword = hashPassword(password);
                 
                 try (Connection conn = connect();
                      PreparedStatement pstmt = conn.prepareStatement(
-                         "SELECT * FROM users WHERE email = ? AND password = ?")) {
+                         "SELECT * FROM users WHERE email = ?")) {
                     
                     pstmt.setString(1, email);
-                    pstmt.setString(2, hashedPassword);
                     
+                    // Comparaison à temps constant, quel que soit le format de stockage du hash
                     ResultSet rs = pstmt.executeQuery();
-                    if (rs.next()) {
+                    if (rs.next() && SHA.matches(SHA.readDigest(rs, "password"), hashedPassword)) {
                         int userId = rs.getInt("id");
                         boolean isAdmin = rs.getBoolean("is_admin");
                         
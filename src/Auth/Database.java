@@ -0,0 +1,467 @@
+package Auth;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Fournisseur de connexions SQLite partagé par toute l'application.
+ * Les connexions physiques sont ouvertes une seule fois, configurées avec les mêmes
+ * pragmas et gardées dans un petit pool. La première connexion applique les
+ * migrations du {@link Schema}. Chaque connexion conserve un cache de
+ * requêtes préparées : {@code close()} sur une connexion ou une requête obtenue ici
+ * la rend au pool au lieu de la fermer.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+public final class Database {
+
+    /** Base utilisée par l'application */
+    public static final String DEFAULT_URL = "jdbc:sqlite:users.db";
+    private static final String URL_PREFIX = "jdbc:sqlite:";
+    /** Nombre de connexions physiques par défaut */
+    static final int DEFAULT_POOL_SIZE = 8;
+    /** Nombre de requêtes préparées gardées par connexion */
+    static final int STATEMENT_CACHE_SIZE = 32;
+    /** Attente maximale d'une connexion libre */
+    private static final long BORROW_TIMEOUT_SECONDS = 30;
+
+    /**
+     * Pragmas appliqués à chaque nouvelle connexion. En journal WAL, synchronous = NORMAL
+     * ne risque pas de corrompre la base en cas de coupure, seulement de perdre les
+     * dernières transactions.
+     */
+    private static final String[] PRAGMAS = {
+        "PRAGMA busy_timeout = 5000",
+        "PRAGMA temp_store = MEMORY",
+        "PRAGMA synchronous = NORMAL",
+        "PRAGMA cache_size = -8192",
+        "PRAGMA mmap_size = 67108864"
+    };
+
+    private static Database shared;
+
+    private final String url;
+    private final int poolSize;
+    private final BlockingQueue<Physical> idle;
+    private final List<Physical> all = new ArrayList<>();
+    private RecordingAudio audioStore;
+    /** Répertoire temporaire des segments d'une base en mémoire, supprimé à la fermeture */
+    private Path temporaryAudioDir;
+    private KeyVault keys;
+    private boolean migrated;
+    private boolean closed;
+
+    /**
+     * @param url URL JDBC de la base
+     * @param poolSize Nombre maximal de connexions physiques
+     */
+    public Database(String url, int poolSize) {
+        this.url = url;
+        this.poolSize = poolSize;
+        this.idle = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    /**
+     * Retourne le fournisseur partagé, créé au premier appel sur {@link #DEFAULT_URL}.
+     *
+     * @return Le fournisseur de connexions de l'application
+     */
+    public static synchronized Database get() {
+        if (shared == null) {
+            shared = new Database(DEFAULT_URL, DEFAULT_POOL_SIZE);
+        }
+        return shared;
+    }
+
+    /**
+     * Remplace le fournisseur partagé, par exemple pour travailler sur un autre fichier.
+     *
+     * @param database Le nouveau fournisseur
+     */
+    public static synchronized void setShared(Database database) {
+        if (shared != null && shared != database) {
+            shared.close();
+        }
+        shared = database;
+    }
+
+    /**
+     * Ouvre la base si ce n'est pas déjà fait, ce qui applique les migrations en attente.
+     *
+     * @throws SQLException Si la base ne peut pas être ouverte ou migrée
+     */
+    public void open() throws SQLException {
+        getConnection().close();
+    }
+
+    /** @return L'URL JDBC de la base */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return Le stockage des données audio des enregistrements de cette base
+     */
+    synchronized RecordingAudio getAudioStore() {
+        if (audioStore == null) {
+            audioStore = new RecordingAudio(new SegmentAudioStore(audioDirectory(), SegmentAudioStore.DEFAULT_SEGMENT_SIZE));
+        }
+        return audioStore;
+    }
+
+    /**
+     * @return Le coffre des clés maîtresses enveloppant les clés des enregistrements de cette base
+     * @throws AES.AESException Si le magasin de clés ne peut pas être ouvert
+     */
+    synchronized KeyVault getKeys() throws AES.AESException {
+        if (keys == null) {
+            Path file = keyStoreFile();
+            keys = file != null ? KeyVault.open(file, keyStorePassword()) : KeyVault.inMemory();
+        }
+        return keys;
+    }
+
+    /**
+     * Magasin des clés maîtresses : {@code moustass.keystore} s'il est défini, sinon à côté du
+     * fichier de la base ({@code users.db} → {@code users.keystore}) ; null pour une base en mémoire.
+     */
+    private Path keyStoreFile() {
+        String configured = System.getProperty("moustass.keystore");
+        if (configured != null) return Paths.get(configured);
+
+        Path db = databaseFile();
+        if (db == null) return null;
+        String name = db.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return db.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + ".keystore");
+    }
+
+    /**
+     * Mot de passe du magasin : {@code moustass.keystore.password}, sinon la variable
+     * d'environnement {@code MOUSTASS_KEYSTORE_PASSWORD}, sinon une valeur par défaut qui ne
+     * protège le magasin que par les droits du fichier.
+     */
+    private static char[] keyStorePassword() {
+        String password = System.getProperty("moustass.keystore.password", System.getenv("MOUSTASS_KEYSTORE_PASSWORD"));
+        return (password != null ? password : "moustass").toCharArray();
+    }
+
+    /**
+     * Répertoire des segments audio : {@code moustass.audio.dir} s'il est défini, sinon à côté
+     * du fichier de la base ({@code users.db} → {@code users-audio}).
+     */
+    private Path audioDirectory() {
+        String configured = System.getProperty("moustass.audio.dir");
+        if (configured != null) return Paths.get(configured);
+
+        Path db = databaseFile();
+        if (db == null) {
+            // Base en mémoire : les segments sont supprimés avec elle par close()
+            try {
+                temporaryAudioDir = Files.createTempDirectory("moustass-audio-");
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to create audio directory", e);
+            }
+            return temporaryAudioDir;
+        }
+        String name = db.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return db.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + "-audio");
+    }
+
+    /**
+     * @return Le fichier de la base, ou null pour une base en mémoire
+     */
+    private Path databaseFile() {
+        String file = url.startsWith(URL_PREFIX) ? url.substring(URL_PREFIX.length()) : "";
+        int query = file.indexOf('?');
+        if (query >= 0) file = file.substring(0, query);
+        if (file.isEmpty() || file.startsWith(":memory:") || file.startsWith("file:")) return null;
+        return Paths.get(file).toAbsolutePath();
+    }
+
+    /**
+     * Emprunte une connexion au pool ; {@code close()} la rend au pool.
+     *
+     * @return Une connexion en mode auto-commit
+     * @throws SQLException Si aucune connexion ne se libère à temps ou si l'ouverture échoue
+     */
+    public Connection getConnection() throws SQLException {
+        Physical physical = idle.poll();
+        if (physical == null) {
+            physical = openIfBelowLimit();
+        }
+        if (physical == null) {
+            try {
+                physical = idle.poll(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a connection", e);
+            }
+            if (physical == null) {
+                throw new SQLException("No database connection available after " + BORROW_TIMEOUT_SECONDS + "s");
+            }
+        }
+        return physical.lease();
+    }
+
+    private synchronized Physical openIfBelowLimit() throws SQLException {
+        if (closed) throw new SQLException("Database closed");
+        if (all.size() >= poolSize) return null;
+        Connection conn = DriverManager.getConnection(url);
+        try {
+            try (Statement stmt = conn.createStatement()) {
+                for (String pragma : PRAGMAS) {
+                    stmt.execute(pragma);
+                }
+            }
+            // Le schéma est mis à jour par la première connexion ouverte
+            if (!migrated) {
+                Schema.migrate(conn);
+                migrated = true;
+            }
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        Physical physical = new Physical(conn);
+        all.add(physical);
+        return physical;
+    }
+
+    private void release(Physical physical) {
+        synchronized (this) {
+            if (closed) {
+                physical.closeQuietly();
+                return;
+            }
+        }
+        idle.offer(physical);
+    }
+
+    /**
+     * Ferme toutes les connexions physiques et, pour une base en mémoire, supprime ses segments audio.
+     */
+    public synchronized void close() {
+        closed = true;
+        for (Physical physical : all) {
+            physical.closeQuietly();
+        }
+        all.clear();
+        idle.clear();
+        if (temporaryAudioDir != null) {
+            try (Stream<Path> files = Files.walk(temporaryAudioDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            } catch (IOException e) {
+                // Laissé dans le répertoire temporaire du système
+            }
+            temporaryAudioDir = null;
+        }
+    }
+
+    /**
+     * Connexion physique et son cache de requêtes préparées.
+     */
+    private final class Physical {
+        private final Connection conn;
+        private final Map<String, PreparedStatement> statements =
+                new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                        if (size() <= STATEMENT_CACHE_SIZE || inUse.contains(eldest.getValue())) return false;
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                };
+        /** Requêtes du cache actuellement prêtées */
+        private final Set<PreparedStatement> inUse = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        Physical(Connection conn) {
+            this.conn = conn;
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, new Lease(this));
+        }
+
+        /**
+         * Retourne la requête en cache, ou une nouvelle requête non mise en cache
+         * si celle du cache est déjà prêtée.
+         */
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement stmt = statements.get(sql);
+            if (stmt == null || stmt.isClosed()) {
+                stmt = conn.prepareStatement(sql);
+                statements.put(sql, stmt);
+            } else if (inUse.contains(stmt)) {
+                return conn.prepareStatement(sql);
+            }
+            inUse.add(stmt);
+            PreparedStatement target = stmt;
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] {PreparedStatement.class}, new CachedStatement(this, target));
+        }
+
+        void giveBack(PreparedStatement stmt) {
+            inUse.remove(stmt);
+        }
+
+        /** Remet la connexion dans un état neutre avant de la rendre au pool */
+        void reset() throws SQLException {
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+        }
+
+        void closeQuietly() {
+            for (PreparedStatement stmt : statements.values()) {
+                closeQuietly(stmt);
+            }
+            statements.clear();
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private void closeQuietly(Statement stmt) {
+            try {
+                stmt.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Connexion prêtée : intercepte {@code close()} et {@code prepareStatement(String)}.
+     */
+    private final class Lease implements InvocationHandler {
+        private final Physical physical;
+        private boolean released;
+
+        Lease(Physical physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + physical.conn;
+                case "isClosed":
+                    return released || physical.conn.isClosed();
+                case "close":
+                    if (!released) {
+                        released = true;
+                        try {
+                            physical.reset();
+                        } finally {
+                            release(physical);
+                        }
+                    }
+                    return null;
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("Connection already returned to the pool");
+            }
+            if (method.getName().equals("prepareStatement") && args.length == 1) {
+                return physical.prepare((String) args[0]);
+            }
+            return forward(physical.conn, method, args);
+        }
+    }
+
+    /**
+     * Requête préparée en cache : {@code close()} ferme son dernier résultat et la rend au cache.
+     */
+    private static final class CachedStatement implements InvocationHandler {
+        private final Physical physical;
+        private final PreparedStatement target;
+        private ResultSet lastResult;
+        private boolean released;
+
+        CachedStatement(Physical physical, PreparedStatement target) {
+            this.physical = physical;
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "isClosed":
+                    return released;
+                case "close":
+                    if (!released) {
+                        released = true;
+                        // Un résultat laissé ouvert garderait une transaction de lecture active
+                        if (lastResult != null) {
+                            lastResult.close();
+                        }
+                        target.clearParameters();
+                        target.clearBatch();
+                        physical.giveBack(target);
+                    }
+                    return null;
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("Statement already closed");
+            }
+            Object result = forward(target, method, args);
+            if (result instanceof ResultSet) {
+                lastResult = (ResultSet) result;
+            }
+            return result;
+        }
+    }
+
+    private static Object forward(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package Auth;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DatabaseTest {
+
+    private static final String SELECT = "SELECT name FROM recordings WHERE id = ?";
+
+    private Path dir;
+    private Database db;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("database");
+        db = new Database("jdbc:sqlite:" + dir.resolve("users.db"), 1);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+        for (File f : dir.toFile().listFiles()) {
+            f.delete();
+        }
+        dir.toFile().delete();
+    }
+
+    @Test
+    public void testCloseKeepsPhysicalConnectionOpen() throws Exception {
+        Connection conn = db.getConnection();
+        Connection physical = conn.unwrap(Connection.class);
+        conn.close();
+
+        assertTrue(conn.isClosed());
+        assertFalse(physical.isClosed());
+        try {
+            conn.createStatement();
+            fail("Une connexion rendue au pool ne devrait plus être utilisable");
+        } catch (SQLException e) {
+            // attendu
+        }
+        // Fermer deux fois ne rend pas deux fois la connexion
+        conn.close();
+        try (Connection again = db.getConnection()) {
+            assertSame(physical, again.unwrap(Connection.class));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testConnectionReturnedAfterException() throws Exception {
+        try (Connection conn = db.getConnection()) {
+            conn.setAutoCommit(false);
+            insertRecording(conn, "Abandonné");
+            throw new IllegalStateException("échec simulé");
+        } catch (IllegalStateException e) {
+            // attendu
+        }
+        // Avec un pool d'une connexion, l'emprunt attendrait si elle n'avait pas été rendue
+        try (Connection conn = db.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM recordings")) {
+            assertTrue("La transaction abandonnée devrait être annulée", conn.getAutoCommit());
+            assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testBorrowWaitsAtPoolLimit() throws Exception {
+        Connection held = db.getConnection();
+        Connection physical = held.unwrap(Connection.class);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicReference<Object> borrowed = new AtomicReference<>();
+        Thread borrower = new Thread(() -> {
+            started.countDown();
+            try (Connection conn = db.getConnection()) {
+                borrowed.set(conn.unwrap(Connection.class));
+            } catch (SQLException e) {
+                borrowed.set(e);
+            }
+        });
+        borrower.start();
+        started.await();
+
+        borrower.join(500);
+        assertTrue("L'emprunt devrait attendre une connexion libre", borrower.isAlive());
+        assertNull(borrowed.get());
+
+        held.close();
+        borrower.join(TimeUnit.SECONDS.toMillis(5));
+        assertSame(physical, borrowed.get());
+    }
+
+    @Test
+    public void testCachedStatementReusedAndReset() throws Exception {
+        try (Connection conn = db.getConnection()) {
+            int id = insertRecording(conn, "Premier");
+            PreparedStatement target;
+            try (PreparedStatement pstmt = conn.prepareStatement(SELECT)) {
+                target = pstmt.unwrap(PreparedStatement.class);
+                pstmt.setInt(1, id);
+                pstmt.addBatch();
+                // Résultat laissé ouvert : la fermeture de la requête doit le fermer
+                assertTrue(pstmt.executeQuery().next());
+            }
+
+            try (PreparedStatement pstmt = conn.prepareStatement(SELECT)) {
+                assertSame("La requête en cache devrait être réutilisée", target, pstmt.unwrap(PreparedStatement.class));
+                assertEquals("Le lot devrait être vidé", 0, pstmt.executeBatch().length);
+                // Paramètre effacé : lié à NULL, aucune ligne ne correspond
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    assertFalse(rs.next());
+                }
+
+                // Requête déjà prêtée : une autre, hors cache, est préparée
+                try (PreparedStatement other = conn.prepareStatement(SELECT)) {
+                    assertNotSame(target, other.unwrap(PreparedStatement.class));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCachedStatementSurvivesConnectionReturn() throws Exception {
+        PreparedStatement target;
+        try (Connection conn = db.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(SELECT)) {
+            target = pstmt.unwrap(PreparedStatement.class);
+        }
+        try (Connection conn = db.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(SELECT)) {
+            assertSame(target, pstmt.unwrap(PreparedStatement.class));
+            assertFalse(target.isClosed());
+        }
+    }
+
+    @Test
+    public void testInMemoryAudioDirectoryRemovedOnClose() throws Exception {
+        Database first = new Database("jdbc:sqlite::memory:", 1);
+        Database second = new Database("jdbc:sqlite::memory:", 1);
+        Path audio = first.getAudioStore().segments().getDirectory();
+        try {
+            assertNotEquals(audio, second.getAudioStore().segments().getDirectory());
+            Files.write(audio.resolve("segment-000001.dat"), new byte[16]);
+        } finally {
+            first.close();
+            second.close();
+        }
+        assertFalse(Files.exists(audio));
+    }
+
+    private static int insertRecording(Connection conn, String name) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO recordings (name, timestamp, duration, audio, encryption_key, audio_hash, user_id) " +
+                "VALUES (?, '2024-01-01 00:00:00', 1, X'', 'key', X'00', 1)")) {
+            pstmt.setString(1, name);
+            pstmt.executeUpdate();
+        }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package Auth;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * IMA-ADPCM : 4 bits par échantillon, soit la moitié de l'audio 8 bits et le quart de
+ * l'audio 16 bits. Chaque bloc commence, pour chaque canal, par la valeur du prédicteur
+ * et l'indice du pas de quantification.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+final class ImaAdpcmCodec extends BlockCodec {
+
+    private static final int[] STEPS = {
+        7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+        50, 55, 60, 66, 73, 80, 88, 97, 107, 118, 130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+        337, 371, 408, 449, 494, 544, 598, 658, 724, 796, 876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+        2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358, 5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+        15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+
+    private static final int[] INDEX_ADJUST = {-1, -1, -1, -1, 2, 4, 6, 8};
+
+    @Override
+    public String getName() {
+        return AudioCodecs.ADPCM;
+    }
+
+    @Override
+    public boolean isLossless() {
+        return false;
+    }
+
+    @Override
+    void encodeBlock(int[] samples, int frames, int channels, int bits, DataOutputStream out) throws IOException {
+        int scale = 16 - bits;
+        int[] predictor = new int[channels];
+        int[] index = new int[channels];
+        for (int ch = 0; ch < channels; ch++) {
+            predictor[ch] = samples[ch] << scale;
+            index[ch] = initialIndex(samples, frames, channels, ch, scale);
+            out.writeShort(predictor[ch]);
+            out.writeByte(index[ch]);
+        }
+        int pending = -1;
+        for (int i = 0; i < frames * channels; i++) {
+            int ch = i % channels;
+            int step = STEPS[index[ch]];
+            int diff = (samples[i] << scale) - predictor[ch];
+            int code = 0;
+            if (diff < 0) {
+                code = 8;
+                diff = -diff;
+            }
+            int delta = step >> 3;
+            if (diff >= step) {
+                code |= 4;
+                diff -= step;
+                delta += step;
+            }
+            if (diff >= step >> 1) {
+                code |= 2;
+                diff -= step >> 1;
+                delta += step >> 1;
+            }
+            if (diff >= step >> 2) {
+                code |= 1;
+                delta += step >> 2;
+            }
+            predictor[ch] = clamp(predictor[ch] + ((code & 8) != 0 ? -delta : delta), 16);
+            index[ch] = nextIndex(index[ch], code);
+
+            if (pending < 0) {
+                pending = code;
+            } else {
+                out.writeByte(pending | code << 4);
+                pending = -1;
+            }
+        }
+        if (pending >= 0) {
+            out.writeByte(pending);
+        }
+    }
+
+    @Override
+    void decodeBlock(DataInputStream in, int[] samples, int frames, int channels, int bits) throws IOException {
+        int scale = 16 - bits;
+        int round = scale == 0 ? 0 : 1 << (scale - 1);
+        int[] predictor = new int[channels];
+        int[] index = new int[channels];
+        for (int ch = 0; ch < channels; ch++) {
+            predictor[ch] = in.readShort();
+            index[ch] = in.readUnsignedByte();
+            if (index[ch] >= STEPS.length) throw new IOException("Corrupted ADPCM block");
+        }
+        int packed = 0;
+        for (int i = 0; i < frames * channels; i++) {
+            int code;
+            if ((i & 1) == 0) {
+                packed = in.readUnsignedByte();
+                code = packed & 0x0f;
+            } else {
+                code = packed >> 4;
+            }
+            int ch = i % channels;
+            int step = STEPS[index[ch]];
+            int delta = step >> 3;
+            if ((code & 4) != 0) delta += step;
+            if ((code & 2) != 0) delta += step >> 1;
+            if ((code & 1) != 0) delta += step >> 2;
+            predictor[ch] = clamp(predictor[ch] + ((code & 8) != 0 ? -delta : delta), 16);
+            index[ch] = nextIndex(index[ch], code);
+            samples[i] = clamp((predictor[ch] + round) >> scale, bits);
+        }
+    }
+
+    private static int nextIndex(int index, int code) {
+        index += INDEX_ADJUST[code & 7];
+        return index < 0 ? 0 : Math.min(index, STEPS.length - 1);
+    }
+
+    /**
+     * Choisit le pas de départ d'après le premier écart du canal, pour que le début de
+     * chaque bloc ne soit pas écrêté pendant l'adaptation.
+     */
+    private static int initialIndex(int[] samples, int frames, int channels, int ch, int scale) {
+        if (frames < 2) return 0;
+        int diff = Math.abs((samples[channels + ch] - samples[ch]) << scale);
+        int index = 0;
+        while (index < STEPS.length - 1 && STEPS[index] < diff) {
+            index++;
+        }
+        return index;
+    }
+}
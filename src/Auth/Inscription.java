@@ -17,10 +17,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -67,12 +64,10 @@ public class Inscription extends JFrame {
 	 * @param password
 	 * @return
 	 */
-	private static final String DB_URL = "jdbc:sqlite:users.db";
-
     public static Connection connect() {
         Connection conn = null;
         try {
-            conn = DriverManager.getConnection(DB_URL);
+            conn = Database.get().getConnection();
             System.out.println("Connexion a SQLite etablie.");
         } catch (SQLException e) {
             System.out.println(e.getMessage());
@@ -105,22 +100,8 @@ public class Inscription extends JFrame {
 
     
     // Method to hash password using SHA-256
-    private static String hashPassword(String password) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(password.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Error hashing password", e);
-        }
+    private static byte[] hashPassword(String password) {
+        return SHA.sha256(password.getBytes(StandardCharsets.UTF_8));
     }
 
 
@@ -190,7 +171,7 @@ public class Inscription extends JFrame {
 
  
                 // Check if the email already exists in the database
-		        try (Connection conn = DriverManager.getConnection(DB_URL);
+		        try (Connection conn = Database.get().getConnection();
 		             PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) FROM users WHERE email = ?")) {
 
 		            pstmt.setString(1, loginText);
@@ -202,12 +183,12 @@ public class Inscription extends JFrame {
 		                }
 
 		                // If email doesn't exist, hash the password
-		                String hashedPassword = hashPassword(mdpText);
+		                byte[] hashedPassword = hashPassword(mdpText);
 
 		                // Insert the new user into the database
 		                try (PreparedStatement insertStmt = conn.prepareStatement("INSERT INTO users (email, password) VALUES (?, ?)")) {
 		                    insertStmt.setString(1, loginText);
-		                    insertStmt.setString(2, hashedPassword);
+		                    SHA.bindDigest(insertStmt, 2, hashedPassword);
 
 		                    // Execute the insert statement
 		                    int rowsAffected = insertStmt.executeUpdate();
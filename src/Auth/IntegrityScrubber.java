@@ -0,0 +1,266 @@
+package Auth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Service de vérification d'intégrité des enregistrements en arrière-plan.
+ * Parcourt la table {@code recordings} par lots, déchiffre chaque enregistrement
+ * sur un pool de threads borné, compare son hash SHA-256 à {@code audio_hash}
+ * et mémorise le résultat dans {@code recording_integrity}. Le débit de lecture
+ * peut être limité pour ne pas gêner un enregistrement en cours.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+public class IntegrityScrubber {
+
+    /** Résultat de la vérification d'un enregistrement */
+    public enum Status {
+        OK("Vérifié"),
+        CORRUPT("Corrompu"),
+        ERROR("Erreur");
+
+        private final String label;
+
+        Status(String label) {
+            this.label = label;
+        }
+
+        /** @return Le libellé affiché dans l'interface */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /** Nombre d'enregistrements traités par lot */
+    static final int BATCH_SIZE = 32;
+    /** Délai avant de revérifier un enregistrement déjà vérifié */
+    static final int REVERIFY_AFTER_DAYS = 7;
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final Database db;
+    private final ExecutorService workers;
+    private final Throttle throttle;
+    private final Runnable onPassComplete;
+    private Thread coordinator;
+
+    /**
+     * @param db Fournisseur de connexions ; chaque thread emprunte la sienne
+     * @param threads Nombre de threads de vérification
+     * @param maxMegabytesPerSecond Débit maximal de lecture en Mo/s (0 pour ne pas limiter)
+     * @param onPassComplete Action exécutée à la fin d'un passage ayant vérifié au moins
+     *                       un enregistrement (peut être null)
+     */
+    public IntegrityScrubber(Database db, int threads, double maxMegabytesPerSecond, Runnable onPassComplete) {
+        this.db = db;
+        this.throttle = new Throttle(maxMegabytesPerSecond);
+        this.onPassComplete = onPassComplete;
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "integrity-scrubber");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    /**
+     * Retourne le dernier résultat de vérification connu d'un enregistrement.
+     *
+     * @param conn Connexion à la base de données
+     * @param recordingId Identifiant de l'enregistrement
+     * @return Le statut, ou null si l'enregistrement n'a jamais été vérifié
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    public static Status getStatus(Connection conn, int recordingId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT status FROM recording_integrity WHERE recording_id = ?")) {
+            pstmt.setInt(1, recordingId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? Status.valueOf(rs.getString("status")) : null;
+            }
+        }
+    }
+
+    /**
+     * Démarre le parcours de la table en arrière-plan.
+     */
+    public synchronized void start() {
+        if (coordinator != null) return;
+        coordinator = new Thread(this::scrub, "integrity-scrubber-coordinator");
+        coordinator.setDaemon(true);
+        coordinator.setPriority(Thread.MIN_PRIORITY);
+        coordinator.start();
+    }
+
+    /**
+     * Interrompt le parcours en cours et arrête les threads de vérification.
+     */
+    public synchronized void stop() {
+        if (coordinator != null) {
+            coordinator.interrupt();
+            coordinator = null;
+        }
+        workers.shutdownNow();
+    }
+
+    /**
+     * Parcourt une fois les enregistrements jamais vérifiés ou vérifiés depuis trop longtemps.
+     */
+    private void scrub() {
+        String staleBefore = LocalDateTime.now().minusDays(REVERIFY_AFTER_DAYS).format(TIMESTAMP_FORMAT);
+        int lastId = 0;
+        int verified = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Integer> batch = nextBatch(lastId, staleBefore);
+                if (batch.isEmpty()) break;
+                lastId = batch.get(batch.size() - 1);
+
+                List<Callable<Status>> tasks = new ArrayList<>(batch.size());
+                for (int id : batch) {
+                    tasks.add(() -> verify(id));
+                }
+                List<Future<Status>> results = workers.invokeAll(tasks);
+                saveResults(batch, results);
+                verified += batch.size();
+            }
+            if (onPassComplete != null && verified > 0 && !Thread.currentThread().isInterrupted()) {
+                onPassComplete.run();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Sélectionne le prochain lot d'identifiants à vérifier.
+     */
+    private List<Integer> nextBatch(int afterId, String staleBefore) throws SQLException {
+        List<Integer> ids = new ArrayList<>(BATCH_SIZE);
+        try (Connection conn = db.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT r.id FROM recordings r LEFT JOIN recording_integrity i ON i.recording_id = r.id " +
+                "WHERE r.id > ? AND (i.verified_at IS NULL OR i.verified_at < ?) ORDER BY r.id LIMIT ?")) {
+            pstmt.setInt(1, afterId);
+            pstmt.setString(2, staleBefore);
+            pstmt.setInt(3, BATCH_SIZE);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Vérifie un enregistrement avec une connexion empruntée pour toute la durée du déchiffrement.
+     *
+     * @return Le statut, ou null si l'enregistrement n'existe plus
+     */
+    Status verify(int recordingId) throws SQLException, InterruptedException {
+        // Les segments que cette lecture peut voir ne sont pas supprimés avant sa fin
+        SegmentAudioStore.ReadLease lease = db.getAudioStore().beginRead();
+        try (Connection conn = db.getConnection()) {
+            // Clé et données lues dans le même état de la base, même pendant un changement de
+            // clés ; la transaction de lecture se termine au retour de la connexion au pool
+            conn.setAutoCommit(false);
+            String keyBase64;
+            byte[] storedHash;
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT encryption_key, audio_hash FROM recordings WHERE id = ?")) {
+                pstmt.setInt(1, recordingId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) return null;
+                    keyBase64 = rs.getString("encryption_key");
+                    storedHash = SHA.readDigest(rs, "audio_hash");
+                }
+            }
+            return verifyContent(conn, recordingId, keyBase64, storedHash);
+        } finally {
+            lease.close();
+        }
+    }
+
+    /**
+     * Déchiffre un enregistrement bloc par bloc et compare son hash à celui stocké.
+     */
+    private Status verifyContent(Connection conn, int recordingId, String keyBase64, byte[] storedHash)
+            throws InterruptedException {
+        SecretKey secretKey;
+        try {
+            secretKey = db.getKeys().unwrap(keyBase64);
+        } catch (AES.AESException e) {
+            // Trousseau absent ou mot de passe erroné : les données ne sont pas en cause
+            return Status.ERROR;
+        }
+        try {
+            MessageDigest digest = SHA.newSHA256();
+            byte[] buffer = new byte[AES.CHUNK_SIZE];
+            try (InputStream in = AES.decryptStream(db.getAudioStore().openStream(conn, recordingId), secretKey)) {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    throttle.acquire(n);
+                    digest.update(buffer, 0, n);
+                }
+            }
+            return SHA.matches(storedHash, digest.digest()) ? Status.OK : Status.CORRUPT;
+        } catch (IOException e) {
+            // Bloc non authentifié ou tronqué, sauf si la base elle-même est en cause
+            return e.getCause() instanceof SQLException ? Status.ERROR : Status.CORRUPT;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return Status.ERROR;
+        }
+    }
+
+    /**
+     * Enregistre les résultats d'un lot, sauf pour les enregistrements supprimés entre-temps.
+     */
+    void saveResults(List<Integer> batch, List<Future<Status>> results)
+            throws SQLException, InterruptedException {
+        String now = LocalDateTime.now().format(TIMESTAMP_FORMAT);
+        try (Connection conn = db.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT OR REPLACE INTO recording_integrity (recording_id, verified_at, status) " +
+                "SELECT ?, ?, ? WHERE EXISTS (SELECT 1 FROM recordings WHERE id = ?)")) {
+            for (int i = 0; i < batch.size(); i++) {
+                Status status;
+                try {
+                    status = results.get(i).get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                    status = Status.ERROR;
+                }
+                if (status == null) continue; // supprimé pendant la vérification
+                pstmt.setInt(1, batch.get(i));
+                pstmt.setString(2, now);
+                pstmt.setString(3, status.name());
+                // Supprimé après la vérification : aucune ligne orpheline
+                pstmt.setInt(4, batch.get(i));
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+}
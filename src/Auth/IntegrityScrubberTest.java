@@ -0,0 +1,225 @@
+package Auth;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IntegrityScrubberTest {
+
+    private static final AudioFormat CAPTURE = new AudioFormat(44100, 8, 1, true, true);
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private Path dir;
+    private Database db;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("scrubber");
+        db = new Database("jdbc:sqlite:" + dir.resolve("test.db"), 4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        db.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testPassRecordsEachStatus() throws Exception {
+        int intact = save(tone(22050, 300));
+        int tampered = save(tone(22050, 400));
+        int keyless = save(tone(22050, 500));
+        try (Connection conn = db.getConnection()) {
+            // Un octet modifié au milieu des données chiffrées : le bloc n'est plus authentifié
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT segment_id, segment_offset, audio_length FROM audio_content " +
+                                                  "WHERE id = (SELECT content_id FROM recordings WHERE id = " + tampered + ")")) {
+                assertTrue(rs.next());
+                Path segment = db.getAudioStore().segments().getDirectory()
+                        .resolve(String.format("segment-%06d.dat", rs.getInt(1)));
+                try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+                    long position = rs.getLong(2) + rs.getLong(3) / 2;
+                    file.seek(position);
+                    int b = file.read();
+                    file.seek(position);
+                    file.write(b ^ 0x01);
+                }
+            }
+            // Clé enveloppée par une clé maîtresse absente du trousseau
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "UPDATE recordings SET encryption_key = 'absente' || substr(encryption_key, instr(encryption_key, ':')) " +
+                    "WHERE id = ?")) {
+                pstmt.setInt(1, keyless);
+                pstmt.executeUpdate();
+            }
+        }
+
+        runPass();
+
+        try (Connection conn = db.getConnection()) {
+            assertEquals(IntegrityScrubber.Status.OK, IntegrityScrubber.getStatus(conn, intact));
+            assertEquals(IntegrityScrubber.Status.CORRUPT, IntegrityScrubber.getStatus(conn, tampered));
+            assertEquals(IntegrityScrubber.Status.ERROR, IntegrityScrubber.getStatus(conn, keyless));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testOnlyStaleResultsAreVerifiedAgain() throws Exception {
+        int stale = save(tone(22050, 300));
+        int recent = save(tone(22050, 400));
+        String staleAt = LocalDateTime.now().minusDays(IntegrityScrubber.REVERIFY_AFTER_DAYS + 1).format(TIMESTAMP_FORMAT);
+        String recentAt = LocalDateTime.now().minusDays(IntegrityScrubber.REVERIFY_AFTER_DAYS - 1).format(TIMESTAMP_FORMAT);
+        try (Connection conn = db.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "INSERT INTO recording_integrity (recording_id, verified_at, status) VALUES (?, ?, 'CORRUPT')")) {
+            pstmt.setInt(1, stale);
+            pstmt.setString(2, staleAt);
+            pstmt.executeUpdate();
+            pstmt.setInt(1, recent);
+            pstmt.setString(2, recentAt);
+            pstmt.executeUpdate();
+        }
+
+        runPass();
+
+        try (Connection conn = db.getConnection()) {
+            assertEquals(IntegrityScrubber.Status.OK, IntegrityScrubber.getStatus(conn, stale));
+            assertTrue(verifiedAt(conn, stale).compareTo(staleAt) > 0);
+            // Vérifié récemment : le résultat précédent est conservé tel quel
+            assertEquals(IntegrityScrubber.Status.CORRUPT, IntegrityScrubber.getStatus(conn, recent));
+            assertEquals(recentAt, verifiedAt(conn, recent));
+        }
+    }
+
+    @Test
+    public void testRecordingDeletedDuringPassLeavesNoResult() throws Exception {
+        int beforeVerify = save(tone(22050, 300));
+        int afterVerify = save(tone(22050, 400));
+        IntegrityScrubber scrubber = new IntegrityScrubber(db, 1, 0, null);
+        try {
+            // Supprimé entre la sélection du lot et sa vérification
+            delete(beforeVerify);
+            assertNull(scrubber.verify(beforeVerify));
+
+            // Supprimé entre la vérification et l'enregistrement du résultat
+            IntegrityScrubber.Status status = scrubber.verify(afterVerify);
+            assertEquals(IntegrityScrubber.Status.OK, status);
+            delete(afterVerify);
+            Future<IntegrityScrubber.Status> result = CompletableFuture.completedFuture(status);
+            scrubber.saveResults(Collections.singletonList(afterVerify), Collections.singletonList(result));
+        } finally {
+            scrubber.stop();
+        }
+
+        try (Connection conn = db.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM recording_integrity")) {
+            assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    /**
+     * Lance un passage complet et attend sa fin.
+     */
+    private void runPass() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        IntegrityScrubber scrubber = new IntegrityScrubber(db, 2, 0, done::countDown);
+        scrubber.start();
+        try {
+            assertTrue(done.await(20, TimeUnit.SECONDS));
+        } finally {
+            scrubber.stop();
+        }
+    }
+
+    /**
+     * Enregistre un audio PCM comme le fait la sauvegarde.
+     */
+    private int save(byte[] pcm) throws Exception {
+        RecordingPipeline pipeline = new RecordingPipeline(4410, CAPTURE, AudioCodecs.forName(AudioCodecs.PCM),
+                                                           VadSettings.DISABLED);
+        for (int off = 0; off < pcm.length; off += 4410) {
+            byte[] buffer = pipeline.nextBuffer();
+            int n = Math.min(buffer.length, pcm.length - off);
+            System.arraycopy(pcm, off, buffer, 0, n);
+            pipeline.submit(buffer, n);
+        }
+        try (RecordingPipeline.Result result = pipeline.finish(); Connection conn = db.getConnection()) {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO recordings (name, timestamp, duration, audio, encryption_key, audio_hash, user_id, codec) " +
+                    "VALUES ('test', '2024-01-01 10:00:00', 1, X'', ?, ?, 1, ?)")) {
+                pstmt.setString(1, db.getKeys().wrap(result.getKey()));
+                SHA.bindDigest(pstmt, 2, result.getDigest());
+                pstmt.setString(3, result.getCodec().getName());
+                pstmt.executeUpdate();
+            }
+            int id;
+            try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+                id = rs.getInt(1);
+            }
+            try (InputStream in = result.openEncrypted();
+                 OutputStream out = db.getAudioStore().openWriter(conn, id, result.getDigest())) {
+                in.transferTo(out);
+            }
+            return id;
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    private void delete(int id) throws Exception {
+        try (Connection conn = db.getConnection()) {
+            conn.setAutoCommit(false);
+            db.getAudioStore().delete(conn, id);
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM recordings WHERE id = ?")) {
+                pstmt.setInt(1, id);
+                pstmt.executeUpdate();
+            }
+            conn.commit();
+        }
+    }
+
+    private static String verifiedAt(Connection conn, int id) throws Exception {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT verified_at FROM recording_integrity WHERE recording_id = ?")) {
+            pstmt.setInt(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                assertTrue(rs.next());
+                return rs.getString(1);
+            }
+        }
+    }
+
+    private static byte[] tone(int frames, double frequency) {
+        byte[] pcm = new byte[frames];
+        for (int i = 0; i < frames; i++) {
+            pcm[i] = (byte) Math.round(60 * Math.sin(2 * Math.PI * frequency * i / 44100.0));
+        }
+        return pcm;
+    }
+}
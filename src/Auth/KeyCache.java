@@ -0,0 +1,90 @@
+package Auth;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Cache borné des clés d'enregistrement déjà désenveloppées.
+ * Les entrées sont indexées par la valeur stockée en base et expirent après une durée fixe,
+ * même si elles sont utilisées : une clé ne reste en mémoire que le temps des lectures
+ * rapprochées d'un même enregistrement. Au-delà de la taille maximale, la clé utilisée le
+ * moins récemment est oubliée.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+final class KeyCache {
+
+    /** Calcul d'une clé absente du cache */
+    interface Loader {
+        SecretKey load(String stored) throws AES.AESException;
+    }
+
+    private static final class CachedKey {
+        final SecretKey key;
+        final long expiresAt;
+
+        CachedKey(SecretKey key, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long ttlNanos;
+    private final Map<String, CachedKey> entries;
+
+    /**
+     * @param maxEntries Nombre maximal de clés gardées
+     * @param ttlMillis Durée de vie d'une clé dans le cache, en millisecondes
+     */
+    KeyCache(int maxEntries, long ttlMillis) {
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.entries = new LinkedHashMap<String, CachedKey>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedKey> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Retourne la clé correspondant à une valeur stockée, en la calculant si elle est absente
+     * ou expirée. Le calcul se fait hors verrou : deux threads peuvent le faire en même temps.
+     *
+     * @param stored Valeur stockée en base
+     * @param loader Calcul de la clé
+     * @return La clé
+     * @throws AES.AESException Si la clé ne peut pas être calculée
+     */
+    SecretKey get(String stored, Loader loader) throws AES.AESException {
+        long now = System.nanoTime();
+        synchronized (this) {
+            CachedKey entry = entries.get(stored);
+            if (entry != null) {
+                if (now - entry.expiresAt < 0) return entry.key;
+                entries.remove(stored);
+            }
+        }
+        SecretKey key = loader.load(stored);
+        synchronized (this) {
+            entries.put(stored, new CachedKey(key, now + ttlNanos));
+        }
+        return key;
+    }
+
+    /** @return Le nombre de clés gardées, expirées comprises */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Oublie toutes les clés, par exemple après un changement de clé maîtresse.
+     */
+    synchronized void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,398 @@
+package Auth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Changement des clés de chiffrement des enregistrements, sans interrompre l'application.
+ * Chaque contenu audio stocké dans les segments est déchiffré avec sa clé actuelle et
+ * rechiffré, au format {@link ChunkedAES}, avec une nouvelle clé, sur un pool de threads
+ * borné et à débit limité. Les contenus rechiffrés d'un lot sont écrits et mis en service
+ * dans une seule transaction, avec la progression : une passe interrompue reprend au lot
+ * suivant. Un enregistrement est lu sous son ancienne forme (ancienne clé, anciens octets)
+ * jusqu'à la validation de son lot, puis sous la nouvelle ; les anciens octets restent en
+ * place jusqu'à la compaction. Les enregistrements partageant un contenu changent de clé ensemble.
+ * <p>
+ * Les enregistrements encore stockés dans la base sont ignorés : ils doivent d'abord être
+ * déplacés dans les segments ({@link AudioStoreTool} {@code migrate}).
+ *
+ * @author Auth
+ * @version 1.0
+ */
+public class KeyRotationJob {
+
+    /** Nombre de contenus par lot, et donc par transaction */
+    static final int BATCH_SIZE = 8;
+    /** Mémoire d'un contenu rechiffré avant débordement dans un fichier temporaire */
+    private static final int BUFFER_MEMORY = 1024 * 1024;
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * Progression d'une passe, conservée dans {@code key_rotation}.
+     */
+    public static final class Checkpoint {
+        private final String startedAt;
+        private final int lastContentId;
+        private final int maxContentId;
+        private final int rotated;
+        private final int failed;
+        private final String finishedAt;
+
+        private Checkpoint(String startedAt, int lastContentId, int maxContentId, int rotated, int failed,
+                           String finishedAt) {
+            this.startedAt = startedAt;
+            this.lastContentId = lastContentId;
+            this.maxContentId = maxContentId;
+            this.rotated = rotated;
+            this.failed = failed;
+            this.finishedAt = finishedAt;
+        }
+
+        /** @return Le début de la passe */
+        public String getStartedAt() {
+            return startedAt;
+        }
+
+        /** @return Le nombre de contenus ayant changé de clé */
+        public int getRotated() {
+            return rotated;
+        }
+
+        /** @return Le nombre de contenus illisibles, laissés avec leur clé */
+        public int getFailed() {
+            return failed;
+        }
+
+        /** @return true si la passe est terminée */
+        public boolean isFinished() {
+            return finishedAt != null;
+        }
+    }
+
+    /** Contenu rechiffré, en attente de mise en service */
+    private static final class Rotated {
+        final int contentId;
+        /** Nouvelle clé, enveloppée par la clé maîtresse */
+        final String key;
+        final CaptureBuffer data;
+
+        Rotated(int contentId, String key, CaptureBuffer data) {
+            this.contentId = contentId;
+            this.key = key;
+            this.data = data;
+        }
+    }
+
+    private final Database db;
+    private final ExecutorService workers;
+    private final Throttle throttle;
+    private final int batchSize;
+    private final Runnable onPassComplete;
+    private Thread coordinator;
+
+    /**
+     * @param db Fournisseur de connexions ; chaque thread emprunte la sienne
+     * @param threads Nombre de threads de rechiffrement
+     * @param maxMegabytesPerSecond Débit maximal de lecture en Mo/s (0 pour ne pas limiter)
+     * @param onPassComplete Action exécutée à la fin d'une passe lancée par {@link #start()} (peut être null)
+     */
+    public KeyRotationJob(Database db, int threads, double maxMegabytesPerSecond, Runnable onPassComplete) {
+        this(db, threads, maxMegabytesPerSecond, onPassComplete, BATCH_SIZE);
+    }
+
+    KeyRotationJob(Database db, int threads, double maxMegabytesPerSecond, Runnable onPassComplete, int batchSize) {
+        this.db = db;
+        this.throttle = new Throttle(maxMegabytesPerSecond);
+        this.onPassComplete = onPassComplete;
+        this.batchSize = batchSize;
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "key-rotation");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    /**
+     * Retourne la progression de la dernière passe.
+     *
+     * @param conn Connexion à la base de données
+     * @return La progression, ou null si aucune passe n'a été lancée
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    public static Checkpoint getCheckpoint(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT started_at, last_content_id, max_content_id, rotated, failed, finished_at FROM key_rotation WHERE id = 1");
+             ResultSet rs = pstmt.executeQuery()) {
+            if (!rs.next()) return null;
+            return new Checkpoint(rs.getString(1), rs.getInt(2), rs.getInt(3), rs.getInt(4), rs.getInt(5), rs.getString(6));
+        }
+    }
+
+    /**
+     * Démarre la passe en arrière-plan.
+     */
+    public synchronized void start() {
+        if (coordinator != null) return;
+        coordinator = new Thread(() -> {
+            try {
+                rotate();
+                if (onPassComplete != null && !Thread.currentThread().isInterrupted()) {
+                    onPassComplete.run();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (SQLException | IOException e) {
+                e.printStackTrace();
+            }
+        }, "key-rotation-coordinator");
+        coordinator.setDaemon(true);
+        coordinator.setPriority(Thread.MIN_PRIORITY);
+        coordinator.start();
+    }
+
+    /**
+     * Interrompt la passe en cours, qui reprendra après le dernier lot validé, et arrête les
+     * threads de rechiffrement.
+     */
+    public synchronized void stop() {
+        if (coordinator != null) {
+            coordinator.interrupt();
+            coordinator = null;
+        }
+        workers.shutdownNow();
+    }
+
+    /**
+     * Reprend la passe interrompue, ou en commence une nouvelle, et la mène à son terme.
+     * Les contenus créés pendant la passe (nouveaux enregistrements, contenus rechiffrés)
+     * ont déjà une clé neuve et n'en font pas partie.
+     *
+     * @return La progression finale
+     * @throws SQLException En cas d'erreur d'accès à la base
+     * @throws IOException Si un contenu rechiffré ne peut pas être écrit
+     * @throws InterruptedException Si le thread est interrompu ; la passe reprendra au lot suivant
+     */
+    public Checkpoint rotate() throws SQLException, IOException, InterruptedException {
+        Checkpoint checkpoint;
+        try (Connection conn = db.getConnection()) {
+            checkpoint = getCheckpoint(conn);
+            if (checkpoint == null || checkpoint.isFinished()) {
+                checkpoint = begin(conn);
+            }
+        }
+        int lastId = checkpoint.lastContentId;
+        int rotated = checkpoint.rotated;
+        int failed = checkpoint.failed;
+        while (true) {
+            if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+            List<Integer> batch = nextBatch(lastId, checkpoint.maxContentId);
+            if (batch.isEmpty()) break;
+            lastId = batch.get(batch.size() - 1);
+
+            List<Future<Rotated>> results = new ArrayList<>(batch.size());
+            for (int id : batch) {
+                results.add(workers.submit(() -> reencrypt(id)));
+            }
+            List<Rotated> done = new ArrayList<>(batch.size());
+            try {
+                for (Future<Rotated> result : results) {
+                    try {
+                        Rotated r = result.get();
+                        if (r != null) done.add(r);
+                    } catch (ExecutionException e) {
+                        System.err.println("Key rotation skipped a content: " + e.getCause());
+                        failed++;
+                    }
+                }
+                rotated += commit(done, lastId, rotated, failed);
+            } finally {
+                // Tampons du lot, y compris ceux d'un lot interrompu
+                for (Future<Rotated> result : results) {
+                    if (result.cancel(true) || result.isCancelled()) continue;
+                    try {
+                        Rotated r = result.get();
+                        if (r != null) r.data.close();
+                    } catch (ExecutionException e) {
+                        // Déjà compté
+                    }
+                }
+            }
+        }
+        try (Connection conn = db.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("UPDATE key_rotation SET finished_at = ? WHERE id = 1")) {
+            pstmt.setString(1, LocalDateTime.now().format(TIMESTAMP_FORMAT));
+            pstmt.executeUpdate();
+            return getCheckpoint(conn);
+        }
+    }
+
+    /**
+     * Commence une passe sur les contenus existants.
+     */
+    private static Checkpoint begin(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT OR REPLACE INTO key_rotation (id, started_at, last_content_id, max_content_id, rotated, failed, finished_at) " +
+                "SELECT 1, ?, 0, IFNULL(MAX(id), 0), 0, 0, NULL FROM audio_content")) {
+            pstmt.setString(1, LocalDateTime.now().format(TIMESTAMP_FORMAT));
+            pstmt.executeUpdate();
+        }
+        return getCheckpoint(conn);
+    }
+
+    /**
+     * Sélectionne le prochain lot de contenus encore référencés.
+     */
+    private List<Integer> nextBatch(int afterId, int maxId) throws SQLException {
+        List<Integer> ids = new ArrayList<>(batchSize);
+        try (Connection conn = db.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT id FROM audio_content WHERE id > ? AND id <= ? AND refcount > 0 ORDER BY id LIMIT ?")) {
+            pstmt.setInt(1, afterId);
+            pstmt.setInt(2, maxId);
+            pstmt.setInt(3, batchSize);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Rechiffre un contenu avec une nouvelle clé dans un tampon, en vérifiant au passage le
+     * hash de l'audio en clair : un contenu altéré n'est pas rechiffré.
+     *
+     * @return Le contenu rechiffré, ou null s'il n'est plus référencé
+     */
+    private Rotated reencrypt(int contentId) throws Exception {
+        // Les segments que cette lecture peut voir ne sont pas supprimés avant sa fin
+        SegmentAudioStore.ReadLease lease = db.getAudioStore().beginRead();
+        try (Connection conn = db.getConnection()) {
+            // Clé et données lues dans le même état de la base ; la transaction de lecture
+            // se termine au retour de la connexion au pool
+            conn.setAutoCommit(false);
+            int recordingId;
+            SecretKey oldKey;
+            byte[] storedHash;
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT r.id, r.encryption_key, c.hash FROM audio_content c JOIN recordings r ON r.content_id = c.id " +
+                    "WHERE c.id = ? AND c.refcount > 0 LIMIT 1")) {
+                pstmt.setInt(1, contentId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) return null;
+                    recordingId = rs.getInt(1);
+                    oldKey = db.getKeys().unwrap(rs.getString(2));
+                    storedHash = rs.getBytes(3);
+                }
+            }
+
+            SecretKey newKey = AES.generateSecretKey();
+            CaptureBuffer data = new CaptureBuffer(BUFFER_MEMORY, false);
+            try {
+                MessageDigest digest = SHA.newSHA256();
+                byte[] buffer = new byte[AES.CHUNK_SIZE];
+                try (InputStream in = AES.decryptStream(db.getAudioStore().segments().openStream(conn, recordingId), oldKey);
+                     OutputStream out = AES.encryptStream(new OutputStream() {
+                         @Override
+                         public void write(int b) throws IOException {
+                             write(new byte[] {(byte) b}, 0, 1);
+                         }
+
+                         @Override
+                         public void write(byte[] b, int off, int len) throws IOException {
+                             data.write(b, off, len);
+                         }
+                     }, newKey)) {
+                    int n;
+                    while ((n = in.read(buffer)) != -1) {
+                        if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+                        throttle.acquire(n);
+                        digest.update(buffer, 0, n);
+                        out.write(buffer, 0, n);
+                    }
+                }
+                if (storedHash != null && !SHA.matches(storedHash, digest.digest())) {
+                    throw new IOException("Content " + contentId + " does not match its hash");
+                }
+                return new Rotated(contentId, db.getKeys().wrap(newKey), data);
+            } catch (Exception e) {
+                data.close();
+                throw e;
+            }
+        } finally {
+            lease.close();
+        }
+    }
+
+    /**
+     * Met en service les contenus rechiffrés d'un lot et enregistre la progression, dans une
+     * même transaction. Un contenu qui n'est plus référencé depuis son rechiffrement est ignoré.
+     *
+     * @param rotated Nombre de contenus mis en service avant ce lot
+     * @return Le nombre de contenus du lot mis en service
+     */
+    private int commit(List<Rotated> batch, int lastId, int rotated, int failed) throws SQLException, IOException {
+        // Verrou du stockage avant la transaction : jamais attendu en tenant le verrou d'écriture de la base
+        SegmentAudioStore.WriteLock lock = db.getAudioStore().lockWrites();
+        try (Connection conn = db.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                SegmentAudioStore segments = db.getAudioStore().segments();
+                int replaced = 0;
+                for (Rotated r : batch) {
+                    // Même état de la base que le remplacement, qui ne se fait que si le contenu est référencé
+                    if (!isReferenced(conn, r.contentId)) continue;
+                    replaced++;
+                    try (InputStream in = r.data.openStream();
+                         OutputStream out = segments.openReplacement(conn, r.contentId, r.key)) {
+                        in.transferTo(out);
+                    }
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "UPDATE key_rotation SET last_content_id = ?, rotated = ?, failed = ? WHERE id = 1")) {
+                    pstmt.setInt(1, lastId);
+                    pstmt.setInt(2, rotated + replaced);
+                    pstmt.setInt(3, failed);
+                    pstmt.executeUpdate();
+                }
+                conn.commit();
+                return replaced;
+            } catch (SQLException | IOException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } finally {
+            lock.close();
+        }
+    }
+
+    private static boolean isReferenced(Connection conn, int contentId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT refcount > 0 FROM audio_content WHERE id = ?")) {
+            pstmt.setInt(1, contentId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+}
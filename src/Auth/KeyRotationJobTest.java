@@ -0,0 +1,297 @@
+package Auth;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import javax.crypto.SecretKey;
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeyRotationJobTest {
+
+    private static final AudioFormat CAPTURE = new AudioFormat(44100, 8, 1, true, true);
+
+    private Path dir;
+    private Database db;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("rotation");
+        db = new Database("jdbc:sqlite:" + dir.resolve("test.db"), 4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        db.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testRotationChangesKeysAndKeepsAudio() throws Exception {
+        int first = save(tone(44100 * 2, 300));
+        int copy = save(tone(44100 * 2, 300));
+        int other = save(tone(44100, 500));
+        int[] ids = {first, copy, other};
+        String[] oldKeys = new String[ids.length];
+        byte[][] audio = new byte[ids.length][];
+        try (Connection conn = db.getConnection()) {
+            assertEquals(contentOf(conn, first), contentOf(conn, copy));
+            for (int i = 0; i < ids.length; i++) {
+                oldKeys[i] = keyOf(conn, ids[i]);
+                audio[i] = decrypt(conn, ids[i]);
+            }
+        }
+
+        KeyRotationJob job = new KeyRotationJob(db, 2, 0, null, 1);
+        KeyRotationJob.Checkpoint done = job.rotate();
+        job.stop();
+
+        assertTrue(done.isFinished());
+        assertEquals(2, done.getRotated());
+        assertEquals(0, done.getFailed());
+        try (Connection conn = db.getConnection()) {
+            for (int i = 0; i < ids.length; i++) {
+                assertNotEquals(oldKeys[i], keyOf(conn, ids[i]));
+                assertArrayEquals(audio[i], decrypt(conn, ids[i]));
+            }
+            // Le contenu partagé change de clé une seule fois, pour tous ses enregistrements
+            assertEquals(contentOf(conn, first), contentOf(conn, copy));
+            assertEquals(keyOf(conn, first), keyOf(conn, copy));
+            assertEquals(2, count(conn, "SELECT COUNT(*) FROM audio_content WHERE refcount = 0"));
+            assertEquals(3, count(conn, "SELECT SUM(refcount) FROM audio_content"));
+        }
+    }
+
+    @Test
+    public void testInterruptedPassResumesAfterLastBatch() throws Exception {
+        int[] ids = new int[4];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = save(tone(22050, 200 + 100 * i));
+        }
+        String[] oldKeys = new String[ids.length];
+        try (Connection conn = db.getConnection()) {
+            for (int i = 0; i < ids.length; i++) {
+                oldKeys[i] = keyOf(conn, ids[i]);
+            }
+            // Passe interrompue après le lot des deux premiers contenus
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO key_rotation (id, started_at, last_content_id, max_content_id, rotated, failed) " +
+                    "VALUES (1, '2024-01-01 10:00:00', ?, (SELECT MAX(id) FROM audio_content), 2, 0)")) {
+                pstmt.setInt(1, contentOf(conn, ids[1]));
+                pstmt.executeUpdate();
+            }
+        }
+
+        KeyRotationJob job = new KeyRotationJob(db, 2, 0, null, 1);
+        KeyRotationJob.Checkpoint done = job.rotate();
+        job.stop();
+
+        assertEquals(4, done.getRotated());
+        assertEquals("2024-01-01 10:00:00", done.getStartedAt());
+        try (Connection conn = db.getConnection()) {
+            assertEquals(oldKeys[0], keyOf(conn, ids[0]));
+            assertEquals(oldKeys[1], keyOf(conn, ids[1]));
+            assertNotEquals(oldKeys[2], keyOf(conn, ids[2]));
+            assertNotEquals(oldKeys[3], keyOf(conn, ids[3]));
+        }
+    }
+
+    @Test
+    public void testContentNotMatchingItsHashKeepsItsKey() throws Exception {
+        int damaged = save(tone(22050, 300));
+        int intact = save(tone(22050, 400));
+        String damagedKey;
+        try (Connection conn = db.getConnection()) {
+            damagedKey = keyOf(conn, damaged);
+            try (PreparedStatement pstmt = conn.prepareStatement("UPDATE audio_content SET hash = ? WHERE id = ?")) {
+                pstmt.setBytes(1, SHA.sha256("autre audio".getBytes()));
+                pstmt.setInt(2, contentOf(conn, damaged));
+                pstmt.executeUpdate();
+            }
+        }
+
+        KeyRotationJob job = new KeyRotationJob(db, 2, 0, null);
+        KeyRotationJob.Checkpoint done = job.rotate();
+        job.stop();
+
+        assertEquals(1, done.getRotated());
+        assertEquals(1, done.getFailed());
+        try (Connection conn = db.getConnection()) {
+            assertEquals(damagedKey, keyOf(conn, damaged));
+            assertNotNull(decrypt(conn, intact));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testContentDeletedBeforeCommitIsNotCounted() throws Exception {
+        int deleted = save(tone(22050, 300));
+        int kept = save(tone(22050, 400));
+        String keptKey;
+        try (Connection conn = db.getConnection()) {
+            keptKey = keyOf(conn, kept);
+        }
+
+        KeyRotationJob job = new KeyRotationJob(db, 2, 0, null);
+        AtomicReference<Object> outcome = new AtomicReference<>();
+        Thread rotation = new Thread(() -> {
+            try {
+                outcome.set(job.rotate());
+            } catch (Exception e) {
+                outcome.set(e);
+            }
+        });
+        // Lot rechiffré mais pas encore mis en service : la rotation attend le verrou du stockage
+        SegmentAudioStore.WriteLock lock = db.getAudioStore().lockWrites();
+        try {
+            rotation.start();
+            while (!waitsFor(rotation, "lockWrites")) {
+                assertTrue(rotation.isAlive());
+                Thread.sleep(5);
+            }
+            try (Connection conn = db.getConnection()) {
+                conn.setAutoCommit(false);
+                db.getAudioStore().delete(conn, deleted);
+                try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM recordings WHERE id = ?")) {
+                    pstmt.setInt(1, deleted);
+                    pstmt.executeUpdate();
+                }
+                conn.commit();
+            }
+        } finally {
+            lock.close();
+        }
+        rotation.join();
+        job.stop();
+
+        assertTrue(String.valueOf(outcome.get()), outcome.get() instanceof KeyRotationJob.Checkpoint);
+        KeyRotationJob.Checkpoint done = (KeyRotationJob.Checkpoint) outcome.get();
+        assertEquals(1, done.getRotated());
+        assertEquals(0, done.getFailed());
+        try (Connection conn = db.getConnection()) {
+            assertNotEquals(keptKey, keyOf(conn, kept));
+            assertEquals(1, count(conn, "SELECT SUM(refcount) FROM audio_content"));
+        }
+    }
+
+    @Test
+    public void testReaderKeepsTheFormItStartedWith() throws Exception {
+        byte[] pcm = tone(44100 * 3, 300);
+        int id = save(pcm);
+        try (Connection reader = db.getConnection()) {
+            reader.setAutoCommit(false);
+            SecretKey key = db.getKeys().unwrap(keyOf(reader, id));
+
+            KeyRotationJob job = new KeyRotationJob(db, 1, 0, null);
+            assertEquals(1, job.rotate().getRotated());
+            job.stop();
+
+            // Ancienne clé, anciens octets : toujours lisibles après la mise en service
+            try (InputStream in = AES.decryptStream(db.getAudioStore().openStream(reader, id), key)) {
+                assertArrayEquals(pcm, read(in));
+            }
+            reader.rollback();
+            reader.setAutoCommit(true);
+            assertNotEquals(key, db.getKeys().unwrap(keyOf(reader, id)));
+        }
+    }
+
+    /**
+     * Enregistre un audio PCM comme le fait la sauvegarde, en partageant un contenu identique.
+     */
+    private int save(byte[] pcm) throws Exception {
+        RecordingPipeline pipeline = new RecordingPipeline(4410, CAPTURE, AudioCodecs.forName(AudioCodecs.PCM),
+                                                           VadSettings.DISABLED);
+        for (int off = 0; off < pcm.length; off += 4410) {
+            byte[] buffer = pipeline.nextBuffer();
+            int n = Math.min(buffer.length, pcm.length - off);
+            System.arraycopy(pcm, off, buffer, 0, n);
+            pipeline.submit(buffer, n);
+        }
+        try (RecordingPipeline.Result result = pipeline.finish(); Connection conn = db.getConnection()) {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO recordings (name, timestamp, duration, audio, encryption_key, audio_hash, user_id, codec) " +
+                    "VALUES ('test', '2024-01-01 10:00:00', 1, X'', ?, ?, 1, ?)")) {
+                pstmt.setString(1, db.getKeys().wrap(result.getKey()));
+                SHA.bindDigest(pstmt, 2, result.getDigest());
+                pstmt.setString(3, result.getCodec().getName());
+                pstmt.executeUpdate();
+            }
+            int id = count(conn, "SELECT last_insert_rowid()");
+            RecordingAudio audio = db.getAudioStore();
+            if (!audio.shareExisting(conn, id, result.getDigest())) {
+                try (InputStream in = result.openEncrypted(); OutputStream out = audio.openWriter(conn, id, result.getDigest())) {
+                    in.transferTo(out);
+                }
+            }
+            return id;
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    private static boolean waitsFor(Thread thread, String method) {
+        for (StackTraceElement frame : thread.getStackTrace()) {
+            if (frame.getMethodName().equals(method)) return true;
+        }
+        return false;
+    }
+
+    private byte[] decrypt(Connection conn, int id) throws Exception {
+        try (InputStream in = AES.decryptStream(db.getAudioStore().openStream(conn, id),
+                                                db.getKeys().unwrap(keyOf(conn, id)))) {
+            return read(in);
+        }
+    }
+
+    private static String keyOf(Connection conn, int id) throws Exception {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT encryption_key FROM recordings WHERE id = ?")) {
+            pstmt.setInt(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                assertTrue(rs.next());
+                return rs.getString(1);
+            }
+        }
+    }
+
+    private static int contentOf(Connection conn, int id) throws Exception {
+        return count(conn, "SELECT content_id FROM recordings WHERE id = " + id);
+    }
+
+    private static int count(Connection conn, String sql) throws Exception {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static byte[] tone(int frames, double frequency) {
+        byte[] pcm = new byte[frames];
+        for (int i = 0; i < frames; i++) {
+            pcm[i] = (byte) Math.round(60 * Math.sin(2 * Math.PI * frequency * i / 44100.0));
+        }
+        return pcm;
+    }
+
+    private static byte[] read(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        in.transferTo(out);
+        return out.toByteArray();
+    }
+}
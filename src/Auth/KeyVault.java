@@ -0,0 +1,345 @@
+package Auth;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyStore;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+/**
+ * Chiffrement par enveloppe des clés d'enregistrement.
+ * La clé AES de chaque enregistrement est stockée dans {@code recordings.encryption_key}
+ * enveloppée (AES Key Wrap, RFC 3394) par une clé maîtresse, sous la forme
+ * {@code alias:enveloppe en Base64}. Les clés maîtresses sont conservées dans un magasin
+ * PKCS12 séparé de la base : la base seule ne permet plus de lire l'audio. Changer de clé
+ * maîtresse ne demande que de réenvelopper les clés, jamais de rechiffrer l'audio.
+ * <p>
+ * Les clés stockées en clair (Base64 seul) par les versions précédentes restent lisibles
+ * jusqu'à leur enveloppement par {@link #rewrapAll(Connection)}. Les clés désenveloppées
+ * sont gardées quelques minutes dans un {@link KeyCache}.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+final class KeyVault {
+
+    static final String KEYSTORE_TYPE = "PKCS12";
+    private static final String WRAP_TRANSFORMATION = "AESWrap";
+    private static final String ALIAS_PREFIX = "master-";
+    private static final char SEPARATOR = ':';
+    /** Nombre de clés désenveloppées gardées en mémoire */
+    static final int CACHE_SIZE = 1024;
+    /** Durée de vie d'une clé désenveloppée dans le cache */
+    static final long CACHE_TTL_MILLIS = 5 * 60 * 1000;
+    /** Nombre de clés réenveloppées par transaction */
+    static final int REWRAP_BATCH_SIZE = 256;
+
+    /** Fichier du magasin, null pour un magasin en mémoire */
+    private final Path file;
+    private final char[] password;
+    private final KeyStore store;
+    private final Map<String, SecretKey> masters = new ConcurrentHashMap<>();
+    private final KeyCache cache = new KeyCache(CACHE_SIZE, CACHE_TTL_MILLIS);
+    private volatile String currentAlias;
+
+    private KeyVault(Path file, char[] password, KeyStore store) {
+        this.file = file;
+        this.password = password;
+        this.store = store;
+    }
+
+    /**
+     * Ouvre le magasin de clés maîtresses, en le créant avec une première clé s'il n'existe pas.
+     *
+     * @param file Fichier PKCS12
+     * @param password Mot de passe du magasin et de ses clés
+     * @return Le coffre
+     * @throws AES.AESException Si le magasin ne peut pas être lu ou créé
+     */
+    static KeyVault open(Path file, char[] password) throws AES.AESException {
+        try {
+            KeyStore store = KeyStore.getInstance(KEYSTORE_TYPE);
+            if (Files.exists(file)) {
+                try (InputStream in = Files.newInputStream(file)) {
+                    store.load(in, password);
+                }
+            } else {
+                store.load(null, password);
+            }
+            KeyVault vault = new KeyVault(file, password, store);
+            vault.loadMasters();
+            if (vault.currentAlias == null) {
+                vault.newMasterKey();
+            }
+            return vault;
+        } catch (AES.AESException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AES.AESException("Failed to open key store " + file, e);
+        }
+    }
+
+    /**
+     * @return Un coffre dont la clé maîtresse ne vit qu'en mémoire, pour une base en mémoire
+     * @throws AES.AESException Si la clé ne peut pas être générée
+     */
+    static KeyVault inMemory() throws AES.AESException {
+        try {
+            KeyStore store = KeyStore.getInstance(KEYSTORE_TYPE);
+            store.load(null, null);
+            KeyVault vault = new KeyVault(null, "in-memory".toCharArray(), store);
+            vault.newMasterKey();
+            return vault;
+        } catch (AES.AESException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AES.AESException("Failed to create key store", e);
+        }
+    }
+
+    private void loadMasters() throws Exception {
+        int current = 0;
+        for (String alias : Collections.list(store.aliases())) {
+            if (!alias.startsWith(ALIAS_PREFIX) || !store.isKeyEntry(alias)) continue;
+            masters.put(alias, (SecretKey) store.getKey(alias, password));
+            int index = Integer.parseInt(alias.substring(ALIAS_PREFIX.length()));
+            if (index > current) {
+                current = index;
+                currentAlias = alias;
+            }
+        }
+    }
+
+    /** @return L'alias de la clé maîtresse utilisée pour envelopper */
+    String getCurrentAlias() {
+        return currentAlias;
+    }
+
+    /**
+     * Ajoute une clé maîtresse, qui enveloppe désormais les nouvelles clés. Les anciennes
+     * restent dans le magasin pour lire les clés qu'elles enveloppent encore.
+     *
+     * @return L'alias de la nouvelle clé
+     * @throws AES.AESException Si la clé ne peut pas être générée ou le magasin enregistré
+     */
+    synchronized String newMasterKey() throws AES.AESException {
+        // Clés ajoutées entre-temps par un autre processus : conservées dans le magasin réenregistré
+        reloadMasters();
+        int next = 1;
+        for (String alias : masters.keySet()) {
+            next = Math.max(next, Integer.parseInt(alias.substring(ALIAS_PREFIX.length())) + 1);
+        }
+        String alias = ALIAS_PREFIX + next;
+        SecretKey key = AES.generateSecretKey();
+        try {
+            store.setEntry(alias, new KeyStore.SecretKeyEntry(key), new KeyStore.PasswordProtection(password));
+            save();
+        } catch (Exception e) {
+            throw new AES.AESException("Failed to store master key " + alias, e);
+        }
+        masters.put(alias, key);
+        currentAlias = alias;
+        return alias;
+    }
+
+    /**
+     * Relit le magasin pour y prendre les clés maîtresses ajoutées par un autre processus
+     * ({@code AudioStoreTool new-master-key}) depuis l'ouverture. La plus récente devient la
+     * clé courante.
+     *
+     * @throws AES.AESException Si le magasin ne peut pas être relu
+     */
+    private synchronized void reloadMasters() throws AES.AESException {
+        if (file == null || !Files.exists(file)) return;
+        try {
+            KeyStore latest = KeyStore.getInstance(KEYSTORE_TYPE);
+            try (InputStream in = Files.newInputStream(file)) {
+                latest.load(in, password);
+            }
+            KeyStore.PasswordProtection protection = new KeyStore.PasswordProtection(password);
+            for (String alias : Collections.list(latest.aliases())) {
+                if (latest.isKeyEntry(alias) && !store.containsAlias(alias)) {
+                    store.setEntry(alias, latest.getEntry(alias, protection), protection);
+                }
+            }
+            loadMasters();
+        } catch (Exception e) {
+            throw new AES.AESException("Failed to reload key store " + file, e);
+        }
+    }
+
+    /**
+     * Enregistre le magasin par remplacement atomique : une coupure ne laisse pas de magasin à moitié écrit.
+     */
+    private void save() throws Exception {
+        if (file == null) return;
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                store.store(out, password);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Enveloppe une clé d'enregistrement avec la clé maîtresse courante.
+     *
+     * @param key Clé de l'enregistrement
+     * @return La valeur à stocker dans {@code recordings.encryption_key}
+     * @throws AES.AESException Si l'enveloppement échoue
+     */
+    String wrap(SecretKey key) throws AES.AESException {
+        String alias = currentAlias;
+        return alias + SEPARATOR + wrapWith(masters.get(alias), key);
+    }
+
+    /**
+     * Retourne la clé d'enregistrement correspondant à une valeur stockée, enveloppée ou non.
+     *
+     * @param stored Valeur de {@code recordings.encryption_key}
+     * @return La clé
+     * @throws AES.AESException Si la clé maîtresse est inconnue ou l'enveloppe altérée
+     */
+    SecretKey unwrap(String stored) throws AES.AESException {
+        return cache.get(stored, this::decode);
+    }
+
+    private SecretKey decode(String stored) throws AES.AESException {
+        int separator = stored.indexOf(SEPARATOR);
+        if (separator < 0) {
+            // Clé en clair des versions précédentes
+            return AES.decodeKeyFromBase64(stored);
+        }
+        String alias = stored.substring(0, separator);
+        SecretKey master = masters.get(alias);
+        if (master == null) {
+            reloadMasters();
+            master = masters.get(alias);
+        }
+        if (master == null) {
+            throw new AES.AESException("Unknown master key: " + alias, null);
+        }
+        return unwrapWith(master, stored.substring(separator + 1));
+    }
+
+    /**
+     * Enveloppe une clé avec une clé de chiffrement de clés quelconque.
+     *
+     * @param kek Clé qui enveloppe
+     * @param key Clé enveloppée
+     * @return L'enveloppe en Base64
+     * @throws AES.AESException Si l'enveloppement échoue
+     */
+    static String wrapWith(SecretKey kek, SecretKey key) throws AES.AESException {
+        try {
+            Cipher cipher = Cipher.getInstance(WRAP_TRANSFORMATION);
+            cipher.init(Cipher.WRAP_MODE, kek);
+            return Base64.getEncoder().encodeToString(cipher.wrap(key));
+        } catch (Exception e) {
+            throw new AES.AESException("Failed to wrap key", e);
+        }
+    }
+
+    /**
+     * @param kek Clé qui a enveloppé
+     * @param wrapped Enveloppe en Base64 produite par {@link #wrapWith(SecretKey, SecretKey)}
+     * @return La clé enveloppée
+     * @throws AES.AESException Si la clé ne correspond pas ou l'enveloppe est altérée
+     */
+    static SecretKey unwrapWith(SecretKey kek, String wrapped) throws AES.AESException {
+        try {
+            Cipher cipher = Cipher.getInstance(WRAP_TRANSFORMATION);
+            cipher.init(Cipher.UNWRAP_MODE, kek);
+            return (SecretKey) cipher.unwrap(Base64.getDecoder().decode(wrapped), "AES", Cipher.SECRET_KEY);
+        } catch (Exception e) {
+            throw new AES.AESException("Failed to unwrap key", e);
+        }
+    }
+
+    /**
+     * Enveloppe avec la clé maîtresse courante les clés stockées en clair ou enveloppées par
+     * une ancienne clé maîtresse, par lots d'une transaction. Les enregistrements partageant
+     * un contenu gardent la même valeur stockée (l'enveloppement est déterministe).
+     *
+     * @param conn Connexion en mode auto-commit
+     * @return Le nombre de clés réenveloppées
+     * @throws SQLException En cas d'erreur d'accès à la base
+     * @throws AES.AESException Si une clé ne peut pas être lue ou enveloppée
+     */
+    int rewrapAll(Connection conn) throws SQLException, AES.AESException {
+        String prefix = currentAlias + SEPARATOR;
+        int lastId = 0;
+        int rewrapped = 0;
+        while (true) {
+            List<Integer> ids = new ArrayList<>(REWRAP_BATCH_SIZE);
+            List<String> keys = new ArrayList<>(REWRAP_BATCH_SIZE);
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT id, encryption_key FROM recordings WHERE id > ? AND substr(encryption_key, 1, ?) <> ? " +
+                    "ORDER BY id LIMIT ?")) {
+                pstmt.setInt(1, lastId);
+                pstmt.setInt(2, prefix.length());
+                pstmt.setString(3, prefix);
+                pstmt.setInt(4, REWRAP_BATCH_SIZE);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getInt(1));
+                        keys.add(rs.getString(2));
+                    }
+                }
+            }
+            if (ids.isEmpty()) return rewrapped;
+            lastId = ids.get(ids.size() - 1);
+
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "UPDATE recordings SET encryption_key = ? WHERE id = ? AND encryption_key = ?")) {
+                for (int i = 0; i < ids.size(); i++) {
+                    String stored = keys.get(i);
+                    pstmt.setString(1, wrap(unwrap(stored)));
+                    pstmt.setInt(2, ids.get(i));
+                    // Une clé changée entre-temps (changement de clés) est déjà à jour
+                    pstmt.setString(3, stored);
+                    rewrapped += pstmt.executeUpdate();
+                }
+                conn.commit();
+            } catch (SQLException | AES.AESException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * @param stored Valeur de {@code recordings.encryption_key}
+     * @return true si la clé est enveloppée, false si elle est stockée en clair
+     */
+    static boolean isWrapped(String stored) {
+        return stored.indexOf(SEPARATOR) >= 0;
+    }
+
+    /** @return Le cache des clés désenveloppées */
+    KeyCache cache() {
+        return cache;
+    }
+}
@@ -0,0 +1,170 @@
+package Auth;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import javax.crypto.SecretKey;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeyVaultTest {
+
+    private static final char[] PASSWORD = "test".toCharArray();
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("keyvault");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testWrapRoundTripAndReopen() throws Exception {
+        Path file = dir.resolve("users.keystore");
+        KeyVault vault = KeyVault.open(file, PASSWORD);
+        assertTrue(Files.exists(file));
+        SecretKey key = AES.generateSecretKey();
+        String wrapped = vault.wrap(key);
+
+        assertTrue(wrapped.startsWith("master-1:"));
+        assertTrue(KeyVault.isWrapped(wrapped));
+        assertFalse(wrapped.contains(AES.encodeKeyToBase64(key)));
+        assertEquals(key, vault.unwrap(wrapped));
+
+        // Un autre processus relit la même clé maîtresse depuis le magasin
+        KeyVault reopened = KeyVault.open(file, PASSWORD);
+        assertEquals("master-1", reopened.getCurrentAlias());
+        assertEquals(key, reopened.unwrap(wrapped));
+    }
+
+    @Test
+    public void testLegacyPlainKeyIsStillReadable() throws Exception {
+        KeyVault vault = KeyVault.inMemory();
+        SecretKey key = AES.generateSecretKey();
+        String legacy = AES.encodeKeyToBase64(key);
+        assertFalse(KeyVault.isWrapped(legacy));
+        assertEquals(key, vault.unwrap(legacy));
+    }
+
+    @Test(expected = AES.AESException.class)
+    public void testKeyWrappedByAnotherStoreIsRejected() throws Exception {
+        String wrapped = KeyVault.inMemory().wrap(AES.generateSecretKey());
+        KeyVault.inMemory().unwrap(wrapped);
+    }
+
+    @Test
+    public void testMasterKeyAddedByAnotherProcess() throws Exception {
+        Path file = dir.resolve("users.keystore");
+        KeyVault app = KeyVault.open(file, PASSWORD);
+        KeyVault tool = KeyVault.open(file, PASSWORD);
+        SecretKey key = AES.generateSecretKey();
+
+        // new-master-key lancé pendant que l'application est ouverte
+        assertEquals("master-2", tool.newMasterKey());
+        String wrapped = tool.wrap(key);
+        assertEquals(key, app.unwrap(wrapped));
+        assertEquals("master-2", app.getCurrentAlias());
+
+        // Une clé ajoutée par l'application ne fait pas disparaître celles de l'outil du magasin
+        assertEquals("master-3", tool.newMasterKey());
+        SecretKey other = AES.generateSecretKey();
+        String wrappedByTool = tool.wrap(other);
+        assertEquals("master-4", app.newMasterKey());
+        KeyVault reopened = KeyVault.open(file, PASSWORD);
+        assertEquals("master-4", reopened.getCurrentAlias());
+        assertEquals(key, reopened.unwrap(wrapped));
+        assertEquals(other, reopened.unwrap(wrappedByTool));
+    }
+
+    @Test
+    public void testNewMasterKeyRewrapsStoredKeys() throws Exception {
+        Database db = new Database("jdbc:sqlite:" + dir.resolve("users.db"), 2);
+        try (Connection conn = db.getConnection()) {
+            KeyVault vault = db.getKeys();
+            SecretKey legacyKey = AES.generateSecretKey();
+            SecretKey wrappedKey = AES.generateSecretKey();
+            int legacy = insert(conn, AES.encodeKeyToBase64(legacyKey));
+            int wrapped = insert(conn, vault.wrap(wrappedKey));
+            String oldWrap = keyOf(conn, wrapped);
+
+            assertEquals("master-2", vault.newMasterKey());
+            // Les clés enveloppées par l'ancienne clé maîtresse restent lisibles
+            assertEquals(wrappedKey, vault.unwrap(oldWrap));
+
+            assertEquals(2, vault.rewrapAll(conn));
+            assertTrue(keyOf(conn, legacy).startsWith("master-2:"));
+            assertTrue(keyOf(conn, wrapped).startsWith("master-2:"));
+            assertEquals(legacyKey, vault.unwrap(keyOf(conn, legacy)));
+            assertEquals(wrappedKey, vault.unwrap(keyOf(conn, wrapped)));
+            assertEquals(0, vault.rewrapAll(conn));
+        } finally {
+            db.close();
+        }
+        // Le magasin a été écrit à côté de la base
+        assertEquals("master-2", KeyVault.open(dir.resolve("users.keystore"), "moustass".toCharArray())
+                                         .getCurrentAlias());
+    }
+
+    @Test
+    public void testCacheIsBoundedAndExpires() throws Exception {
+        int[] loads = {0};
+        KeyCache.Loader loader = stored -> {
+            loads[0]++;
+            return AES.generateSecretKey();
+        };
+        KeyCache cache = new KeyCache(2, 60_000);
+        SecretKey a = cache.get("a", loader);
+        cache.get("b", loader);
+        assertSame(a, cache.get("a", loader));
+        cache.get("c", loader);
+        assertEquals(2, cache.size());
+        assertEquals(3, loads[0]);
+        // "b" était la moins récemment utilisée
+        cache.get("b", loader);
+        assertEquals(4, loads[0]);
+
+        KeyCache expiring = new KeyCache(2, 0);
+        SecretKey first = expiring.get("a", loader);
+        assertNotSame(first, expiring.get("a", loader));
+    }
+
+    private static int insert(Connection conn, String key) throws Exception {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO recordings (name, timestamp, duration, audio, encryption_key, audio_hash, user_id) " +
+                "VALUES ('test', '2024-01-01 10:00:00', 1, X'', ?, X'00', 1)")) {
+            pstmt.setString(1, key);
+            pstmt.executeUpdate();
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT last_insert_rowid()");
+             ResultSet rs = pstmt.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static String keyOf(Connection conn, int id) throws Exception {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT encryption_key FROM recordings WHERE id = ?")) {
+            pstmt.setInt(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                assertTrue(rs.next());
+                return rs.getString(1);
+            }
+        }
+    }
+}
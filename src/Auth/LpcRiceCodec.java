@@ -0,0 +1,217 @@
+package Auth;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Codec sans perte : prédiction linéaire à coefficients fixes (ordres 0 à 3, comme FLAC)
+ * puis codage de Rice des résidus. Pour chaque canal d'un bloc, l'ordre donnant les plus
+ * petits résidus est retenu ; un bloc de silence ne coûte que quelques octets.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+final class LpcRiceCodec extends BlockCodec {
+
+    private static final int MAX_ORDER = 3;
+    /** Paramètre de Rice signalant des résidus tous nuls */
+    private static final int ZERO_RESIDUALS = 0xff;
+    private static final int MAX_RICE_PARAMETER = 30;
+    /** Quotient à partir duquel le résidu est écrit en clair sur 32 bits */
+    private static final int ESCAPE = 24;
+
+    @Override
+    public String getName() {
+        return AudioCodecs.LPC;
+    }
+
+    @Override
+    public boolean isLossless() {
+        return true;
+    }
+
+    @Override
+    void encodeBlock(int[] samples, int frames, int channels, int bits, DataOutputStream out) throws IOException {
+        int[] x = new int[frames];
+        int[] residual = new int[frames];
+        BitWriter writer = new BitWriter(out);
+        for (int ch = 0; ch < channels; ch++) {
+            for (int i = 0; i < frames; i++) {
+                x[i] = samples[i * channels + ch];
+            }
+            int order = bestOrder(x, frames);
+            long sum = 0;
+            for (int i = order; i < frames; i++) {
+                int e = x[i] - predict(x, i, order);
+                residual[i] = e << 1 ^ e >> 31;
+                sum += residual[i];
+            }
+
+            writer.write(order, 8);
+            for (int i = 0; i < order; i++) {
+                writer.write(x[i], bits);
+            }
+            if (sum == 0) {
+                writer.write(ZERO_RESIDUALS, 8);
+                continue;
+            }
+            int k = riceParameter(sum, frames - order);
+            writer.write(k, 8);
+            for (int i = order; i < frames; i++) {
+                int u = residual[i];
+                int q = u >>> k;
+                if (q < ESCAPE) {
+                    writer.write((1 << q) - 1 << 1, q + 1);
+                    writer.write(u, k);
+                } else {
+                    writer.write((1 << ESCAPE) - 1, ESCAPE);
+                    writer.write(u, 32);
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    @Override
+    void decodeBlock(DataInputStream in, int[] samples, int frames, int channels, int bits) throws IOException {
+        int[] x = new int[frames];
+        BitReader reader = new BitReader(in);
+        int shift = 32 - bits;
+        for (int ch = 0; ch < channels; ch++) {
+            int order = reader.read(8);
+            if (order > MAX_ORDER || order > frames) throw new IOException("Corrupted LPC block");
+            for (int i = 0; i < order; i++) {
+                x[i] = reader.read(bits) << shift >> shift;
+            }
+            int k = reader.read(8);
+            if (k != ZERO_RESIDUALS && k > MAX_RICE_PARAMETER) throw new IOException("Corrupted LPC block");
+            for (int i = order; i < frames; i++) {
+                int e = 0;
+                if (k != ZERO_RESIDUALS) {
+                    int q = 0;
+                    while (q < ESCAPE && reader.read(1) == 1) {
+                        q++;
+                    }
+                    int u = q == ESCAPE ? reader.read(32) : q << k | reader.read(k);
+                    e = u >>> 1 ^ -(u & 1);
+                }
+                x[i] = predict(x, i, order) + e;
+            }
+            for (int i = 0; i < frames; i++) {
+                samples[i * channels + ch] = clamp(x[i], bits);
+            }
+        }
+    }
+
+    /**
+     * Prédiction polynomiale d'ordre donné à partir des échantillons précédents.
+     */
+    private static int predict(int[] x, int i, int order) {
+        switch (order) {
+            case 0:
+                return 0;
+            case 1:
+                return x[i - 1];
+            case 2:
+                return 2 * x[i - 1] - x[i - 2];
+            default:
+                return 3 * x[i - 1] - 3 * x[i - 2] + x[i - 3];
+        }
+    }
+
+    /**
+     * Retient l'ordre dont la somme des résidus absolus est la plus faible.
+     */
+    private static int bestOrder(int[] x, int frames) {
+        long[] cost = new long[MAX_ORDER + 1];
+        for (int i = MAX_ORDER; i < frames; i++) {
+            int d0 = x[i];
+            int d1 = d0 - x[i - 1];
+            int d2 = d1 - (x[i - 1] - x[i - 2]);
+            int d3 = d2 - (x[i - 1] - 2 * x[i - 2] + x[i - 3]);
+            cost[0] += Math.abs(d0);
+            cost[1] += Math.abs(d1);
+            cost[2] += Math.abs(d2);
+            cost[3] += Math.abs(d3);
+        }
+        int best = 0;
+        for (int order = 1; order <= Math.min(MAX_ORDER, frames); order++) {
+            if (cost[order] < cost[best]) best = order;
+        }
+        return best;
+    }
+
+    /**
+     * Paramètre de Rice proche du logarithme de la moyenne des résidus.
+     */
+    private static int riceParameter(long sum, int count) {
+        int k = 0;
+        while (k < MAX_RICE_PARAMETER && ((long) count << (k + 1)) <= sum) {
+            k++;
+        }
+        return k;
+    }
+
+    /**
+     * Écriture bit à bit, octet par octet.
+     */
+    private static final class BitWriter {
+        private final OutputStream out;
+        private long acc;
+        private int count;
+
+        BitWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        /** Écrit les {@code bits} bits de poids faible de {@code value} (32 au plus) */
+        void write(int value, int bits) throws IOException {
+            acc = acc << bits | (value & ((1L << bits) - 1));
+            count += bits;
+            while (count >= 8) {
+                count -= 8;
+                out.write((int) (acc >>> count));
+            }
+            acc &= (1L << count) - 1;
+        }
+
+        void flush() throws IOException {
+            if (count > 0) {
+                out.write((int) (acc << (8 - count)));
+                acc = 0;
+                count = 0;
+            }
+        }
+    }
+
+    /**
+     * Lecture bit à bit.
+     */
+    private static final class BitReader {
+        private final InputStream in;
+        private long acc;
+        private int count;
+
+        BitReader(InputStream in) {
+            this.in = in;
+        }
+
+        /** Lit {@code bits} bits (32 au plus) */
+        int read(int bits) throws IOException {
+            while (count < bits) {
+                int b = in.read();
+                if (b < 0) throw new EOFException("Truncated LPC block");
+                acc = acc << 8 | b;
+                count += 8;
+            }
+            count -= bits;
+            int value = (int) ((acc >>> count) & ((1L << bits) - 1));
+            acc &= (1L << count) - 1;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package Auth;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * G.711 μ-law : un octet par échantillon, avec une quantification logarithmique.
+ * Réduit de moitié l'audio 16 bits ; sur l'audio 8 bits capturé par défaut, la taille
+ * est inchangée et le codec n'apporte qu'une perte.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+final class MuLawCodec extends BlockCodec {
+
+    private static final int BIAS = 0x84;
+    private static final int CLIP = 32635;
+
+    /** Valeur linéaire 16 bits de chaque octet μ-law */
+    private static final short[] DECODE = new short[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int u = ~i & 0xff;
+            int exponent = (u >> 4) & 0x07;
+            int t = (((u & 0x0f) << 3) + BIAS) << exponent;
+            DECODE[i] = (short) ((u & 0x80) != 0 ? BIAS - t : t - BIAS);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return AudioCodecs.ULAW;
+    }
+
+    @Override
+    public boolean isLossless() {
+        return false;
+    }
+
+    @Override
+    void encodeBlock(int[] samples, int frames, int channels, int bits, DataOutputStream out) throws IOException {
+        int scale = 16 - bits;
+        for (int i = 0; i < frames * channels; i++) {
+            out.writeByte(encode(samples[i] << scale));
+        }
+    }
+
+    @Override
+    void decodeBlock(DataInputStream in, int[] samples, int frames, int channels, int bits) throws IOException {
+        int scale = 16 - bits;
+        int round = scale == 0 ? 0 : 1 << (scale - 1);
+        for (int i = 0; i < frames * channels; i++) {
+            samples[i] = clamp((DECODE[in.readUnsignedByte()] + round) >> scale, bits);
+        }
+    }
+
+    /**
+     * Encode un échantillon linéaire 16 bits.
+     */
+    static int encode(int sample) {
+        int sign = 0;
+        if (sample < 0) {
+            sign = 0x80;
+            sample = -sample;
+        }
+        if (sample > CLIP) sample = CLIP;
+        sample += BIAS;
+        int exponent = 7;
+        for (int mask = 0x4000; (sample & mask) == 0 && exponent > 0; mask >>= 1) {
+            exponent--;
+        }
+        int mantissa = (sample >> (exponent + 3)) & 0x0f;
+        return ~(sign | exponent << 4 | mantissa) & 0xff;
+    }
+
+    /**
+     * Décode un octet μ-law en échantillon linéaire 16 bits.
+     */
+    static int decode(int ulaw) {
+        return DECODE[ulaw & 0xff];
+    }
+}
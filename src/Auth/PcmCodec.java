@@ -0,0 +1,35 @@
+package Auth;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Codec neutre : l'audio est stocké tel que capturé.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+final class PcmCodec implements AudioCodec {
+
+    @Override
+    public String getName() {
+        return AudioCodecs.PCM;
+    }
+
+    @Override
+    public boolean isLossless() {
+        return true;
+    }
+
+    @Override
+    public OutputStream encode(OutputStream out, AudioFormat format) {
+        return out;
+    }
+
+    @Override
+    public InputStream decode(InputStream in, AudioFormat format) {
+        return in;
+    }
+}
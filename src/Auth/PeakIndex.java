@@ -0,0 +1,321 @@
+package Auth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.crypto.SecretKey;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Index de crêtes d'un enregistrement, conservé dans {@code recording_peaks}.
+ * Pour chaque tranche d'audio, le minimum et le maximum des échantillons (ramenés sur 8 bits)
+ * sont gardés, à plusieurs résolutions : le niveau 0 est un aperçu d'au plus
+ * {@link #OVERVIEW_PEAKS} tranches, chaque niveau suivant double la résolution jusqu'à des
+ * tranches de {@link #BASE_FRAMES} trames. L'index est calculé pendant l'enregistrement :
+ * afficher la forme d'onde ne demande jamais de déchiffrer l'audio.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+public final class PeakIndex {
+
+    /** Trames par tranche au niveau le plus fin (23 ms à 44,1 kHz) */
+    static final int BASE_FRAMES = 1024;
+    /** Nombre maximal de tranches de l'aperçu affiché dans la liste */
+    static final int OVERVIEW_PEAKS = 100;
+
+    /** Tranches de chaque niveau, du plus grossier au plus fin : min puis max, en octets signés */
+    private final byte[][] levels;
+
+    private PeakIndex(byte[][] levels) {
+        this.levels = levels;
+    }
+
+    /** @return Le nombre de niveaux de résolution */
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    /**
+     * @param level Niveau, 0 pour l'aperçu
+     * @return Le nombre de trames couvertes par une tranche de ce niveau
+     */
+    public int getFramesPerPeak(int level) {
+        return BASE_FRAMES << (levels.length - 1 - level);
+    }
+
+    /**
+     * @param level Niveau, 0 pour l'aperçu
+     * @return Les tranches de ce niveau, deux octets (min, max) par tranche ; à ne pas modifier
+     */
+    public byte[] getPeaks(int level) {
+        return levels[level];
+    }
+
+    /**
+     * Choisit le niveau le plus grossier ayant au moins le nombre de tranches demandé.
+     *
+     * @param peaks Nombre de tranches souhaité, par exemple la largeur d'affichage en pixels
+     * @return Le niveau, ou le plus fin si aucun n'est assez détaillé
+     */
+    public int levelFor(int peaks) {
+        for (int level = 0; level < levels.length; level++) {
+            if (levels[level].length / 2 >= peaks) return level;
+        }
+        return levels.length - 1;
+    }
+
+    /**
+     * Enregistre l'index d'un enregistrement, dans la transaction en cours.
+     *
+     * @param conn Connexion à la base de données
+     * @param recordingId Identifiant de l'enregistrement
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    public void save(Connection conn, int recordingId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT OR REPLACE INTO recording_peaks (recording_id, level, frames_per_peak, peaks) VALUES (?, ?, ?, ?)")) {
+            for (int level = 0; level < levels.length; level++) {
+                pstmt.setInt(1, recordingId);
+                pstmt.setInt(2, level);
+                pstmt.setInt(3, getFramesPerPeak(level));
+                pstmt.setBytes(4, levels[level]);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * Charge l'index complet d'un enregistrement.
+     *
+     * @param conn Connexion à la base de données
+     * @param recordingId Identifiant de l'enregistrement
+     * @return L'index, ou null si l'enregistrement n'en a pas
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    public static PeakIndex load(Connection conn, int recordingId) throws SQLException {
+        List<byte[]> levels = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT peaks FROM recording_peaks WHERE recording_id = ? ORDER BY level")) {
+            pstmt.setInt(1, recordingId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    levels.add(rs.getBytes(1));
+                }
+            }
+        }
+        return levels.isEmpty() ? null : new PeakIndex(levels.toArray(new byte[0][]));
+    }
+
+    /**
+     * Supprime l'index d'un enregistrement.
+     *
+     * @param conn Connexion à la base de données
+     * @param recordingId Identifiant de l'enregistrement
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    public static void delete(Connection conn, int recordingId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM recording_peaks WHERE recording_id = ?")) {
+            pstmt.setInt(1, recordingId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Calcule l'index des enregistrements antérieurs qui n'en ont pas, en déchiffrant leur audio.
+     * Chaque index est enregistré dans sa propre transaction ; la commande peut être relancée.
+     *
+     * @param conn Connexion en mode auto-commit
+     * @param audio Stockage des données audio
+     * @param keys Coffre des clés maîtresses
+     * @param format Format PCM des enregistrements
+     * @return Le nombre d'index calculés
+     * @throws SQLException En cas d'erreur d'accès à la base
+     * @throws IOException Si un enregistrement ne peut pas être lu
+     * @throws AES.AESException Si une clé stockée est invalide
+     */
+    static int buildMissing(Connection conn, AudioStore audio, KeyVault keys, AudioFormat format)
+            throws SQLException, IOException, AES.AESException {
+        List<Integer> ids = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id FROM recordings r WHERE NOT EXISTS " +
+                     "(SELECT 1 FROM recording_peaks p WHERE p.recording_id = r.id) ORDER BY id")) {
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        }
+        int built = 0;
+        for (int id : ids) {
+            Builder builder = new Builder(OutputStream.nullOutputStream(), format);
+            // Clé et données lues dans le même état de la base, même pendant un changement de clés
+            conn.setAutoCommit(false);
+            try {
+                SecretKey key;
+                AudioCodec codec;
+                try (PreparedStatement pstmt = conn.prepareStatement("SELECT encryption_key, codec FROM recordings WHERE id = ?")) {
+                    pstmt.setInt(1, id);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        if (!rs.next()) continue;
+                        key = keys.unwrap(rs.getString(1));
+                        codec = AudioCodecs.forName(rs.getString(2));
+                    }
+                }
+                try (InputStream in = codec.decode(AES.decryptStream(audio.openStream(conn, id), key), format)) {
+                    in.transferTo(builder);
+                }
+            } finally {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+            conn.setAutoCommit(false);
+            try {
+                builder.build().save(conn, id);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            built++;
+        }
+        return built;
+    }
+
+    /**
+     * Réduit de moitié la résolution d'un niveau en fusionnant les tranches deux à deux.
+     */
+    private static byte[] halve(byte[] peaks) {
+        int count = peaks.length / 2;
+        byte[] half = new byte[(count + 1) / 2 * 2];
+        for (int i = 0; i < count; i += 2) {
+            int j = i + 1 < count ? i + 1 : i;
+            half[i] = (byte) Math.min(peaks[2 * i], peaks[2 * j]);
+            half[i + 1] = (byte) Math.max(peaks[2 * i + 1], peaks[2 * j + 1]);
+        }
+        return half;
+    }
+
+    /**
+     * Transmet l'audio PCM écrit à un flux et en calcule l'index de crêtes au passage.
+     * Seul le tableau des tranches du niveau le plus fin grandit au fil de l'écriture.
+     */
+    static final class Builder extends OutputStream {
+        private final OutputStream out;
+        private final BlockCodec.Samples format;
+        private final int sampleBytes;
+        /** Ramène un échantillon sur 8 bits */
+        private final int shift;
+        private final int samplesPerPeak;
+        /** Octets d'un échantillon coupé entre deux écritures */
+        private final byte[] carry;
+        private int carryFill;
+
+        private byte[] peaks = new byte[256];
+        private int peakBytes;
+        private int min = Byte.MAX_VALUE;
+        private int max = Byte.MIN_VALUE;
+        private int samples;
+
+        /**
+         * @param out Destination de l'audio
+         * @param format Format PCM de l'audio
+         */
+        Builder(OutputStream out, AudioFormat format) {
+            this.out = out;
+            this.format = new BlockCodec.Samples(format);
+            this.sampleBytes = this.format.bits / 8;
+            this.shift = this.format.bits - 8;
+            this.samplesPerPeak = BASE_FRAMES * this.format.channels;
+            this.carry = new byte[sampleBytes];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            int end = off + len;
+            while (carryFill > 0 && off < end) {
+                carry[carryFill++] = b[off++];
+                if (carryFill == sampleBytes) {
+                    add(format.get(carry, 0));
+                    carryFill = 0;
+                }
+            }
+            for (; off + sampleBytes <= end; off += sampleBytes) {
+                add(format.get(b, off));
+            }
+            while (off < end) {
+                carry[carryFill++] = b[off++];
+            }
+        }
+
+        private void add(int sample) {
+            int v = sample >> shift;
+            if (v < min) min = v;
+            if (v > max) max = v;
+            if (++samples == samplesPerPeak) {
+                endPeak();
+            }
+        }
+
+        private void endPeak() {
+            if (peakBytes == peaks.length) {
+                peaks = Arrays.copyOf(peaks, peaks.length * 2);
+            }
+            peaks[peakBytes++] = (byte) min;
+            peaks[peakBytes++] = (byte) max;
+            min = Byte.MAX_VALUE;
+            max = Byte.MIN_VALUE;
+            samples = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        /**
+         * Termine l'index : la dernière tranche incomplète est comptée, puis les niveaux
+         * plus grossiers sont calculés jusqu'à l'aperçu.
+         *
+         * @return L'index de l'audio écrit
+         */
+        PeakIndex build() {
+            if (samples > 0) {
+                endPeak();
+            }
+            List<byte[]> levels = new ArrayList<>();
+            byte[] level = Arrays.copyOf(peaks, peakBytes);
+            levels.add(level);
+            while (level.length / 2 > OVERVIEW_PEAKS) {
+                level = halve(level);
+                levels.add(level);
+            }
+            byte[][] ordered = new byte[levels.size()][];
+            for (int i = 0; i < ordered.length; i++) {
+                ordered[i] = levels.get(ordered.length - 1 - i);
+            }
+            return new PeakIndex(ordered);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package Auth;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.Connection;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.Test;
+
+public class PeakIndexTest {
+
+    private static final AudioFormat CAPTURE = new AudioFormat(44100, 8, 1, true, true);
+
+    @Test
+    public void testLevelsDoubleInResolutionUpToBaseFrames() throws Exception {
+        int frames = 44100 * 60;
+        PeakIndex index = build(CAPTURE, ramp(frames), 4410);
+
+        int finest = index.getLevelCount() - 1;
+        assertEquals(PeakIndex.BASE_FRAMES, index.getFramesPerPeak(finest));
+        assertEquals((frames + PeakIndex.BASE_FRAMES - 1) / PeakIndex.BASE_FRAMES, index.getPeaks(finest).length / 2);
+        assertTrue(index.getPeaks(0).length / 2 <= PeakIndex.OVERVIEW_PEAKS);
+        assertTrue(index.getPeaks(0).length / 2 > PeakIndex.OVERVIEW_PEAKS / 2);
+        for (int level = 1; level < index.getLevelCount(); level++) {
+            assertEquals(index.getFramesPerPeak(level - 1), 2 * index.getFramesPerPeak(level));
+            assertEquals(index.getPeaks(level - 1).length / 2, (index.getPeaks(level).length / 2 + 1) / 2);
+        }
+        // Une minute d'audio tient en quelques kilo-octets
+        int total = 0;
+        for (int level = 0; level < index.getLevelCount(); level++) {
+            total += index.getPeaks(level).length;
+        }
+        assertTrue(total < 12 * 1024);
+    }
+
+    @Test
+    public void testPeaksHoldMinimumAndMaximum() throws Exception {
+        byte[] pcm = new byte[PeakIndex.BASE_FRAMES * 3];
+        pcm[10] = 90;
+        pcm[20] = -70;
+        pcm[PeakIndex.BASE_FRAMES * 2 + 5] = 3;
+        PeakIndex index = build(CAPTURE, pcm, 7);
+
+        assertArrayEquals(new byte[] {-70, 90, 0, 0, 0, 3}, index.getPeaks(index.getLevelCount() - 1));
+    }
+
+    @Test
+    public void testSixteenBitSamplesSplitAcrossWrites() throws Exception {
+        AudioFormat stereo = new AudioFormat(44100, 16, 2, true, false);
+        BlockCodec.Samples samples = new BlockCodec.Samples(stereo);
+        byte[] pcm = new byte[PeakIndex.BASE_FRAMES * samples.frameSize];
+        samples.put(pcm, 0, 32000);
+        samples.put(pcm, 6, -12800);
+        // Écritures d'un nombre impair d'octets : les échantillons sont coupés
+        PeakIndex index = build(stereo, pcm, 3);
+
+        assertArrayEquals(new byte[] {-50, 125}, index.getPeaks(0));
+    }
+
+    @Test
+    public void testLevelForWidth() throws Exception {
+        PeakIndex index = build(CAPTURE, ramp(44100 * 60), 44100);
+        assertEquals(0, index.levelFor(1));
+        assertEquals(0, index.levelFor(index.getPeaks(0).length / 2));
+        int level = index.levelFor(800);
+        assertTrue(index.getPeaks(level).length / 2 >= 800);
+        assertTrue(index.getPeaks(level - 1).length / 2 < 800);
+        assertEquals(index.getLevelCount() - 1, index.levelFor(1_000_000));
+    }
+
+    @Test
+    public void testEmptyRecording() throws Exception {
+        PeakIndex index = build(CAPTURE, new byte[0], 1);
+        assertEquals(1, index.getLevelCount());
+        assertEquals(0, index.getPeaks(0).length);
+    }
+
+    @Test
+    public void testSaveLoadDelete() throws Exception {
+        Database db = new Database("jdbc:sqlite:file:peaks?mode=memory&cache=shared", 1);
+        try (Connection conn = db.getConnection()) {
+            PeakIndex index = build(CAPTURE, ramp(44100 * 10), 4410);
+            index.save(conn, 7);
+            PeakIndex loaded = PeakIndex.load(conn, 7);
+            assertEquals(index.getLevelCount(), loaded.getLevelCount());
+            for (int level = 0; level < index.getLevelCount(); level++) {
+                assertArrayEquals(index.getPeaks(level), loaded.getPeaks(level));
+                assertEquals(index.getFramesPerPeak(level), loaded.getFramesPerPeak(level));
+            }
+            assertNull(PeakIndex.load(conn, 8));
+            PeakIndex.delete(conn, 7);
+            assertNull(PeakIndex.load(conn, 7));
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void testPipelineIndexesKeptAudio() throws Exception {
+        byte[] pcm = ramp(100000);
+        RecordingPipeline pipeline = new RecordingPipeline(4410, CAPTURE, AudioCodecs.forName(AudioCodecs.LPC),
+                                                           VadSettings.DISABLED);
+        for (int off = 0; off < pcm.length; off += 4410) {
+            byte[] buffer = pipeline.nextBuffer();
+            int n = Math.min(buffer.length, pcm.length - off);
+            System.arraycopy(pcm, off, buffer, 0, n);
+            pipeline.submit(buffer, n);
+        }
+        try (RecordingPipeline.Result result = pipeline.finish()) {
+            PeakIndex expected = build(CAPTURE, pcm, pcm.length);
+            PeakIndex actual = result.getPeaks();
+            assertEquals(expected.getLevelCount(), actual.getLevelCount());
+            for (int level = 0; level < expected.getLevelCount(); level++) {
+                assertArrayEquals(expected.getPeaks(level), actual.getPeaks(level));
+            }
+        }
+    }
+
+    private static PeakIndex build(AudioFormat format, byte[] pcm, int writeSize) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PeakIndex.Builder builder = new PeakIndex.Builder(out, format);
+        for (int off = 0; off < pcm.length; off += writeSize) {
+            builder.write(pcm, off, Math.min(writeSize, pcm.length - off));
+        }
+        builder.close();
+        assertArrayEquals(pcm, out.toByteArray());
+        return builder.build();
+    }
+
+    /** Dents de scie sur toute l'échelle */
+    private static byte[] ramp(int frames) {
+        byte[] pcm = new byte[frames];
+        for (int i = 0; i < frames; i++) {
+            pcm[i] = (byte) i;
+        }
+        return pcm;
+    }
+}
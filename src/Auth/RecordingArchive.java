@@ -0,0 +1,604 @@
+package Auth;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.spec.KeySpec;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Archive portable d'enregistrements, pour les déplacer d'une installation à une autre.
+ * <p>
+ * L'archive est un flux séquentiel : un en-tête, puis pour chaque enregistrement ses
+ * métadonnées, son hash, ses index de crêtes et de recherche et ses données chiffrées telles
+ * qu'elles sont stockées, puis une marque de fin avec le nombre d'enregistrements. Les clés
+ * d'enregistrement y sont enveloppées par une clé dérivée d'une phrase secrète (PBKDF2), et non
+ * par la clé maîtresse de l'installation d'origine : l'audio n'est jamais rechiffré, seules
+ * ses clés sont réenveloppées à l'import.
+ * <p>
+ * Plusieurs enregistrements sont traités en parallèle : à l'export, chaque travailleur copie
+ * les données d'un enregistrement dans un fichier temporaire en vérifiant son hash ; à l'import,
+ * le fil principal lit l'archive et chaque travailleur vérifie un enregistrement déjà copié.
+ * Les enregistrements restent écrits dans l'ordre, le nombre d'enregistrements en cours est
+ * borné et les données ne sont jamais chargées entières en mémoire. L'import enregistre les
+ * enregistrements vérifiés par lots d'une transaction ; un enregistrement dont le hash ne
+ * correspond pas est écarté.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+final class RecordingArchive {
+
+    /** Début de toute archive */
+    static final byte[] MAGIC = "MOUSTASS-ARCHIVE".getBytes(StandardCharsets.US_ASCII);
+    static final int FORMAT_VERSION = 1;
+    /** Nombre d'enregistrements importés par transaction */
+    static final int BATCH_SIZE = 32;
+    /** Itérations de la dérivation de la clé de l'archive */
+    static final int KDF_ITERATIONS = 210_000;
+    private static final String KDF_ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_SIZE = 16;
+    private static final int ENTRY = 1;
+    private static final int END = 0;
+
+    /** Résultat d'un export ou d'un import */
+    static final class Summary {
+        private final int count;
+        private final int failed;
+
+        Summary(int count, int failed) {
+            this.count = count;
+            this.failed = failed;
+        }
+
+        /** @return Le nombre d'enregistrements exportés ou importés */
+        int getCount() {
+            return count;
+        }
+
+        /** @return Le nombre d'enregistrements écartés car illisibles ou altérés */
+        int getFailed() {
+            return failed;
+        }
+    }
+
+    /** Enregistrement en transit, ses données chiffrées étant dans un fichier temporaire */
+    private static final class Entry {
+        String name;
+        String timestamp;
+        int duration;
+        String codec;
+        /** Clé enveloppée par la clé de l'archive, puis par la clé maîtresse locale à l'import */
+        String key;
+        byte[] hash;
+        List<Peaks> peaks = new ArrayList<>();
+        /** Index de recherche, null si l'enregistrement n'en a pas */
+        Seek seek;
+        Path data;
+        long length;
+        boolean valid;
+    }
+
+    private static final class Peaks {
+        int level;
+        int framesPerPeak;
+        byte[] peaks;
+    }
+
+    private static final class Seek {
+        long frames;
+        int blockFrames;
+        byte[] offsets;
+    }
+
+    private final Database db;
+    private final int threads;
+
+    /**
+     * @param db Base des enregistrements
+     * @param threads Nombre d'enregistrements traités en parallèle
+     */
+    RecordingArchive(Database db, int threads) {
+        this.db = db;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Écrit les enregistrements donnés dans une archive. Un enregistrement illisible ou dont le
+     * hash ne correspond plus est écarté et compté dans {@link Summary#getFailed()}.
+     *
+     * @param out Flux de l'archive, laissé ouvert
+     * @param recordingIds Enregistrements à exporter, dans l'ordre de l'archive
+     * @param passphrase Phrase secrète protégeant les clés dans l'archive
+     * @return Le résultat de l'export
+     * @throws IOException En cas d'erreur d'écriture
+     * @throws SQLException En cas d'erreur d'accès à la base
+     * @throws AES.AESException Si la clé de l'archive ne peut pas être dérivée
+     * @throws InterruptedException Si l'export est interrompu
+     */
+    Summary export(OutputStream out, List<Integer> recordingIds, char[] passphrase)
+            throws IOException, SQLException, AES.AESException, InterruptedException {
+        byte[] salt = new byte[SALT_SIZE];
+        new SecureRandom().nextBytes(salt);
+        SecretKey archiveKey = deriveKey(passphrase, salt, KDF_ITERATIONS);
+
+        DataOutputStream archive = new DataOutputStream(out);
+        archive.write(MAGIC);
+        archive.writeInt(FORMAT_VERSION);
+        archive.write(salt);
+        archive.writeInt(KDF_ITERATIONS);
+        // Clé témoin : une mauvaise phrase secrète est refusée dès l'en-tête à l'import
+        archive.writeUTF(KeyVault.wrapWith(archiveKey, AES.generateSecretKey()));
+
+        Path spool = Files.createTempDirectory("moustass-export");
+        ExecutorService workers = newWorkers("archive-export");
+        Deque<Future<Entry>> pending = new ArrayDeque<>();
+        int count = 0;
+        int failed = 0;
+        try {
+            int next = 0;
+            while (next < recordingIds.size() || !pending.isEmpty()) {
+                // Au plus deux enregistrements en cours par travailleur
+                while (next < recordingIds.size() && pending.size() < 2 * threads) {
+                    int id = recordingIds.get(next++);
+                    pending.add(workers.submit(() -> read(id, archiveKey, spool)));
+                }
+                Entry entry = await(pending.poll());
+                try {
+                    if (entry.valid) {
+                        writeEntry(archive, entry);
+                        count++;
+                    } else {
+                        failed++;
+                    }
+                } finally {
+                    Files.deleteIfExists(entry.data);
+                }
+            }
+            archive.writeByte(END);
+            archive.writeInt(count);
+            archive.flush();
+            return new Summary(count, failed);
+        } finally {
+            discard(workers, pending);
+            deleteDirectory(spool);
+        }
+    }
+
+    /**
+     * Importe les enregistrements d'une archive pour un utilisateur de cette installation.
+     * Les lots déjà enregistrés restent en place si l'archive s'avère tronquée.
+     *
+     * @param in Flux de l'archive, laissé ouvert
+     * @param userId Utilisateur propriétaire des enregistrements importés
+     * @param passphrase Phrase secrète donnée à l'export
+     * @return Le résultat de l'import
+     * @throws IOException Si l'archive est illisible ou tronquée
+     * @throws SQLException En cas d'erreur d'accès à la base
+     * @throws AES.AESException Si la phrase secrète ne correspond pas à l'archive
+     * @throws InterruptedException Si l'import est interrompu
+     */
+    Summary importFrom(InputStream in, int userId, char[] passphrase)
+            throws IOException, SQLException, AES.AESException, InterruptedException {
+        DataInputStream archive = new DataInputStream(in);
+        byte[] magic = new byte[MAGIC.length];
+        archive.readFully(magic);
+        if (!Arrays.equals(MAGIC, magic)) {
+            throw new IOException("Not a recording archive");
+        }
+        int version = archive.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported archive version " + version);
+        }
+        byte[] salt = new byte[SALT_SIZE];
+        archive.readFully(salt);
+        SecretKey archiveKey = deriveKey(passphrase, salt, archive.readInt());
+        try {
+            KeyVault.unwrapWith(archiveKey, archive.readUTF());
+        } catch (AES.AESException e) {
+            throw new AES.AESException("Wrong passphrase for this archive", e);
+        }
+
+        Path spool = Files.createTempDirectory("moustass-import");
+        ExecutorService workers = newWorkers("archive-import");
+        Deque<Future<Entry>> pending = new ArrayDeque<>();
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        int read = 0;
+        int[] totals = new int[2];
+        try {
+            while (archive.readUnsignedByte() == ENTRY) {
+                Entry entry = readEntry(archive, spool);
+                read++;
+                pending.add(workers.submit(() -> verify(entry, archiveKey)));
+                // La lecture de l'archive avance pendant la vérification des précédents
+                while (pending.size() >= 2 * threads || (!pending.isEmpty() && pending.peek().isDone())) {
+                    batch.add(await(pending.poll()));
+                    if (batch.size() == BATCH_SIZE) {
+                        commit(batch, userId, totals);
+                    }
+                }
+            }
+            int expected = archive.readInt();
+            if (expected != read) {
+                throw new IOException("Archive announces " + expected + " recording(s) but contains " + read);
+            }
+            while (!pending.isEmpty()) {
+                batch.add(await(pending.poll()));
+                if (batch.size() == BATCH_SIZE) {
+                    commit(batch, userId, totals);
+                }
+            }
+            commit(batch, userId, totals);
+            return new Summary(totals[0], totals[1]);
+        } finally {
+            discard(workers, pending);
+            deleteDirectory(spool);
+        }
+    }
+
+    /**
+     * Lit un enregistrement dans l'état de la base d'un instant, copie ses données chiffrées
+     * dans un fichier temporaire et vérifie leur hash au passage.
+     */
+    private Entry read(int recordingId, SecretKey archiveKey, Path spool) throws Exception {
+        Entry entry = new Entry();
+        entry.data = Files.createTempFile(spool, "recording-" + recordingId, ".part");
+        // Les segments que cette lecture peut voir ne sont pas supprimés avant sa fin
+        SegmentAudioStore.ReadLease lease = db.getAudioStore().beginRead();
+        try (Connection conn = db.getConnection()) {
+            conn.setAutoCommit(false);
+            SecretKey key;
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT name, timestamp, duration, codec, encryption_key, audio_hash FROM recordings WHERE id = ?")) {
+                pstmt.setInt(1, recordingId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) return entry;
+                    entry.name = rs.getString("name");
+                    entry.timestamp = rs.getString("timestamp");
+                    entry.duration = rs.getInt("duration");
+                    entry.codec = rs.getString("codec");
+                    key = db.getKeys().unwrap(rs.getString("encryption_key"));
+                    entry.hash = SHA.readDigest(rs, "audio_hash");
+                }
+            }
+            entry.key = KeyVault.wrapWith(archiveKey, key);
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT level, frames_per_peak, peaks FROM recording_peaks WHERE recording_id = ? ORDER BY level")) {
+                pstmt.setInt(1, recordingId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        Peaks peaks = new Peaks();
+                        peaks.level = rs.getInt(1);
+                        peaks.framesPerPeak = rs.getInt(2);
+                        peaks.peaks = rs.getBytes(3);
+                        entry.peaks.add(peaks);
+                    }
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT frames, block_frames, offsets FROM recording_seek WHERE recording_id = ?")) {
+                pstmt.setInt(1, recordingId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        entry.seek = new Seek();
+                        entry.seek.frames = rs.getLong(1);
+                        entry.seek.blockFrames = rs.getInt(2);
+                        entry.seek.offsets = rs.getBytes(3);
+                    }
+                }
+            }
+            try (InputStream stored = db.getAudioStore().openStream(conn, recordingId);
+                 OutputStream copy = Files.newOutputStream(entry.data)) {
+                entry.valid = SHA.matches(entry.hash, digestWhileCopying(stored, copy, key));
+            }
+            entry.length = Files.size(entry.data);
+        } catch (AES.AESException | IOException e) {
+            // Clé ou données illisibles : l'enregistrement est écarté, les autres continuent
+            System.err.println("Recording " + recordingId + " not exported: " + e.getMessage());
+            entry.valid = false;
+        } finally {
+            lease.close();
+        }
+        return entry;
+    }
+
+    private static void writeEntry(DataOutputStream archive, Entry entry) throws IOException {
+        archive.writeByte(ENTRY);
+        archive.writeUTF(entry.name);
+        archive.writeUTF(entry.timestamp);
+        archive.writeInt(entry.duration);
+        archive.writeUTF(entry.codec);
+        archive.writeUTF(entry.key);
+        archive.write(entry.hash);
+        archive.writeInt(entry.peaks.size());
+        for (Peaks peaks : entry.peaks) {
+            archive.writeInt(peaks.level);
+            archive.writeInt(peaks.framesPerPeak);
+            archive.writeInt(peaks.peaks.length);
+            archive.write(peaks.peaks);
+        }
+        archive.writeBoolean(entry.seek != null);
+        if (entry.seek != null) {
+            archive.writeLong(entry.seek.frames);
+            archive.writeInt(entry.seek.blockFrames);
+            archive.writeInt(entry.seek.offsets.length);
+            archive.write(entry.seek.offsets);
+        }
+        archive.writeLong(entry.length);
+        Files.copy(entry.data, archive);
+    }
+
+    /**
+     * Lit les métadonnées d'un enregistrement et copie ses données chiffrées dans un fichier temporaire.
+     */
+    private static Entry readEntry(DataInputStream archive, Path spool) throws IOException {
+        Entry entry = new Entry();
+        entry.name = archive.readUTF();
+        entry.timestamp = archive.readUTF();
+        entry.duration = archive.readInt();
+        entry.codec = archive.readUTF();
+        entry.key = archive.readUTF();
+        entry.hash = new byte[SHA.DIGEST_SIZE];
+        archive.readFully(entry.hash);
+        int levels = archive.readInt();
+        for (int i = 0; i < levels; i++) {
+            Peaks peaks = new Peaks();
+            peaks.level = archive.readInt();
+            peaks.framesPerPeak = archive.readInt();
+            peaks.peaks = readBytes(archive);
+            entry.peaks.add(peaks);
+        }
+        if (archive.readBoolean()) {
+            entry.seek = new Seek();
+            entry.seek.frames = archive.readLong();
+            entry.seek.blockFrames = archive.readInt();
+            entry.seek.offsets = readBytes(archive);
+        }
+        entry.length = archive.readLong();
+        entry.data = Files.createTempFile(spool, "recording", ".part");
+        try (OutputStream out = Files.newOutputStream(entry.data)) {
+            byte[] buffer = new byte[CaptureBuffer.BUFFER_SIZE];
+            long remaining = entry.length;
+            while (remaining > 0) {
+                int n = archive.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) throw new IOException("Archive truncated in recording \"" + entry.name + "\"");
+                out.write(buffer, 0, n);
+                remaining -= n;
+            }
+        }
+        return entry;
+    }
+
+    private static byte[] readBytes(DataInputStream archive) throws IOException {
+        int length = archive.readInt();
+        if (length < 0 || length > CaptureBuffer.BUFFER_SIZE * 64) {
+            throw new IOException("Invalid index length in archive: " + length);
+        }
+        byte[] bytes = new byte[length];
+        archive.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Déchiffre les données copiées d'un enregistrement, compare leur hash à celui de l'archive
+     * et réenveloppe sa clé avec la clé maîtresse locale.
+     */
+    private Entry verify(Entry entry, SecretKey archiveKey) throws IOException {
+        try {
+            SecretKey key = KeyVault.unwrapWith(archiveKey, entry.key);
+            try (InputStream in = Files.newInputStream(entry.data)) {
+                entry.valid = SHA.matches(entry.hash, digestWhileCopying(in, OutputStream.nullOutputStream(), key));
+            }
+            entry.key = db.getKeys().wrap(key);
+        } catch (AES.AESException | IOException e) {
+            entry.valid = false;
+        }
+        if (!entry.valid) {
+            System.err.println("Recording \"" + entry.name + "\" not imported: it does not match its hash");
+        }
+        return entry;
+    }
+
+    /**
+     * Enregistre un lot d'enregistrements vérifiés dans une transaction, puis vide le lot.
+     *
+     * @param totals Compteurs des enregistrements importés et écartés, mis à jour
+     */
+    private void commit(List<Entry> batch, int userId, int[] totals) throws SQLException, IOException {
+        if (batch.isEmpty()) return;
+        // Verrou du stockage avant la transaction : jamais attendu en tenant le verrou d'écriture de la base
+        SegmentAudioStore.WriteLock lock = db.getAudioStore().lockWrites();
+        try (Connection conn = db.getConnection()) {
+            conn.setAutoCommit(false);
+            int imported = 0;
+            try {
+                for (Entry entry : batch) {
+                    if (entry.valid) {
+                        insert(conn, entry, userId);
+                        imported++;
+                    }
+                }
+                conn.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            totals[0] += imported;
+            totals[1] += batch.size() - imported;
+        } finally {
+            try {
+                for (Entry entry : batch) {
+                    Files.deleteIfExists(entry.data);
+                }
+                batch.clear();
+            } finally {
+                lock.close();
+            }
+        }
+    }
+
+    private void insert(Connection conn, Entry entry, int userId) throws SQLException, IOException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO recordings (name, timestamp, duration, audio, encryption_key, audio_hash, user_id, codec) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            pstmt.setString(1, entry.name);
+            pstmt.setString(2, entry.timestamp);
+            pstmt.setInt(3, entry.duration);
+            pstmt.setBytes(4, new byte[0]); // Les données audio sont stockées à part
+            pstmt.setString(5, entry.key);
+            SHA.bindDigest(pstmt, 6, entry.hash);
+            pstmt.setInt(7, userId);
+            pstmt.setString(8, entry.codec);
+            pstmt.executeUpdate();
+        }
+        int recordingId;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+            rs.next();
+            recordingId = rs.getInt(1);
+        }
+
+        RecordingAudio audio = db.getAudioStore();
+        if (!audio.shareExisting(conn, recordingId, entry.hash)) {
+            try (OutputStream out = audio.openWriter(conn, recordingId, entry.hash)) {
+                Files.copy(entry.data, out);
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO recording_peaks (recording_id, level, frames_per_peak, peaks) VALUES (?, ?, ?, ?)")) {
+            for (Peaks peaks : entry.peaks) {
+                pstmt.setInt(1, recordingId);
+                pstmt.setInt(2, peaks.level);
+                pstmt.setInt(3, peaks.framesPerPeak);
+                pstmt.setBytes(4, peaks.peaks);
+                pstmt.executeUpdate();
+            }
+        }
+        if (entry.seek != null) {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO recording_seek (recording_id, frames, block_frames, offsets) VALUES (?, ?, ?, ?)")) {
+                pstmt.setInt(1, recordingId);
+                pstmt.setLong(2, entry.seek.frames);
+                pstmt.setInt(3, entry.seek.blockFrames);
+                pstmt.setBytes(4, entry.seek.offsets);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Copie des données chiffrées en calculant le hash de leur déchiffrement.
+     *
+     * @return Le hash SHA-256 de l'audio en clair
+     */
+    private static byte[] digestWhileCopying(InputStream encrypted, OutputStream copy, SecretKey key)
+            throws IOException {
+        InputStream tee = new FilterInputStream(encrypted) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) copy.write(b);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) copy.write(b, off, n);
+                return n;
+            }
+        };
+        MessageDigest digest = SHA.newSHA256();
+        InputStream plain = AES.decryptStream(tee, key);
+        SHA.update(digest, plain);
+        // Octets non consommés par le déchiffrement : la copie doit rester complète
+        tee.transferTo(OutputStream.nullOutputStream());
+        return digest.digest();
+    }
+
+    /**
+     * Dérive la clé qui enveloppe les clés d'enregistrement dans l'archive.
+     */
+    static SecretKey deriveKey(char[] passphrase, byte[] salt, int iterations) throws AES.AESException {
+        try {
+            KeySpec spec = new PBEKeySpec(passphrase, salt, iterations, 256);
+            byte[] encoded = SecretKeyFactory.getInstance(KDF_ALGORITHM).generateSecret(spec).getEncoded();
+            return new SecretKeySpec(encoded, "AES");
+        } catch (Exception e) {
+            throw new AES.AESException("Failed to derive archive key", e);
+        }
+    }
+
+    private ExecutorService newWorkers(String name) {
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static <T> T await(Future<T> future) throws IOException, SQLException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Arrête les travailleurs sans attendre les enregistrements encore en cours.
+     */
+    private static void discard(ExecutorService workers, Deque<Future<Entry>> pending) {
+        for (Future<Entry> future : pending) {
+            future.cancel(true);
+        }
+        workers.shutdownNow();
+        try {
+            // Les fichiers temporaires ne sont supprimés qu'une fois les travailleurs arrêtés
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void deleteDirectory(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
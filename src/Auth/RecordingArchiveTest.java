@@ -0,0 +1,209 @@
+package Auth;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RecordingArchiveTest {
+
+    private static final AudioFormat CAPTURE = new AudioFormat(44100, 8, 1, true, true);
+    private static final char[] PASSPHRASE = "phrase secrète".toCharArray();
+
+    private Path dir;
+    private Database source;
+    private Database target;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("archive");
+        Files.createDirectories(dir.resolve("source"));
+        Files.createDirectories(dir.resolve("target"));
+        source = new Database("jdbc:sqlite:" + dir.resolve("source").resolve("users.db"), 4);
+        target = new Database("jdbc:sqlite:" + dir.resolve("target").resolve("users.db"), 4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        source.close();
+        target.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testRecordingsMoveToAnotherInstallation() throws Exception {
+        byte[][] pcm = {tone(44100 * 2, 300), tone(44100 * 2, 300), tone(44100, 500)};
+        int[] ids = new int[pcm.length];
+        for (int i = 0; i < pcm.length; i++) {
+            ids[i] = save(source, pcm[i], AudioCodecs.LPC);
+        }
+
+        byte[] archive = export(ids);
+        // Les clés de l'archive ne sont ni en clair ni enveloppées par la clé maîtresse d'origine
+        String text = new String(archive, StandardCharsets.ISO_8859_1);
+        try (Connection conn = source.getConnection()) {
+            String stored = keyOf(conn, ids[0]);
+            assertFalse(text.contains(stored));
+            assertFalse(text.contains(AES.encodeKeyToBase64(source.getKeys().unwrap(stored))));
+        }
+
+        RecordingArchive.Summary imported = new RecordingArchive(target, 2)
+                .importFrom(new ByteArrayInputStream(archive), 7, PASSPHRASE);
+        assertEquals(3, imported.getCount());
+        assertEquals(0, imported.getFailed());
+
+        try (Connection src = source.getConnection(); Connection conn = target.getConnection()) {
+            assertEquals(3, count(conn, "SELECT COUNT(*) FROM recordings WHERE user_id = 7"));
+            // Les deux enregistrements identiques partagent de nouveau un seul contenu
+            assertEquals(2, count(conn, "SELECT COUNT(DISTINCT content_id) FROM recordings"));
+            for (int i = 0; i < pcm.length; i++) {
+                int id = i + 1;
+                assertTrue(keyOf(conn, id).startsWith(target.getKeys().getCurrentAlias() + ":"));
+                byte[] expected = decrypt(source, ids[i]);
+                assertArrayEquals(expected, decrypt(target, id));
+                assertEquals(count(src, "SELECT COUNT(*) FROM recording_peaks WHERE recording_id = " + ids[i]),
+                             count(conn, "SELECT COUNT(*) FROM recording_peaks WHERE recording_id = " + id));
+                assertEquals(1, count(conn, "SELECT COUNT(*) FROM recording_seek WHERE recording_id = " + id));
+            }
+        }
+    }
+
+    @Test
+    public void testAlteredRecordingIsRejected() throws Exception {
+        int kept = save(source, tone(44100, 300), AudioCodecs.PCM);
+        int altered = save(source, tone(44100 * 2, 500), AudioCodecs.PCM);
+        byte[] archive = export(kept, altered);
+        // Octet des données du dernier enregistrement, avant la marque de fin
+        archive[archive.length - 1000] ^= 0x01;
+
+        RecordingArchive.Summary imported = new RecordingArchive(target, 2)
+                .importFrom(new ByteArrayInputStream(archive), 1, PASSPHRASE);
+        assertEquals(1, imported.getCount());
+        assertEquals(1, imported.getFailed());
+        try (Connection conn = target.getConnection()) {
+            assertEquals(1, count(conn, "SELECT COUNT(*) FROM recordings"));
+        }
+        assertArrayEquals(decrypt(source, kept), decrypt(target, 1));
+    }
+
+    @Test
+    public void testWrongPassphraseIsRefused() throws Exception {
+        byte[] archive = export(save(source, tone(22050, 300), AudioCodecs.PCM));
+        try {
+            new RecordingArchive(target, 1).importFrom(new ByteArrayInputStream(archive), 1, "autre".toCharArray());
+            fail();
+        } catch (AES.AESException expected) {
+        }
+        try (Connection conn = target.getConnection()) {
+            assertEquals(0, count(conn, "SELECT COUNT(*) FROM recordings"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedArchiveIsRefused() throws Exception {
+        byte[] archive = export(save(source, tone(22050, 300), AudioCodecs.PCM));
+        new RecordingArchive(target, 1).importFrom(
+                new ByteArrayInputStream(Arrays.copyOf(archive, archive.length - 100)), 1, PASSPHRASE);
+    }
+
+    private byte[] export(int... ids) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RecordingArchive.Summary exported = new RecordingArchive(source, 2)
+                .export(out, Arrays.stream(ids).boxed().collect(Collectors.toList()), PASSPHRASE);
+        assertEquals(ids.length, exported.getCount());
+        return out.toByteArray();
+    }
+
+    /**
+     * Enregistre un audio PCM comme le fait la sauvegarde, index compris.
+     */
+    private static int save(Database db, byte[] pcm, String codec) throws Exception {
+        RecordingPipeline pipeline = new RecordingPipeline(4410, CAPTURE, AudioCodecs.forName(codec),
+                                                           VadSettings.DISABLED);
+        for (int off = 0; off < pcm.length; off += 4410) {
+            byte[] buffer = pipeline.nextBuffer();
+            int n = Math.min(buffer.length, pcm.length - off);
+            System.arraycopy(pcm, off, buffer, 0, n);
+            pipeline.submit(buffer, n);
+        }
+        try (RecordingPipeline.Result result = pipeline.finish(); Connection conn = db.getConnection()) {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO recordings (name, timestamp, duration, audio, encryption_key, audio_hash, user_id, codec) " +
+                    "VALUES ('test', '2024-01-01 10:00:00', 1, X'', ?, ?, 1, ?)")) {
+                pstmt.setString(1, db.getKeys().wrap(result.getKey()));
+                SHA.bindDigest(pstmt, 2, result.getDigest());
+                pstmt.setString(3, result.getCodec().getName());
+                pstmt.executeUpdate();
+            }
+            int id = count(conn, "SELECT last_insert_rowid()");
+            RecordingAudio audio = db.getAudioStore();
+            if (!audio.shareExisting(conn, id, result.getDigest())) {
+                try (InputStream in = result.openEncrypted(); OutputStream out = audio.openWriter(conn, id, result.getDigest())) {
+                    in.transferTo(out);
+                }
+            }
+            result.getPeaks().save(conn, id);
+            result.getSeekIndex().save(conn, id);
+            return id;
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    private static byte[] decrypt(Database db, int id) throws Exception {
+        try (Connection conn = db.getConnection();
+             InputStream in = AES.decryptStream(db.getAudioStore().openStream(conn, id),
+                                                db.getKeys().unwrap(keyOf(conn, id)))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static String keyOf(Connection conn, int id) throws Exception {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT encryption_key FROM recordings WHERE id = ?")) {
+            pstmt.setInt(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                assertTrue(rs.next());
+                return rs.getString(1);
+            }
+        }
+    }
+
+    private static int count(Connection conn, String sql) throws Exception {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static byte[] tone(int frames, double frequency) {
+        byte[] pcm = new byte[frames];
+        for (int i = 0; i < frames; i++) {
+            pcm[i] = (byte) Math.round(60 * Math.sin(2 * Math.PI * frequency * i / 44100.0));
+        }
+        return pcm;
+    }
+}
@@ -0,0 +1,132 @@
+package Auth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Stockage audio de l'application : les nouveaux enregistrements vont dans les segments,
+ * les lectures suivent l'emplacement indiqué par chaque ligne. Les enregistrements encore
+ * stockés dans la base (BLOB en ligne ou blocs) restent lisibles jusqu'à leur migration
+ * avec {@link AudioStoreTool}.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+final class RecordingAudio implements AudioStore {
+
+    /**
+     * Expression SQL de la taille chiffrée d'un enregistrement (table aliasée {@code r}),
+     * quel que soit son stockage.
+     */
+    static final String SIZE_SQL =
+            "(length(r.audio) + IFNULL((SELECT a.audio_length FROM audio_content a WHERE a.id = r.content_id), 0) + " +
+            "IFNULL((SELECT SUM(length(c.data)) FROM recording_chunks c WHERE c.recording_id = r.id), 0))";
+
+    /** Stockage des nouveaux enregistrements : {@code segments} (par défaut) ou {@code rows} */
+    static final boolean WRITE_TO_SEGMENTS =
+            !"rows".equals(System.getProperty("moustass.audio.store", "segments"));
+
+    private final RecordingBlobs rows = new RecordingBlobs();
+    private final SegmentAudioStore segments;
+
+    /**
+     * @param segments Stockage en segments de la base
+     */
+    RecordingAudio(SegmentAudioStore segments) {
+        this.segments = segments;
+    }
+
+    /** @return Le stockage des données dans la base */
+    RecordingBlobs rows() {
+        return rows;
+    }
+
+    /** @return Le stockage en segments */
+    SegmentAudioStore segments() {
+        return segments;
+    }
+
+    @Override
+    public OutputStream openWriter(Connection conn, int recordingId) throws SQLException, IOException {
+        return WRITE_TO_SEGMENTS ? segments.openWriter(conn, recordingId) : rows.openWriter(conn, recordingId);
+    }
+
+    /**
+     * Ouvre un flux écrivant les données chiffrées d'un enregistrement dont l'audio en clair
+     * a le hash donné, pour que les enregistrements identiques suivants les partagent.
+     *
+     * @param conn Connexion utilisée pour les métadonnées
+     * @param recordingId Identifiant de l'enregistrement
+     * @param digest Hash SHA-256 de l'audio en clair
+     * @return Le flux, à fermer pour terminer l'écriture
+     * @throws SQLException En cas d'erreur d'accès à la base
+     * @throws IOException En cas d'erreur d'écriture
+     */
+    OutputStream openWriter(Connection conn, int recordingId, byte[] digest) throws SQLException, IOException {
+        return WRITE_TO_SEGMENTS ? segments.openWriter(conn, recordingId, digest) : rows.openWriter(conn, recordingId);
+    }
+
+    /**
+     * Fait partager à l'enregistrement un contenu identique déjà stocké, s'il en existe un.
+     * L'enregistrement reprend alors la clé de ce contenu et ses propres données chiffrées
+     * n'ont pas à être écrites.
+     *
+     * @param conn Connexion de l'appelant, dans sa transaction
+     * @param recordingId Identifiant de l'enregistrement, déjà inséré
+     * @param digest Hash SHA-256 de l'audio en clair
+     * @return true si l'enregistrement partage désormais un contenu existant
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    boolean shareExisting(Connection conn, int recordingId, byte[] digest) throws SQLException {
+        return WRITE_TO_SEGMENTS && segments.shareExisting(conn, recordingId, digest);
+    }
+
+    /**
+     * Prend le verrou d'écriture du stockage, à tenir pendant toute transaction qui peut
+     * écrire des données audio.
+     *
+     * @return Le verrou, à fermer après la fin de la transaction
+     * @throws IOException Si le verrou ne peut pas être pris
+     * @see SegmentAudioStore#lockWrites()
+     */
+    SegmentAudioStore.WriteLock lockWrites() throws IOException {
+        return segments.lockWrites();
+    }
+
+    /**
+     * Déclare une lecture qui garde un état de la base le temps de lire les données.
+     *
+     * @return La déclaration, à fermer à la fin de la lecture
+     * @see SegmentAudioStore#beginRead()
+     */
+    SegmentAudioStore.ReadLease beginRead() {
+        return segments.beginRead();
+    }
+
+    @Override
+    public InputStream openStream(Connection conn, int recordingId) throws SQLException, IOException {
+        return storeOf(conn, recordingId).openStream(conn, recordingId);
+    }
+
+    @Override
+    public ChunkedAES.RandomAccessSource openSource(Connection conn, int recordingId)
+            throws SQLException, IOException {
+        return storeOf(conn, recordingId).openSource(conn, recordingId);
+    }
+
+    /**
+     * Oublie les données d'un enregistrement ; à appeler avant de supprimer sa ligne.
+     */
+    @Override
+    public void delete(Connection conn, int recordingId) throws SQLException {
+        rows.delete(conn, recordingId);
+        segments.delete(conn, recordingId);
+    }
+
+    private AudioStore storeOf(Connection conn, int recordingId) throws SQLException {
+        return SegmentAudioStore.contains(conn, recordingId) ? segments : rows;
+    }
+}
@@ -0,0 +1,308 @@
+package Auth;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Stockage des données audio chiffrées d'un enregistrement sous forme de lignes
+ * de {@code recording_chunks}, une ligne par bloc du format {@link ChunkedAES}.
+ * Le pilote SQLite ne permet pas de lire un BLOB par morceaux : découper le
+ * contenu en lignes permet de le lire et de l'écrire bloc par bloc, avec une
+ * mémoire bornée, et d'accéder directement à un bloc quelconque.
+ * <p>
+ * Les enregistrements antérieurs, dont la colonne {@code audio} contient tout
+ * le BLOB, restent lisibles par les mêmes méthodes.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+final class RecordingBlobs implements AudioStore {
+
+    /** Taille d'une ligne : un bloc chiffré et son tag (la première contient aussi l'en-tête) */
+    static final int ROW_SIZE = AES.CHUNK_SIZE + ChunkedAES.TAG_SIZE;
+
+    RecordingBlobs() {
+    }
+
+    /**
+     * Ouvre un flux écrivant les données chiffrées d'un enregistrement, ligne par ligne.
+     * L'appelant gère la transaction.
+     *
+     * @param conn Connexion à la base de données
+     * @param recordingId Identifiant de l'enregistrement
+     * @return Le flux, à fermer pour écrire la dernière ligne
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    @Override
+    public OutputStream openWriter(Connection conn, int recordingId) throws SQLException {
+        return new RowOutputStream(conn, recordingId);
+    }
+
+    /**
+     * Ouvre un flux lisant séquentiellement les données chiffrées d'un enregistrement.
+     *
+     * @param conn Connexion à la base de données
+     * @param recordingId Identifiant de l'enregistrement
+     * @return Le flux des données chiffrées
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    @Override
+    public InputStream openStream(Connection conn, int recordingId) throws SQLException {
+        if (hasRows(conn, recordingId)) {
+            return new RowInputStream(conn, recordingId);
+        }
+        return new ByteArrayInputStream(readInline(conn, recordingId));
+    }
+
+    /**
+     * Retourne une source à accès aléatoire sur les données chiffrées d'un enregistrement.
+     *
+     * @param conn Connexion à la base de données
+     * @param recordingId Identifiant de l'enregistrement
+     * @return La source
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    @Override
+    public ChunkedAES.RandomAccessSource openSource(Connection conn, int recordingId) throws SQLException {
+        if (hasRows(conn, recordingId)) {
+            return new RowSource(conn, recordingId);
+        }
+        return ChunkedAES.wrap(readInline(conn, recordingId));
+    }
+
+    /**
+     * Supprime les blocs d'un enregistrement.
+     *
+     * @param conn Connexion à la base de données
+     * @param recordingId Identifiant de l'enregistrement
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    @Override
+    public void delete(Connection conn, int recordingId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM recording_chunks WHERE recording_id = ?")) {
+            pstmt.setInt(1, recordingId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static boolean hasRows(Connection conn, int recordingId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT 1 FROM recording_chunks WHERE recording_id = ? AND seq = 0")) {
+            pstmt.setInt(1, recordingId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static byte[] readInline(Connection conn, int recordingId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT audio FROM recordings WHERE id = ?")) {
+            pstmt.setInt(1, recordingId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) throw new SQLException("Recording not found: " + recordingId);
+                return rs.getBytes("audio");
+            }
+        }
+    }
+
+    private static byte[] readRow(PreparedStatement select, int recordingId, int seq) throws SQLException {
+        select.setInt(1, recordingId);
+        select.setInt(2, seq);
+        try (ResultSet rs = select.executeQuery()) {
+            return rs.next() ? rs.getBytes(1) : null;
+        }
+    }
+
+    /** Index de la ligne contenant la position donnée */
+    private static int rowOf(long pos) {
+        return pos < ChunkedAES.HEADER_SIZE ? 0 : (int) ((pos - ChunkedAES.HEADER_SIZE) / ROW_SIZE);
+    }
+
+    /** Position du premier octet d'une ligne */
+    private static long rowStart(int row) {
+        return row == 0 ? 0 : ChunkedAES.HEADER_SIZE + (long) row * ROW_SIZE;
+    }
+
+    /**
+     * Découpe le flux écrit en lignes alignées sur les blocs chiffrés.
+     */
+    private static final class RowOutputStream extends OutputStream {
+        private final PreparedStatement insert;
+        private final int recordingId;
+        private final byte[] row = new byte[ChunkedAES.HEADER_SIZE + ROW_SIZE];
+        private int filled;
+        private int seq;
+        private boolean closed;
+
+        RowOutputStream(Connection conn, int recordingId) throws SQLException {
+            this.recordingId = recordingId;
+            this.insert = conn.prepareStatement(
+                    "INSERT INTO recording_chunks (recording_id, seq, data) VALUES (?, ?, ?)");
+        }
+
+        private int capacity() {
+            return seq == 0 ? ChunkedAES.HEADER_SIZE + ROW_SIZE : ROW_SIZE;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, capacity() - filled);
+                System.arraycopy(b, off, row, filled, n);
+                filled += n;
+                off += n;
+                len -= n;
+                if (filled == capacity()) {
+                    flushRow();
+                }
+            }
+        }
+
+        private void flushRow() throws IOException {
+            if (filled == 0) return;
+            try {
+                insert.setInt(1, recordingId);
+                insert.setInt(2, seq++);
+                insert.setBytes(3, filled == row.length ? row : Arrays.copyOf(row, filled));
+                insert.executeUpdate();
+                filled = 0;
+            } catch (SQLException e) {
+                throw new IOException("Failed to store audio chunk", e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                flushRow();
+            } finally {
+                try {
+                    insert.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Lit les lignes une à une : une seule ligne est en mémoire à la fois.
+     */
+    private static final class RowInputStream extends InputStream {
+        private final PreparedStatement select;
+        private final int recordingId;
+        private byte[] row;
+        private int pos;
+        private int seq;
+
+        RowInputStream(Connection conn, int recordingId) throws SQLException {
+            this.recordingId = recordingId;
+            this.select = conn.prepareStatement(
+                    "SELECT data FROM recording_chunks WHERE recording_id = ? AND seq = ?");
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (row == null || pos == row.length) {
+                try {
+                    row = readRow(select, recordingId, seq++);
+                } catch (SQLException e) {
+                    throw new IOException("Failed to read audio chunk", e);
+                }
+                pos = 0;
+                if (row == null) return -1;
+            }
+            int n = Math.min(len, row.length - pos);
+            System.arraycopy(row, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                select.close();
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /**
+     * Accès aléatoire : une lecture ne charge que les lignes couvrant la plage demandée.
+     */
+    private static final class RowSource implements ChunkedAES.RandomAccessSource {
+        private final Connection conn;
+        private final int recordingId;
+        private long length = -1;
+        private int cachedSeq = -1;
+        private byte[] cachedRow;
+
+        RowSource(Connection conn, int recordingId) {
+            this.conn = conn;
+            this.recordingId = recordingId;
+        }
+
+        @Override
+        public long length() throws IOException {
+            if (length < 0) {
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "SELECT SUM(length(data)) FROM recording_chunks WHERE recording_id = ?")) {
+                    pstmt.setInt(1, recordingId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        length = rs.next() ? rs.getLong(1) : 0;
+                    }
+                } catch (SQLException e) {
+                    throw new IOException("Failed to read audio size", e);
+                }
+            }
+            return length;
+        }
+
+        @Override
+        public void readFully(long pos, byte[] b, int off, int len) throws IOException {
+            try (PreparedStatement select = conn.prepareStatement(
+                    "SELECT data FROM recording_chunks WHERE recording_id = ? AND seq = ?")) {
+                while (len > 0) {
+                    int seq = rowOf(pos);
+                    if (seq != cachedSeq) {
+                        cachedRow = readRow(select, recordingId, seq);
+                        cachedSeq = seq;
+                    }
+                    if (cachedRow == null) throw new EOFException("Missing audio chunk " + seq);
+                    int inner = (int) (pos - rowStart(seq));
+                    int n = Math.min(len, cachedRow.length - inner);
+                    if (n <= 0) throw new EOFException("Short audio chunk " + seq);
+                    System.arraycopy(cachedRow, inner, b, off, n);
+                    pos += n;
+                    off += n;
+                    len -= n;
+                }
+            } catch (SQLException e) {
+                throw new IOException("Failed to read audio chunk", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,702 @@
+package Auth;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javax.crypto.SecretKey;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.TargetDataLine;
+
+/**
+ * Opérations de l'enregistreur indépendantes de toute interface : capture, sauvegarde, liste,
+ * lecture et suppression des enregistrements d'une base. L'interface Swing
+ * ({@link AudioRecorder}) et la ligne de commande ({@link RecordingTool}) n'en sont que des
+ * clientes : la capture lit n'importe quel flux PCM et la lecture écrit dans n'importe quelle
+ * {@link AudioOutput}, ce qui permet de traiter, scripter ou mesurer le vrai chemin sans écran
+ * ni carte son.
+ * <p>
+ * Le suivi (erreurs de capture, avancement des sauvegardes et de la lecture) est signalé sur
+ * les threads de l'engine ; c'est au client de repasser sur son propre thread.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+public final class RecordingEngine {
+
+    /** Sortie du son décodé pendant une lecture */
+    public interface AudioOutput extends Closeable {
+        /**
+         * Écrit des trames PCM au format de l'engine.
+         */
+        void write(byte[] buffer, int off, int len) throws IOException;
+
+        /**
+         * Oublie le son écrit mais pas encore joué, avant un saut de position.
+         */
+        void discard();
+
+        /**
+         * Termine le son écrit puis libère la sortie.
+         */
+        @Override
+        void close() throws IOException;
+    }
+
+    /** Suivi d'une lecture, appelé depuis son thread */
+    public interface PlaybackListener {
+        /**
+         * Début de la lecture.
+         *
+         * @param totalFrames Nombre total de trames
+         */
+        default void started(long totalFrames) {
+        }
+
+        /**
+         * @param frame Trame en cours de lecture
+         * @param totalFrames Nombre total de trames
+         */
+        default void position(long frame, long totalFrames) {
+        }
+
+        /**
+         * Fin de la lecture.
+         *
+         * @param outcome Issue de la lecture
+         * @param error Erreur si l'issue est {@link Outcome#FAILED}, sinon null
+         */
+        void finished(Outcome outcome, Exception error);
+    }
+
+    /** Issue d'une lecture */
+    public enum Outcome {
+        /** Lue en entier, hash vérifié */
+        VERIFIED,
+        /** Lue jusqu'au bout après un saut : le hash n'a pas pu être vérifié */
+        PLAYED,
+        /** Arrêtée avant la fin */
+        STOPPED,
+        /** Lue en entier, le hash ne correspond pas */
+        CORRUPT,
+        /** Interrompue par une erreur */
+        FAILED
+    }
+
+    private final Database db;
+    private final AudioFormat format;
+    private final Path autosaveDir;
+    private final SaveService saveService;
+    private IntegrityScrubber scrubber;
+
+    /**
+     * @param db Base des enregistrements
+     * @param format Format PCM de la capture et de la lecture
+     * @param autosaveDir Dossier des copies WAV des enregistrements sauvegardés, null pour aucune copie
+     * @param listener Suivi des sauvegardes
+     */
+    public RecordingEngine(Database db, AudioFormat format, Path autosaveDir, SaveService.Listener listener) {
+        this.db = db;
+        this.format = format;
+        this.autosaveDir = autosaveDir;
+        this.saveService = new SaveService(db, format, new SaveService.Listener() {
+            @Override
+            public void progress(SaveService.Job job, long done, long total) {
+                listener.progress(job, done, total);
+            }
+
+            @Override
+            public void saved(SaveService.Job job, RecordingPipeline.Result recording) {
+                autosave(job.getName(), recording);
+                listener.saved(job, recording);
+            }
+
+            @Override
+            public void finished(SaveService.Job job) {
+                listener.finished(job);
+            }
+        });
+    }
+
+    /** @return La base des enregistrements */
+    public Database getDatabase() {
+        return db;
+    }
+
+    /** @return Le format PCM de la capture et de la lecture */
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Démarre les tâches d'entretien en arrière-plan : vérification d'intégrité limitée en débit
+     * et enveloppement des clés encore stockées en clair.
+     *
+     * @param onScrubPass Appelé à la fin de chaque passage de vérification, ou null
+     */
+    public synchronized void startMaintenance(Runnable onScrubPass) {
+        if (scrubber != null) return;
+        scrubber = new IntegrityScrubber(db, 2, 8, onScrubPass);
+        scrubber.start();
+
+        Thread thread = new Thread(() -> {
+            try (Connection conn = db.getConnection()) {
+                int rewrapped = db.getKeys().rewrapAll(conn);
+                if (rewrapped > 0) {
+                    System.out.println(rewrapped + " clé(s) enveloppée(s) par la clé maîtresse");
+                }
+            } catch (SQLException | AES.AESException e) {
+                e.printStackTrace();
+            }
+        }, "key-wrap");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @param userId Utilisateur
+     * @return Ses réglages de retrait des silences
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    public VadSettings loadVadSettings(int userId) throws SQLException {
+        try (Connection conn = db.getConnection()) {
+            return VadSettings.load(conn, userId);
+        }
+    }
+
+    /**
+     * Enregistre les réglages de retrait des silences, appliqués à partir de l'enregistrement suivant.
+     *
+     * @param userId Utilisateur
+     * @param settings Réglages
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    public void saveVadSettings(int userId, VadSettings settings) throws SQLException {
+        try (Connection conn = db.getConnection()) {
+            settings.save(conn, userId);
+        }
+    }
+
+    /**
+     * @return true si la file des sauvegardes est pleine : une nouvelle sauvegarde serait refusée
+     */
+    public boolean isSaveQueueFull() {
+        return saveService.isFull();
+    }
+
+    /**
+     * Ouvre le micro au format donné.
+     *
+     * @param mixer Mixeur à utiliser, null pour celui par défaut
+     * @param format Format de capture
+     * @return Un flux lisant la ligne ; le fermer arrête et ferme la ligne
+     * @throws LineUnavailableException Si le format n'est pas pris en charge ou la ligne indisponible
+     */
+    public static InputStream openMicrophone(Mixer.Info mixer, AudioFormat format) throws LineUnavailableException {
+        DataLine.Info info = new DataLine.Info(TargetDataLine.class, format);
+        if (!AudioSystem.isLineSupported(info)) {
+            throw new LineUnavailableException("Format audio non pris en charge par ce système");
+        }
+        TargetDataLine line = (TargetDataLine) (mixer != null ? AudioSystem.getMixer(mixer).getLine(info)
+                                                              : AudioSystem.getLine(info));
+        line.open(format);
+        line.start();
+        // Le flux audio de la ligne ne rend que des trames entières
+        return new AudioInputStream(line) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    line.stop();
+                    line.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Démarre la capture d'un flux PCM au format de l'engine dans un thread dédié. Le son est
+     * chiffré, haché et indexé pendant la capture.
+     *
+     * @param userId Propriétaire du futur enregistrement
+     * @param source Flux PCM : micro ({@link #openMicrophone}), fichier ou autre ; fermé par la capture
+     * @param onError Appelé depuis le thread de capture si la lecture échoue, ou null
+     * @return La capture en cours
+     * @throws SQLException Si les réglages de l'utilisateur ne peuvent pas être lus
+     * @throws IOException Si la chaîne de capture ne peut pas être préparée
+     * @throws AES.AESException Si la clé de l'enregistrement ne peut pas être générée
+     */
+    public Capture record(int userId, InputStream source, Consumer<Exception> onError)
+            throws SQLException, IOException, AES.AESException {
+        int bufferSize = (int) format.getSampleRate() * format.getFrameSize();
+        RecordingPipeline pipeline;
+        try {
+            // L'auto-sauvegarde WAV est écrite pendant la capture, sous un nom temporaire
+            pipeline = new RecordingPipeline(bufferSize, format, AudioCodecs.getDefault(), loadVadSettings(userId),
+                                             createAutosaveFile());
+        } catch (SQLException | IOException | AES.AESException | RuntimeException e) {
+            source.close();
+            throw e;
+        }
+        Capture capture = new Capture(userId, source, pipeline, onError);
+        capture.thread.start();
+        return capture;
+    }
+
+    /**
+     * Une capture en cours, puis arrêtée, en attente de sauvegarde.
+     */
+    public final class Capture {
+        private final int userId;
+        private final InputStream source;
+        private final RecordingPipeline pipeline;
+        private final Thread thread;
+        private volatile boolean running = true;
+        private volatile Exception error;
+
+        private Capture(int userId, InputStream source, RecordingPipeline pipeline, Consumer<Exception> onError) {
+            this.userId = userId;
+            this.source = source;
+            this.pipeline = pipeline;
+            this.thread = new Thread(() -> {
+                try {
+                    while (running) {
+                        byte[] buffer = pipeline.nextBuffer();
+                        int bytesRead = source.read(buffer, 0, buffer.length);
+                        if (bytesRead < 0) break;
+                        pipeline.submit(buffer, bytesRead);
+                    }
+                } catch (Exception e) {
+                    // Une lecture interrompue par stop(), qui ferme la source, n'est pas une erreur
+                    if (!running) return;
+                    e.printStackTrace();
+                    error = e;
+                    if (onError != null) {
+                        onError.accept(e);
+                    }
+                }
+            }, "recording-capture");
+        }
+
+        /**
+         * Arrête la capture : ferme la source, ce qui interrompt la lecture en cours, et attend
+         * la fin du thread de capture.
+         *
+         * @throws InterruptedException Si l'attente est interrompue
+         */
+        public void stop() throws InterruptedException {
+            running = false;
+            try {
+                source.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            thread.join();
+        }
+
+        /**
+         * Attend que la source soit épuisée, pour une capture depuis un fichier, puis la ferme.
+         *
+         * @throws InterruptedException Si l'attente est interrompue
+         */
+        public void awaitEnd() throws InterruptedException {
+            thread.join();
+            stop();
+        }
+
+        /** @return L'erreur qui a interrompu la capture, ou null */
+        public Exception getError() {
+            return error;
+        }
+
+        /**
+         * Confie la capture arrêtée au service de sauvegarde, qui la ferme une fois terminée.
+         *
+         * @param name Nom de l'enregistrement
+         * @param timestamp Horodatage
+         * @return La sauvegarde
+         * @throws RejectedExecutionException Si trop de sauvegardes sont en attente ; la capture est abandonnée
+         */
+        public SaveService.Job save(String name, String timestamp) {
+            try {
+                return saveService.submit(name, timestamp, userId, pipeline);
+            } catch (RejectedExecutionException e) {
+                pipeline.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Abandonne la capture arrêtée : efface les données conservées et le segment temporaire.
+         */
+        public void discard() {
+            pipeline.close();
+        }
+    }
+
+    /**
+     * Lit une page des enregistrements d'un utilisateur, du plus récent au plus ancien.
+     *
+     * @param userId Propriétaire
+     * @param after Dernier enregistrement de la page précédente, null pour la première
+     * @param limit Nombre maximal d'enregistrements
+     * @return Les enregistrements
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    public List<RecordingInfo> list(int userId, RecordingInfo after, int limit) throws SQLException {
+        try (Connection conn = db.getConnection()) {
+            return after != null ? RecordingInfo.list(conn, userId, after.getTimestamp(), after.getId(), limit)
+                                 : RecordingInfo.list(conn, userId, null, 0, limit);
+        }
+    }
+
+    /**
+     * @param recordingId Enregistrement
+     * @return Son index de crêtes, ou null s'il n'en a pas
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    public PeakIndex loadPeaks(int recordingId) throws SQLException {
+        try (Connection conn = db.getConnection()) {
+            return PeakIndex.load(conn, recordingId);
+        }
+    }
+
+    /**
+     * Ouvre la sortie son par défaut au format donné.
+     *
+     * @param format Format PCM
+     * @return La sortie
+     * @throws LineUnavailableException Si la ligne est indisponible
+     */
+    public static AudioOutput openSpeaker(AudioFormat format) throws LineUnavailableException {
+        // Pour la compatibilité macOS, utilisation directe de DataLine plutôt que Clip
+        SourceDataLine line = (SourceDataLine) AudioSystem.getLine(new DataLine.Info(SourceDataLine.class, format));
+        line.open(format);
+        line.start();
+        return new AudioOutput() {
+            @Override
+            public void write(byte[] buffer, int off, int len) {
+                line.write(buffer, off, len);
+            }
+
+            @Override
+            public void discard() {
+                line.flush();
+            }
+
+            @Override
+            public void close() {
+                line.drain();
+                line.stop();
+                line.close();
+            }
+        };
+    }
+
+    /**
+     * @param out Flux recevant le son décodé, par exemple un {@link WavWriter} ; fermé à la fin
+     * @return Une sortie écrivant dans le flux
+     */
+    public static AudioOutput toStream(OutputStream out) {
+        return new AudioOutput() {
+            @Override
+            public void write(byte[] buffer, int off, int len) throws IOException {
+                out.write(buffer, off, len);
+            }
+
+            @Override
+            public void discard() {
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+        };
+    }
+
+    /**
+     * Démarre la lecture d'un enregistrement dans un thread dédié. Les données sont déchiffrées
+     * bloc par bloc pendant la lecture : le son démarre dès le premier bloc et la mémoire utilisée
+     * ne dépend pas de la durée. Le hash SHA-256 est calculé au fil de la lecture et vérifié à la fin.
+     *
+     * @param recordingId Enregistrement
+     * @param output Sortie du son, fermée à la fin de la lecture (y compris si elle ne peut pas démarrer)
+     * @param listener Suivi de la lecture
+     * @return La lecture en cours
+     * @throws SQLException Si l'enregistrement n'existe pas ou la base est inaccessible
+     * @throws IllegalArgumentException Si son codec est inconnu
+     */
+    public Playback play(int recordingId, AudioOutput output, PlaybackListener listener) throws SQLException {
+        byte[] storedHash;
+        AudioCodec codec;
+        int duration;
+        try (Connection conn = db.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT audio_hash, codec, duration FROM recordings WHERE id = ?")) {
+            // Récupération du hash et du codec, sans les données audio
+            pstmt.setInt(1, recordingId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) throw new SQLException("Recording not found: " + recordingId);
+                storedHash = SHA.readDigest(rs, "audio_hash");
+                codec = AudioCodecs.forName(rs.getString("codec"));
+                duration = rs.getInt("duration");
+            }
+        } catch (SQLException | RuntimeException e) {
+            try {
+                output.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        Playback playback = new Playback(recordingId, storedHash, codec, duration, output, listener);
+        playback.thread.start();
+        return playback;
+    }
+
+    /**
+     * Une lecture en cours.
+     */
+    public final class Playback {
+        private final Thread thread;
+        /** Trame demandée, -1 si aucune ; prise en compte par le thread de lecture */
+        private final AtomicLong seekTarget = new AtomicLong(-1);
+        private volatile boolean running = true;
+        private volatile Outcome outcome;
+
+        private Playback(int recordingId, byte[] storedHash, AudioCodec codec, int duration,
+                         AudioOutput output, PlaybackListener listener) {
+            this.thread = new Thread(() -> {
+                Exception error = null;
+                try {
+                    outcome = run(recordingId, storedHash, codec, duration, output, listener);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    error = e;
+                    outcome = Outcome.FAILED;
+                }
+                listener.finished(outcome, error);
+            }, "recording-playback");
+        }
+
+        private Outcome run(int recordingId, byte[] storedHash, AudioCodec codec, int duration,
+                            AudioOutput output, PlaybackListener listener) throws Exception {
+            // Les segments que cette lecture peut voir ne sont pas supprimés avant sa fin
+            SegmentAudioStore.ReadLease lease = db.getAudioStore().beginRead();
+            // La connexion de lecture reste empruntée jusqu'à la fin de la lecture
+            try (AudioOutput out = output; Connection conn = db.getConnection()) {
+                // La clé et les données sont lues dans le même état de la base pendant
+                // toute la lecture, même si un changement de clés les remplace entre-temps
+                conn.setAutoCommit(false);
+                final SecretKey secretKey = readKey(conn, recordingId);
+
+                // Déchiffrement au fil de la lecture, avec calcul du hash des données encodées, puis décodage
+                MessageDigest digest = SHA.newSHA256();
+                InputStream audioStream = codec.decode(new DigestInputStream(
+                    AES.decryptStream(db.getAudioStore().openStream(conn, recordingId), secretKey), digest), format);
+                try {
+                    // Accès direct à une position, préparé à la première recherche
+                    SeekableAudio seekable = null;
+                    long totalFrames = (long) duration * (long) format.getSampleRate();
+                    SeekIndex index = SeekIndex.load(conn, recordingId);
+                    if (index != null) {
+                        totalFrames = index.getFrames();
+                    }
+                    listener.started(totalFrames);
+
+                    // Tampon d'un dixième de seconde, aligné sur la taille des trames
+                    int bufferSize = (int) (format.getSampleRate() / 10) * format.getFrameSize();
+                    byte[] buffer = new byte[bufferSize];
+                    int bytesRead = 0;
+                    long position = 0;
+                    boolean seeked = false;
+
+                    while (running) {
+                        long target = seekTarget.getAndSet(-1);
+                        if (target >= 0) {
+                            // Saut : seul le bloc contenant la position est déchiffré
+                            if (seekable == null) {
+                                seekable = SeekableAudio.open(conn, db.getAudioStore(), recordingId,
+                                                              secretKey, codec, format);
+                            }
+                            audioStream.close();
+                            audioStream = seekable.openAt(target);
+                            out.discard();
+                            position = target;
+                            seeked = true;
+                        }
+                        if ((bytesRead = audioStream.read(buffer, 0, buffer.length)) == -1) break;
+                        out.write(buffer, 0, bytesRead);
+                        position += bytesRead / format.getFrameSize();
+                        listener.position(position, totalFrames);
+                    }
+                    if (bytesRead != -1) return Outcome.STOPPED;
+                    // Vérification de l'intégrité si l'enregistrement a été lu en entier, sans saut
+                    if (seeked) return Outcome.PLAYED;
+                    return SHA.matches(storedHash, digest.digest()) ? Outcome.VERIFIED : Outcome.CORRUPT;
+                } finally {
+                    audioStream.close();
+                }
+            } finally {
+                lease.close();
+            }
+        }
+
+        /**
+         * Demande un saut de la lecture à une trame, pris en compte avant le prochain tampon.
+         *
+         * @param frame Trame cible
+         */
+        public void seek(long frame) {
+            seekTarget.set(Math.max(0, frame));
+        }
+
+        /**
+         * Demande l'arrêt de la lecture, qui se termine après le tampon en cours.
+         */
+        public void stop() {
+            running = false;
+        }
+
+        /**
+         * Attend la fin de la lecture.
+         *
+         * @return L'issue de la lecture
+         * @throws InterruptedException Si l'attente est interrompue
+         */
+        public Outcome awaitEnd() throws InterruptedException {
+            thread.join();
+            return outcome;
+        }
+    }
+
+    /**
+     * Lit et désenveloppe la clé de chiffrement d'un enregistrement.
+     *
+     * @param conn Connexion à la base de données
+     * @param recordingId Identifiant de l'enregistrement
+     * @return La clé
+     * @throws SQLException Si l'enregistrement n'existe plus
+     * @throws AES.AESException Si la clé stockée n'est pas valide
+     */
+    private SecretKey readKey(Connection conn, int recordingId) throws SQLException, AES.AESException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT encryption_key FROM recordings WHERE id = ?")) {
+            pstmt.setInt(1, recordingId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) throw new SQLException("Recording not found: " + recordingId);
+                return db.getKeys().unwrap(rs.getString(1));
+            }
+        }
+    }
+
+    /**
+     * Supprime un enregistrement, ses index et son résultat de vérification. Les données audio
+     * partagées avec d'autres enregistrements ne sont que déréférencées.
+     *
+     * @param recordingId Enregistrement
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    public void delete(int recordingId) throws SQLException {
+        try (Connection conn = db.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                db.getAudioStore().delete(conn, recordingId);
+                try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM recordings WHERE id = ?")) {
+                    pstmt.setInt(1, recordingId);
+                    pstmt.executeUpdate();
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "DELETE FROM recording_integrity WHERE recording_id = ?")) {
+                    pstmt.setInt(1, recordingId);
+                    pstmt.executeUpdate();
+                }
+                PeakIndex.delete(conn, recordingId);
+                SeekIndex.delete(conn, recordingId);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Crée le fichier temporaire de l'auto-sauvegarde d'un nouvel enregistrement.
+     *
+     * @return Le fichier, ou null sans dossier d'auto-sauvegarde ou s'il n'est pas accessible
+     */
+    private Path createAutosaveFile() {
+        if (autosaveDir == null) return null;
+        try {
+            Path recordingsDir = Files.createDirectories(autosaveDir);
+            return Files.createTempFile(recordingsDir, "recording-", ".wav.part");
+        } catch (IOException e) {
+            System.err.println("Auto-sauvegarde désactivée: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Donne au fichier WAV, écrit pendant la capture, le nom de l'enregistrement sauvegardé.
+     *
+     * @param name Nom de l'enregistrement
+     * @param recording Enregistrement sauvegardé
+     */
+    private static void autosave(String name, RecordingPipeline.Result recording) {
+        Path autosave = recording.getAutosave();
+        if (autosave == null) return;
+        try {
+            // Création d'un nom de fichier valide
+            String fileName = name.replaceAll("[^a-zA-Z0-9.-]", "_") + ".wav";
+            Path outputFile = autosave.resolveSibling(fileName);
+
+            Files.move(autosave, outputFile, StandardCopyOption.REPLACE_EXISTING);
+
+            System.out.println("Enregistrement auto-sauvegardé: " + outputFile.toAbsolutePath());
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("Échec de l'auto-sauvegarde de l'enregistrement: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Arrête les tâches d'entretien et termine les sauvegardes en attente.
+     *
+     * @param timeoutSeconds Attente maximale des sauvegardes
+     * @return true si toutes les sauvegardes sont terminées
+     * @throws InterruptedException Si l'attente est interrompue
+     */
+    public boolean close(long timeoutSeconds) throws InterruptedException {
+        synchronized (this) {
+            if (scrubber != null) {
+                scrubber.stop();
+            }
+        }
+        return saveService.shutdown(timeoutSeconds);
+    }
+}
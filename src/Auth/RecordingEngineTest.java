@@ -0,0 +1,233 @@
+package Auth;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RecordingEngineTest {
+
+    private static final AudioFormat CAPTURE = new AudioFormat(44100, 8, 1, true, true);
+
+    private Path dir;
+    private Database db;
+    private RecordingEngine engine;
+    private final BlockingQueue<SaveService.Job> finished = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("engine");
+        db = new Database("jdbc:sqlite:" + dir.resolve("users.db"), 4);
+        engine = new RecordingEngine(db, CAPTURE, dir.resolve("recordings"), new SaveService.Listener() {
+            @Override
+            public void progress(SaveService.Job job, long done, long total) {
+            }
+
+            @Override
+            public void finished(SaveService.Job job) {
+                finished.add(job);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        engine.close(10);
+        db.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testRecordListPlayAndDeleteWithoutDisplay() throws Exception {
+        byte[] pcm = tone(44100 * 3);
+        int id = record("Essai", pcm);
+
+        List<RecordingInfo> recordings = engine.list(1, null, 10);
+        assertEquals(1, recordings.size());
+        assertEquals(id, recordings.get(0).getId());
+        assertEquals("Essai", recordings.get(0).getName());
+        assertEquals(3, recordings.get(0).getDuration());
+        assertNull(recordings.get(0).getStatus());
+        assertNotNull(recordings.get(0).getOverview());
+        assertTrue(Files.exists(dir.resolve("recordings").resolve("Essai.wav")));
+        assertNotNull(engine.loadPeaks(id));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RecordingEngine.Outcome outcome = engine.play(id, RecordingEngine.toStream(out), (result, error) -> { })
+                .awaitEnd();
+        assertEquals(RecordingEngine.Outcome.VERIFIED, outcome);
+        assertArrayEquals(pcm, out.toByteArray());
+
+        engine.delete(id);
+        assertTrue(engine.list(1, null, 10).isEmpty());
+        assertNull(engine.loadPeaks(id));
+    }
+
+    @Test
+    public void testListIsPagedFromNewestToOldest() throws Exception {
+        int first = record("Premier", tone(4410));
+        int second = record("Second", tone(8820));
+
+        List<RecordingInfo> page = engine.list(1, null, 1);
+        assertEquals(1, page.size());
+        int newest = page.get(0).getId();
+        List<RecordingInfo> next = engine.list(1, page.get(0), 1);
+        assertEquals(1, next.size());
+        assertNotEquals(newest, next.get(0).getId());
+        assertTrue(engine.list(1, next.get(0), 1).isEmpty());
+        assertTrue(newest == first || newest == second);
+        assertTrue(engine.list(2, null, 10).isEmpty());
+    }
+
+    @Test
+    public void testSeekAndStopDuringPlayback() throws Exception {
+        byte[] pcm = tone(44100 * 3);
+        int id = record("Essai", pcm);
+
+        BlockingOutput seeking = new BlockingOutput();
+        RecordingEngine.Playback playback = engine.play(id, seeking, (result, error) -> { });
+        assertTrue(seeking.firstWrite.await(10, TimeUnit.SECONDS));
+        playback.seek(44100);
+        seeking.release.countDown();
+        // Après un saut, la lecture va au bout sans pouvoir vérifier le hash
+        assertEquals(RecordingEngine.Outcome.PLAYED, playback.awaitEnd());
+        assertEquals(1, seeking.discarded);
+        assertEquals(seeking.first + pcm.length - 44100, seeking.written.size());
+        assertTrue(seeking.closed);
+
+        BlockingOutput stopping = new BlockingOutput();
+        playback = engine.play(id, stopping, (result, error) -> { });
+        assertTrue(stopping.firstWrite.await(10, TimeUnit.SECONDS));
+        playback.stop();
+        stopping.release.countDown();
+        assertEquals(RecordingEngine.Outcome.STOPPED, playback.awaitEnd());
+        assertEquals(stopping.first, stopping.written.size());
+    }
+
+    @Test
+    public void testRecordingNotMatchingItsHashIsReported() throws Exception {
+        int id = record("Essai", tone(22050));
+        try (Connection conn = db.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("UPDATE recordings SET audio_hash = ? WHERE id = ?")) {
+            SHA.bindDigest(pstmt, 1, SHA.sha256("autre audio".getBytes()));
+            pstmt.setInt(2, id);
+            pstmt.executeUpdate();
+        }
+        RecordingEngine.Outcome outcome = engine.play(id, RecordingEngine.toStream(new ByteArrayOutputStream()),
+                                                      (result, error) -> { }).awaitEnd();
+        assertEquals(RecordingEngine.Outcome.CORRUPT, outcome);
+    }
+
+    @Test
+    public void testStoppingDuringABlockedReadIsNotAnError() throws Exception {
+        List<Exception> errors = new CopyOnWriteArrayList<>();
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch closed = new CountDownLatch(1);
+        // Source dont la lecture bloque jusqu'à sa fermeture, puis échoue, comme une socket
+        InputStream source = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                reading.countDown();
+                try {
+                    closed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException("Stream closed");
+            }
+
+            @Override
+            public void close() {
+                closed.countDown();
+            }
+        };
+
+        RecordingEngine.Capture capture = engine.record(1, source, errors::add);
+        assertTrue(reading.await(10, TimeUnit.SECONDS));
+        capture.stop();
+        assertNull(capture.getError());
+        assertTrue(errors.isEmpty());
+        capture.discard();
+    }
+
+    @Test(expected = java.sql.SQLException.class)
+    public void testPlayingAMissingRecordingFails() throws Exception {
+        engine.play(42, RecordingEngine.toStream(new ByteArrayOutputStream()), (result, error) -> { });
+    }
+
+    /**
+     * Capture un flux PCM jusqu'à sa fin et attend sa sauvegarde.
+     */
+    private int record(String name, byte[] pcm) throws Exception {
+        RecordingEngine.Capture capture = engine.record(1, new ByteArrayInputStream(pcm), null);
+        capture.awaitEnd();
+        assertNull(capture.getError());
+        SaveService.Job job = capture.save(name, "2024-01-01 10:00:0" + finished.size());
+        assertSame(job, finished.poll(10, TimeUnit.SECONDS));
+        assertEquals(SaveService.State.SAVED, job.getState());
+        return job.getRecordingId();
+    }
+
+    /** Sortie dont la première écriture attend le feu vert du test */
+    private static final class BlockingOutput implements RecordingEngine.AudioOutput {
+        final CountDownLatch firstWrite = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        volatile int first;
+        volatile int discarded;
+        volatile boolean closed;
+
+        @Override
+        public void write(byte[] buffer, int off, int len) {
+            written.write(buffer, off, len);
+            if (firstWrite.getCount() == 0) return;
+            first = len;
+            firstWrite.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void discard() {
+            discarded++;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static byte[] tone(int frames) {
+        byte[] pcm = new byte[frames];
+        for (int i = 0; i < frames; i++) {
+            pcm[i] = (byte) Math.round(60 * Math.sin(2 * Math.PI * 440 * i / 44100.0));
+        }
+        return pcm;
+    }
+}
@@ -0,0 +1,128 @@
+package Auth;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Métadonnées d'un enregistrement telles qu'affichées dans une liste, sans ses données audio.
+ * Les listes sont paginées par clé (timestamp, id), du plus récent au plus ancien.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+public final class RecordingInfo {
+
+    private static final String SELECT_COLUMNS =
+            "SELECT r.id, r.name, r.timestamp, r.duration, " + RecordingAudio.SIZE_SQL + " AS size, i.status, p.peaks " +
+            "FROM recordings r LEFT JOIN recording_integrity i ON i.recording_id = r.id " +
+            "LEFT JOIN recording_peaks p ON p.recording_id = r.id AND p.level = 0 ";
+
+    private final int id;
+    private final String name;
+    private final String timestamp;
+    private final int duration;
+    private final long size;
+    private final IntegrityScrubber.Status status;
+    private final byte[] overview;
+
+    RecordingInfo(int id, String name, String timestamp, int duration, long size,
+                  IntegrityScrubber.Status status, byte[] overview) {
+        this.id = id;
+        this.name = name;
+        this.timestamp = timestamp;
+        this.duration = duration;
+        this.size = size;
+        this.status = status;
+        this.overview = overview;
+    }
+
+    /**
+     * Lit une page des enregistrements d'un utilisateur.
+     *
+     * @param conn Connexion à la base
+     * @param userId Propriétaire
+     * @param afterTimestamp Horodatage du dernier enregistrement de la page précédente, null pour la première
+     * @param afterId Identifiant du dernier enregistrement de la page précédente
+     * @param limit Nombre maximal d'enregistrements
+     * @return Les enregistrements, du plus récent au plus ancien
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    static List<RecordingInfo> list(Connection conn, int userId, String afterTimestamp, int afterId, int limit)
+            throws SQLException {
+        String sql = SELECT_COLUMNS + "WHERE r.user_id = ? "
+                + (afterTimestamp != null ? "AND (r.timestamp, r.id) < (?, ?) " : "")
+                + "ORDER BY r.timestamp DESC, r.id DESC LIMIT ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int i = 1;
+            pstmt.setInt(i++, userId);
+            if (afterTimestamp != null) {
+                pstmt.setString(i++, afterTimestamp);
+                pstmt.setInt(i++, afterId);
+            }
+            pstmt.setInt(i, limit);
+
+            List<RecordingInfo> page = new ArrayList<>(Math.min(limit, 256));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String status = rs.getString("status");
+                    page.add(new RecordingInfo(rs.getInt("id"), rs.getString("name"), rs.getString("timestamp"),
+                                               rs.getInt("duration"), rs.getLong("size"),
+                                               status != null ? IntegrityScrubber.Status.valueOf(status) : null,
+                                               rs.getBytes("peaks")));
+                }
+            }
+            return page;
+        }
+    }
+
+    /**
+     * @param conn Connexion à la base
+     * @param userId Propriétaire
+     * @return Le nombre d'enregistrements de l'utilisateur
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    static int count(Connection conn, int userId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) FROM recordings WHERE user_id = ?")) {
+            pstmt.setInt(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    /** @return La durée en secondes */
+    public int getDuration() {
+        return duration;
+    }
+
+    /** @return La taille des données chiffrées en octets */
+    public long getSize() {
+        return size;
+    }
+
+    /** @return Le résultat de la dernière vérification d'intégrité, null si jamais vérifié */
+    public IntegrityScrubber.Status getStatus() {
+        return status;
+    }
+
+    /** @return L'aperçu de la forme d'onde, null sans index de crêtes */
+    public byte[] getOverview() {
+        return overview;
+    }
+}
@@ -0,0 +1,325 @@
+package Auth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.crypto.SecretKey;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Chaîne de traitement d'un enregistrement en cours.
+ * Le thread de capture remplit des tampons fournis par un pool fixe et les transmet
+ * à un thread consommateur qui, au fil de l'enregistrement, retire les silences
+ * ({@link VoiceActivityFilter}), calcule l'index de crêtes ({@link PeakIndex}), encode l'audio avec le {@link AudioCodec} choisi,
+ * calcule le hash SHA-256 des données encodées et les chiffre dans un {@link CaptureBuffer}. L'audio conservé peut
+ * aussi être écrit en clair dans un fichier WAV ({@link WavWriter}) pour l'auto-sauvegarde. À l'arrêt, il ne reste
+ * qu'à chiffrer le dernier bloc : la durée de la sauvegarde ne dépend plus de la
+ * longueur de l'enregistrement.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+public class RecordingPipeline implements AutoCloseable {
+
+    /** Nombre de tampons de capture en circulation */
+    static final int POOL_SIZE = 8;
+
+    /** Marqueur de fin de capture */
+    private static final Frame END = new Frame(null, 0);
+
+    /** Tampon de capture et nombre d'octets utiles */
+    private static final class Frame {
+        final byte[] data;
+        final int length;
+
+        Frame(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    private final BlockingQueue<byte[]> free;
+    private final BlockingQueue<Frame> frames;
+    private final SecretKey key;
+    private final MessageDigest digest;
+    private final CaptureBuffer encrypted;
+    private final AudioFormat format;
+    private final AudioCodec codec;
+    /** Index de crêtes de l'audio conservé */
+    private final PeakIndex.Builder peaks;
+    /** Index de recherche dans les données encodées */
+    private final SeekIndex.Builder seek;
+    /** Retrait des silences, index de crêtes, encodage, hash puis chiffrement */
+    private final VoiceActivityFilter input;
+    /** Copie WAV de l'audio conservé, null sans auto-sauvegarde */
+    private final WavWriter autosave;
+    private final Thread consumer;
+    private volatile IOException failure;
+    private Result result;
+
+    /**
+     * Résultat d'un enregistrement terminé : données chiffrées, clé, codec, hash et index.
+     */
+    public static final class Result implements AutoCloseable {
+        private final SecretKey key;
+        private final byte[] digest;
+        private final long length;
+        private final AudioFormat format;
+        private final AudioCodec codec;
+        private final PeakIndex peaks;
+        private final SeekIndex seek;
+        private final CaptureBuffer encrypted;
+        private final Path autosave;
+
+        Result(SecretKey key, byte[] digest, long length, AudioFormat format, AudioCodec codec, PeakIndex peaks,
+               SeekIndex seek, CaptureBuffer encrypted, Path autosave) {
+            this.key = key;
+            this.digest = digest;
+            this.length = length;
+            this.format = format;
+            this.codec = codec;
+            this.peaks = peaks;
+            this.seek = seek;
+            this.encrypted = encrypted;
+            this.autosave = autosave;
+        }
+
+        /** @return La clé ayant servi à chiffrer l'enregistrement */
+        public SecretKey getKey() {
+            return key;
+        }
+
+        /** @return Le hash SHA-256 des données encodées, avant chiffrement */
+        public byte[] getDigest() {
+            return digest.clone();
+        }
+
+        /** @return La taille de l'audio PCM conservé, silences retirés */
+        public long getLength() {
+            return length;
+        }
+
+        /** @return La taille des données chiffrées */
+        public long getEncryptedLength() {
+            return encrypted.length();
+        }
+
+        /** @return Le codec des données */
+        public AudioCodec getCodec() {
+            return codec;
+        }
+
+        /** @return L'index de crêtes de l'audio conservé */
+        public PeakIndex getPeaks() {
+            return peaks;
+        }
+
+        /** @return L'index de recherche dans les données encodées */
+        public SeekIndex getSeekIndex() {
+            return seek;
+        }
+
+        /**
+         * @return Le fichier WAV complet de l'audio conservé, ou null sans auto-sauvegarde.
+         *         Il est supprimé à la fermeture de la chaîne s'il n'a pas été déplacé.
+         */
+        public Path getAutosave() {
+            return autosave;
+        }
+
+        /** @return Un flux sur les données chiffrées (format {@link ChunkedAES}) */
+        public InputStream openEncrypted() throws IOException {
+            return encrypted.openStream();
+        }
+
+        /** @return Un flux sur l'audio PCM, déchiffré et décodé au fil de la lecture */
+        public InputStream openDecrypted() throws IOException {
+            return codec.decode(AES.decryptStream(encrypted.openStream(), key), format);
+        }
+
+        /** Efface les données chiffrées conservées. */
+        @Override
+        public void close() {
+            encrypted.close();
+        }
+    }
+
+    /**
+     * Prépare la chaîne et démarre le thread consommateur.
+     *
+     * @param bufferSize Taille des tampons remplis par le thread de capture
+     * @param format Format PCM de la capture
+     * @param codec Codec appliqué avant le chiffrement
+     * @param vad Réglages de retrait des silences
+     * @throws AES.AESException Si la clé ne peut pas être générée
+     * @throws IOException Si le flux de chiffrement ne peut pas être créé
+     */
+    public RecordingPipeline(int bufferSize, AudioFormat format, AudioCodec codec, VadSettings vad)
+            throws AES.AESException, IOException {
+        this(bufferSize, format, codec, vad, null);
+    }
+
+    /**
+     * Prépare la chaîne avec une auto-sauvegarde WAV écrite pendant l'enregistrement.
+     *
+     * @param bufferSize Taille des tampons remplis par le thread de capture
+     * @param format Format PCM de la capture
+     * @param codec Codec appliqué avant le chiffrement
+     * @param vad Réglages de retrait des silences
+     * @param autosave Fichier WAV temporaire, null pour ne pas en écrire
+     * @throws AES.AESException Si la clé ne peut pas être générée
+     * @throws IOException Si le flux de chiffrement ou le fichier WAV ne peut pas être créé
+     */
+    public RecordingPipeline(int bufferSize, AudioFormat format, AudioCodec codec, VadSettings vad, Path autosave)
+            throws AES.AESException, IOException {
+        this.key = AES.generateSecretKey();
+        this.digest = SHA.newSHA256();
+        this.format = format;
+        this.codec = codec;
+        // Les données sont déjà chiffrées : le segment temporaire n'a pas à l'être une seconde fois
+        this.encrypted = new CaptureBuffer(CaptureBuffer.DEFAULT_MEMORY_LIMIT, false);
+        OutputStream encryptor = AES.encryptStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                encrypted.write(b, off, len);
+            }
+        }, key);
+        this.seek = new SeekIndex.Builder(new DigestOutputStream(encryptor, digest), codec, format);
+        this.peaks = new PeakIndex.Builder(codec.encode(seek, format), format);
+        this.autosave = autosave != null ? new WavWriter(autosave, format) : null;
+        this.input = new VoiceActivityFilter(this.autosave != null ? new Tee(this.autosave, peaks) : peaks, format, vad);
+
+        this.free = new ArrayBlockingQueue<>(POOL_SIZE);
+        this.frames = new ArrayBlockingQueue<>(POOL_SIZE + 1);
+        for (int i = 0; i < POOL_SIZE; i++) {
+            free.add(new byte[bufferSize]);
+        }
+        this.consumer = new Thread(this::consume, "recording-pipeline");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /**
+     * Fournit un tampon libre au thread de capture, en attendant si le consommateur est en retard.
+     *
+     * @return Un tampon à remplir puis à passer à {@link #submit(byte[], int)}
+     * @throws InterruptedException Si le thread est interrompu
+     */
+    public byte[] nextBuffer() throws InterruptedException {
+        return free.take();
+    }
+
+    /**
+     * Transmet un tampon rempli au consommateur.
+     *
+     * @param buffer Tampon obtenu par {@link #nextBuffer()}
+     * @param length Nombre d'octets utiles (0 pour simplement rendre le tampon)
+     * @throws IOException Si le consommateur a échoué
+     * @throws InterruptedException Si le thread est interrompu
+     */
+    public void submit(byte[] buffer, int length) throws IOException, InterruptedException {
+        if (failure != null) throw failure;
+        frames.put(new Frame(buffer, length));
+    }
+
+    private void consume() {
+        try {
+            while (true) {
+                Frame frame = frames.take();
+                if (frame == END) break;
+                if (failure == null && frame.length > 0) {
+                    try {
+                        input.write(frame.data, 0, frame.length);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+                free.put(frame.data);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Termine l'enregistrement : attend que le consommateur ait traité tous les tampons,
+     * encode et chiffre les dernières données et finalise le hash et les index.
+     *
+     * @return Le résultat, à fermer une fois sauvegardé
+     * @throws IOException Si le chiffrement a échoué
+     * @throws InterruptedException Si le thread est interrompu
+     */
+    public Result finish() throws IOException, InterruptedException {
+        if (result != null) return result;
+        frames.put(END);
+        consumer.join();
+        if (failure != null) throw failure;
+        input.close();
+        result = new Result(key, digest.digest(), input.getKeptBytes(), format, codec, peaks.build(), seek.build(), encrypted,
+                            autosave != null ? autosave.getFile() : null);
+        return result;
+    }
+
+    /**
+     * Abandonne l'enregistrement et efface les données conservées, ainsi que le fichier WAV
+     * s'il n'a pas été déplacé.
+     */
+    @Override
+    public void close() {
+        consumer.interrupt();
+        encrypted.close();
+        if (autosave != null) {
+            autosave.discard();
+        }
+    }
+
+    /**
+     * Transmet l'audio conservé au fichier WAV puis à la suite de la chaîne.
+     */
+    private static final class Tee extends OutputStream {
+        private final OutputStream first;
+        private final OutputStream second;
+
+        Tee(OutputStream first, OutputStream second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            first.write(b, off, len);
+            second.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            first.flush();
+            second.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                first.close();
+            } finally {
+                second.close();
+            }
+        }
+    }
+}
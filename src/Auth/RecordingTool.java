@@ -0,0 +1,218 @@
+package Auth;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Enregistreur en ligne de commande, sans interface graphique : les mêmes opérations que
+ * l'application, par {@link RecordingEngine}, pour traiter des lots, écrire des scripts ou
+ * mesurer le vrai chemin d'enregistrement sur un serveur.
+ * <pre>
+ * java Auth.RecordingTool [--db fichier] list email                  liste les enregistrements d'un utilisateur
+ * java Auth.RecordingTool [--db fichier] record email audio.wav [nom] enregistre un fichier audio, converti au format de capture
+ * java Auth.RecordingTool [--db fichier] record-mic email secondes [nom]
+ *                                                                     enregistre le micro pendant la durée donnée
+ * java Auth.RecordingTool [--db fichier] play id [sortie.wav]         lit un enregistrement, sur la carte son ou dans un fichier WAV
+ * java Auth.RecordingTool [--db fichier] delete id                    supprime un enregistrement
+ * </pre>
+ * La base utilisée est {@link Database#DEFAULT_URL}, ou le fichier donné par {@code --db}.
+ * Le code de sortie vaut 1 en cas d'échec ou de commande mal formée, et 2 si un enregistrement lu ne correspond pas à son hash.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+public class RecordingTool {
+
+    /** Attente maximale de la sauvegarde d'un enregistrement, en secondes */
+    private static final long SAVE_TIMEOUT = 600;
+    /** Nombre d'enregistrements lus par page pour la liste */
+    private static final int LIST_PAGE_SIZE = 500;
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * @param args Options et commande
+     */
+    public static void main(String[] args) {
+        String dbFile = null;
+        if (args.length >= 2 && args[0].equals("--db")) {
+            dbFile = args[1];
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        if (args.length < 2) {
+            System.exit(usage());
+        }
+        Database db = dbFile != null ? new Database("jdbc:sqlite:" + dbFile, Database.DEFAULT_POOL_SIZE) : Database.get();
+        AudioFormat format = AudioRecorder.CAPTURE_FORMAT;
+        RecordingEngine engine = new RecordingEngine(db, format, null, new SaveService.Listener() {
+            @Override
+            public void progress(SaveService.Job job, long done, long total) {
+            }
+
+            @Override
+            public void finished(SaveService.Job job) {
+            }
+        });
+        int status = 0;
+        try {
+            switch (args[0]) {
+                case "list":
+                    list(engine, userId(db, args[1]));
+                    break;
+                case "record":
+                    if (args.length < 3) {
+                        status = usage();
+                        break;
+                    }
+                    // Utilisateur vérifié avant d'ouvrir le fichier, qui resterait ouvert sinon
+                    int owner = userId(db, args[1]);
+                    Path file = Paths.get(args[2]);
+                    AudioInputStream source = AudioSystem.getAudioInputStream(format,
+                                                                              AudioSystem.getAudioInputStream(file.toFile()));
+                    RecordingEngine.Capture capture = engine.record(owner, source, null);
+                    capture.awaitEnd();
+                    String fileName = file.getFileName().toString();
+                    status = save(engine, capture, args.length > 3 ? args[3]
+                            : fileName.contains(".") ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName);
+                    break;
+                case "record-mic":
+                    if (args.length < 3) {
+                        status = usage();
+                        break;
+                    }
+                    int userId = userId(db, args[1]);
+                    double seconds = Double.parseDouble(args[2]);
+                    RecordingEngine.Capture microphone = engine.record(userId,
+                            RecordingEngine.openMicrophone(null, format), null);
+                    System.out.println("Recording for " + seconds + " s...");
+                    try {
+                        Thread.sleep((long) (seconds * 1000));
+                    } finally {
+                        microphone.stop();
+                    }
+                    status = save(engine, microphone, args.length > 3 ? args[3] : null);
+                    break;
+                case "play":
+                    RecordingEngine.AudioOutput output = args.length > 2
+                            ? RecordingEngine.toStream(new WavWriter(Paths.get(args[2]), format))
+                            : RecordingEngine.openSpeaker(format);
+                    RecordingEngine.Outcome outcome = engine.play(Integer.parseInt(args[1]), output,
+                                                                  (result, error) -> { })
+                            .awaitEnd();
+                    System.out.println(outcome);
+                    status = outcome == RecordingEngine.Outcome.CORRUPT ? 2
+                            : outcome == RecordingEngine.Outcome.FAILED ? 1 : 0;
+                    break;
+                case "delete":
+                    engine.delete(Integer.parseInt(args[1]));
+                    break;
+                default:
+                    status = usage();
+                    break;
+            }
+        } catch (InterruptedException e) {
+            System.err.println("Interrupted");
+            Thread.currentThread().interrupt();
+            status = 1;
+        } catch (SQLException | IOException | AES.AESException | LineUnavailableException | UnsupportedAudioFileException
+                 | IllegalArgumentException e) {
+            System.err.println("Recording command failed: " + e.getMessage());
+            e.printStackTrace();
+            status = 1;
+        } finally {
+            try {
+                if (!engine.close(SAVE_TIMEOUT)) {
+                    System.err.println("Pending saves did not finish");
+                    status = 1;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            db.close();
+        }
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Sauvegarde une capture arrêtée et attend la fin de la sauvegarde.
+     *
+     * @param name Nom de l'enregistrement, null pour un nom daté
+     * @return Le code de sortie
+     */
+    private static int save(RecordingEngine engine, RecordingEngine.Capture capture, String name)
+            throws InterruptedException {
+        if (capture.getError() != null) {
+            capture.discard();
+            System.err.println("Capture failed: " + capture.getError().getMessage());
+            return 1;
+        }
+        String timestamp = LocalDateTime.now().format(TIMESTAMP);
+        SaveService.Job job = capture.save(name != null ? name : "Enregistrement " + timestamp, timestamp);
+        // Plus rien d'autre à sauvegarder : l'arrêt du service attend la fin de celle-ci
+        engine.close(SAVE_TIMEOUT);
+        switch (job.getState()) {
+            case SAVED:
+                System.out.println("Saved recording " + job.getRecordingId() + " (" + job.getDuration() + " s, "
+                                   + job.getSize() + " bytes)");
+                return 0;
+            case EMPTY:
+                System.out.println("Nothing to save: the recording is empty");
+                return 0;
+            default:
+                System.err.println("Save " + job.getState().name().toLowerCase()
+                                   + (job.getError() != null ? ": " + job.getError().getMessage() : ""));
+                return 1;
+        }
+    }
+
+    private static void list(RecordingEngine engine, int userId) throws SQLException {
+        RecordingInfo last = null;
+        while (true) {
+            List<RecordingInfo> page = engine.list(userId, last, LIST_PAGE_SIZE);
+            for (RecordingInfo recording : page) {
+                System.out.println(recording.getId() + "\t" + recording.getTimestamp() + "\t"
+                                   + recording.getDuration() + " s\t" + recording.getSize() + " bytes\t"
+                                   + (recording.getStatus() != null ? recording.getStatus() : "UNVERIFIED") + "\t"
+                                   + recording.getName());
+            }
+            if (page.size() < LIST_PAGE_SIZE) return;
+            last = page.get(page.size() - 1);
+        }
+    }
+
+    private static int userId(Database db, String email) throws SQLException {
+        try (Connection conn = db.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM users WHERE email = ?")) {
+            pstmt.setString(1, email);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) throw new SQLException("Unknown user: " + email);
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * @return Le code de sortie d'une commande mal formée
+     */
+    private static int usage() {
+        System.err.println("Usage: java Auth.RecordingTool [--db file] list <email> | record <email> <audio.wav> [name] " +
+                           "| record-mic <email> <seconds> [name] | play <id> [out.wav] | delete <id>");
+        return 1;
+    }
+}
@@ -0,0 +1,329 @@
+package Auth;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Modèle de tableau paginé pour la liste des enregistrements d'un utilisateur.
+ * Les lignes sont chargées par pages à l'aide d'une pagination par clé
+ * (timestamp, id) plutôt que par OFFSET, seules quelques pages sont conservées
+ * en mémoire et la page suivante est préchargée en arrière-plan pendant le défilement.
+ * La forme d'onde de chaque ligne vient de l'aperçu de son {@link PeakIndex}, lu avec la page.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+public class RecordingsTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Nombre de lignes chargées par requête */
+    static final int PAGE_SIZE = 200;
+    /** Nombre maximal de pages gardées en mémoire */
+    static final int MAX_PAGES = 8;
+    /** Valeur affichée tant que la page d'une ligne n'est pas chargée */
+    private static final String LOADING = "…";
+
+    /** Libellé affiché pour un enregistrement pas encore vérifié */
+    private static final String NOT_VERIFIED = "Non vérifié";
+
+    private static final String[] COLUMNS = {"ID", "Nom", "Horodatage", "Durée (sec)", "Taille (Ko)", "Intégrité", "Forme d'onde"};
+
+    /** Colonne des tranches de l'aperçu de la forme d'onde (byte[], ou null sans index) */
+    static final int WAVEFORM_COLUMN = 6;
+
+    /** Fournisseur des connexions utilisées par le thread de chargement */
+    private final Database db;
+    /** Identifiant de l'utilisateur dont on affiche les enregistrements */
+    private final int userId;
+    /** Thread unique chargeant les pages hors de l'EDT */
+    private final ExecutorService loader;
+
+    /** Pages chargées, par ordre d'accès (modifiées uniquement sur l'EDT) */
+    private final Map<Integer, Object[][]> pages = new LinkedHashMap<Integer, Object[][]>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Object[][]> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    /** Dernière clé (timestamp, id) de chaque page déjà parcourue ; protège aussi les changements de {@link #generation} */
+    private final Map<Integer, Object[]> pageEndKeys = new ConcurrentHashMap<>();
+    /** Pages dont le chargement est en cours */
+    private final Set<Integer> pending = ConcurrentHashMap.newKeySet();
+
+    /** Nombre total de lignes */
+    private int rowCount;
+    /** Incrémenté à chaque rechargement pour ignorer les résultats périmés */
+    private volatile int generation;
+
+    /**
+     * Crée un modèle vide ; appeler {@link #reload()} pour le remplir.
+     *
+     * @param db Fournisseur de connexions à la base de données
+     * @param userId Identifiant de l'utilisateur connecté
+     */
+    public RecordingsTableModel(Database db, int userId) {
+        this.db = db;
+        this.userId = userId;
+        this.loader = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "recordings-page-loader");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int page = row / PAGE_SIZE;
+        Object[][] data = pages.get(page);
+        if (data == null) {
+            requestPage(page);
+            return column == 0 || column == WAVEFORM_COLUMN ? null : LOADING;
+        }
+        // Préchargement de la page suivante pendant le défilement
+        if ((page + 1) * PAGE_SIZE < rowCount && !pages.containsKey(page + 1)) {
+            requestPage(page + 1);
+        }
+        int index = row % PAGE_SIZE;
+        return index < data.length ? data[index][column] : null;
+    }
+
+    /**
+     * Retourne l'identifiant de l'enregistrement affiché à la ligne donnée.
+     *
+     * @param row Index de la ligne
+     * @return L'identifiant, ou -1 si la ligne n'est pas encore chargée
+     */
+    public int getRecordingId(int row) {
+        Object id = getValueAt(row, 0);
+        return id == null ? -1 : (Integer) id;
+    }
+
+    /**
+     * Retourne le nom de l'enregistrement affiché à la ligne donnée.
+     *
+     * @param row Index de la ligne
+     * @return Le nom de l'enregistrement
+     */
+    public String getRecordingName(int row) {
+        return String.valueOf(getValueAt(row, 1));
+    }
+
+    /**
+     * Vide le cache de pages et recompte les enregistrements en arrière-plan.
+     */
+    public void reload() {
+        final int gen;
+        synchronized (pageEndKeys) {
+            gen = ++generation;
+            // Les clés des pages précédentes ne sont plus valables après un ajout ou une suppression
+            pageEndKeys.clear();
+        }
+        pending.clear();
+        loader.execute(() -> {
+            try (Connection conn = db.getConnection()) {
+                final int count = RecordingInfo.count(conn, userId);
+                SwingUtilities.invokeLater(() -> {
+                    if (gen != generation) return;
+                    pages.clear();
+                    rowCount = count;
+                    fireTableDataChanged();
+                });
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Ajoute en tête de liste un enregistrement qui vient d'être sauvegardé, sans relire la base.
+     * La première page est mise à jour sur place ; les suivantes, décalées d'une ligne, seront
+     * relues si l'on y revient. À appeler sur l'EDT.
+     *
+     * @param id Identifiant de l'enregistrement
+     * @param name Nom
+     * @param timestamp Horodatage, le plus récent de la liste
+     * @param duration Durée en secondes
+     * @param size Taille des données en octets
+     * @param overview Aperçu de la forme d'onde, ou null
+     */
+    public void recordingAdded(int id, String name, String timestamp, int duration, long size, byte[] overview) {
+        // Les chargements en cours portent sur l'ancien découpage
+        synchronized (pageEndKeys) {
+            generation++;
+            pageEndKeys.clear();
+        }
+        pending.clear();
+        Object[] row = {id, name, timestamp, duration, size / 1024, NOT_VERIFIED, overview};
+        Object[][] first = pages.get(0);
+        pages.clear();
+        if (first != null) {
+            Object[][] data = new Object[Math.min(first.length + 1, PAGE_SIZE)][];
+            data[0] = row;
+            System.arraycopy(first, 0, data, 1, data.length - 1);
+            pages.put(0, data);
+            pageEndKeys.put(0, new Object[] {data[data.length - 1][2], data[data.length - 1][0]});
+        }
+        rowCount++;
+        fireTableRowsInserted(0, 0);
+    }
+
+    /**
+     * Arrête le thread de chargement.
+     */
+    public void close() {
+        loader.shutdownNow();
+    }
+
+    /**
+     * Planifie le chargement d'une page si elle n'est ni chargée ni en cours de chargement.
+     *
+     * @param page Index de la page
+     */
+    private void requestPage(int page) {
+        if (!pending.add(page)) return;
+        final int gen = generation;
+        loader.execute(() -> {
+            try {
+                if (gen != generation) return;
+                final Object[][] data = fetchPage(gen, page);
+                SwingUtilities.invokeLater(() -> {
+                    pending.remove(page);
+                    if (gen != generation) return;
+                    pages.put(page, data);
+                    int first = page * PAGE_SIZE;
+                    int last = Math.min(first + data.length, rowCount) - 1;
+                    if (last >= first) {
+                        fireTableRowsUpdated(first, last);
+                    }
+                });
+            } catch (SQLException e) {
+                pending.remove(page);
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Lit une page depuis la base en repartant de la dernière clé connue de la page précédente.
+     *
+     * @param gen Génération pour laquelle la page est lue
+     * @param page Index de la page
+     * @return Les lignes de la page
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    private Object[][] fetchPage(int gen, int page) throws SQLException {
+        Object[] startKey = page == 0 ? null : findPageEndKey(gen, page - 1);
+
+        List<RecordingInfo> recordings;
+        try (Connection conn = db.getConnection()) {
+            recordings = startKey != null
+                    ? RecordingInfo.list(conn, userId, (String) startKey[0], (Integer) startKey[1], PAGE_SIZE)
+                    : RecordingInfo.list(conn, userId, null, 0, PAGE_SIZE);
+        }
+        Object[][] rows = new Object[recordings.size()][];
+        for (int n = 0; n < rows.length; n++) {
+            RecordingInfo recording = recordings.get(n);
+            rows[n] = new Object[] {
+                recording.getId(),
+                recording.getName(),
+                recording.getTimestamp(),
+                recording.getDuration(),
+                recording.getSize() / 1024,
+                recording.getStatus() != null ? recording.getStatus().getLabel() : NOT_VERIFIED,
+                recording.getOverview()
+            };
+        }
+        if (rows.length > 0) {
+            putPageEndKey(gen, page, new Object[] {rows[rows.length - 1][2], rows[rows.length - 1][0]});
+        }
+        return rows;
+    }
+
+    /**
+     * Retrouve la dernière clé d'une page. Si elle n'a jamais été parcourue
+     * (saut direct au milieu de la liste), la clé est obtenue en ne lisant que
+     * les colonnes (timestamp, id) depuis la page connue la plus proche.
+     *
+     * @param gen Génération pour laquelle la clé est cherchée
+     * @param page Index de la page
+     * @return La clé {timestamp, id}, ou null si la page est vide
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    private Object[] findPageEndKey(int gen, int page) throws SQLException {
+        Object[] key = pageEndKeys.get(page);
+        if (key != null) return key;
+
+        int known = page - 1;
+        while (known >= 0 && !pageEndKeys.containsKey(known)) {
+            known--;
+        }
+        Object[] from = known >= 0 ? pageEndKeys.get(known) : null;
+        int skip = (page - known) * PAGE_SIZE - 1;
+
+        String sql = "SELECT timestamp, id FROM recordings WHERE user_id = ? "
+                + (from != null ? "AND (timestamp, id) < (?, ?) " : "")
+                + "ORDER BY timestamp DESC, id DESC LIMIT 1 OFFSET ?";
+        try (Connection conn = db.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int i = 1;
+            pstmt.setInt(i++, userId);
+            if (from != null) {
+                pstmt.setString(i++, (String) from[0]);
+                pstmt.setInt(i++, (Integer) from[1]);
+            }
+            pstmt.setInt(i, skip);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) return null;
+                key = new Object[] {rs.getString("timestamp"), rs.getInt("id")};
+            }
+        }
+        putPageEndKey(gen, page, key);
+        return key;
+    }
+
+    /**
+     * Garde la dernière clé d'une page, sauf si elle a été lue pour un découpage remplacé
+     * entre-temps par un rechargement ou un ajout.
+     */
+    private void putPageEndKey(int gen, int page, Object[] key) {
+        synchronized (pageEndKeys) {
+            if (gen == generation) {
+                pageEndKeys.put(page, key);
+            }
+        }
+    }
+}
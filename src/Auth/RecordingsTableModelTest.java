@@ -0,0 +1,281 @@
+package Auth;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RecordingsTableModelTest {
+
+    private static final int PAGE_SIZE = RecordingsTableModel.PAGE_SIZE;
+    /** Enregistrements partageant le même horodatage, en travers des limites de pages */
+    private static final int SAME_TIMESTAMP = 7;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private Database db;
+    private RecordingsTableModel model;
+    /** Clés {timestamp, id} des enregistrements de l'utilisateur 1, dans l'ordre d'affichage attendu */
+    private final List<Object[]> expected = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        // Une seule connexion : un test peut la garder pour bloquer le chargement d'une page
+        db = new Database("jdbc:sqlite:file:listing?mode=memory&cache=shared", 1);
+        model = new RecordingsTableModel(db, 1);
+    }
+
+    @After
+    public void tearDown() {
+        model.close();
+        db.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testRowOrderAcrossPages() throws Exception {
+        insert(RecordingsTableModel.MAX_PAGES * PAGE_SIZE + 2 * PAGE_SIZE + 37);
+        reload();
+
+        // Parcours page par page : pagination par clé, doublons d'horodatage compris
+        assertRows(0, expected.size());
+
+        // Premières pages sorties du cache : relues depuis la clé de la page précédente
+        assertNull(onEdt(() -> model.getValueAt(0, 0)));
+        assertRows(0, 2 * PAGE_SIZE);
+    }
+
+    @Test(timeout = 60000)
+    public void testJumpToPageNeverVisited() throws Exception {
+        insert(5 * PAGE_SIZE + 11);
+        reload();
+
+        // Clé de fin de la page précédente retrouvée par OFFSET, sans lire les pages intermédiaires
+        assertRows(4 * PAGE_SIZE, expected.size());
+        assertRows(2 * PAGE_SIZE, 3 * PAGE_SIZE);
+        assertRows(0, PAGE_SIZE);
+    }
+
+    @Test(timeout = 60000)
+    public void testRecordingAddedShiftsRows() throws Exception {
+        insert(2 * PAGE_SIZE + 5);
+        reload();
+        assertRows(0, expected.size());
+
+        int id = insertOne(1, "2030-01-01 00:00:00");
+        expected.add(0, new Object[] {"2030-01-01 00:00:00", id});
+        onEdt(() -> {
+            model.recordingAdded(id, "Nouveau", "2030-01-01 00:00:00", 3, 2048, null);
+            return null;
+        });
+
+        assertEquals(expected.size(), (int) onEdt(model::getRowCount));
+        assertEquals(id, (int) onEdt(() -> model.getRecordingId(0)));
+        assertRows(0, expected.size());
+    }
+
+    @Test(timeout = 60000)
+    public void testReloadDropsPagesLoadingForOldGeneration() throws Exception {
+        insert(3 * PAGE_SIZE);
+        reload();
+
+        List<TableModelEvent> events = new CopyOnWriteArrayList<>();
+        model.addTableModelListener(events::add);
+        try (Connection conn = db.getConnection()) {
+            // Chargement de la page 2 (sans préchargement) bloqué sur l'unique connexion, que le test garde
+            assertNull(onEdt(() -> model.getValueAt(2 * PAGE_SIZE, 0)));
+            awaitLoaderWaitingForConnection();
+
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM recordings WHERE id = ?")) {
+                // Quelques lignes en moins : la page périmée n'est pas vide, mais décalée
+                for (int i = 0; i < 10; i++) {
+                    pstmt.setInt(1, (Integer) expected.remove(0)[1]);
+                    pstmt.executeUpdate();
+                }
+            }
+            onEdt(() -> {
+                model.reload();
+                return null;
+            });
+        }
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (onEdt(model::getRowCount) != expected.size()) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        // La page chargée pour l'ancien découpage n'a pas été publiée : seul le rechargement est signalé
+        assertEquals(1, events.size());
+        assertEquals(Integer.MAX_VALUE, events.get(0).getLastRow());
+        assertRows(0, expected.size());
+    }
+
+    @Test(timeout = 60000)
+    public void testRecordingAddedDropsPageKeysLoadingForOldGeneration() throws Exception {
+        insert(3 * PAGE_SIZE);
+        reload();
+
+        int id = 1000000;
+        Connection held = db.getConnection();
+        try {
+            // Page 2 demandée directement : la clé de fin de la page 1 sera cherchée par OFFSET
+            assertNull(onEdt(() -> model.getValueAt(2 * PAGE_SIZE, 0)));
+            awaitLoaderWaitingForConnection();
+            onEdt(() -> {
+                model.recordingAdded(id, "Nouveau", "2030-01-01 00:00:00", 3, 2048, null);
+                return null;
+            });
+        } finally {
+            held.close();
+        }
+        // Le chargement en cours lit les clés de l'ancien découpage, sans le nouvel enregistrement
+        awaitLoaderIdle();
+        try (Connection conn = db.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "INSERT INTO recordings (id, name, timestamp, duration, audio, encryption_key, audio_hash, user_id) " +
+                     "VALUES (?, 'test', '2030-01-01 00:00:00', 1, X'', 'key', X'00', 1)")) {
+            pstmt.setInt(1, id);
+            pstmt.executeUpdate();
+        }
+        expected.add(0, new Object[] {"2030-01-01 00:00:00", id});
+
+        // Saut direct à la page 2 : une clé périmée de la page 1 la décalerait d'une ligne
+        assertEquals(expected.size(), (int) onEdt(model::getRowCount));
+        assertRows(2 * PAGE_SIZE, expected.size());
+        assertRows(0, expected.size());
+    }
+
+    /**
+     * Vérifie les lignes [from, to) en attendant le chargement de leurs pages.
+     */
+    private void assertRows(int from, int to) throws Exception {
+        for (int row = from; row < to; row++) {
+            final int r = row;
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            Object[] actual;
+            while ((actual = onEdt(() -> new Object[] {model.getValueAt(r, 2), model.getValueAt(r, 0)}))[1] == null) {
+                assertTrue("Ligne " + row + " jamais chargée", System.currentTimeMillis() < deadline);
+                Thread.sleep(5);
+            }
+            assertArrayEquals("Ligne " + row, expected.get(row), actual);
+        }
+    }
+
+    private void reload() throws Exception {
+        onEdt(() -> {
+            model.reload();
+            return null;
+        });
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (onEdt(model::getRowCount) != expected.size()) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Attend que le thread de chargement soit bloqué dans l'emprunt d'une connexion.
+     */
+    private static void awaitLoaderWaitingForConnection() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true) {
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().equals("recordings-page-loader") && thread.getState() == Thread.State.TIMED_WAITING) {
+                    return;
+                }
+            }
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Attend que le thread de chargement n'ait plus de tâche.
+     */
+    private static void awaitLoaderIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true) {
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().equals("recordings-page-loader") && thread.getState() == Thread.State.WAITING) {
+                    return;
+                }
+            }
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Insère des enregistrements de l'utilisateur 1 dans un ordre d'identifiants différent de
+     * celui des horodatages, et autant pour un autre utilisateur.
+     */
+    private void insert(int count) throws SQLException {
+        try (Connection conn = db.getConnection()) {
+            conn.setAutoCommit(false);
+            for (int i = 0; i < count; i++) {
+                int group = (int) ((long) i * 37 % count) / SAME_TIMESTAMP;
+                String timestamp = String.format("2024-01-01 %02d:%02d:00", group / 60, group % 60);
+                int id = insertOne(conn, 1, timestamp);
+                expected.add(new Object[] {timestamp, id});
+                insertOne(conn, 2, timestamp);
+            }
+            conn.commit();
+        }
+        expected.sort(Comparator.<Object[], String>comparing(key -> (String) key[0])
+                              .thenComparing(key -> (Integer) key[1]).reversed());
+    }
+
+    private int insertOne(int userId, String timestamp) throws SQLException {
+        try (Connection conn = db.getConnection()) {
+            return insertOne(conn, userId, timestamp);
+        }
+    }
+
+    private static int insertOne(Connection conn, int userId, String timestamp) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO recordings (name, timestamp, duration, audio, encryption_key, audio_hash, user_id) " +
+                "VALUES ('test', ?, 1, X'', 'key', X'00', ?)")) {
+            pstmt.setString(1, timestamp);
+            pstmt.setInt(2, userId);
+            pstmt.executeUpdate();
+        }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static <T> T onEdt(Callable<T> action) throws Exception {
+        AtomicReference<T> result = new AtomicReference<>();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        try {
+            SwingUtilities.invokeAndWait(() -> {
+                try {
+                    result.set(action.call());
+                } catch (Exception e) {
+                    failure.set(e);
+                }
+            });
+        } catch (InvocationTargetException e) {
+            throw (Error) e.getCause();
+        }
+        if (failure.get() != null) throw failure.get();
+        return result.get();
+    }
+}
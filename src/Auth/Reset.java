@@ -8,11 +8,8 @@ import javax.swing.JOptionPane;
 import javax.swing.JTextField;
 import javax.swing.JButton;
 import java.awt.event.ActionListener;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.awt.event.ActionEvent;
@@ -43,20 +40,18 @@ public class Reset  {
      * URL de connexion à la base de données SQLite.
      */
 	
-	private static final String DB_URL = "jdbc:sqlite:users.db";
 	
 	
 	/**
      * Établit une connexion à la base de données SQLite.
      * @return Un objet Connection si la connexion est réussie, sinon null.
      */
-	
 	public static Connection connect( ) {
 		 
 		 Connection conn = null;
 		 
 		 try {
-			 conn = DriverManager.getConnection(DB_URL);
+			 conn = Database.get().getConnection();
 			 System.out.println ("Connexion a SQLite etablie.");
 		 }
 		 catch (SQLException e) {
@@ -125,12 +120,12 @@ public class Reset  {
         }
 
         String tempPassword = generateTempPassword();
-        String hashedTempPassword = hashPassword(tempPassword);
+        byte[] hashedTempPassword = hashPassword(tempPassword);
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = Database.get().getConnection();
              PreparedStatement pstmt = conn.prepareStatement("UPDATE users SET password = ? WHERE email = ?")) {
 
-        	pstmt.setString(1, hashedTempPassword);
+        	SHA.bindDigest(pstmt, 1, hashedTempPassword);
             pstmt.setString(2, email);
 
             int rowsAffected = pstmt.executeUpdate();
@@ -163,19 +158,9 @@ public class Reset  {
         return tempPassword.toString();
     }
     
-    private String hashPassword(String password) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] hashedBytes = md.digest(password.getBytes());
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hashedBytes) {
-                sb.append(String.format("%02x", b));
-            }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Erreur de hachage du mot de passe", e);
-        }
-}
+    private byte[] hashPassword(String password) {
+        return SHA.sha256(password.getBytes());
+    }
     
     public void afficher() {
 
@@ -9,10 +9,7 @@ import javax.swing.JTextField;
 import javax.swing.JButton;
 import javax.swing.JPasswordField;
 import java.awt.event.ActionListener;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -24,7 +21,6 @@ public class Reset2 {
 	private JPasswordField tempPasswordField;
 	private JPasswordField newPasswordField;
 	private JPasswordField confirmPasswordField;
-	private static final String DB_URL = "jdbc:sqlite:users.db"; 
 
 	/**
 	 * Launch the application.
@@ -53,13 +49,12 @@ public class Reset2 {
      * Établit une connexion à la base de données SQLite.
      * @return Connection Connexion à la base de données.
      */
-	
 	public static Connection connect( ) {
 		 
 		 Connection conn = null;
 		 
 		 try {
-			 conn = DriverManager.getConnection(DB_URL);
+			 conn = Database.get().getConnection();
 			 System.out.println ("Connexion a SQLite etablie.");
 		 }
 		 catch (SQLException e) {
@@ -140,11 +135,14 @@ public class Reset2 {
             return;
         }
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement checkStmt = conn.prepareStatement("SELECT email FROM users WHERE password = ?");
-             PreparedStatement updateStmt = conn.prepareStatement("UPDATE users SET password = ? WHERE password = ?")) {
+        try (Connection conn = Database.get().getConnection();
+             PreparedStatement checkStmt = conn.prepareStatement("SELECT email FROM users WHERE password IN (?, ?)");
+             PreparedStatement updateStmt = conn.prepareStatement("UPDATE users SET password = ? WHERE password IN (?, ?)")) {
 
-            checkStmt.setString(1, hashPassword(tempPassword));
+            // Le hash peut être stocké en hexadécimal ou en BLOB : on cherche les deux formes
+            byte[] tempHash = hashPassword(tempPassword);
+            checkStmt.setString(1, SHA.toHex(tempHash));
+            checkStmt.setBytes(2, tempHash);
             ResultSet rs = checkStmt.executeQuery();
             
          // Vérification que le mot de passe temporaire est correct
@@ -154,8 +152,9 @@ public class Reset2 {
             }
 
          // Mise à jour du mot de passe dans la base de données
-            updateStmt.setString(1, hashPassword(newPassword));
-            updateStmt.setString(2, hashPassword(tempPassword));
+            SHA.bindDigest(updateStmt, 1, hashPassword(newPassword));
+            updateStmt.setString(2, SHA.toHex(tempHash));
+            updateStmt.setBytes(3, tempHash);
             updateStmt.executeUpdate();
 
             JOptionPane.showMessageDialog(frame, "Mot de passe changé avec succès!", "Succès", JOptionPane.INFORMATION_MESSAGE);
@@ -175,18 +174,8 @@ public class Reset2 {
      * @param password Le mot de passe à hacher.
      * @return String Le mot de passe haché.
      */
-    private String hashPassword(String password) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] hashedBytes = md.digest(password.getBytes());
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hashedBytes) {
-                sb.append(String.format("%02x", b));
-            }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Erreur de hachage du mot de passe", e);
-        }
+    private byte[] hashPassword(String password) {
+        return SHA.sha256(password.getBytes());
     }
     
     public void afficher() {
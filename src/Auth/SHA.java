@@ -1,21 +1,184 @@
 package Auth;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 
 public class SHA {
 
+    private static final String ALGORITHM = "SHA-256";
+
+    // Size of a SHA-256 digest in bytes
+    public static final int DIGEST_SIZE = 32;
+
+    // Store new digests as 32-byte BLOBs instead of 64-char hex TEXT (-Dmoustass.hash.binary=true);
+    // readers accept both forms, and Schema converts existing TEXT rows when this is on
+    public static final boolean BINARY_STORAGE = Boolean.getBoolean("moustass.hash.binary");
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // Read buffer for streams, and mapping window for files
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    // Looked up once; new digests are cloned from it instead of going through the providers
+    private static final MessageDigest PROTOTYPE;
+    static {
+        try {
+            PROTOTYPE = MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // One engine per thread for one-shot hashes; digest() resets it after each use
+    private static final ThreadLocal<MessageDigest> ENGINE = ThreadLocal.withInitial(SHA::newSHA256);
+
     // Method to generate SHA-256 hash
     public static String generateSHA256(byte[] data) throws NoSuchAlgorithmException {
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        byte[] hashBytes = digest.digest(data);
+        return toHex(sha256(data));
+    }
+
+    // SHA-256 of a byte array, using this thread's engine
+    public static byte[] sha256(byte[] data) {
+        return ENGINE.get().digest(data);
+    }
+
+    // SHA-256 of part of a byte array
+    public static byte[] sha256(byte[] data, int off, int len) {
+        MessageDigest digest = ENGINE.get();
+        digest.update(data, off, len);
+        return digest.digest();
+    }
+
+    // SHA-256 of the remaining bytes of a heap or direct buffer; its position is left unchanged
+    public static byte[] sha256(ByteBuffer data) {
+        MessageDigest digest = ENGINE.get();
+        digest.update(data.duplicate());
+        return digest.digest();
+    }
+
+    // SHA-256 of everything left in a stream, read with a fixed buffer; the stream is not closed
+    public static byte[] sha256(InputStream in) throws IOException {
+        MessageDigest digest = newSHA256();
+        update(digest, in);
+        return digest.digest();
+    }
+
+    // SHA-256 of a whole file channel, mapped window by window; the channel position is not used
+    public static byte[] sha256(FileChannel channel) throws IOException {
+        MessageDigest digest = newSHA256();
+        update(digest, channel, 0, channel.size());
+        return digest.digest();
+    }
+
+    // SHA-256 of a file, in constant memory
+    public static byte[] sha256(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return sha256(channel);
+        }
+    }
 
-        // Convert bytes to hex string
-        StringBuilder hexString = new StringBuilder();
-        for (byte b : hashBytes) {
-            hexString.append(String.format("%02x", b));
+    // Feed everything left in a stream to a digest; returns the number of bytes read
+    public static long update(MessageDigest digest, InputStream in) throws IOException {
+        byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+        long total = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, n);
+            total += n;
+        }
+        return total;
+    }
+
+    // Feed a region of a file channel to a digest through read-only mappings of at most MAP_WINDOW bytes
+    public static void update(MessageDigest digest, FileChannel channel, long position, long length)
+            throws IOException {
+        long end = position + length;
+        while (position < end) {
+            long size = Math.min(MAP_WINDOW, end - position);
+            digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, size));
+            position += size;
+        }
+    }
+
+    // A new SHA-256 digest for incremental hashing (streams, pipelines), owned by the caller
+    public static MessageDigest newSHA256() {
+        try {
+            return (MessageDigest) PROTOTYPE.clone();
+        } catch (CloneNotSupportedException e) {
+            try {
+                return MessageDigest.getInstance(ALGORITHM);
+            } catch (NoSuchAlgorithmException unreachable) {
+                throw new IllegalStateException(unreachable);
+            }
+        }
+    }
+
+    // Convert a digest to a lowercase hex string
+    public static String toHex(byte[] hashBytes) {
+        char[] hex = new char[hashBytes.length * 2];
+        for (int i = 0; i < hashBytes.length; i++) {
+            int b = hashBytes[i] & 0xff;
+            hex[2 * i] = HEX_DIGITS[b >>> 4];
+            hex[2 * i + 1] = HEX_DIGITS[b & 0x0f];
+        }
+        return new String(hex);
+    }
+
+    // Parse a hex string (either case); throws IllegalArgumentException if it is not valid hex
+    public static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Odd hex length: " + hex.length());
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Invalid hex digit at " + 2 * i);
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+
+    // Constant-time comparison of two digests; false if either is missing
+    public static boolean matches(byte[] expected, byte[] actual) {
+        return expected != null && actual != null && MessageDigest.isEqual(expected, actual);
+    }
+
+    // Bind a digest to a statement parameter in the configured storage form
+    public static void bindDigest(PreparedStatement pstmt, int index, byte[] digest) throws SQLException {
+        if (BINARY_STORAGE) {
+            pstmt.setBytes(index, digest);
+        } else {
+            pstmt.setString(index, toHex(digest));
+        }
+    }
+
+    // Read a digest column stored either as a BLOB or as hex TEXT; null if absent or unreadable
+    public static byte[] readDigest(ResultSet rs, String column) throws SQLException {
+        Object value = rs.getObject(column);
+        if (value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        if (value instanceof String) {
+            try {
+                return fromHex((String) value);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
         }
-        return hexString.toString();
+        return null;
     }
 }
 
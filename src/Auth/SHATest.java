@@ -0,0 +1,126 @@
+package Auth;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SHATest {
+
+    @Test
+    public void testHexMatchesFormatter() throws Exception {
+        byte[] data = new byte[256];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        StringBuilder expected = new StringBuilder();
+        for (byte b : data) {
+            expected.append(String.format("%02x", b));
+        }
+        assertEquals(expected.toString(), SHA.toHex(data));
+        assertArrayEquals(data, SHA.fromHex(expected.toString()));
+        assertArrayEquals(data, SHA.fromHex(expected.toString().toUpperCase()));
+        assertEquals("", SHA.toHex(new byte[0]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidHexIsRejected() {
+        SHA.fromHex("0g");
+    }
+
+    @Test
+    public void testDigestMatchesJdk() throws Exception {
+        byte[] data = new byte[10000];
+        new Random(1).nextBytes(data);
+        byte[] expected = MessageDigest.getInstance("SHA-256").digest(data);
+        assertArrayEquals(expected, SHA.sha256(data));
+        assertEquals(SHA.toHex(expected), SHA.generateSHA256(data));
+        assertEquals(SHA.DIGEST_SIZE, expected.length);
+    }
+
+    @Test
+    public void testStreamingEntryPointsMatchByteArray() throws Exception {
+        byte[] data = new byte[3 * 64 * 1024 + 123];
+        new Random(2).nextBytes(data);
+        byte[] expected = SHA.sha256(data);
+
+        assertArrayEquals(expected, SHA.sha256(new ByteArrayInputStream(data)));
+
+        ByteBuffer heap = ByteBuffer.wrap(data);
+        assertArrayEquals(expected, SHA.sha256(heap));
+        assertEquals(0, heap.position());
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).flip();
+        assertArrayEquals(expected, SHA.sha256(direct));
+
+        byte[] padded = new byte[data.length + 10];
+        System.arraycopy(data, 0, padded, 5, data.length);
+        assertArrayEquals(expected, SHA.sha256(padded, 5, data.length));
+
+        MessageDigest digest = SHA.newSHA256();
+        digest.update(data, 0, 1000);
+        assertEquals(data.length - 1000, SHA.update(digest, new ByteArrayInputStream(data, 1000, data.length - 1000)));
+        assertArrayEquals(expected, digest.digest());
+
+        Path file = Files.createTempFile("sha", ".bin");
+        try {
+            Files.write(file, data);
+            assertArrayEquals(expected, SHA.sha256(file));
+            assertArrayEquals(SHA.sha256(new byte[0]), SHA.sha256(Files.write(file, new byte[0])));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testMatches() {
+        byte[] digest = SHA.sha256("message".getBytes());
+        assertTrue(SHA.matches(digest, digest.clone()));
+        byte[] other = digest.clone();
+        other[31] ^= 1;
+        assertFalse(SHA.matches(digest, other));
+        assertFalse(SHA.matches(digest, null));
+        assertFalse(SHA.matches(null, digest));
+    }
+
+    @Test
+    public void testReadDigestAcceptsTextAndBlob() throws Exception {
+        byte[] digest = SHA.sha256("enregistrement".getBytes());
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE t (id INTEGER PRIMARY KEY, h TEXT)");
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO t (id, h) VALUES (?, ?)")) {
+                pstmt.setInt(1, 1);
+                pstmt.setString(2, SHA.toHex(digest));
+                pstmt.executeUpdate();
+                pstmt.setInt(1, 2);
+                pstmt.setBytes(2, digest);
+                pstmt.executeUpdate();
+                pstmt.setInt(1, 3);
+                pstmt.setString(2, "pas un hash");
+                pstmt.executeUpdate();
+            }
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT h FROM t ORDER BY id")) {
+                assertTrue(rs.next());
+                assertArrayEquals(digest, SHA.readDigest(rs, "h"));
+                assertTrue(rs.next());
+                assertArrayEquals(digest, SHA.readDigest(rs, "h"));
+                assertTrue(rs.next());
+                assertNull(SHA.readDigest(rs, "h"));
+            }
+        }
+    }
+}
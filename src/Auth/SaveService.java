@@ -0,0 +1,329 @@
+package Auth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Sauvegarde des enregistrements en arrière-plan.
+ * Chaque enregistrement arrêté devient une tâche : fin du chiffrement, insertion de la ligne,
+ * copie des blocs chiffrés et des index, dans une transaction. Les tâches sont traitées une à
+ * une par un thread dédié, avec une file bornée à {@link #MAX_PENDING} tâches ; l'interface
+ * reste libre et un nouvel enregistrement peut commencer pendant la sauvegarde du précédent.
+ * <p>
+ * L'avancement et la fin de chaque tâche sont signalés à un {@link Listener}, depuis le
+ * thread de sauvegarde. Une tâche peut être annulée tant que sa transaction n'est pas validée.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+public class SaveService {
+
+    /** Nombre maximal de sauvegardes en attente, en plus de celle en cours */
+    static final int MAX_PENDING = 4;
+
+    /** État d'une sauvegarde */
+    public enum State { PENDING, SAVING, SAVED, EMPTY, CANCELLED, FAILED }
+
+    /**
+     * Suivi des sauvegardes. Les méthodes sont appelées depuis le thread de sauvegarde, ou
+     * depuis le thread qui annule une sauvegarde encore en attente.
+     */
+    public interface Listener {
+        /**
+         * Avancement de la copie des données chiffrées.
+         *
+         * @param job La sauvegarde
+         * @param done Octets copiés
+         * @param total Octets à copier
+         */
+        void progress(Job job, long done, long total);
+
+        /**
+         * Enregistrement validé en base, avant la libération des données conservées :
+         * permet un traitement supplémentaire, comme l'export dans un fichier.
+         *
+         * @param job La sauvegarde
+         * @param recording L'enregistrement sauvegardé
+         */
+        default void saved(Job job, RecordingPipeline.Result recording) {
+        }
+
+        /**
+         * Fin de la sauvegarde, quel que soit son état.
+         *
+         * @param job La sauvegarde
+         */
+        void finished(Job job);
+    }
+
+    /**
+     * Une sauvegarde soumise.
+     */
+    public final class Job {
+        private final String name;
+        private final String timestamp;
+        private final int userId;
+        private final RecordingPipeline pipeline;
+        private volatile State state = State.PENDING;
+        private volatile boolean cancelled;
+        private Future<?> future;
+
+        private int recordingId = -1;
+        private int duration;
+        private long size;
+        private byte[] overview;
+        private Exception error;
+
+        private Job(String name, String timestamp, int userId, RecordingPipeline pipeline) {
+            this.name = name;
+            this.timestamp = timestamp;
+            this.userId = userId;
+            this.pipeline = pipeline;
+        }
+
+        /** @return Le nom de l'enregistrement */
+        public String getName() {
+            return name;
+        }
+
+        /** @return L'horodatage de l'enregistrement */
+        public String getTimestamp() {
+            return timestamp;
+        }
+
+        /** @return L'état de la sauvegarde */
+        public State getState() {
+            return state;
+        }
+
+        /** @return L'identifiant de l'enregistrement sauvegardé, -1 sinon */
+        public int getRecordingId() {
+            return recordingId;
+        }
+
+        /** @return La durée en secondes */
+        public int getDuration() {
+            return duration;
+        }
+
+        /** @return La taille des données chiffrées en octets */
+        public long getSize() {
+            return size;
+        }
+
+        /** @return L'aperçu de la forme d'onde (niveau 0 de l'index de crêtes) */
+        public byte[] getOverview() {
+            return overview;
+        }
+
+        /** @return L'erreur d'une sauvegarde échouée */
+        public Exception getError() {
+            return error;
+        }
+
+        /**
+         * Annule la sauvegarde si elle n'est pas encore validée ; l'enregistrement est perdu.
+         */
+        public void cancel() {
+            cancelled = true;
+            Future<?> f;
+            synchronized (this) {
+                // Une tâche commencée s'arrête d'elle-même au prochain point de contrôle
+                if (state != State.PENDING) return;
+                state = State.CANCELLED;
+                f = future;
+            }
+            // Une tâche en attente est retirée de la file sans être exécutée
+            f.cancel(false);
+            executor.purge();
+            pipeline.close();
+            listener.finished(this);
+        }
+
+        /** Passe de l'attente à la sauvegarde, sauf si la tâche a été annulée entre-temps */
+        private synchronized boolean start() {
+            if (state != State.PENDING) return false;
+            state = State.SAVING;
+            return true;
+        }
+
+        private void checkCancelled() {
+            if (cancelled) throw new CancellationException();
+        }
+    }
+
+    private final Database db;
+    private final AudioFormat format;
+    private final Listener listener;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param db Base de données des enregistrements
+     * @param format Format PCM des enregistrements
+     * @param listener Suivi des sauvegardes
+     */
+    public SaveService(Database db, AudioFormat format, Listener listener) {
+        this.db = db;
+        this.format = format;
+        this.listener = listener;
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_PENDING), r -> {
+                    Thread t = new Thread(r, "recording-save");
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * @return true si la file est pleine : une nouvelle sauvegarde serait refusée
+     */
+    public boolean isFull() {
+        return executor.getQueue().remainingCapacity() == 0;
+    }
+
+    /**
+     * Planifie la sauvegarde d'un enregistrement arrêté. La chaîne appartient désormais à la
+     * tâche, qui la ferme une fois terminée.
+     *
+     * @param name Nom de l'enregistrement
+     * @param timestamp Horodatage
+     * @param userId Propriétaire
+     * @param pipeline Chaîne de capture dont le thread de capture est terminé
+     * @return La sauvegarde
+     * @throws RejectedExecutionException Si la file est pleine ; la chaîne n'est pas fermée
+     */
+    public Job submit(String name, String timestamp, int userId, RecordingPipeline pipeline) {
+        Job job = new Job(name, timestamp, userId, pipeline);
+        synchronized (job) {
+            job.future = executor.submit(() -> run(job));
+        }
+        return job;
+    }
+
+    /**
+     * Termine les sauvegardes en attente puis arrête le thread de sauvegarde.
+     *
+     * @param timeoutSeconds Attente maximale
+     * @return true si toutes les sauvegardes sont terminées
+     * @throws InterruptedException Si le thread est interrompu
+     */
+    public boolean shutdown(long timeoutSeconds) throws InterruptedException {
+        executor.shutdown();
+        return executor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    private void run(Job job) {
+        if (!job.start()) return;
+        State end;
+        try {
+            RecordingPipeline.Result recording = job.pipeline.finish();
+            if (recording.getLength() == 0) {
+                end = State.EMPTY;
+            } else {
+                save(job, recording);
+                end = State.SAVED;
+                listener.saved(job, recording);
+            }
+        } catch (CancellationException e) {
+            end = State.CANCELLED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.error = e;
+            end = State.FAILED;
+        } catch (Exception e) {
+            e.printStackTrace();
+            job.error = e;
+            end = State.FAILED;
+        } finally {
+            // Effacement des données conservées et du segment temporaire
+            job.pipeline.close();
+        }
+        finish(job, end);
+    }
+
+    private void finish(Job job, State state) {
+        job.state = state;
+        listener.finished(job);
+    }
+
+    /**
+     * Enregistre la ligne, les données chiffrées et les index dans une même transaction.
+     */
+    private void save(Job job, RecordingPipeline.Result recording) throws SQLException, IOException, AES.AESException {
+        String wrappedKey = db.getKeys().wrap(recording.getKey());
+        job.duration = (int) (recording.getLength() / (format.getSampleRate() * format.getFrameSize()));
+        job.size = recording.getEncryptedLength();
+        // Verrou du stockage avant la transaction : jamais attendu en tenant le verrou d'écriture de la base
+        RecordingAudio audio = db.getAudioStore();
+        SegmentAudioStore.WriteLock lock = audio.lockWrites();
+        try (Connection conn = db.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "INSERT INTO recordings (name, timestamp, duration, audio, encryption_key, audio_hash, user_id, codec) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+                    pstmt.setString(1, job.name);
+                    pstmt.setString(2, job.timestamp);
+                    pstmt.setInt(3, job.duration);
+                    pstmt.setBytes(4, new byte[0]); // Les données audio sont stockées à part
+                    pstmt.setString(5, wrappedKey);
+                    SHA.bindDigest(pstmt, 6, recording.getDigest());
+                    pstmt.setInt(7, job.userId);
+                    pstmt.setString(8, recording.getCodec().getName());
+                    pstmt.executeUpdate();
+                }
+                int recordingId;
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+                    rs.next();
+                    recordingId = rs.getInt(1);
+                }
+
+                // Un audio identique déjà stocké est partagé ; sinon copie des blocs déjà chiffrés
+                if (!audio.shareExisting(conn, recordingId, recording.getDigest())) {
+                    try (InputStream in = recording.openEncrypted();
+                         OutputStream out = audio.openWriter(conn, recordingId, recording.getDigest())) {
+                        byte[] buffer = new byte[CaptureBuffer.BUFFER_SIZE];
+                        long done = 0;
+                        int n;
+                        while ((n = in.read(buffer)) != -1) {
+                            job.checkCancelled();
+                            out.write(buffer, 0, n);
+                            done += n;
+                            listener.progress(job, done, job.size);
+                        }
+                    }
+                }
+                listener.progress(job, job.size, job.size);
+                // Index calculés pendant l'enregistrement, pour l'aperçu et la recherche sans déchiffrement
+                recording.getPeaks().save(conn, recordingId);
+                recording.getSeekIndex().save(conn, recordingId);
+                job.checkCancelled();
+                conn.commit();
+                job.recordingId = recordingId;
+                job.overview = recording.getPeaks().getPeaks(0);
+            } catch (SQLException | IOException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } finally {
+            lock.close();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package Auth;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SaveServiceTest {
+
+    private static final AudioFormat CAPTURE = new AudioFormat(44100, 8, 1, true, true);
+
+    private Database db;
+    private final List<SaveService.Job> finished = new CopyOnWriteArrayList<>();
+    private final List<Long> progress = new CopyOnWriteArrayList<>();
+    private final List<SaveService.Job> exported = new CopyOnWriteArrayList<>();
+    /** Action exécutée à chaque avancement, sur le thread de sauvegarde */
+    private volatile ProgressHook hook = (job, done, total) -> { };
+    private SaveService service;
+
+    private interface ProgressHook {
+        void progress(SaveService.Job job, long done, long total) throws Exception;
+    }
+
+    @Before
+    public void setUp() {
+        db = new Database("jdbc:sqlite:file:save?mode=memory&cache=shared", 2);
+        service = new SaveService(db, CAPTURE, new SaveService.Listener() {
+            @Override
+            public void progress(SaveService.Job job, long done, long total) {
+                progress.add(done);
+                try {
+                    hook.progress(job, done, total);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            public void saved(SaveService.Job job, RecordingPipeline.Result recording) {
+                assertTrue(recording.getLength() > 0);
+                exported.add(job);
+            }
+
+            @Override
+            public void finished(SaveService.Job job) {
+                finished.add(job);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        service.shutdown(10);
+        db.close();
+    }
+
+    @Test
+    public void testSaveStoresRecordingAndIndexes() throws Exception {
+        SaveService.Job job = service.submit("Test", "2024-01-01 10:00:00", 1, record(44100 * 10));
+        awaitFinished(1);
+
+        assertEquals(SaveService.State.SAVED, job.getState());
+        assertTrue(job.getRecordingId() > 0);
+        assertEquals(10, job.getDuration());
+        assertNotNull(job.getOverview());
+        assertEquals(1, exported.size());
+        // Avancement croissant jusqu'à la taille totale
+        for (int i = 1; i < progress.size(); i++) {
+            assertTrue(progress.get(i) >= progress.get(i - 1));
+        }
+        assertEquals(job.getSize(), (long) progress.get(progress.size() - 1));
+
+        try (Connection conn = db.getConnection()) {
+            assertEquals(1, count(conn, "SELECT COUNT(*) FROM recordings WHERE id = " + job.getRecordingId()));
+            assertNotNull(PeakIndex.load(conn, job.getRecordingId()));
+            assertEquals(441000, SeekIndex.load(conn, job.getRecordingId()).getFrames());
+        }
+    }
+
+    @Test
+    public void testCancelDuringCopyRollsBack() throws Exception {
+        hook = (job, done, total) -> job.cancel();
+        SaveService.Job job = service.submit("Annulé", "2024-01-01 10:00:00", 1, record(44100 * 5));
+        awaitFinished(1);
+
+        assertEquals(SaveService.State.CANCELLED, job.getState());
+        assertEquals(-1, job.getRecordingId());
+        assertTrue(exported.isEmpty());
+        try (Connection conn = db.getConnection()) {
+            assertEquals(0, count(conn, "SELECT COUNT(*) FROM recordings WHERE name = 'Annulé'"));
+        }
+    }
+
+    @Test
+    public void testQueueIsBoundedAndPendingJobsCanBeCancelled() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        hook = (job, done, total) -> {
+            started.countDown();
+            release.await();
+        };
+        List<SaveService.Job> jobs = new ArrayList<>();
+        jobs.add(service.submit("Premier", "2024-01-01 10:00:00", 1, record(44100)));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < SaveService.MAX_PENDING; i++) {
+            jobs.add(service.submit("Suivant " + i, "2024-01-01 10:00:0" + i, 1, record(44100)));
+        }
+        assertTrue(service.isFull());
+        RecordingPipeline rejected = record(44100);
+        try {
+            service.submit("Refusé", "2024-01-01 10:00:00", 1, rejected);
+            fail("Queue should be full");
+        } catch (RejectedExecutionException expected) {
+            rejected.close();
+        }
+
+        // Une sauvegarde en attente annulée libère sa place aussitôt
+        jobs.get(2).cancel();
+        assertEquals(SaveService.State.CANCELLED, jobs.get(2).getState());
+        assertFalse(service.isFull());
+
+        hook = (job, done, total) -> { };
+        release.countDown();
+        awaitFinished(jobs.size());
+        for (SaveService.Job job : jobs) {
+            assertEquals(job.getName(), job == jobs.get(2) ? SaveService.State.CANCELLED : SaveService.State.SAVED,
+                         job.getState());
+        }
+    }
+
+    @Test
+    public void testSilentRecordingIsNotSaved() throws Exception {
+        RecordingPipeline pipeline = new RecordingPipeline(4410, CAPTURE, AudioCodecs.forName(AudioCodecs.LPC),
+                                                           VadSettings.DEFAULTS);
+        feed(pipeline, new byte[44100 * 3]);
+        SaveService.Job job = service.submit("Silence", "2024-01-01 10:00:00", 1, pipeline);
+        awaitFinished(1);
+        assertEquals(SaveService.State.EMPTY, job.getState());
+    }
+
+    private void awaitFinished(int n) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (finished.size() < n && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(n, finished.size());
+    }
+
+    private static RecordingPipeline record(int frames) throws Exception {
+        RecordingPipeline pipeline = new RecordingPipeline(4410, CAPTURE, AudioCodecs.forName(AudioCodecs.LPC),
+                                                           VadSettings.DISABLED);
+        byte[] pcm = new byte[frames];
+        for (int i = 0; i < frames; i++) {
+            pcm[i] = (byte) Math.round(40 * Math.sin(2 * Math.PI * 300 * i / 44100.0));
+        }
+        feed(pipeline, pcm);
+        return pipeline;
+    }
+
+    private static void feed(RecordingPipeline pipeline, byte[] pcm) throws Exception {
+        for (int off = 0; off < pcm.length; off += 4410) {
+            byte[] buffer = pipeline.nextBuffer();
+            int n = Math.min(buffer.length, pcm.length - off);
+            System.arraycopy(pcm, off, buffer, 0, n);
+            pipeline.submit(buffer, n);
+        }
+    }
+
+    private static int count(Connection conn, String sql) throws Exception {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package Auth;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Schéma de la base de données et ses migrations.
+ * La version appliquée est conservée dans {@code PRAGMA user_version} ; à l'ouverture,
+ * les migrations manquantes sont appliquées dans l'ordre, chacune dans sa propre
+ * transaction. La base passe aussi en journal WAL : une sauvegarde en cours ne bloque
+ * plus les lectures. Les migrations demandent SQLite {@value #MIN_SQLITE_VERSION} ou plus
+ * récent ({@code ALTER TABLE ... DROP COLUMN} et {@code unhex}).
+ *
+ * @author Auth
+ * @version 1.0
+ */
+final class Schema {
+
+    /** Une étape de migration, appliquée dans une transaction */
+    private interface Migration {
+        void apply(Statement stmt) throws SQLException;
+    }
+
+    /** Migrations dans l'ordre : la migration d'indice i amène la base à la version i + 1 */
+    private static final List<Migration> MIGRATIONS = Arrays.asList(
+        // 1 : tables d'origine (les bases existantes les ont déjà)
+        stmt -> {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS users (" +
+                               "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                               "email TEXT NOT NULL UNIQUE, " +
+                               "password TEXT NOT NULL, " +
+                               "is_admin BOOLEAN NOT NULL DEFAULT 0)");
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS recordings (" +
+                               "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                               "name TEXT NOT NULL, " +
+                               "timestamp TEXT NOT NULL, " +
+                               "duration INTEGER, " +
+                               "audio BLOB NOT NULL, " +
+                               "encryption_key TEXT NOT NULL, " +
+                               "audio_hash TEXT NOT NULL, " +
+                               "user_id INTEGER NOT NULL, " +
+                               "FOREIGN KEY (user_id) REFERENCES users(id))");
+        },
+        // 2 : blocs chiffrés et résultats de vérification d'intégrité
+        stmt -> {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS recording_chunks (" +
+                               "recording_id INTEGER NOT NULL, " +
+                               "seq INTEGER NOT NULL, " +
+                               "data BLOB NOT NULL, " +
+                               "PRIMARY KEY (recording_id, seq))");
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS recording_integrity (" +
+                               "recording_id INTEGER PRIMARY KEY, " +
+                               "verified_at TEXT NOT NULL, " +
+                               "status TEXT NOT NULL)");
+        },
+        // 3 : liste paginée par utilisateur, triée par (timestamp, id) ;
+        // la connexion utilise déjà l'index unique sur users.email
+        stmt -> stmt.executeUpdate(
+                "CREATE INDEX IF NOT EXISTS idx_recordings_user_time ON recordings (user_id, timestamp, id)"),
+        // 4 : données audio dans des fichiers segments, la base ne gardant que leur emplacement
+        stmt -> {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS audio_segments (" +
+                               "id INTEGER PRIMARY KEY, " +
+                               "state INTEGER NOT NULL DEFAULT 0)");
+            stmt.executeUpdate("ALTER TABLE recordings ADD COLUMN segment_id INTEGER");
+            stmt.executeUpdate("ALTER TABLE recordings ADD COLUMN segment_offset INTEGER");
+            stmt.executeUpdate("ALTER TABLE recordings ADD COLUMN audio_length INTEGER");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_recordings_segment " +
+                               "ON recordings (segment_id, segment_offset) WHERE segment_id IS NOT NULL");
+        },
+        // 5 : contenus audio partagés entre enregistrements identiques, avec compteur de références ;
+        // chaque enregistrement déjà dans un segment devient un contenu référencé une fois
+        stmt -> {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS audio_content (" +
+                               "id INTEGER PRIMARY KEY, " +
+                               "hash BLOB, " +
+                               "refcount INTEGER NOT NULL, " +
+                               "segment_id INTEGER NOT NULL, " +
+                               "segment_offset INTEGER NOT NULL, " +
+                               "audio_length INTEGER NOT NULL)");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_audio_content_hash ON audio_content (hash) WHERE hash IS NOT NULL");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_audio_content_segment ON audio_content (segment_id, segment_offset)");
+            stmt.executeUpdate("ALTER TABLE recordings ADD COLUMN content_id INTEGER");
+            stmt.executeUpdate("INSERT INTO audio_content (id, hash, refcount, segment_id, segment_offset, audio_length) " +
+                               "SELECT id, CASE typeof(audio_hash) WHEN 'blob' THEN audio_hash ELSE unhex(audio_hash) END, " +
+                               "1, segment_id, segment_offset, audio_length FROM recordings WHERE segment_id IS NOT NULL");
+            stmt.executeUpdate("UPDATE recordings SET content_id = id WHERE segment_id IS NOT NULL");
+            stmt.executeUpdate("DROP INDEX IF EXISTS idx_recordings_segment");
+            stmt.executeUpdate("ALTER TABLE recordings DROP COLUMN segment_id");
+            stmt.executeUpdate("ALTER TABLE recordings DROP COLUMN segment_offset");
+            stmt.executeUpdate("ALTER TABLE recordings DROP COLUMN audio_length");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_recordings_content ON recordings (content_id) WHERE content_id IS NOT NULL");
+        },
+        // 6 : codec appliqué avant le chiffrement ; les enregistrements existants sont en PCM brut
+        stmt -> stmt.executeUpdate("ALTER TABLE recordings ADD COLUMN codec TEXT NOT NULL DEFAULT '" + AudioCodecs.PCM + "'"),
+        // 7 : réglages de détection d'activité vocale par utilisateur (valeurs par défaut sans ligne)
+        stmt -> stmt.executeUpdate("CREATE TABLE IF NOT EXISTS vad_settings (" +
+                                   "user_id INTEGER PRIMARY KEY, " +
+                                   "enabled BOOLEAN NOT NULL, " +
+                                   "threshold_db REAL NOT NULL, " +
+                                   "max_pause_ms INTEGER NOT NULL, " +
+                                   "FOREIGN KEY (user_id) REFERENCES users(id))"),
+        // 8 : index de crêtes multi-résolution de chaque enregistrement, le niveau 0 servant d'aperçu
+        stmt -> stmt.executeUpdate("CREATE TABLE IF NOT EXISTS recording_peaks (" +
+                                   "recording_id INTEGER NOT NULL, " +
+                                   "level INTEGER NOT NULL, " +
+                                   "frames_per_peak INTEGER NOT NULL, " +
+                                   "peaks BLOB NOT NULL, " +
+                                   "PRIMARY KEY (recording_id, level))"),
+        // 9 : index de recherche, position encodée du début de chaque bloc du codec
+        stmt -> stmt.executeUpdate("CREATE TABLE IF NOT EXISTS recording_seek (" +
+                                   "recording_id INTEGER PRIMARY KEY, " +
+                                   "frames INTEGER NOT NULL, " +
+                                   "block_frames INTEGER NOT NULL, " +
+                                   "offsets BLOB NOT NULL)"),
+        // 10 : progression du changement des clés de chiffrement, pour reprendre une passe interrompue
+        stmt -> stmt.executeUpdate("CREATE TABLE IF NOT EXISTS key_rotation (" +
+                                   "id INTEGER PRIMARY KEY CHECK (id = 1), " +
+                                   "started_at TEXT NOT NULL, " +
+                                   "last_content_id INTEGER NOT NULL, " +
+                                   "max_content_id INTEGER NOT NULL, " +
+                                   "rotated INTEGER NOT NULL, " +
+                                   "failed INTEGER NOT NULL, " +
+                                   "finished_at TEXT)"),
+        // 11 : heure de retrait des segments, pour en différer la suppression d'un processus à l'autre
+        stmt -> stmt.executeUpdate("ALTER TABLE audio_segments ADD COLUMN retired_at INTEGER")
+    );
+
+    /** Version du schéma attendue par cette version de l'application */
+    static final int VERSION = MIGRATIONS.size();
+
+    /**
+     * Version minimale de SQLite : {@code unhex}, utilisée par la migration 5 et la conversion
+     * des hash, date de 3.41 ; {@code DROP COLUMN} de 3.35
+     */
+    static final String MIN_SQLITE_VERSION = "3.41.0";
+
+    /** Colonnes contenant un hash SHA-256, en hexadécimal ou en BLOB selon {@link SHA#BINARY_STORAGE} */
+    private static final String[][] DIGEST_COLUMNS = {
+        {"recordings", "audio_hash"},
+        {"users", "password"}
+    };
+
+    private Schema() {
+    }
+
+    /**
+     * Active le journal WAL et applique les migrations manquantes.
+     *
+     * @param conn Connexion en mode auto-commit
+     * @throws SQLException Si une migration échoue ou si la base vient d'une version plus récente
+     */
+    static void migrate(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            // Persistant dans le fichier ; ne peut pas être changé dans une transaction
+            stmt.executeQuery("PRAGMA journal_mode = WAL").close();
+
+            int version = version(stmt);
+            if (version > VERSION) {
+                throw new SQLException("Database schema version " + version + " is newer than supported (" + VERSION + ")");
+            }
+            if (version < VERSION || SHA.BINARY_STORAGE) {
+                checkSqliteVersion(stmt);
+            }
+            while (version < VERSION) {
+                // Verrou d'écriture immédiat : une autre instance peut migrer en même temps
+                stmt.execute("BEGIN IMMEDIATE");
+                try {
+                    version = version(stmt);
+                    if (version < VERSION) {
+                        MIGRATIONS.get(version).apply(stmt);
+                        version++;
+                        stmt.execute("PRAGMA user_version = " + version);
+                    }
+                    stmt.execute("COMMIT");
+                } catch (SQLException e) {
+                    stmt.execute("ROLLBACK");
+                    throw e;
+                }
+            }
+            if (SHA.BINARY_STORAGE) {
+                convertHexDigests(stmt);
+            }
+        }
+    }
+
+    /**
+     * Refuse de migrer avec une bibliothèque SQLite trop ancienne, qui échouerait au milieu
+     * d'une migration sur une fonction inconnue.
+     */
+    private static void checkSqliteVersion(Statement stmt) throws SQLException {
+        String version;
+        try (ResultSet rs = stmt.executeQuery("SELECT sqlite_version()")) {
+            rs.next();
+            version = rs.getString(1);
+        }
+        if (compareVersions(version, MIN_SQLITE_VERSION) < 0) {
+            throw new SQLException("SQLite " + version + " is too old to migrate the database; " +
+                                   MIN_SQLITE_VERSION + " or later is required");
+        }
+    }
+
+    /**
+     * Compare deux numéros de version de la forme {@code 3.41.2}, partie par partie.
+     *
+     * @return Un nombre négatif, nul ou positif selon que {@code a} précède, égale ou suit {@code b}
+     */
+    static int compareVersions(String a, String b) {
+        String[] left = a.split("\\.");
+        String[] right = b.split("\\.");
+        for (int i = 0; i < Math.max(left.length, right.length); i++) {
+            int l = i < left.length ? Integer.parseInt(left[i]) : 0;
+            int r = i < right.length ? Integer.parseInt(right[i]) : 0;
+            if (l != r) return Integer.compare(l, r);
+        }
+        return 0;
+    }
+
+    /**
+     * Convertit en BLOB de 32 octets les hash encore stockés en hexadécimal.
+     * Sans effet une fois la conversion faite ; une valeur qui n'est pas un hash valide est laissée telle quelle.
+     */
+    private static void convertHexDigests(Statement stmt) throws SQLException {
+        stmt.execute("BEGIN IMMEDIATE");
+        try {
+            for (String[] column : DIGEST_COLUMNS) {
+                String name = column[1];
+                stmt.executeUpdate("UPDATE " + column[0] + " SET " + name + " = unhex(" + name + ") " +
+                                   "WHERE typeof(" + name + ") = 'text' AND length(" + name + ") = " + 2 * SHA.DIGEST_SIZE +
+                                   " AND unhex(" + name + ") IS NOT NULL");
+            }
+            stmt.execute("COMMIT");
+        } catch (SQLException e) {
+            stmt.execute("ROLLBACK");
+            throw e;
+        }
+    }
+
+    /**
+     * @param conn Connexion à la base de données
+     * @return La version du schéma de la base
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    static int version(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            return version(stmt);
+        }
+    }
+
+    private static int version(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package Auth;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SchemaTest {
+
+    /** Tables telles que les créait la première version de l'application, avant toute migration */
+    private static final String BASELINE_USERS =
+            "CREATE TABLE users (" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            "email TEXT NOT NULL UNIQUE, " +
+            "password TEXT NOT NULL, " +
+            "is_admin BOOLEAN NOT NULL DEFAULT 0)";
+    private static final String BASELINE_RECORDINGS =
+            "CREATE TABLE recordings (" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            "name TEXT NOT NULL, " +
+            "timestamp TEXT NOT NULL, " +
+            "duration INTEGER, " +
+            "audio BLOB NOT NULL, " +
+            "encryption_key TEXT NOT NULL, " +
+            "audio_hash TEXT NOT NULL, " +
+            "user_id INTEGER, " +
+            "FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE)";
+
+    private Path dir;
+    private Connection conn;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("schema");
+        conn = DriverManager.getConnection("jdbc:sqlite:" + dir.resolve("users.db"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        conn.close();
+        for (File f : dir.toFile().listFiles()) {
+            f.delete();
+        }
+        dir.toFile().delete();
+    }
+
+    @Test
+    public void testMigrateBaselineDatabase() throws Exception {
+        byte[] audio = "audio d'origine".getBytes();
+        String hash = SHA.toHex(SHA.sha256(audio));
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(BASELINE_USERS);
+            stmt.executeUpdate(BASELINE_RECORDINGS);
+            stmt.executeUpdate("INSERT INTO users (email, password) VALUES ('a@b.c', '" + hash + "')");
+        }
+        int owned = insertBaselineRecording(audio, hash, 1);
+        int orphan = insertBaselineRecording(audio, hash, null);
+        assertEquals(0, Schema.version(conn));
+
+        Schema.migrate(conn);
+
+        assertEquals(Schema.VERSION, Schema.version(conn));
+        Set<String> columns = names("PRAGMA table_info(recordings)");
+        assertTrue(columns.contains("content_id"));
+        assertTrue(columns.contains("codec"));
+        assertFalse("Colonnes de la migration 4 supprimées par la migration 5", columns.contains("segment_id"));
+        assertFalse(columns.contains("segment_offset"));
+        assertFalse(columns.contains("audio_length"));
+
+        Set<String> indexes = names("PRAGMA index_list(recordings)");
+        assertTrue(indexes.contains("idx_recordings_user_time"));
+        assertTrue(indexes.contains("idx_recordings_content"));
+        assertFalse(indexes.contains("idx_recordings_segment"));
+
+        Set<String> tables = names("SELECT name FROM sqlite_master WHERE type = 'table'");
+        for (String table : new String[] {"recording_chunks", "recording_integrity", "audio_segments", "audio_content",
+                                          "vad_settings", "recording_peaks", "recording_seek", "key_rotation"}) {
+            assertTrue(table, tables.contains(table));
+        }
+
+        // Données d'origine conservées, y compris un enregistrement sans propriétaire
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, user_id, audio, codec, content_id FROM recordings ORDER BY id")) {
+            assertTrue(rs.next());
+            assertEquals(owned, rs.getInt("id"));
+            assertEquals(1, rs.getInt("user_id"));
+            assertArrayEquals(audio, rs.getBytes("audio"));
+            assertEquals(AudioCodecs.PCM, rs.getString("codec"));
+            assertNull("Pas encore dans un segment", rs.getObject("content_id"));
+            assertTrue(rs.next());
+            assertEquals(orphan, rs.getInt("id"));
+            assertNull(rs.getObject("user_id"));
+            assertFalse(rs.next());
+        }
+
+        // Sans effet une fois à jour
+        Schema.migrate(conn);
+        assertEquals(Schema.VERSION, Schema.version(conn));
+    }
+
+    @Test
+    public void testMigrateSegmentLocationsToContents() throws Exception {
+        byte[] audio = "audio en segment".getBytes();
+        byte[] digest = SHA.sha256(audio);
+        // Base à la version 4 : emplacements des segments encore dans recordings
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(BASELINE_USERS);
+            stmt.executeUpdate(BASELINE_RECORDINGS);
+            stmt.executeUpdate("CREATE TABLE recording_chunks (recording_id INTEGER NOT NULL, seq INTEGER NOT NULL, " +
+                               "data BLOB NOT NULL, PRIMARY KEY (recording_id, seq))");
+            stmt.executeUpdate("CREATE TABLE recording_integrity (recording_id INTEGER PRIMARY KEY, " +
+                               "verified_at TEXT NOT NULL, status TEXT NOT NULL)");
+            stmt.executeUpdate("CREATE INDEX idx_recordings_user_time ON recordings (user_id, timestamp, id)");
+            stmt.executeUpdate("CREATE TABLE audio_segments (id INTEGER PRIMARY KEY, state INTEGER NOT NULL DEFAULT 0)");
+            stmt.executeUpdate("ALTER TABLE recordings ADD COLUMN segment_id INTEGER");
+            stmt.executeUpdate("ALTER TABLE recordings ADD COLUMN segment_offset INTEGER");
+            stmt.executeUpdate("ALTER TABLE recordings ADD COLUMN audio_length INTEGER");
+            stmt.executeUpdate("CREATE INDEX idx_recordings_segment " +
+                               "ON recordings (segment_id, segment_offset) WHERE segment_id IS NOT NULL");
+            stmt.executeUpdate("INSERT INTO audio_segments (id, state) VALUES (1, 0)");
+            stmt.executeUpdate("PRAGMA user_version = 4");
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO recordings (name, timestamp, duration, audio, encryption_key, audio_hash, user_id, " +
+                "segment_id, segment_offset, audio_length) VALUES ('test', '2024-01-01 00:00:00', 1, X'', 'key', ?, 1, ?, ?, ?)")) {
+            // Hash en hexadécimal pour le premier, en BLOB pour le second
+            pstmt.setString(1, SHA.toHex(digest));
+            pstmt.setInt(2, 1);
+            pstmt.setLong(3, 0);
+            pstmt.setLong(4, audio.length);
+            pstmt.executeUpdate();
+            pstmt.setBytes(1, digest);
+            pstmt.setInt(2, 1);
+            pstmt.setLong(3, audio.length);
+            pstmt.setLong(4, audio.length);
+            pstmt.executeUpdate();
+        }
+        insertBaselineRecording(audio, SHA.toHex(digest), 1);
+
+        Schema.migrate(conn);
+
+        assertEquals(Schema.VERSION, Schema.version(conn));
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT r.id, r.content_id, c.hash, c.refcount, c.segment_id, c.segment_offset, c.audio_length " +
+                     "FROM recordings r LEFT JOIN audio_content c ON c.id = r.content_id ORDER BY r.id")) {
+            for (long offset = 0; offset <= audio.length; offset += audio.length) {
+                assertTrue(rs.next());
+                assertEquals(rs.getInt("id"), rs.getInt("content_id"));
+                assertArrayEquals(digest, rs.getBytes("hash"));
+                assertEquals(1, rs.getInt("refcount"));
+                assertEquals(1, rs.getInt("segment_id"));
+                assertEquals(offset, rs.getLong("segment_offset"));
+                assertEquals(audio.length, rs.getLong("audio_length"));
+            }
+            // Enregistrement resté dans la base : aucun contenu
+            assertTrue(rs.next());
+            assertNull(rs.getObject("content_id"));
+            assertFalse(rs.next());
+        }
+    }
+
+    @Test
+    public void testCompareVersions() {
+        assertTrue(Schema.compareVersions("3.45.1", Schema.MIN_SQLITE_VERSION) > 0);
+        assertTrue(Schema.compareVersions("3.40.1", Schema.MIN_SQLITE_VERSION) < 0);
+        assertTrue(Schema.compareVersions("3.9", "3.35") < 0);
+        assertEquals(0, Schema.compareVersions("3.41", "3.41.0"));
+    }
+
+    private int insertBaselineRecording(byte[] audio, String hash, Integer userId) throws Exception {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO recordings (name, timestamp, duration, audio, encryption_key, audio_hash, user_id) " +
+                "VALUES ('test', '2024-01-01 00:00:00', 1, ?, 'key', ?, ?)")) {
+            pstmt.setBytes(1, audio);
+            pstmt.setString(2, hash);
+            pstmt.setObject(3, userId);
+            pstmt.executeUpdate();
+        }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private Set<String> names(String sql) throws Exception {
+        Set<String> names = new HashSet<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                names.add(rs.getString("name"));
+            }
+        }
+        return names;
+    }
+}
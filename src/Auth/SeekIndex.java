@@ -0,0 +1,228 @@
+package Auth;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Index de recherche d'un enregistrement, conservé dans {@code recording_seek} : position,
+ * dans les données encodées (avant chiffrement), du début de chaque bloc du codec.
+ * Pour atteindre une trame, il suffit de déchiffrer le bloc chiffré contenant le début de
+ * son bloc de codec, quelle que soit la position dans l'enregistrement. L'audio PCM brut
+ * n'a pas de blocs : sa position se calcule directement.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+public final class SeekIndex {
+
+    /** Nombre total de trames */
+    private final long frames;
+    /** Trames par bloc de codec, 0 pour un flux PCM brut */
+    private final int blockFrames;
+    /** Position encodée du début de chaque bloc */
+    private final long[] offsets;
+
+    private SeekIndex(long frames, int blockFrames, long[] offsets) {
+        this.frames = frames;
+        this.blockFrames = blockFrames;
+        this.offsets = offsets;
+    }
+
+    /**
+     * @param frames Nombre total de trames
+     * @return L'index d'un flux PCM brut, dont les positions se calculent
+     */
+    static SeekIndex linear(long frames) {
+        return new SeekIndex(frames, 0, new long[0]);
+    }
+
+    /** @return Le nombre total de trames de l'enregistrement */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @param frame Trame recherchée
+     * @return La première trame du bloc la contenant, à partir de laquelle décoder
+     */
+    long blockStart(long frame) {
+        if (blockFrames == 0) return frame;
+        return Math.min(frame / blockFrames, Math.max(offsets.length - 1, 0)) * blockFrames;
+    }
+
+    /**
+     * @param frame Trame recherchée
+     * @param frameSize Taille d'une trame PCM
+     * @return La position encodée du bloc contenant la trame
+     */
+    long offsetOf(long frame, int frameSize) {
+        if (blockFrames == 0) return frame * frameSize;
+        if (offsets.length == 0) return 0;
+        return offsets[(int) (blockStart(frame) / blockFrames)];
+    }
+
+    /**
+     * Enregistre l'index d'un enregistrement, dans la transaction en cours.
+     *
+     * @param conn Connexion à la base de données
+     * @param recordingId Identifiant de l'enregistrement
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    public void save(Connection conn, int recordingId) throws SQLException {
+        ByteBuffer buffer = ByteBuffer.allocate(offsets.length * 4);
+        long previous = 0;
+        for (long offset : offsets) {
+            // Écart avec le bloc précédent : un bloc encodé fait bien moins de 2 Go
+            buffer.putInt((int) (offset - previous));
+            previous = offset;
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT OR REPLACE INTO recording_seek (recording_id, frames, block_frames, offsets) VALUES (?, ?, ?, ?)")) {
+            pstmt.setInt(1, recordingId);
+            pstmt.setLong(2, frames);
+            pstmt.setInt(3, blockFrames);
+            pstmt.setBytes(4, buffer.array());
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Charge l'index d'un enregistrement.
+     *
+     * @param conn Connexion à la base de données
+     * @param recordingId Identifiant de l'enregistrement
+     * @return L'index, ou null si l'enregistrement n'en a pas
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    public static SeekIndex load(Connection conn, int recordingId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT frames, block_frames, offsets FROM recording_seek WHERE recording_id = ?")) {
+            pstmt.setInt(1, recordingId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) return null;
+                ByteBuffer buffer = ByteBuffer.wrap(rs.getBytes(3));
+                long[] offsets = new long[buffer.remaining() / 4];
+                long offset = 0;
+                for (int i = 0; i < offsets.length; i++) {
+                    offset += buffer.getInt();
+                    offsets[i] = offset;
+                }
+                return new SeekIndex(rs.getLong(1), rs.getInt(2), offsets);
+            }
+        }
+    }
+
+    /**
+     * Supprime l'index d'un enregistrement.
+     *
+     * @param conn Connexion à la base de données
+     * @param recordingId Identifiant de l'enregistrement
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    public static void delete(Connection conn, int recordingId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM recording_seek WHERE recording_id = ?")) {
+            pstmt.setInt(1, recordingId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Transmet les données encodées écrites à un flux et relève au passage le début de chaque
+     * bloc, en suivant les en-têtes (trames, taille) du format de {@link BlockCodec}.
+     */
+    static final class Builder extends OutputStream {
+        private final OutputStream out;
+        private final int frameSize;
+        private final boolean blocks;
+
+        /** Position dans le flux encodé */
+        private long position;
+        /** En-tête de bloc en cours de lecture */
+        private final byte[] header = new byte[8];
+        private int headerFill;
+        /** Octets de données du bloc courant restant à passer */
+        private long payloadLeft;
+        private long frames;
+        private long[] offsets = new long[64];
+        private int count;
+
+        /**
+         * @param out Destination des données encodées
+         * @param codec Codec ayant produit les données
+         * @param format Format PCM de l'audio
+         */
+        Builder(OutputStream out, AudioCodec codec, AudioFormat format) {
+            this.out = out;
+            this.frameSize = format.getFrameSize();
+            this.blocks = codec instanceof BlockCodec;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (!blocks) {
+                position += len;
+                return;
+            }
+            int end = off + len;
+            while (off < end) {
+                if (payloadLeft > 0) {
+                    int n = (int) Math.min(payloadLeft, end - off);
+                    payloadLeft -= n;
+                    position += n;
+                    off += n;
+                    continue;
+                }
+                header[headerFill++] = b[off++];
+                position++;
+                if (headerFill == header.length) {
+                    ByteBuffer h = ByteBuffer.wrap(header);
+                    int blockFrames = h.getInt();
+                    payloadLeft = h.getInt();
+                    // Le bloc sans trame d'une fin de flux incomplète n'est pas un point de recherche
+                    if (blockFrames > 0) {
+                        if (count == offsets.length) {
+                            offsets = Arrays.copyOf(offsets, count * 2);
+                        }
+                        offsets[count++] = position - header.length;
+                        frames += blockFrames;
+                    }
+                    headerFill = 0;
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        /**
+         * @return L'index des données écrites, à appeler une fois le codec fermé
+         */
+        SeekIndex build() {
+            if (!blocks) {
+                return linear(position / frameSize);
+            }
+            return new SeekIndex(frames, BlockCodec.BLOCK_FRAMES, Arrays.copyOf(offsets, count));
+        }
+    }
+}
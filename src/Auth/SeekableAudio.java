@@ -0,0 +1,184 @@
+package Auth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import javax.crypto.SecretKey;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Lecture d'un enregistrement à partir d'une trame quelconque.
+ * Avec un {@link SeekIndex}, seul le bloc chiffré contenant le début du bloc de codec de la
+ * trame est déchiffré, puis les blocs suivants au fil de la lecture : le temps d'accès ne
+ * dépend pas de la position. Sans index (enregistrement encodé antérieur à l'index) ou pour
+ * l'ancien format chiffré d'un seul tenant, l'audio est relu depuis le début jusqu'à la trame.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+final class SeekableAudio {
+
+    private final AudioCodec codec;
+    private final AudioFormat format;
+    private final int frameSize;
+    /** Accès aux blocs chiffrés, null pour une lecture séquentielle */
+    private final ChunkedAES.ChunkReader reader;
+    private final SeekIndex index;
+
+    /** Pour la lecture séquentielle */
+    private final Connection conn;
+    private final AudioStore audio;
+    private final int recordingId;
+    private final SecretKey key;
+
+    private SeekableAudio(Connection conn, AudioStore audio, int recordingId, SecretKey key, AudioCodec codec,
+                          AudioFormat format, ChunkedAES.ChunkReader reader, SeekIndex index) {
+        this.conn = conn;
+        this.audio = audio;
+        this.recordingId = recordingId;
+        this.key = key;
+        this.codec = codec;
+        this.format = format;
+        this.frameSize = format.getFrameSize();
+        this.reader = reader;
+        this.index = index;
+    }
+
+    /**
+     * Prépare la lecture d'un enregistrement.
+     *
+     * @param conn Connexion à la base de données, à garder ouverte pendant la lecture
+     * @param audio Stockage des données audio
+     * @param recordingId Identifiant de l'enregistrement
+     * @param key Clé de l'enregistrement
+     * @param codec Codec de l'enregistrement
+     * @param format Format PCM de l'enregistrement
+     * @return L'accès à l'enregistrement
+     * @throws SQLException En cas d'erreur d'accès à la base
+     * @throws IOException Si les données ne peuvent pas être lues
+     */
+    static SeekableAudio open(Connection conn, AudioStore audio, int recordingId, SecretKey key, AudioCodec codec,
+                              AudioFormat format) throws SQLException, IOException {
+        SeekIndex index = SeekIndex.load(conn, recordingId);
+        ChunkedAES.ChunkReader reader = null;
+        ChunkedAES.RandomAccessSource source = audio.openSource(conn, recordingId);
+        byte[] header = new byte[ChunkedAES.HEADER_SIZE];
+        if (source.length() >= header.length) {
+            source.readFully(0, header, 0, header.length);
+            if (ChunkedAES.isHeader(header)) {
+                reader = AES.openChunkReader(source, key);
+            }
+        }
+        if (reader != null && index == null && !(codec instanceof BlockCodec)) {
+            // PCM brut enregistré avant l'index : les positions se calculent
+            index = SeekIndex.linear(reader.plainLength() / format.getFrameSize());
+        }
+        if (index == null) {
+            reader = null;
+        }
+        return new SeekableAudio(conn, audio, recordingId, key, codec, format, reader, index);
+    }
+
+    /**
+     * @return Le nombre total de trames, ou -1 s'il n'est pas connu sans tout lire
+     */
+    long getFrames() {
+        return index != null ? index.getFrames() : -1;
+    }
+
+    /**
+     * @return true si l'accès à une trame ne demande pas de relire le début
+     */
+    boolean isRandomAccess() {
+        return reader != null;
+    }
+
+    /**
+     * Ouvre l'audio PCM à partir d'une trame.
+     *
+     * @param frame Trame de départ
+     * @return Un flux PCM commençant à cette trame (vide au-delà de la fin)
+     * @throws SQLException En cas d'erreur d'accès à la base
+     * @throws IOException Si les données ne peuvent pas être lues ou sont altérées
+     */
+    InputStream openAt(long frame) throws SQLException, IOException {
+        frame = Math.max(0, frame);
+        InputStream pcm;
+        long skip;
+        if (reader != null) {
+            frame = Math.min(frame, index.getFrames());
+            long start = index.blockStart(frame);
+            pcm = codec.decode(new PlainStream(index.offsetOf(frame, frameSize)), format);
+            skip = (frame - start) * frameSize;
+        } else {
+            pcm = codec.decode(AES.decryptStream(audio.openStream(conn, recordingId), key), format);
+            skip = frame * frameSize;
+        }
+        try {
+            skipFully(pcm, skip);
+        } catch (IOException e) {
+            pcm.close();
+            throw e;
+        }
+        return pcm;
+    }
+
+    private static void skipFully(InputStream in, long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                if (in.read() < 0) return;
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    /**
+     * Données encodées en clair à partir d'une position, déchiffrées bloc par bloc.
+     */
+    private final class PlainStream extends InputStream {
+        private final byte[] chunk = new byte[reader.chunkSize()];
+        private int chunkIndex;
+        private int pos;
+        private int limit;
+        private boolean loaded;
+
+        PlainStream(long offset) {
+            this.chunkIndex = (int) (offset / reader.chunkSize());
+            this.pos = (int) (offset % reader.chunkSize());
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (!loaded || pos >= limit) {
+                if (loaded) {
+                    chunkIndex++;
+                    pos = 0;
+                }
+                if (chunkIndex >= reader.chunkCount()) return -1;
+                limit = reader.readChunk(chunkIndex, chunk);
+                loaded = true;
+            }
+            int n = Math.min(len, limit - pos);
+            System.arraycopy(chunk, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            Arrays.fill(chunk, (byte) 0);
+        }
+    }
+}
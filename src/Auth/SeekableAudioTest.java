@@ -0,0 +1,205 @@
+package Auth;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SeekableAudioTest {
+
+    private static final AudioFormat CAPTURE = new AudioFormat(44100, 8, 1, true, true);
+    /** Plus de deux minutes : des dizaines de blocs chiffrés */
+    private static final int FRAMES = 44100 * 130 + 123;
+
+    private Database db;
+    private Connection conn;
+
+    @Before
+    public void setUp() throws Exception {
+        db = new Database("jdbc:sqlite:file:seek?mode=memory&cache=shared", 1);
+        conn = db.getConnection();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        conn.close();
+        db.close();
+    }
+
+    @Test
+    public void testEveryCodecSeeksToTheExactFrame() throws Exception {
+        byte[] pcm = voice(FRAMES);
+        for (AudioCodec codec : AudioCodecs.all()) {
+            MemoryStore store = record(codec, pcm, 1);
+            byte[] decoded = readAll(SeekableAudio.open(conn, store, 1, store.key, codec, CAPTURE).openAt(0));
+            assertEquals(codec.getName(), pcm.length, decoded.length);
+            if (codec.isLossless()) {
+                assertArrayEquals(codec.getName(), pcm, decoded);
+            }
+
+            SeekableAudio audio = SeekableAudio.open(conn, store, 1, store.key, codec, CAPTURE);
+            assertTrue(audio.isRandomAccess());
+            assertEquals(FRAMES, audio.getFrames());
+            for (long frame : new long[] {1, 4095, 4096, 4097, 44100 * 60 + 17, FRAMES - 5000, FRAMES - 1}) {
+                try (InputStream in = audio.openAt(frame)) {
+                    byte[] part = readN(in, 3000);
+                    int n = (int) Math.min(3000, FRAMES - frame);
+                    assertArrayEquals(codec.getName() + " @" + frame,
+                                      Arrays.copyOfRange(decoded, (int) frame, (int) frame + n), part);
+                }
+            }
+            assertEquals(-1, audio.openAt(FRAMES + 10).read());
+        }
+    }
+
+    @Test
+    public void testSeekDecryptsOnlyTheTargetChunk() throws Exception {
+        AudioCodec codec = AudioCodecs.forName(AudioCodecs.LPC);
+        MemoryStore store = record(codec, voice(FRAMES), 2);
+        SeekableAudio audio = SeekableAudio.open(conn, store, 2, store.key, codec, CAPTURE);
+        // Une seconde de lecture ne touche que le bloc chiffré de la position et éventuellement le suivant
+        long limit = 2L * (AES.CHUNK_SIZE + ChunkedAES.TAG_SIZE);
+        for (long frame : new long[] {10, FRAMES / 2, FRAMES - 44100}) {
+            store.bytesRead = 0;
+            try (InputStream in = audio.openAt(frame)) {
+                readN(in, 44100);
+            }
+            assertTrue("read " + store.bytesRead + " bytes @" + frame, store.bytesRead <= limit);
+        }
+    }
+
+    @Test
+    public void testRecordingWithoutIndexIsReadSequentially() throws Exception {
+        AudioCodec codec = AudioCodecs.forName(AudioCodecs.LPC);
+        byte[] pcm = voice(FRAMES);
+        MemoryStore store = record(codec, pcm, 3);
+        SeekIndex.delete(conn, 3);
+
+        SeekableAudio audio = SeekableAudio.open(conn, store, 3, store.key, codec, CAPTURE);
+        assertFalse(audio.isRandomAccess());
+        assertEquals(-1, audio.getFrames());
+        try (InputStream in = audio.openAt(100000)) {
+            assertArrayEquals(Arrays.copyOfRange(pcm, 100000, 101000), readN(in, 1000));
+        }
+    }
+
+    @Test
+    public void testRawPcmWithoutIndexIsStillRandomAccess() throws Exception {
+        AudioCodec codec = AudioCodecs.forName(AudioCodecs.PCM);
+        byte[] pcm = voice(FRAMES);
+        MemoryStore store = record(codec, pcm, 4);
+        SeekIndex.delete(conn, 4);
+
+        SeekableAudio audio = SeekableAudio.open(conn, store, 4, store.key, codec, CAPTURE);
+        assertTrue(audio.isRandomAccess());
+        assertEquals(FRAMES, audio.getFrames());
+        try (InputStream in = audio.openAt(FRAMES - 10)) {
+            assertArrayEquals(Arrays.copyOfRange(pcm, FRAMES - 10, FRAMES), readAll(in));
+        }
+    }
+
+    /**
+     * Enregistre l'audio par la chaîne de capture, garde les données chiffrées en mémoire et
+     * l'index de recherche dans la base.
+     */
+    private MemoryStore record(AudioCodec codec, byte[] pcm, int recordingId) throws Exception {
+        RecordingPipeline pipeline = new RecordingPipeline(4410, CAPTURE, codec, VadSettings.DISABLED);
+        for (int off = 0; off < pcm.length; off += 4410) {
+            byte[] buffer = pipeline.nextBuffer();
+            int n = Math.min(buffer.length, pcm.length - off);
+            System.arraycopy(pcm, off, buffer, 0, n);
+            pipeline.submit(buffer, n);
+        }
+        try (RecordingPipeline.Result result = pipeline.finish()) {
+            result.getSeekIndex().save(conn, recordingId);
+            return new MemoryStore(readAll(result.openEncrypted()), result);
+        }
+    }
+
+    /** Stockage d'un seul enregistrement en mémoire, comptant les octets lus */
+    private static final class MemoryStore implements AudioStore {
+        volatile byte[] encrypted;
+        final javax.crypto.SecretKey key;
+        long bytesRead;
+
+        MemoryStore(byte[] encrypted, RecordingPipeline.Result result) {
+            this.encrypted = encrypted;
+            this.key = result.getKey();
+        }
+
+        @Override
+        public OutputStream openWriter(Connection conn, int recordingId) {
+            // Les données écrites remplacent l'enregistrement à la fermeture
+            return new ByteArrayOutputStream() {
+                @Override
+                public void close() {
+                    encrypted = toByteArray();
+                }
+            };
+        }
+
+        @Override
+        public InputStream openStream(Connection conn, int recordingId) {
+            return new ByteArrayInputStream(encrypted);
+        }
+
+        @Override
+        public ChunkedAES.RandomAccessSource openSource(Connection conn, int recordingId) {
+            ChunkedAES.RandomAccessSource source = ChunkedAES.wrap(encrypted);
+            return new ChunkedAES.RandomAccessSource() {
+                @Override
+                public long length() throws IOException {
+                    return source.length();
+                }
+
+                @Override
+                public void readFully(long pos, byte[] b, int off, int len) throws IOException {
+                    bytesRead += len;
+                    source.readFully(pos, b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public void delete(Connection conn, int recordingId) {
+            encrypted = new byte[0];
+        }
+    }
+
+    private static byte[] voice(int frames) {
+        byte[] pcm = new byte[frames];
+        for (int i = 0; i < frames; i++) {
+            double t = i / 44100.0;
+            pcm[i] = (byte) Math.round(50 * Math.sin(2 * Math.PI * 220 * t) * (0.6 + 0.4 * Math.sin(2 * Math.PI * t)));
+        }
+        return pcm;
+    }
+
+    private static byte[] readN(InputStream in, int n) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[997];
+        while (out.size() < n) {
+            int r = in.read(buffer, 0, Math.min(buffer.length, n - out.size()));
+            if (r < 0) break;
+            out.write(buffer, 0, r);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            return readN(stream, Integer.MAX_VALUE);
+        }
+    }
+}
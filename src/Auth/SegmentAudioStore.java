@@ -0,0 +1,932 @@
+package Auth;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stockage des données audio chiffrées dans de grands fichiers segments, en ajout seul.
+ * Chaque contenu occupe une plage contiguë d'un segment ; la table {@code audio_content} garde
+ * son emplacement, le hash SHA-256 de l'audio en clair et le nombre d'enregistrements qui
+ * le référencent ({@code recordings.content_id}). Un audio identique (message transféré,
+ * réimporté ou sauvegardé à nouveau) n'est stocké qu'une fois : le nouvel enregistrement
+ * partage le contenu existant et sa clé. Les lectures passent par des projections mémoire en
+ * lecture seule : l'audio ne traverse plus le cache de pages de SQLite et la base reste petite.
+ * <p>
+ * Un segment est scellé une fois sa taille maximale atteinte. Supprimer un enregistrement
+ * décrémente le compteur de références de son contenu ; l'espace des contenus qui ne sont
+ * plus référencés est récupéré par {@link #compact(Connection, double)}, qui recopie les
+ * contenus encore utilisés d'un segment scellé dans le segment actif avant de le supprimer.
+ * <p>
+ * Les écritures sont sérialisées par {@link #lockWrites()}, à prendre avant d'ouvrir la
+ * transaction qui écrit : l'ordre des verrous est toujours stockage puis base. Une lecture
+ * qui garde un état de la base le temps de lire les données le déclare avec
+ * {@link #beginRead()}, qui verrouille en partage le fichier {@value #READ_LOCK_FILE}.
+ * <p>
+ * La compaction tourne aussi dans un autre processus ({@code AudioStoreTool compact}) que
+ * l'application qui lit. Le fichier d'un segment retiré n'est donc supprimé qu'une fois
+ * retiré depuis au moins l'âge minimal, enregistré dans {@code audio_segments.retired_at},
+ * et seulement si aucune lecture déclarée n'est en cours, ni dans ce processus ni dans un
+ * autre : la compaction doit obtenir le verrou exclusif de {@value #READ_LOCK_FILE}. Une
+ * lecture courte non déclarée, qui ouvre le segment aussitôt son emplacement lu, n'est
+ * protégée que par l'âge minimal.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+final class SegmentAudioStore implements AudioStore {
+
+    /** Taille à partir de laquelle un segment est scellé, modifiable avec {@code moustass.audio.segmentMB} */
+    static final long DEFAULT_SEGMENT_SIZE = Long.getLong("moustass.audio.segmentMB", 256) * 1024 * 1024;
+
+    /** Segment recevant les nouveaux enregistrements */
+    static final int ACTIVE = 0;
+    /** Segment plein, candidat à la compaction */
+    static final int SEALED = 1;
+    /** Segment vidé dont le fichier sera supprimé à une passe suivante de compaction */
+    static final int RETIRED = 2;
+    /** Âge minimal d'un segment retiré avant la suppression de son fichier */
+    static final long RETIRED_MIN_AGE_MILLIS = 60 * 1000;
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    /** Fichier verrouillé pendant les écritures, pour les autres processus */
+    private static final String LOCK_FILE = "store.lock";
+    /** Fichier verrouillé en partage pendant les lectures déclarées, en exclusif pour supprimer un segment */
+    private static final String READ_LOCK_FILE = "readers.lock";
+
+    private final Path dir;
+    private final long maxSegmentSize;
+    private final long retiredMinAge;
+    /** Un seul écrivain à la fois dans ce processus ; le verrou de fichier protège des autres processus */
+    private final ReentrantLock appendLock = new ReentrantLock();
+    /** Verrou du fichier {@link #LOCK_FILE}, tenu par le premier niveau de {@link #lockWrites()} */
+    private FileChannel lockChannel;
+    private FileLock fileLock;
+
+    /** Lectures déclarées en cours dans ce processus ; protège aussi {@link #readLockChannel} */
+    private final Object readers = new Object();
+    private int readerCount;
+    /** Canal du fichier {@link #READ_LOCK_FILE}, verrouillé en partage tant qu'une lecture est déclarée */
+    private FileChannel readLockChannel;
+
+    /**
+     * @param dir Répertoire des fichiers segments
+     * @param maxSegmentSize Taille à partir de laquelle un segment est scellé
+     */
+    SegmentAudioStore(Path dir, long maxSegmentSize) {
+        this(dir, maxSegmentSize, RETIRED_MIN_AGE_MILLIS);
+    }
+
+    /**
+     * @param dir Répertoire des fichiers segments
+     * @param maxSegmentSize Taille à partir de laquelle un segment est scellé
+     * @param retiredMinAge Âge minimal en millisecondes d'un segment retiré avant la suppression de son fichier
+     */
+    SegmentAudioStore(Path dir, long maxSegmentSize, long retiredMinAge) {
+        this.dir = dir;
+        this.maxSegmentSize = maxSegmentSize;
+        this.retiredMinAge = retiredMinAge;
+    }
+
+    /** @return Le répertoire des fichiers segments */
+    Path getDirectory() {
+        return dir;
+    }
+
+    private Path segmentFile(int segmentId) {
+        return dir.resolve(String.format("segment-%06d.dat", segmentId));
+    }
+
+    /**
+     * Ajoute les données à la fin du segment actif dans un nouveau contenu, référencé par
+     * l'enregistrement. Le contenu est créé à la fermeture du flux, dans la transaction de
+     * l'appelant : si elle est annulée, les octets écrits deviennent de l'espace mort.
+     */
+    @Override
+    public OutputStream openWriter(Connection conn, int recordingId) throws SQLException, IOException {
+        return openWriter(conn, recordingId, null);
+    }
+
+    /**
+     * Comme {@link #openWriter(Connection, int)}, en associant au contenu le hash de l'audio
+     * en clair pour que les enregistrements identiques suivants le partagent.
+     *
+     * @param conn Connexion utilisée pour les métadonnées
+     * @param recordingId Identifiant de l'enregistrement
+     * @param digest Hash SHA-256 de l'audio en clair, ou null
+     * @return Le flux, à fermer pour terminer l'écriture
+     * @throws SQLException En cas d'erreur d'accès à la base
+     * @throws IOException En cas d'erreur d'écriture
+     */
+    OutputStream openWriter(Connection conn, int recordingId, byte[] digest) throws SQLException, IOException {
+        return append(conn, (segmentId, offset, length) -> {
+            int contentId;
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO audio_content (hash, refcount, segment_id, segment_offset, audio_length) VALUES (?, 1, ?, ?, ?)")) {
+                pstmt.setBytes(1, digest);
+                pstmt.setInt(2, segmentId);
+                pstmt.setLong(3, offset);
+                pstmt.setLong(4, length);
+                pstmt.executeUpdate();
+            }
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+                rs.next();
+                contentId = rs.getInt(1);
+            }
+            release(conn, recordingId);
+            try (PreparedStatement pstmt = conn.prepareStatement("UPDATE recordings SET content_id = ? WHERE id = ?")) {
+                pstmt.setInt(1, contentId);
+                pstmt.setInt(2, recordingId);
+                pstmt.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Fait partager à l'enregistrement un contenu déjà stocké dont l'audio en clair a le même
+     * hash et le même codec. L'enregistrement reprend la clé du contenu, que l'appelant n'a
+     * plus à écrire.
+     *
+     * @param conn Connexion de l'appelant, dans sa transaction
+     * @param recordingId Identifiant de l'enregistrement, déjà inséré
+     * @param digest Hash SHA-256 de l'audio en clair
+     * @return true si un contenu identique a été trouvé et partagé
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    boolean shareExisting(Connection conn, int recordingId, byte[] digest) throws SQLException {
+        if (digest == null) return false;
+        int contentId = -1;
+        String key = null;
+        // La clé du contenu est celle de n'importe quel enregistrement qui le référence
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT c.id, (SELECT r.encryption_key FROM recordings r WHERE r.content_id = c.id AND r.id <> ? " +
+                "AND r.codec = (SELECT codec FROM recordings WHERE id = ?) LIMIT 1) " +
+                "FROM audio_content c WHERE c.hash = ? AND c.refcount > 0 ORDER BY c.id LIMIT 1")) {
+            pstmt.setInt(1, recordingId);
+            pstmt.setInt(2, recordingId);
+            pstmt.setBytes(3, digest);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    contentId = rs.getInt(1);
+                    key = rs.getString(2);
+                }
+            }
+        }
+        if (key == null) return false;
+
+        release(conn, recordingId);
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE audio_content SET refcount = refcount + 1 WHERE id = ?")) {
+            pstmt.setInt(1, contentId);
+            pstmt.executeUpdate();
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "UPDATE recordings SET content_id = ?, encryption_key = ? WHERE id = ?")) {
+            pstmt.setInt(1, contentId);
+            pstmt.setString(2, key);
+            pstmt.setInt(3, recordingId);
+            pstmt.executeUpdate();
+        }
+        return true;
+    }
+
+    /**
+     * Écrit une nouvelle version d'un contenu, chiffrée avec une autre clé. À la fermeture du
+     * flux, dans la transaction de l'appelant, tous les enregistrements qui référencent
+     * l'ancienne version passent ensemble à la nouvelle et à sa clé ; l'ancienne n'est plus
+     * référencée et ses octets restent lisibles jusqu'à la compaction de leur segment. Si le
+     * contenu n'est plus référencé entre-temps, les octets écrits deviennent de l'espace mort.
+     *
+     * @param conn Connexion de l'appelant, dans sa transaction
+     * @param contentId Contenu remplacé
+     * @param keyBase64 Nouvelle clé, telle que stockée dans {@code recordings.encryption_key}
+     * @return Le flux des nouvelles données chiffrées, à fermer pour faire le remplacement
+     * @throws SQLException En cas d'erreur d'accès à la base
+     * @throws IOException En cas d'erreur d'écriture
+     */
+    OutputStream openReplacement(Connection conn, int contentId, String keyBase64) throws SQLException, IOException {
+        return append(conn, (segmentId, offset, length) -> {
+            int refcount = 0;
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT refcount FROM audio_content WHERE id = ?")) {
+                pstmt.setInt(1, contentId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) refcount = rs.getInt(1);
+                }
+            }
+            if (refcount <= 0) return;
+
+            int replacement;
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO audio_content (hash, refcount, segment_id, segment_offset, audio_length) " +
+                    "SELECT hash, refcount, ?, ?, ? FROM audio_content WHERE id = ?")) {
+                pstmt.setInt(1, segmentId);
+                pstmt.setLong(2, offset);
+                pstmt.setLong(3, length);
+                pstmt.setInt(4, contentId);
+                pstmt.executeUpdate();
+            }
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+                rs.next();
+                replacement = rs.getInt(1);
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "UPDATE recordings SET content_id = ?, encryption_key = ? WHERE content_id = ?")) {
+                pstmt.setInt(1, replacement);
+                pstmt.setString(2, keyBase64);
+                pstmt.setInt(3, contentId);
+                pstmt.executeUpdate();
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("UPDATE audio_content SET refcount = 0 WHERE id = ?")) {
+                pstmt.setInt(1, contentId);
+                pstmt.executeUpdate();
+            }
+        });
+    }
+
+    @Override
+    public InputStream openStream(Connection conn, int recordingId) throws SQLException, IOException {
+        return new MappedInputStream(map(locate(conn, recordingId)));
+    }
+
+    @Override
+    public ChunkedAES.RandomAccessSource openSource(Connection conn, int recordingId)
+            throws SQLException, IOException {
+        return new MappedSource(map(locate(conn, recordingId)));
+    }
+
+    /**
+     * Retire la référence de l'enregistrement à son contenu. À appeler avant de supprimer la
+     * ligne ; les octets restent en place jusqu'à la compaction de leur segment.
+     */
+    @Override
+    public void delete(Connection conn, int recordingId) throws SQLException {
+        release(conn, recordingId);
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE recordings SET content_id = NULL WHERE id = ?")) {
+            pstmt.setInt(1, recordingId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /** Décrémente le compteur de références du contenu actuel de l'enregistrement, s'il en a un */
+    private static void release(Connection conn, int recordingId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "UPDATE audio_content SET refcount = refcount - 1 " +
+                "WHERE id = (SELECT content_id FROM recordings WHERE id = ?)")) {
+            pstmt.setInt(1, recordingId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Indique si les données d'un enregistrement sont dans un segment.
+     *
+     * @param conn Connexion à la base de données
+     * @param recordingId Identifiant de l'enregistrement
+     * @return true si l'enregistrement référence un contenu stocké dans un segment
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    static boolean contains(Connection conn, int recordingId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT content_id IS NOT NULL FROM recordings WHERE id = ?")) {
+            pstmt.setInt(1, recordingId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    /**
+     * Récupère l'espace des contenus qui ne sont plus référencés. Pour chaque segment scellé
+     * dont la part d'espace mort atteint {@code minDeadRatio}, les contenus encore référencés
+     * sont recopiés dans le segment actif, chacun dans sa propre transaction, puis le segment
+     * est retiré. Son fichier est supprimé par une passe suivante, une fois l'âge minimal
+     * atteint et aucune lecture déclarée en cours, dans ce processus ou dans un autre.
+     *
+     * @param conn Connexion en mode auto-commit
+     * @param minDeadRatio Part d'espace mort (entre 0 et 1) à partir de laquelle un segment est compacté
+     * @return Le nombre d'octets morts libérés
+     * @throws SQLException En cas d'erreur d'accès à la base
+     * @throws IOException En cas d'erreur de lecture ou d'écriture d'un segment
+     */
+    long compact(Connection conn, double minDeadRatio) throws SQLException, IOException {
+        long freed = 0;
+        deleteRetired(conn);
+        for (int segmentId : segmentsInState(conn, SEALED)) {
+            Path file = segmentFile(segmentId);
+            long size = Files.exists(file) ? Files.size(file) : 0;
+            long live = liveBytes(conn, segmentId);
+            if (size > 0 && size - live < minDeadRatio * size) continue;
+
+            for (int contentId : contentsIn(conn, segmentId)) {
+                moveToActive(conn, contentId, segmentId);
+            }
+            retire(conn, segmentId);
+            freed += size - live;
+        }
+        return freed;
+    }
+
+    /**
+     * Déplace dans les segments les enregistrements encore stockés dans la base (BLOB en ligne
+     * ou blocs), en partageant les contenus identiques. Chaque enregistrement est déplacé dans
+     * sa propre transaction : l'opération peut être interrompue puis relancée.
+     *
+     * @param conn Connexion en mode auto-commit
+     * @param rows Stockage actuel des données dans la base
+     * @return Le nombre d'enregistrements déplacés
+     * @throws SQLException En cas d'erreur d'accès à la base
+     * @throws IOException En cas d'erreur d'écriture d'un segment
+     */
+    int migrateFrom(Connection conn, AudioStore rows) throws SQLException, IOException {
+        List<Integer> ids = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id FROM recordings WHERE content_id IS NULL ORDER BY id")) {
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        }
+        int moved = 0;
+        for (int recordingId : ids) {
+            WriteLock lock = lockWrites();
+            try {
+                conn.setAutoCommit(false);
+                try {
+                    if (!contains(conn, recordingId)) {
+                        byte[] digest = storedDigest(conn, recordingId);
+                        if (!shareExisting(conn, recordingId, digest)) {
+                            try (InputStream in = rows.openStream(conn, recordingId);
+                                 OutputStream out = openWriter(conn, recordingId, digest)) {
+                                copy(in, out);
+                            }
+                        }
+                        rows.delete(conn, recordingId);
+                        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE recordings SET audio = X'' WHERE id = ?")) {
+                            pstmt.setInt(1, recordingId);
+                            pstmt.executeUpdate();
+                        }
+                        moved++;
+                    }
+                    conn.commit();
+                } catch (SQLException | IOException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            } finally {
+                lock.close();
+            }
+        }
+        return moved;
+    }
+
+    private static byte[] storedDigest(Connection conn, int recordingId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT audio_hash FROM recordings WHERE id = ?")) {
+            pstmt.setInt(1, recordingId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? SHA.readDigest(rs, "audio_hash") : null;
+            }
+        }
+    }
+
+    /**
+     * Recopie un contenu dans le segment actif s'il est toujours référencé et se trouve
+     * toujours dans le segment compacté.
+     */
+    private void moveToActive(Connection conn, int contentId, int fromSegment) throws SQLException, IOException {
+        WriteLock lock = lockWrites();
+        try {
+            conn.setAutoCommit(false);
+            try {
+                Location location = null;
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "SELECT segment_id, segment_offset, audio_length FROM audio_content WHERE id = ? AND refcount > 0")) {
+                    pstmt.setInt(1, contentId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        if (rs.next()) location = new Location(rs.getInt(1), rs.getLong(2), rs.getLong(3));
+                    }
+                }
+                if (location != null && location.segmentId == fromSegment) {
+                    try (InputStream in = new MappedInputStream(map(location));
+                         OutputStream out = append(conn, (segmentId, offset, length) -> {
+                             try (PreparedStatement pstmt = conn.prepareStatement(
+                                     "UPDATE audio_content SET segment_id = ?, segment_offset = ? WHERE id = ?")) {
+                                 pstmt.setInt(1, segmentId);
+                                 pstmt.setLong(2, offset);
+                                 pstmt.setInt(3, contentId);
+                                 pstmt.executeUpdate();
+                             }
+                         })) {
+                        copy(in, out);
+                    }
+                }
+                conn.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } finally {
+            lock.close();
+        }
+    }
+
+    /**
+     * Retire un segment vidé : il n'est plus référencé par aucun contenu, mais son fichier reste
+     * en place pour les lectures déjà commencées, ici ou dans un autre processus.
+     */
+    private void retire(Connection conn, int segmentId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "UPDATE audio_segments SET state = ?, retired_at = ? WHERE id = ?")) {
+            pstmt.setInt(1, RETIRED);
+            pstmt.setLong(2, System.currentTimeMillis());
+            pstmt.setInt(3, segmentId);
+            pstmt.executeUpdate();
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "DELETE FROM audio_content WHERE segment_id = ? AND refcount <= 0")) {
+            pstmt.setInt(1, segmentId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Supprime les fichiers des segments retirés depuis au moins l'âge minimal, si aucune
+     * lecture déclarée n'est en cours dans aucun processus. Un fichier encore ouvert ailleurs
+     * qui ne peut pas être supprimé (Windows) sera retenté à la passe suivante.
+     */
+    private void deleteRetired(Connection conn) throws SQLException, IOException {
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT id FROM audio_segments WHERE state = ? AND IFNULL(retired_at, 0) <= ? ORDER BY id")) {
+            pstmt.setInt(1, RETIRED);
+            pstmt.setLong(2, System.currentTimeMillis() - retiredMinAge);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        if (ids.isEmpty()) return;
+
+        List<Integer> deleted = new ArrayList<>();
+        synchronized (readers) {
+            if (readerCount > 0) return;
+            Files.createDirectories(dir);
+            try (FileChannel channel = FileChannel.open(dir.resolve(READ_LOCK_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock;
+                try {
+                    lock = channel.tryLock();
+                } catch (OverlappingFileLockException e) {
+                    // Lecture déclarée par un autre stockage du même répertoire dans ce processus
+                    return;
+                }
+                // Lecture déclarée dans un autre processus
+                if (lock == null) return;
+                try {
+                    for (int segmentId : ids) {
+                        try {
+                            Files.deleteIfExists(segmentFile(segmentId));
+                            deleted.add(segmentId);
+                        } catch (IOException e) {
+                            // Retenté à la passe suivante
+                        }
+                    }
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM audio_segments WHERE id = ?")) {
+            for (int segmentId : deleted) {
+                pstmt.setInt(1, segmentId);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Déclare une lecture qui garde un état de la base le temps de lire les données : aucun
+     * fichier de segment retiré n'est supprimé avant sa fin, par ce processus ou par un autre.
+     * À prendre avant la première requête de la transaction de lecture.
+     *
+     * @return La déclaration, à fermer à la fin de la lecture
+     */
+    ReadLease beginRead() {
+        synchronized (readers) {
+            if (readerCount++ == 0) {
+                lockReaders();
+            }
+            return new ReadLease();
+        }
+    }
+
+    /**
+     * Verrouille en partage le fichier des lectures, le temps d'une éventuelle suppression en
+     * cours dans un autre processus. Sans ce verrou (répertoire en lecture seule), la lecture
+     * n'est protégée des autres processus que par l'âge minimal des segments retirés.
+     */
+    private void lockReaders() {
+        try {
+            Files.createDirectories(dir);
+            readLockChannel = FileChannel.open(dir.resolve(READ_LOCK_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            readLockChannel.lock(0, Long.MAX_VALUE, true);
+        } catch (IOException | OverlappingFileLockException e) {
+            unlockReaders();
+        }
+    }
+
+    /** Libère le verrou partagé, en fermant le canal qui le porte */
+    private void unlockReaders() {
+        try {
+            if (readLockChannel != null) readLockChannel.close();
+        } catch (IOException e) {
+            // Rien de plus à libérer
+        }
+        readLockChannel = null;
+    }
+
+    /**
+     * Lecture en cours, obtenue par {@link #beginRead()}.
+     */
+    final class ReadLease implements Closeable {
+        private boolean closed;
+
+        private ReadLease() {
+        }
+
+        @Override
+        public void close() {
+            synchronized (readers) {
+                if (closed) return;
+                closed = true;
+                if (--readerCount == 0) {
+                    unlockReaders();
+                }
+            }
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+    }
+
+    /**
+     * Ouvre un flux d'ajout sur le segment actif ; {@code placement} enregistre l'emplacement
+     * écrit à la fermeture du flux.
+     */
+    private OutputStream append(Connection conn, Placement placement) throws SQLException, IOException {
+        WriteLock lock = lockWrites();
+        try {
+            int segmentId = activeSegment(conn);
+            FileChannel channel = FileChannel.open(segmentFile(segmentId),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                return new SegmentOutputStream(conn, segmentId, channel, lock, placement);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        } catch (SQLException | IOException | RuntimeException e) {
+            lock.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Prend le verrou d'écriture du stockage, pour ce processus et pour les autres. Tout
+     * écrivain dont la transaction peut ajouter des données à un segment le prend avant
+     * d'ouvrir sa transaction : le verrou du stockage précède toujours le verrou d'écriture de
+     * SQLite, jamais l'inverse. Réentrant ; à libérer dans le thread qui l'a pris.
+     *
+     * @return Le verrou, à fermer après la fin de la transaction
+     * @throws IOException Si le fichier de verrou ne peut pas être ouvert ou verrouillé
+     */
+    WriteLock lockWrites() throws IOException {
+        appendLock.lock();
+        if (appendLock.getHoldCount() == 1) {
+            try {
+                Files.createDirectories(dir);
+                lockChannel = FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                try {
+                    fileLock = lockChannel.lock();
+                } catch (IOException | RuntimeException e) {
+                    lockChannel.close();
+                    throw e;
+                }
+            } catch (IOException | RuntimeException e) {
+                appendLock.unlock();
+                throw e;
+            }
+        }
+        return new WriteLock();
+    }
+
+    /**
+     * Verrou d'écriture du stockage, obtenu par {@link #lockWrites()}.
+     */
+    final class WriteLock implements Closeable {
+        private boolean released;
+
+        private WriteLock() {
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (released) return;
+            released = true;
+            try {
+                if (appendLock.getHoldCount() == 1) {
+                    try {
+                        fileLock.release();
+                    } finally {
+                        lockChannel.close();
+                    }
+                }
+            } finally {
+                appendLock.unlock();
+            }
+        }
+    }
+
+    /** Enregistrement de l'emplacement d'une écriture terminée */
+    private interface Placement {
+        void record(int segmentId, long offset, long length) throws SQLException;
+    }
+
+    /**
+     * Retourne le segment actif, en le créant si nécessaire.
+     */
+    private static int activeSegment(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT id FROM audio_segments WHERE state = " + ACTIVE + " ORDER BY id DESC LIMIT 1");
+             ResultSet rs = pstmt.executeQuery()) {
+            if (rs.next()) return rs.getInt(1);
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO audio_segments (state) VALUES (" + ACTIVE + ")");
+            try (ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private static void updateState(Connection conn, int segmentId, int state) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE audio_segments SET state = ? WHERE id = ?")) {
+            pstmt.setInt(1, state);
+            pstmt.setInt(2, segmentId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static List<Integer> segmentsInState(Connection conn, int state) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM audio_segments WHERE state = ? ORDER BY id")) {
+            pstmt.setInt(1, state);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static long liveBytes(Connection conn, int segmentId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT IFNULL(SUM(audio_length), 0) FROM audio_content WHERE segment_id = ? AND refcount > 0")) {
+            pstmt.setInt(1, segmentId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private static List<Integer> contentsIn(Connection conn, int segmentId) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT id FROM audio_content WHERE segment_id = ? AND refcount > 0 ORDER BY segment_offset")) {
+            pstmt.setInt(1, segmentId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /** Emplacement d'un contenu dans un segment */
+    private static final class Location {
+        final int segmentId;
+        final long offset;
+        final long length;
+
+        Location(int segmentId, long offset, long length) {
+            this.segmentId = segmentId;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static Location locate(Connection conn, int recordingId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT c.segment_id, c.segment_offset, c.audio_length " +
+                "FROM recordings r JOIN audio_content c ON c.id = r.content_id WHERE r.id = ?")) {
+            pstmt.setInt(1, recordingId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) throw new SQLException("Recording not stored in a segment: " + recordingId);
+                return new Location(rs.getInt(1), rs.getLong(2), rs.getLong(3));
+            }
+        }
+    }
+
+    /**
+     * Projette la plage d'un enregistrement en mémoire. La projection reste valable après
+     * la fermeture du canal.
+     */
+    private ByteBuffer map(Location location) throws IOException {
+        if (location.length > Integer.MAX_VALUE) {
+            throw new IOException("Recording too large to map: " + location.length + " bytes");
+        }
+        try (FileChannel channel = FileChannel.open(segmentFile(location.segmentId), StandardOpenOption.READ)) {
+            if (location.offset + location.length > channel.size()) {
+                throw new EOFException("Segment " + location.segmentId + " is shorter than its recordings");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, location.offset, location.length);
+        }
+    }
+
+    /**
+     * Écrit à la fin du segment sous le verrou d'écriture et enregistre l'emplacement à la fermeture.
+     */
+    private final class SegmentOutputStream extends OutputStream {
+        private final Connection conn;
+        private final int segmentId;
+        private final FileChannel channel;
+        private final WriteLock lock;
+        private final Placement placement;
+        private final long offset;
+        private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        private boolean failed;
+        private boolean closed;
+
+        SegmentOutputStream(Connection conn, int segmentId, FileChannel channel, WriteLock lock, Placement placement)
+                throws IOException {
+            this.conn = conn;
+            this.segmentId = segmentId;
+            this.channel = channel;
+            this.lock = lock;
+            this.placement = placement;
+            // Les octets d'une écriture abandonnée restent en place : on repart toujours de la fin
+            this.offset = channel.size();
+            channel.position(offset);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) throw new IOException("Stream closed");
+            try {
+                while (len > 0) {
+                    int n = Math.min(len, buffer.remaining());
+                    buffer.put(b, off, n);
+                    off += n;
+                    len -= n;
+                    if (!buffer.hasRemaining()) {
+                        flushBuffer();
+                    }
+                }
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                if (!failed) {
+                    flushBuffer();
+                    channel.force(false);
+                    long end = channel.position();
+                    placement.record(segmentId, offset, end - offset);
+                    if (end >= maxSegmentSize) {
+                        updateState(conn, segmentId, SEALED);
+                    }
+                }
+            } catch (SQLException e) {
+                throw new IOException("Failed to record audio location", e);
+            } finally {
+                try {
+                    channel.close();
+                } finally {
+                    lock.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Flux sur une projection mémoire.
+     */
+    private static final class MappedInputStream extends InputStream {
+        private final ByteBuffer data;
+
+        MappedInputStream(ByteBuffer data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return data.hasRemaining() ? data.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!data.hasRemaining()) return -1;
+            int n = Math.min(len, data.remaining());
+            data.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, data.remaining()));
+            data.position(data.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return data.remaining();
+        }
+    }
+
+    /**
+     * Accès aléatoire sur une projection mémoire.
+     */
+    private static final class MappedSource implements ChunkedAES.RandomAccessSource {
+        private final ByteBuffer data;
+
+        MappedSource(ByteBuffer data) {
+            this.data = data;
+        }
+
+        @Override
+        public long length() {
+            return data.capacity();
+        }
+
+        @Override
+        public void readFully(long pos, byte[] b, int off, int len) throws IOException {
+            if (pos < 0 || pos + len > data.capacity()) {
+                throw new EOFException("Read past end of recording");
+            }
+            ByteBuffer view = data.duplicate();
+            view.position((int) pos);
+            view.get(b, off, len);
+        }
+    }
+}
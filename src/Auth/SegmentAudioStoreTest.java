@@ -0,0 +1,379 @@
+package Auth;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SegmentAudioStoreTest {
+
+    private static final int ROUNDS = 30;
+
+    private Path dir;
+    private Database db;
+    private SegmentAudioStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("segments");
+        db = new Database("jdbc:sqlite:" + dir.resolve("test.db"), 2);
+        // Segments de 10 Ko pour provoquer le scellement, supprimés sans attendre une fois retirés
+        store = new SegmentAudioStore(dir.resolve("audio"), 10 * 1024, 0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        db.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testRoundTripAndRandomAccess() throws Exception {
+        byte[] data = randomBytes(5000, 1);
+        try (Connection conn = db.getConnection()) {
+            int id = insertRecording(conn, new byte[0]);
+            write(conn, id, data);
+
+            assertTrue(SegmentAudioStore.contains(conn, id));
+            assertArrayEquals(data, read(store.openStream(conn, id)));
+
+            ChunkedAES.RandomAccessSource source = store.openSource(conn, id);
+            assertEquals(data.length, source.length());
+            byte[] part = new byte[100];
+            source.readFully(1234, part, 0, part.length);
+            for (int i = 0; i < part.length; i++) {
+                assertEquals(data[1234 + i], part[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testRolledBackWriteIsNotRecorded() throws Exception {
+        try (Connection conn = db.getConnection()) {
+            int id = insertRecording(conn, new byte[0]);
+            conn.setAutoCommit(false);
+            write(conn, id, randomBytes(100, 2));
+            conn.rollback();
+            conn.setAutoCommit(true);
+            assertFalse(SegmentAudioStore.contains(conn, id));
+
+            byte[] data = randomBytes(200, 3);
+            write(conn, id, data);
+            assertArrayEquals(data, read(store.openStream(conn, id)));
+        }
+    }
+
+    @Test
+    public void testIdenticalAudioIsStoredOnce() throws Exception {
+        byte[] data = randomBytes(3000, 4);
+        byte[] digest = SHA.sha256("audio en clair".getBytes());
+        try (Connection conn = db.getConnection()) {
+            int first = insertRecording(conn, new byte[0]);
+            assertFalse(store.shareExisting(conn, first, digest));
+            try (OutputStream out = store.openWriter(conn, first, digest)) {
+                out.write(data);
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("UPDATE recordings SET encryption_key = 'shared' WHERE id = ?")) {
+                pstmt.setInt(1, first);
+                pstmt.executeUpdate();
+            }
+
+            int second = insertRecording(conn, new byte[0]);
+            assertTrue(store.shareExisting(conn, second, digest));
+            assertEquals(1, count(conn, "SELECT COUNT(*) FROM audio_content"));
+            assertEquals(2, count(conn, "SELECT refcount FROM audio_content"));
+            assertEquals(1, count(conn, "SELECT COUNT(*) FROM recordings WHERE encryption_key = 'shared' AND id = " + second));
+            assertArrayEquals(data, read(store.openStream(conn, second)));
+
+            // La suppression du premier enregistrement ne touche pas aux données partagées
+            deleteRecording(conn, first);
+            assertEquals(1, count(conn, "SELECT refcount FROM audio_content"));
+            assertArrayEquals(data, read(store.openStream(conn, second)));
+
+            // Un contenu qui n'est plus référencé n'est plus partagé
+            deleteRecording(conn, second);
+            assertEquals(0, count(conn, "SELECT refcount FROM audio_content"));
+            assertFalse(store.shareExisting(conn, insertRecording(conn, new byte[0]), digest));
+        }
+    }
+
+    @Test
+    public void testCompactionKeepsLiveRecordings() throws Exception {
+        try (Connection conn = db.getConnection()) {
+            byte[][] data = new byte[6][];
+            int[] ids = new int[data.length];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = randomBytes(4000, 10 + i);
+                ids[i] = insertRecording(conn, new byte[0]);
+                write(conn, ids[i], data[i]);
+            }
+            // Suppression d'un enregistrement sur deux
+            for (int i = 0; i < data.length; i += 2) {
+                deleteRecording(conn, ids[i]);
+            }
+            long before = segmentBytes();
+
+            assertTrue(store.compact(conn, 0.3) > 0);
+            for (int i = 1; i < data.length; i += 2) {
+                assertArrayEquals(data[i], read(store.openStream(conn, ids[i])));
+            }
+            // Les fichiers des segments retirés sont supprimés à la passe suivante
+            assertEquals(0, store.compact(conn, 0.3));
+            assertTrue(segmentBytes() < before);
+        }
+    }
+
+    @Test
+    public void testRetiredSegmentKeptWhileReadInProgress() throws Exception {
+        try (Connection conn = db.getConnection()) {
+            byte[] kept = randomBytes(6000, 30);
+            byte[] deleted = randomBytes(6000, 31);
+            int keptId = insertRecording(conn, new byte[0]);
+            write(conn, keptId, kept);
+            int deletedId = insertRecording(conn, new byte[0]);
+            write(conn, deletedId, deleted);
+            deleteRecording(conn, deletedId);
+
+            // Lecture commencée avant le compactage : elle voit encore l'ancien emplacement
+            SegmentAudioStore.ReadLease lease = store.beginRead();
+            try (Connection reader = db.getConnection()) {
+                reader.setAutoCommit(false);
+                InputStream in = store.openStream(reader, keptId);
+                try {
+                    assertTrue(store.compact(conn, 0.3) > 0);
+                    assertEquals(0, store.compact(conn, 0.3));
+                    assertEquals(1, count(conn, "SELECT COUNT(*) FROM audio_segments WHERE state = 2"));
+                    assertArrayEquals(kept, read(in));
+                } finally {
+                    in.close();
+                }
+            } finally {
+                lease.close();
+            }
+
+            assertEquals(0, store.compact(conn, 0.3));
+            assertEquals(0, count(conn, "SELECT COUNT(*) FROM audio_segments WHERE state = 2"));
+            assertArrayEquals(kept, read(store.openStream(conn, keptId)));
+        }
+    }
+
+    @Test
+    public void testRetiredSegmentKeptWhileReadInOtherStore() throws Exception {
+        try (Connection conn = db.getConnection()) {
+            int keptId = retireFirstSegment(conn);
+
+            // Lecture déclarée par le stockage d'un autre processus sur le même répertoire
+            SegmentAudioStore other = new SegmentAudioStore(dir.resolve("audio"), 10 * 1024, 0);
+            SegmentAudioStore.ReadLease lease = other.beginRead();
+            try {
+                assertEquals(0, store.compact(conn, 0.3));
+                assertEquals(1, count(conn, "SELECT COUNT(*) FROM audio_segments WHERE state = 2"));
+            } finally {
+                lease.close();
+            }
+
+            assertEquals(0, store.compact(conn, 0.3));
+            assertEquals(0, count(conn, "SELECT COUNT(*) FROM audio_segments WHERE state = 2"));
+            assertArrayEquals(randomBytes(6000, 40), read(store.openStream(conn, keptId)));
+        }
+    }
+
+    @Test
+    public void testRetiredSegmentKeptUntilMinimumAge() throws Exception {
+        store = new SegmentAudioStore(dir.resolve("audio"), 10 * 1024, SegmentAudioStore.RETIRED_MIN_AGE_MILLIS);
+        try (Connection conn = db.getConnection()) {
+            retireFirstSegment(conn);
+            // Heure de retrait enregistrée : une compaction lancée par un autre processus la respecte aussi
+            assertEquals(0, store.compact(conn, 0.3));
+            assertEquals(1, count(conn, "SELECT COUNT(*) FROM audio_segments WHERE state = 2 AND retired_at IS NOT NULL"));
+
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("UPDATE audio_segments SET retired_at = retired_at - " +
+                                   SegmentAudioStore.RETIRED_MIN_AGE_MILLIS + " WHERE state = 2");
+            }
+            assertEquals(0, store.compact(conn, 0.3));
+            assertEquals(0, count(conn, "SELECT COUNT(*) FROM audio_segments WHERE state = 2"));
+        }
+    }
+
+    @Test
+    public void testMigrationFromRows() throws Exception {
+        RecordingBlobs rows = new RecordingBlobs();
+        byte[] inline = randomBytes(3000, 20);
+        byte[] chunked = randomBytes(70000, 21);
+        try (Connection conn = db.getConnection()) {
+            int inlineId = insertRecording(conn, inline);
+            int chunkedId = insertRecording(conn, new byte[0]);
+            try (OutputStream out = rows.openWriter(conn, chunkedId)) {
+                out.write(chunked);
+            }
+            // Même hash que le premier : partage son contenu au lieu d'être copié
+            int duplicateId = insertRecording(conn, inline);
+
+            assertEquals(3, store.migrateFrom(conn, rows));
+            assertEquals(0, store.migrateFrom(conn, rows));
+            assertEquals(2, count(conn, "SELECT COUNT(*) FROM audio_content"));
+            assertArrayEquals(inline, read(store.openStream(conn, duplicateId)));
+
+            assertArrayEquals(inline, read(store.openStream(conn, inlineId)));
+            assertArrayEquals(chunked, read(store.openStream(conn, chunkedId)));
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(
+                         "SELECT (SELECT SUM(length(audio)) FROM recordings), (SELECT COUNT(*) FROM recording_chunks)")) {
+                assertEquals(0, rs.getLong(1));
+                assertEquals(0, rs.getLong(2));
+            }
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void testSaveAndCompactionRunTogether() throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        List<byte[]> data = new ArrayList<>();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread saver = new Thread(() -> {
+            try (Connection conn = db.getConnection()) {
+                for (int i = 0; i < ROUNDS; i++) {
+                    byte[] audio = randomBytes(4000, 100 + i);
+                    // Même ordre que SaveService : verrou du stockage, puis transaction
+                    SegmentAudioStore.WriteLock lock = store.lockWrites();
+                    try {
+                        conn.setAutoCommit(false);
+                        try {
+                            int id = insertRecording(conn, new byte[0]);
+                            write(conn, id, audio);
+                            conn.commit();
+                            synchronized (ids) {
+                                ids.add(id);
+                                data.add(audio);
+                            }
+                        } catch (Exception e) {
+                            conn.rollback();
+                            throw e;
+                        } finally {
+                            conn.setAutoCommit(true);
+                        }
+                    } finally {
+                        lock.close();
+                    }
+                }
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        saver.start();
+        try (Connection conn = db.getConnection()) {
+            // Suppressions et compactions pendant les sauvegardes
+            while (saver.isAlive()) {
+                synchronized (ids) {
+                    if (ids.size() > 2) {
+                        deleteRecording(conn, ids.remove(0));
+                        data.remove(0);
+                    }
+                }
+                store.compact(conn, 0.1);
+            }
+            saver.join();
+            assertNull(failure.get());
+            store.compact(conn, 0.1);
+            for (int i = 0; i < ids.size(); i++) {
+                assertArrayEquals(data.get(i), read(store.openStream(conn, ids.get(i))));
+            }
+        }
+    }
+
+    /**
+     * Remplit un segment, supprime la moitié de son contenu et le compacte : il est retiré.
+     *
+     * @return L'enregistrement conservé, déplacé dans le segment actif
+     */
+    private int retireFirstSegment(Connection conn) throws Exception {
+        int keptId = insertRecording(conn, new byte[0]);
+        write(conn, keptId, randomBytes(6000, 40));
+        int deletedId = insertRecording(conn, new byte[0]);
+        write(conn, deletedId, randomBytes(6000, 41));
+        deleteRecording(conn, deletedId);
+        assertTrue(store.compact(conn, 0.3) > 0);
+        assertEquals(1, count(conn, "SELECT COUNT(*) FROM audio_segments WHERE state = 2"));
+        return keptId;
+    }
+
+    private int insertRecording(Connection conn, byte[] audio) throws Exception {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO recordings (name, timestamp, duration, audio, encryption_key, audio_hash, user_id) " +
+                "VALUES ('test', '2024-01-01 00:00:00', 1, ?, 'key', ?, 1)")) {
+            pstmt.setBytes(1, audio);
+            pstmt.setString(2, SHA.toHex(SHA.sha256(audio)));
+            pstmt.executeUpdate();
+        }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private void deleteRecording(Connection conn, int id) throws Exception {
+        store.delete(conn, id);
+        try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM recordings WHERE id = ?")) {
+            pstmt.setInt(1, id);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static long count(Connection conn, String sql) throws Exception {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.getLong(1);
+        }
+    }
+
+    private void write(Connection conn, int id, byte[] data) throws Exception {
+        try (OutputStream out = store.openWriter(conn, id)) {
+            out.write(data);
+        }
+    }
+
+    private long segmentBytes() throws Exception {
+        try (Stream<Path> files = Files.list(dir.resolve("audio"))) {
+            return files.mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+
+    private static byte[] read(InputStream in) throws Exception {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,44 @@
+package Auth;
+
+/**
+ * Limiteur de débit simple (en octets par seconde) partagé entre plusieurs threads.
+ * Chaque appel à {@link #acquire(long)} réserve une fenêtre de temps proportionnelle
+ * au volume demandé et attend si le débit autorisé est dépassé.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+final class Throttle {
+
+    /** Débit autorisé en octets par nanoseconde, ou 0 si illimité */
+    private final double bytesPerNano;
+    /** Instant à partir duquel la prochaine réservation peut commencer */
+    private long nextFree = System.nanoTime();
+
+    /**
+     * @param megabytesPerSecond Débit maximal en Mo/s (0 ou négatif pour ne pas limiter)
+     */
+    Throttle(double megabytesPerSecond) {
+        this.bytesPerNano = megabytesPerSecond > 0 ? megabytesPerSecond * 1024 * 1024 / 1_000_000_000d : 0;
+    }
+
+    /**
+     * Réserve le passage de {@code bytes} octets, en bloquant si nécessaire.
+     *
+     * @param bytes Nombre d'octets à traiter
+     * @throws InterruptedException Si le thread est interrompu pendant l'attente
+     */
+    void acquire(long bytes) throws InterruptedException {
+        if (bytesPerNano == 0 || bytes <= 0) return;
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long start = Math.max(now, nextFree);
+            nextFree = start + (long) (bytes / bytesPerNano);
+            wait = start - now;
+        }
+        if (wait > 0) {
+            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        }
+    }
+}
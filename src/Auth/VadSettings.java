@@ -0,0 +1,94 @@
+package Auth;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Réglages de détection d'activité vocale d'un utilisateur, conservés dans {@code vad_settings}.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+public final class VadSettings {
+
+    /** Seuil par défaut : environ un pas de quantification de l'audio 8 bits */
+    public static final double DEFAULT_THRESHOLD_DB = -40;
+
+    /** Réglages d'un utilisateur qui n'a rien modifié : silences de début et de fin retirés, pauses conservées */
+    public static final VadSettings DEFAULTS = new VadSettings(true, DEFAULT_THRESHOLD_DB, 0);
+    /** Aucun filtrage */
+    public static final VadSettings DISABLED = new VadSettings(false, DEFAULT_THRESHOLD_DB, 0);
+
+    private final boolean enabled;
+    private final double thresholdDb;
+    private final int maxPauseMs;
+
+    /**
+     * @param enabled Active le retrait des silences
+     * @param thresholdDb Niveau moyen, en dB sous la pleine échelle, au-dessus duquel une fenêtre contient de la parole
+     * @param maxPauseMs Durée maximale d'une pause, 0 pour conserver les pauses
+     */
+    public VadSettings(boolean enabled, double thresholdDb, int maxPauseMs) {
+        if (thresholdDb > 0 || Double.isNaN(thresholdDb)) throw new IllegalArgumentException("Threshold must be <= 0 dBFS");
+        if (maxPauseMs < 0) throw new IllegalArgumentException("Negative maximum pause");
+        this.enabled = enabled;
+        this.thresholdDb = thresholdDb;
+        this.maxPauseMs = maxPauseMs;
+    }
+
+    /** @return true si les silences sont retirés */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** @return Le seuil de parole en dB sous la pleine échelle */
+    public double getThresholdDb() {
+        return thresholdDb;
+    }
+
+    /** @return La durée maximale d'une pause, 0 si les pauses sont conservées */
+    public int getMaxPauseMs() {
+        return maxPauseMs;
+    }
+
+    /**
+     * Charge les réglages d'un utilisateur.
+     *
+     * @param conn Connexion à la base de données
+     * @param userId Identifiant de l'utilisateur
+     * @return Ses réglages, ou {@link #DEFAULTS} s'il n'en a pas enregistré
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    public static VadSettings load(Connection conn, int userId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT enabled, threshold_db, max_pause_ms FROM vad_settings WHERE user_id = ?")) {
+            pstmt.setInt(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) return DEFAULTS;
+                return new VadSettings(rs.getBoolean(1), rs.getDouble(2), rs.getInt(3));
+            }
+        }
+    }
+
+    /**
+     * Enregistre ces réglages pour un utilisateur.
+     *
+     * @param conn Connexion à la base de données
+     * @param userId Identifiant de l'utilisateur
+     * @throws SQLException En cas d'erreur d'accès à la base
+     */
+    public void save(Connection conn, int userId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO vad_settings (user_id, enabled, threshold_db, max_pause_ms) VALUES (?, ?, ?, ?) " +
+                "ON CONFLICT (user_id) DO UPDATE SET enabled = excluded.enabled, " +
+                "threshold_db = excluded.threshold_db, max_pause_ms = excluded.max_pause_ms")) {
+            pstmt.setInt(1, userId);
+            pstmt.setBoolean(2, enabled);
+            pstmt.setDouble(3, thresholdDb);
+            pstmt.setInt(4, maxPauseMs);
+            pstmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package Auth;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Détection d'activité vocale dans la chaîne de capture.
+ * L'audio PCM est découpé en fenêtres de 10 ms classées par leur énergie et leur taux de
+ * passages par zéro (les consonnes sifflantes sont faibles mais très oscillantes). Le silence
+ * avant la première parole et après la dernière est retiré ; les pauses peuvent être
+ * raccourcies à une durée maximale. Un peu de silence est conservé autour de la parole pour
+ * ne pas couper les attaques et les fins de mots.
+ * <p>
+ * Le silence en attente est gardé dans un tampon circulaire alloué une fois pour toutes :
+ * le traitement d'un tampon de capture n'alloue rien. Sans raccourcissement des pauses, une
+ * pause plus longue que {@link #MAX_HELD_SILENCE_MS} est transmise au-delà de cette durée ;
+ * seule cette dernière part est retirée si l'enregistrement se termine dessus.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+final class VoiceActivityFilter extends OutputStream {
+
+    /** Durée d'une fenêtre d'analyse */
+    static final int WINDOW_MS = 10;
+    /** Silence gardé avant la parole */
+    static final int PRE_ROLL_MS = 150;
+    /** Silence gardé après la parole */
+    static final int HANGOVER_MS = 300;
+    /** Fenêtres actives consécutives nécessaires pour reconnaître la parole (un clic n'en fait pas) */
+    static final int MIN_SPEECH_WINDOWS = 3;
+    /** Silence gardé en attente au plus, quand les pauses ne sont pas raccourcies */
+    static final int MAX_HELD_SILENCE_MS = 30_000;
+
+    /** Un signal plus faible de ce rapport que le seuil est actif s'il oscille assez */
+    private static final double FRICATIVE_ENERGY_RATIO = 0.25;
+    /** Taux de passages par zéro d'une consonne sifflante */
+    private static final double FRICATIVE_ZERO_CROSSINGS = 0.3;
+
+    private enum State { LEADING, SPEECH, PAUSE }
+
+    private final OutputStream out;
+    private final VadSettings settings;
+    private final BlockCodec.Samples format;
+    private final int sampleBytes;
+    private final int windowBytes;
+    private final double energyThreshold;
+    private final int preRollBytes;
+    private final int hangoverBytes;
+    /** Silence d'une pause gardé à la reprise de la parole, si les pauses sont raccourcies */
+    private final int pauseTailBytes;
+
+    /** Fenêtre en cours de remplissage */
+    private final byte[] window;
+    private int windowFill;
+    /** Audio en attente de décision, dans l'ordre d'arrivée */
+    private final byte[] ring;
+    private int ringStart;
+    private int ringSize;
+
+    private State state = State.LEADING;
+    private int speechRun;
+    /** Silence transmis depuis la fin de la parole */
+    private long pauseEmitted;
+    private long kept;
+    private boolean closed;
+
+    /**
+     * @param out Destination de l'audio conservé
+     * @param format Format PCM de la capture
+     * @param settings Réglages de l'utilisateur
+     */
+    VoiceActivityFilter(OutputStream out, AudioFormat format, VadSettings settings) {
+        this.out = out;
+        this.settings = settings;
+        this.format = new BlockCodec.Samples(format);
+        this.sampleBytes = this.format.bits / 8;
+        int frameSize = this.format.frameSize;
+        int framesPerMs = Math.max(1, Math.round(format.getSampleRate() / 1000));
+        this.windowBytes = WINDOW_MS * framesPerMs * frameSize;
+        double fullScale = 1 << (this.format.bits - 1);
+        double rms = fullScale * Math.pow(10, settings.getThresholdDb() / 20);
+        this.energyThreshold = rms * rms;
+        this.preRollBytes = PRE_ROLL_MS * framesPerMs * frameSize;
+        this.hangoverBytes = HANGOVER_MS * framesPerMs * frameSize;
+        int maxPause = settings.getMaxPauseMs();
+        this.pauseTailBytes = maxPause > 0 ? Math.max(0, maxPause - HANGOVER_MS) * framesPerMs * frameSize : -1;
+        int heldLimit = Math.max(preRollBytes,
+                pauseTailBytes >= 0 ? pauseTailBytes : MAX_HELD_SILENCE_MS * framesPerMs * frameSize);
+        this.window = new byte[windowBytes];
+        this.ring = settings.isEnabled() ? new byte[heldLimit + MIN_SPEECH_WINDOWS * windowBytes] : new byte[0];
+    }
+
+    /** @return Le nombre d'octets PCM transmis */
+    long getKeptBytes() {
+        return kept;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        if (!settings.isEnabled()) {
+            emit(b, off, len);
+            return;
+        }
+        while (len > 0) {
+            int n = Math.min(len, windowBytes - windowFill);
+            System.arraycopy(b, off, window, windowFill, n);
+            windowFill += n;
+            off += n;
+            len -= n;
+            if (windowFill == windowBytes) {
+                process(window, windowBytes);
+                windowFill = 0;
+            }
+        }
+    }
+
+    private void process(byte[] w, int length) throws IOException {
+        boolean active = isActive(w, length);
+        if (state == State.SPEECH) {
+            if (active) {
+                emit(w, 0, length);
+                return;
+            }
+            state = State.PAUSE;
+            pauseEmitted = 0;
+            speechRun = 0;
+        }
+        // La fin des mots est transmise tout de suite, tant que rien n'est en attente
+        if (state == State.PAUSE && !active && ringSize == 0 && pauseEmitted < hangoverBytes) {
+            emit(w, 0, length);
+            pauseEmitted += length;
+            return;
+        }
+
+        // Avant la parole ou pendant une pause : décision reportée
+        hold(w, length);
+        speechRun = active ? speechRun + 1 : 0;
+        if (speechRun < MIN_SPEECH_WINDOWS) return;
+
+        int speech = MIN_SPEECH_WINDOWS * windowBytes;
+        int keep;
+        if (state == State.LEADING) {
+            keep = preRollBytes + speech;
+        } else if (pauseTailBytes >= 0) {
+            keep = pauseTailBytes + speech;
+        } else {
+            keep = ringSize;
+        }
+        drop(Math.max(0, ringSize - keep));
+        emitHeld(ringSize);
+        state = State.SPEECH;
+    }
+
+    /**
+     * Garde une fenêtre en attente. Au-delà de la limite, le plus ancien silence est oublié
+     * (avant la parole, pauses raccourcies) ou transmis (pauses conservées).
+     */
+    private void hold(byte[] w, int length) throws IOException {
+        int overflow = ringSize + length - ring.length;
+        if (overflow > 0) {
+            if (state == State.PAUSE && pauseTailBytes < 0) {
+                emitHeld(overflow);
+            } else {
+                drop(overflow);
+            }
+        }
+        int end = (ringStart + ringSize) % ring.length;
+        int first = Math.min(length, ring.length - end);
+        System.arraycopy(w, 0, ring, end, first);
+        System.arraycopy(w, first, ring, 0, length - first);
+        ringSize += length;
+    }
+
+    private void drop(int bytes) {
+        ringStart = (ringStart + bytes) % ring.length;
+        ringSize -= bytes;
+    }
+
+    private void emitHeld(int bytes) throws IOException {
+        int first = Math.min(bytes, ring.length - ringStart);
+        emit(ring, ringStart, first);
+        emit(ring, 0, bytes - first);
+        drop(bytes);
+    }
+
+    private void emit(byte[] b, int off, int len) throws IOException {
+        if (len > 0) {
+            out.write(b, off, len);
+            kept += len;
+        }
+    }
+
+    /**
+     * Classe une fenêtre : énergie moyenne au-dessus du seuil, ou énergie plus faible mais
+     * nombreux passages par zéro.
+     */
+    private boolean isActive(byte[] w, int length) {
+        int count = length / sampleBytes;
+        long sumSquares = 0;
+        int crossings = 0;
+        // Signe du dernier échantillon non nul : un passage par zéro n'est compté qu'une fois
+        int previous = 0;
+        for (int off = 0; off < length; off += sampleBytes) {
+            int s = format.get(w, off);
+            sumSquares += (long) s * s;
+            if (s != 0) {
+                if ((s ^ previous) < 0) crossings++;
+                previous = s;
+            }
+        }
+        double energy = sumSquares / (double) count;
+        if (energy >= energyThreshold) return true;
+        return energy >= energyThreshold * FRICATIVE_ENERGY_RATIO
+               && crossings >= FRICATIVE_ZERO_CROSSINGS * count;
+    }
+
+    /**
+     * Termine le flux : le silence en attente est retiré, la dernière fenêtre incomplète est
+     * transmise si elle suit de la parole.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if (settings.isEnabled() && windowFill > 0 && state == State.SPEECH) {
+                emit(window, 0, windowFill);
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package Auth;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.Test;
+
+public class VoiceActivityFilterTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(44100, 8, 1, true, true);
+    private static final int SECOND = 44100;
+
+    private final Random random = new Random(3);
+
+    @Test
+    public void testDisabledKeepsEverything() throws Exception {
+        byte[] pcm = message(2, 3, 2);
+        assertArrayEquals(pcm, filter(pcm, VadSettings.DISABLED));
+    }
+
+    @Test
+    public void testLeadingAndTrailingSilenceIsTrimmed() throws Exception {
+        byte[] speech = tone(SECOND, 200);
+        byte[] pcm = concat(silence(3 * SECOND), speech, silence(4 * SECOND));
+        byte[] kept = filter(pcm, VadSettings.DEFAULTS);
+
+        assertTrue(indexOf(kept, speech) >= 0);
+        int margin = (VoiceActivityFilter.PRE_ROLL_MS + VoiceActivityFilter.HANGOVER_MS) * SECOND / 1000;
+        assertTrue(kept.length <= speech.length + margin + SECOND / 50);
+    }
+
+    @Test
+    public void testPausesAreKeptOrShortened() throws Exception {
+        byte[] first = tone(SECOND, 200);
+        byte[] second = tone(SECOND / 2, 330);
+        byte[] pcm = concat(silence(SECOND), first, silence(5 * SECOND), second, silence(SECOND));
+
+        byte[] kept = filter(pcm, VadSettings.DEFAULTS);
+        int gap = indexOf(kept, second) - indexOf(kept, first) - first.length;
+        assertEquals(5 * SECOND, gap);
+
+        byte[] shortened = filter(pcm, new VadSettings(true, VadSettings.DEFAULT_THRESHOLD_DB, 1000));
+        gap = indexOf(shortened, second) - indexOf(shortened, first) - first.length;
+        assertTrue(gap >= SECOND * 9 / 10 && gap <= SECOND * 11 / 10);
+    }
+
+    @Test
+    public void testQuietFricativeIsSpeech() throws Exception {
+        // Bruit faible mais très oscillant, comme un « s »
+        byte[] hiss = new byte[SECOND / 2];
+        for (int i = 0; i < hiss.length; i++) {
+            hiss[i] = (byte) ((i & 1) == 0 ? 1 : -1);
+        }
+        byte[] pcm = concat(silence(SECOND), hiss, silence(SECOND));
+        assertTrue(indexOf(filter(pcm, new VadSettings(true, -38, 0)), hiss) >= 0);
+    }
+
+    @Test
+    public void testNoAllocationPerBuffer() throws Exception {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        byte[] pcm = message(10, 5, 10);
+        OutputStream sink = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+        VoiceActivityFilter filter = new VoiceActivityFilter(sink, FORMAT, new VadSettings(true, -40, 2000));
+        filter.write(pcm, 0, SECOND);
+
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int off = SECOND; off + 4410 <= pcm.length; off += 4410) {
+            filter.write(pcm, off, 4410);
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        assertTrue("allocated " + allocated, allocated < 4096);
+    }
+
+    @Test
+    public void testSettingsAreStoredPerUser() throws Exception {
+        Database db = new Database("jdbc:sqlite:file:vad?mode=memory&cache=shared", 1);
+        try (Connection conn = db.getConnection()) {
+            assertSame(VadSettings.DEFAULTS, VadSettings.load(conn, 1));
+            new VadSettings(false, -30, 1500).save(conn, 1);
+            new VadSettings(true, -50, 0).save(conn, 1);
+            VadSettings loaded = VadSettings.load(conn, 1);
+            assertTrue(loaded.isEnabled());
+            assertEquals(-50, loaded.getThresholdDb(), 0);
+            assertEquals(0, loaded.getMaxPauseMs());
+            assertSame(VadSettings.DEFAULTS, VadSettings.load(conn, 2));
+        } finally {
+            db.close();
+        }
+    }
+
+    private static byte[] filter(byte[] pcm, VadSettings settings) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VoiceActivityFilter filter = new VoiceActivityFilter(out, FORMAT, settings);
+        try {
+            for (int off = 0; off < pcm.length; off += 4410) {
+                filter.write(pcm, off, Math.min(4410, pcm.length - off));
+            }
+        } finally {
+            filter.close();
+        }
+        assertEquals(out.size(), filter.getKeptBytes());
+        return out.toByteArray();
+    }
+
+    private byte[] message(int leading, int speech, int trailing) {
+        return concat(silence(leading * SECOND), tone(speech * SECOND, 200), silence(trailing * SECOND));
+    }
+
+    /** Bruit de fond d'un micro ouvert en 8 bits : quelques pas de quantification isolés */
+    private byte[] silence(int frames) {
+        byte[] pcm = new byte[frames];
+        for (int i = 0; i < frames; i++) {
+            int r = random.nextInt(16);
+            pcm[i] = (byte) (r == 0 ? -1 : r == 1 ? 1 : 0);
+        }
+        return pcm;
+    }
+
+    private static byte[] tone(int frames, double frequency) {
+        byte[] pcm = new byte[frames];
+        for (int i = 0; i < frames; i++) {
+            pcm[i] = (byte) Math.round(40 * Math.sin(2 * Math.PI * frequency * i / (double) SECOND));
+        }
+        return pcm;
+    }
+
+    private static int indexOf(byte[] haystack, byte[] needle) {
+        outer:
+        for (int i = 0; i + needle.length <= haystack.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,181 @@
+package Auth;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Écriture d'un fichier WAV au fil de l'eau.
+ * L'en-tête RIFF est écrit à l'ouverture avec des tailles nulles, l'audio est ajouté par
+ * {@link #write(byte[], int, int)} au fur et à mesure de la capture, et les tailles sont
+ * corrigées à la fermeture : le fichier est complet dès la fin de l'enregistrement, sans
+ * relire l'audio. Les échantillons sont convertis vers le codage imposé par le format WAV
+ * (8 bits non signés, 16 bits signés petit-boutiste), quel que soit le format de capture.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+public final class WavWriter extends OutputStream {
+
+    /** Taille de l'en-tête RIFF/WAVE d'un fichier PCM */
+    static final int HEADER_SIZE = 44;
+    /** Position de la taille du bloc RIFF */
+    private static final int RIFF_SIZE_OFFSET = 4;
+    /** Position de la taille du bloc de données */
+    private static final int DATA_SIZE_OFFSET = 40;
+    /** Taille maximale des données : les tailles de l'en-tête sont sur 32 bits */
+    private static final long MAX_DATA_SIZE = 0xFFFFFFFFL - (HEADER_SIZE - 8);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final int sampleBytes;
+    /** Les échantillons 8 bits de la capture sont signés, ceux du WAV ne le sont pas */
+    private final boolean flipSign;
+    /** Les échantillons 16 bits du WAV sont petit-boutistes */
+    private final boolean swapBytes;
+    /** Premier octet d'un échantillon 16 bits coupé entre deux écritures */
+    private int carry = -1;
+    private long dataSize;
+    private boolean closed;
+
+    /**
+     * Crée le fichier, en remplaçant un fichier existant, et écrit l'en-tête.
+     *
+     * @param file Fichier WAV à écrire
+     * @param format Format PCM de l'audio écrit (8 ou 16 bits, signé ou non)
+     * @throws IOException Si le fichier ne peut pas être créé
+     */
+    public WavWriter(Path file, AudioFormat format) throws IOException {
+        BlockCodec.Samples samples = new BlockCodec.Samples(format);
+        boolean signed = AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding());
+        this.file = file;
+        this.sampleBytes = samples.bits / 8;
+        this.flipSign = sampleBytes == 1 ? signed : !signed;
+        this.swapBytes = sampleBytes == 2 && format.isBigEndian();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(ascii("RIFF")).putInt(HEADER_SIZE - 8).put(ascii("WAVE"));
+        header.put(ascii("fmt ")).putInt(16)
+              .putShort((short) 1) // PCM
+              .putShort((short) samples.channels)
+              .putInt((int) format.getSampleRate())
+              .putInt((int) format.getSampleRate() * samples.frameSize)
+              .putShort((short) samples.frameSize)
+              .putShort((short) samples.bits);
+        header.put(ascii("data")).putInt(0);
+        header.flip();
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                        StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** @return Le fichier écrit */
+    public Path getFile() {
+        return file;
+    }
+
+    /** @return La taille de l'audio écrit, en octets */
+    public long getDataSize() {
+        return dataSize;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        if (dataSize + len > MAX_DATA_SIZE) throw new IOException("WAV file too large: " + file);
+        dataSize += len;
+        int end = off + len;
+        while (off < end) {
+            if (buffer.remaining() < 2) {
+                flushBuffer();
+            }
+            if (sampleBytes == 1) {
+                int n = Math.min(end - off, buffer.remaining());
+                for (int i = 0; i < n; i++) {
+                    buffer.put(flipSign ? (byte) (b[off + i] ^ 0x80) : b[off + i]);
+                }
+                off += n;
+            } else if (carry < 0) {
+                carry = b[off++] & 0xff;
+            } else {
+                int first = carry;
+                int second = b[off++] & 0xff;
+                carry = -1;
+                int low = swapBytes ? second : first;
+                int high = swapBytes ? first : second;
+                buffer.put((byte) low).put((byte) (flipSign ? high ^ 0x80 : high));
+            }
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Écrit l'audio restant et corrige les tailles de l'en-tête.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try (FileChannel c = channel) {
+            flushBuffer();
+            // Un échantillon incomplet n'est pas écrit
+            long data = dataSize - (carry >= 0 ? 1 : 0);
+            ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            size.putInt(0, (int) (data + HEADER_SIZE - 8));
+            c.write(size, RIFF_SIZE_OFFSET);
+            size.clear();
+            size.putInt(0, (int) data);
+            c.write(size, DATA_SIZE_OFFSET);
+        }
+    }
+
+    /**
+     * Abandonne l'écriture et supprime le fichier s'il est encore présent.
+     */
+    public void discard() {
+        try {
+            close();
+        } catch (IOException e) {
+            // Le fichier est supprimé de toute façon
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("Impossible de supprimer " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,157 @@
+package Auth;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WavWriterTest {
+
+    private static final AudioFormat CAPTURE = new AudioFormat(44100, 8, 1, true, true);
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("wav");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void testCaptureFormatIsWrittenAsUnsigned8Bit() throws Exception {
+        byte[] pcm = tone(44100);
+        Path file = dir.resolve("capture.wav");
+        try (WavWriter wav = new WavWriter(file, CAPTURE)) {
+            // Écritures de tailles quelconques, comme celles de la capture
+            for (int off = 0; off < pcm.length; off += 1001) {
+                wav.write(pcm, off, Math.min(1001, pcm.length - off));
+            }
+        }
+
+        assertEquals(WavWriter.HEADER_SIZE + pcm.length, Files.size(file));
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(WavWriter.HEADER_SIZE - 8 + pcm.length, header.getInt(4));
+        assertEquals(pcm.length, header.getInt(40));
+
+        try (AudioInputStream in = AudioSystem.getAudioInputStream(file.toFile())) {
+            AudioFormat format = in.getFormat();
+            assertEquals(AudioFormat.Encoding.PCM_UNSIGNED, format.getEncoding());
+            assertEquals(8, format.getSampleSizeInBits());
+            assertEquals(44100, format.getSampleRate(), 0);
+            assertEquals(pcm.length, in.getFrameLength());
+            byte[] unsigned = readAll(in);
+            for (int i = 0; i < pcm.length; i++) {
+                assertEquals(pcm[i], (byte) (unsigned[i] ^ 0x80));
+            }
+        }
+    }
+
+    @Test
+    public void testBigEndian16BitSamplesSplitAcrossWrites() throws Exception {
+        AudioFormat format = new AudioFormat(22050, 16, 2, true, true);
+        short[] samples = new short[5000];
+        ByteBuffer pcm = ByteBuffer.allocate(samples.length * 2);
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (i * 13 - 30000);
+            pcm.putShort(samples[i]);
+        }
+        Path file = dir.resolve("stereo.wav");
+        try (WavWriter wav = new WavWriter(file, format)) {
+            for (int off = 0; off < pcm.capacity(); off += 7) {
+                wav.write(pcm.array(), off, Math.min(7, pcm.capacity() - off));
+            }
+        }
+
+        try (AudioInputStream in = AudioSystem.getAudioInputStream(file.toFile())) {
+            assertFalse(in.getFormat().isBigEndian());
+            assertEquals(2, in.getFormat().getChannels());
+            ByteBuffer data = ByteBuffer.wrap(readAll(in)).order(ByteOrder.LITTLE_ENDIAN);
+            for (short sample : samples) {
+                assertEquals(sample, data.getShort());
+            }
+            assertFalse(data.hasRemaining());
+        }
+    }
+
+    @Test
+    public void testDiscardDeletesTheFile() throws Exception {
+        Path file = dir.resolve("abandon.wav");
+        WavWriter wav = new WavWriter(file, CAPTURE);
+        wav.write(tone(1000));
+        wav.discard();
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void testPipelineWritesKeptAudioDuringCapture() throws Exception {
+        byte[] pcm = tone(44100 * 3);
+        Path file = dir.resolve("recording.wav.part");
+        RecordingPipeline pipeline = new RecordingPipeline(4410, CAPTURE, AudioCodecs.forName(AudioCodecs.LPC),
+                                                           VadSettings.DISABLED, file);
+        try {
+            for (int off = 0; off < pcm.length; off += 4410) {
+                byte[] buffer = pipeline.nextBuffer();
+                int n = Math.min(buffer.length, pcm.length - off);
+                System.arraycopy(pcm, off, buffer, 0, n);
+                pipeline.submit(buffer, n);
+            }
+            RecordingPipeline.Result result = pipeline.finish();
+            assertEquals(file, result.getAutosave());
+            try (AudioInputStream in = AudioSystem.getAudioInputStream(file.toFile())) {
+                assertEquals(result.getLength(), in.getFrameLength());
+            }
+
+            // Le fichier déplacé survit à la fermeture de la chaîne
+            Files.move(file, dir.resolve("recording.wav"));
+        } finally {
+            pipeline.close();
+        }
+        assertTrue(Files.exists(dir.resolve("recording.wav")));
+
+        // Un enregistrement abandonné ne laisse pas de fichier
+        Path abandoned = dir.resolve("abandoned.wav.part");
+        new RecordingPipeline(4410, CAPTURE, AudioCodecs.forName(AudioCodecs.PCM), VadSettings.DISABLED, abandoned)
+                .close();
+        assertFalse(Files.exists(abandoned));
+    }
+
+    private static byte[] tone(int frames) {
+        byte[] pcm = new byte[frames];
+        for (int i = 0; i < frames; i++) {
+            pcm[i] = (byte) Math.round(100 * Math.sin(2 * Math.PI * 440 * i / 44100.0));
+        }
+        return pcm;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
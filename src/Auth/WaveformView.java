@@ -0,0 +1,85 @@
+package Auth;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
+
+import javax.swing.JComponent;
+import javax.swing.JTable;
+import javax.swing.table.TableCellRenderer;
+
+/**
+ * Affichage d'une forme d'onde à partir d'un {@link PeakIndex}, sans lire l'audio.
+ * Sert de panneau d'aperçu de l'enregistrement sélectionné, où le niveau de l'index est
+ * choisi selon la largeur, et de rendu de la colonne d'aperçu du tableau, dont les
+ * cellules contiennent les tranches du niveau 0.
+ *
+ * @author Auth
+ * @version 1.0
+ */
+public class WaveformView extends JComponent implements TableCellRenderer {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Index affiché dans le panneau d'aperçu */
+    private PeakIndex index;
+    /** Tranches affichées dans une cellule du tableau */
+    private byte[] peaks;
+
+    public WaveformView() {
+        setOpaque(true);
+        setBackground(Color.WHITE);
+        setForeground(new Color(70, 110, 180));
+    }
+
+    /**
+     * Affiche l'index d'un enregistrement.
+     *
+     * @param index L'index, ou null pour effacer l'affichage
+     */
+    public void setIndex(PeakIndex index) {
+        this.index = index;
+        this.peaks = null;
+        repaint();
+    }
+
+    @Override
+    public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus,
+                                                   int row, int column) {
+        index = null;
+        peaks = value instanceof byte[] ? (byte[]) value : null;
+        setBackground(isSelected ? table.getSelectionBackground() : table.getBackground());
+        setForeground(isSelected ? table.getSelectionForeground() : table.getForeground());
+        return this;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        int width = getWidth();
+        int height = getHeight();
+        if (isOpaque()) {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, width, height);
+        }
+        byte[] shown = index != null ? index.getPeaks(index.levelFor(width)) : peaks;
+        int count = shown == null ? 0 : shown.length / 2;
+        if (count == 0 || width == 0) return;
+
+        // Une colonne de pixels par groupe de tranches, ou une tranche étirée sur plusieurs colonnes
+        g.setColor(getForeground());
+        int middle = height / 2;
+        for (int x = 0; x < width; x++) {
+            int from = (int) ((long) x * count / width);
+            int to = Math.max(from + 1, (int) ((long) (x + 1) * count / width));
+            int min = Byte.MAX_VALUE;
+            int max = Byte.MIN_VALUE;
+            for (int i = from; i < to; i++) {
+                min = Math.min(min, shown[2 * i]);
+                max = Math.max(max, shown[2 * i + 1]);
+            }
+            int top = middle - max * middle / 128;
+            int bottom = middle - min * middle / 128;
+            g.drawLine(x, top, x, Math.max(top, bottom));
+        }
+    }
+}